@@ -0,0 +1,66 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+/**
+ * A single timed operation for the BenchmarkRunner. The runner calls setUp()
+ * once, then run() over and over through the warmup and measurement
+ * iterations, and then tearDown(). Whatever run() returns is kept by the
+ * runner so the JIT can't decide the work isn't needed.
+ */
+public abstract class Benchmark {
+
+    protected String name;
+
+    /**
+     * @param name the name printed in the results, usually
+     *        Suite.operation[parameters].
+     */
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Create the data the benchmark needs. Not timed.
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * Do the operation being timed, once.
+     *
+     * @return a result of the operation, consumed by the runner.
+     */
+    public abstract Object run() throws Exception;
+
+    /**
+     * Release anything created in setUp(). Not timed.
+     */
+    public void tearDown() throws Exception {
+    }
+
+    /**
+     * @return the number of items run() handles, used to report the time per
+     *         item (points projected, records read) in addition to the time
+     *         per operation.
+     */
+    public int getItemCount() {
+        return 1;
+    }
+}
@@ -0,0 +1,231 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the OpenMap benchmarks. Each benchmark is warmed up for a number of
+ * timed iterations that are thrown away, then measured for a number of timed
+ * iterations, and the mean and standard deviation of the time per operation
+ * over the measured iterations is printed, along with the time per item for
+ * benchmarks that handle many points or records in each operation.
+ * <p>
+ * The benchmarks run on synthetic data made from a fixed seed, so runs can be
+ * compared as long as the seed and the parameters stay the same.
+ * <p>
+ *
+ * <pre>
+ * Usage: java com.bbn.openmap.bench.BenchmarkRunner [-w warmups] [-i iterations]
+ *            [-t millis] [-seed seed] [-list] [name ...]
+ * </pre>
+ *
+ * Names pick the suites (proj, graphics, shape, geo, image, vpf) or
+ * benchmarks to run, any benchmark whose name starts with one of them is run.
+ * Everything runs if no names are given.
+ */
+public class BenchmarkRunner {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.bench.BenchmarkRunner");
+
+    public final static int DEFAULT_WARMUP_ITERATIONS = 3;
+    public final static int DEFAULT_ITERATIONS = 5;
+    public final static long DEFAULT_ITERATION_MILLIS = 1000;
+
+    protected int warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+    protected int iterations = DEFAULT_ITERATIONS;
+    protected long iterationMillis = DEFAULT_ITERATION_MILLIS;
+    protected PrintStream out = System.out;
+
+    /**
+     * Results are added up here so run() results are used for something.
+     */
+    protected int sink;
+
+    /**
+     * @return all of the benchmark suites.
+     */
+    public static List<BenchmarkSuite> getSuites() {
+        List<BenchmarkSuite> suites = new ArrayList<BenchmarkSuite>();
+        suites.add(new ProjectionBenchmarks());
+        suites.add(new GraphicsBenchmarks());
+        suites.add(new ShapeBenchmarks());
+        suites.add(new IntersectionBenchmarks());
+        suites.add(new ImageServerBenchmarks());
+        suites.add(new VPFBenchmarks());
+        return suites;
+    }
+
+    /**
+     * Run one timed iteration of a benchmark.
+     *
+     * @return nanoseconds per operation.
+     */
+    protected double iteration(Benchmark benchmark) throws Exception {
+        long deadline = System.nanoTime() + iterationMillis * 1000000L;
+        long ops = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            Object result = benchmark.run();
+            sink += (result == null) ? 0 : result.hashCode();
+            ops++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / ops;
+    }
+
+    /**
+     * Set up, warm up, measure and tear down a benchmark, and print the
+     * result.
+     */
+    public void run(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        try {
+            for (int i = 0; i < warmupIterations; i++) {
+                iteration(benchmark);
+            }
+
+            double[] times = new double[iterations];
+            for (int i = 0; i < iterations; i++) {
+                times[i] = iteration(benchmark);
+            }
+
+            double mean = 0;
+            for (double t : times) {
+                mean += t;
+            }
+            mean /= times.length;
+            double var = 0;
+            for (double t : times) {
+                var += (t - mean) * (t - mean);
+            }
+            double stddev = times.length > 1 ? Math.sqrt(var / (times.length - 1)) : 0;
+
+            int items = benchmark.getItemCount();
+            String perItem = "";
+            if (items > 1) {
+                perItem = String.format(Locale.US, " %10.1f ns/item", mean / items);
+            }
+            out.println(String.format(Locale.US, "%-55s %14.1f +/- %10.1f ns/op%s", benchmark.getName(), mean, stddev, perItem));
+        } finally {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * Run the benchmarks matching the names, or all of them if names is empty.
+     */
+    public void run(SyntheticData data, List<String> names, boolean listOnly) {
+        for (BenchmarkSuite suite : getSuites()) {
+            List<Benchmark> benchmarks;
+            try {
+                benchmarks = suite.getBenchmarks(data);
+            } catch (Exception e) {
+                logger.log(Level.WARNING, "can't create " + suite.getName() + " benchmarks", e);
+                continue;
+            }
+
+            for (Benchmark benchmark : benchmarks) {
+                if (!matches(benchmark.getName(), names)) {
+                    continue;
+                }
+                if (listOnly) {
+                    out.println(benchmark.getName());
+                    continue;
+                }
+                try {
+                    run(benchmark);
+                } catch (Exception e) {
+                    logger.log(Level.WARNING, benchmark.getName() + " failed", e);
+                }
+            }
+        }
+    }
+
+    protected static boolean matches(String benchmarkName, List<String> names) {
+        if (names.isEmpty()) {
+            return true;
+        }
+        for (String name : names) {
+            if (benchmarkName.startsWith(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void printUsage(PrintStream out) {
+        out.println("Usage: java com.bbn.openmap.bench.BenchmarkRunner [-w warmups] [-i iterations] [-t millis] [-seed seed] [-list] [name ...]");
+        out.println("  -w      warmup iterations (default " + DEFAULT_WARMUP_ITERATIONS + ")");
+        out.println("  -i      measured iterations (default " + DEFAULT_ITERATIONS + ")");
+        out.println("  -t      milliseconds per iteration (default " + DEFAULT_ITERATION_MILLIS + ")");
+        out.println("  -seed   seed for the synthetic data (default " + SyntheticData.DEFAULT_SEED + ")");
+        out.println("  -list   list the benchmarks without running them");
+        out.println("  name    run the suites or benchmarks whose names start with name");
+    }
+
+    public static void main(String[] args) {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        long seed = SyntheticData.DEFAULT_SEED;
+        boolean listOnly = false;
+        List<String> names = new ArrayList<String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("-w")) {
+                    runner.warmupIterations = Integer.parseInt(args[++i]);
+                } else if (arg.equals("-i")) {
+                    runner.iterations = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (arg.equals("-t")) {
+                    runner.iterationMillis = Long.parseLong(args[++i]);
+                } else if (arg.equals("-seed")) {
+                    seed = Long.parseLong(args[++i]);
+                } else if (arg.equals("-list")) {
+                    listOnly = true;
+                } else if (arg.startsWith("-")) {
+                    printUsage(System.out);
+                    System.exit(arg.equals("-h") ? 0 : 1);
+                } else {
+                    names.add(arg);
+                }
+            }
+        } catch (RuntimeException e) {
+            printUsage(System.out);
+            System.exit(1);
+        }
+
+        if (!listOnly) {
+            System.out.println("OpenMap benchmarks, seed " + seed + ", " + runner.warmupIterations
+                    + " warmup and " + runner.iterations + " measured iterations of "
+                    + runner.iterationMillis + " ms, Java " + System.getProperty("java.version")
+                    + (names.isEmpty() ? "" : ", " + Arrays.toString(names.toArray())));
+        }
+
+        SyntheticData data = new SyntheticData(seed);
+        try {
+            runner.run(data, names, listOnly);
+        } finally {
+            data.cleanUp();
+        }
+    }
+}
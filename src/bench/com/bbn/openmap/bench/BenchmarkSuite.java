@@ -0,0 +1,35 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.util.List;
+
+/**
+ * A group of related benchmarks, created with the synthetic data they share.
+ */
+public interface BenchmarkSuite {
+
+    /**
+     * @return the name used to pick the suite on the BenchmarkRunner command
+     *         line.
+     */
+    String getName();
+
+    /**
+     * @param data the synthetic data generator for the run.
+     * @return the benchmarks in the suite.
+     */
+    List<Benchmark> getBenchmarks(SyntheticData data) throws Exception;
+}
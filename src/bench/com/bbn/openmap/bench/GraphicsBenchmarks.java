@@ -0,0 +1,133 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * OMPoly.generate(), OMGraphicList.generate() in the calling thread and over
+ * all of the processors, and OMGraphicList.render() into a BufferedImage, for
+ * a list of filled polygons.
+ */
+public class GraphicsBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POLYS = 500;
+    public final static int NUM_VERTICES = 64;
+    public final static int WIDTH = 1024;
+    public final static int HEIGHT = 768;
+
+    public String getName() {
+        return "graphics";
+    }
+
+    public static Projection projection() {
+        return new Mercator(new LatLonPoint.Double(0.0, 0.0), 150000000f, WIDTH, HEIGHT);
+    }
+
+    public List<Benchmark> getBenchmarks(final SyntheticData data) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        final String params = "[" + NUM_POLYS + "x" + NUM_VERTICES + "]";
+
+        benchmarks.add(new Benchmark(getName() + ".OMPoly.generate" + params) {
+            OMGraphicList list;
+            Projection proj;
+
+            public void setUp() {
+                list = data.polyList(NUM_POLYS, NUM_VERTICES);
+                proj = projection();
+            }
+
+            public Object run() {
+                int count = 0;
+                for (OMGraphic omg : list) {
+                    if (omg.generate(proj)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+
+            public int getItemCount() {
+                return NUM_POLYS;
+            }
+        });
+
+        for (final boolean parallel : new boolean[] { false, true }) {
+            benchmarks.add(new Benchmark(getName() + ".OMGraphicList.generate" + params
+                    + (parallel ? "[parallel]" : "")) {
+                OMGraphicList list;
+                Projection proj;
+                int numTasks;
+
+                public void setUp() {
+                    list = data.polyList(NUM_POLYS, NUM_VERTICES);
+                    proj = projection();
+                    numTasks = parallel ? Runtime.getRuntime().availableProcessors() : 1;
+                }
+
+                public Object run() {
+                    return list.generate(proj, true, numTasks, null);
+                }
+
+                public int getItemCount() {
+                    return NUM_POLYS;
+                }
+            });
+        }
+
+        for (final boolean antialias : new boolean[] { false, true }) {
+            benchmarks.add(new Benchmark(getName() + ".OMGraphicList.render" + params
+                    + (antialias ? "[antialias]" : "")) {
+                OMGraphicList list;
+                BufferedImage image;
+                Graphics2D g;
+
+                public void setUp() {
+                    list = data.polyList(NUM_POLYS, NUM_VERTICES);
+                    list.generate(projection());
+                    image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+                    g = image.createGraphics();
+                    if (antialias) {
+                        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+                    }
+                }
+
+                public Object run() {
+                    list.render(g);
+                    return image.getRGB(WIDTH / 2, HEIGHT / 2);
+                }
+
+                public void tearDown() {
+                    g.dispose();
+                }
+
+                public int getItemCount() {
+                    return NUM_POLYS;
+                }
+            });
+        }
+        return benchmarks;
+    }
+}
@@ -0,0 +1,68 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.image.ImageServer;
+import com.bbn.openmap.image.PNGImageIOFormatter;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * ImageServer.createImage() for a layer of filled polygons, PNG encoded. The
+ * map center moves a little for each image, so the layer has to generate its
+ * graphics each time, the way it would for a stream of web map requests.
+ */
+public class ImageServerBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POLYS = 500;
+    public final static int NUM_VERTICES = 64;
+    public final static int WIDTH = 512;
+    public final static int HEIGHT = 512;
+
+    public String getName() {
+        return "image";
+    }
+
+    public List<Benchmark> getBenchmarks(final SyntheticData data) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+        benchmarks.add(new Benchmark(getName() + ".ImageServer.createImage[png," + WIDTH + "x"
+                + HEIGHT + "]") {
+            ImageServer server;
+            int count = 0;
+
+            public void setUp() {
+                OMGraphicHandlerLayer layer = new OMGraphicHandlerLayer();
+                layer.setName("Polygons");
+                layer.setList(data.polyList(NUM_POLYS, NUM_VERTICES));
+                server = new ImageServer(new Layer[] { layer }, new PNGImageIOFormatter());
+            }
+
+            public Object run() {
+                double lon = (count++ % 10) - 5.0;
+                Projection proj = new Mercator(new LatLonPoint.Double(20.0, lon), 100000000f, WIDTH, HEIGHT);
+                return server.createImage(proj).length;
+            }
+        });
+
+        return benchmarks;
+    }
+}
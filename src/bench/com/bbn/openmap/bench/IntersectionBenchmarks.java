@@ -0,0 +1,71 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.bbn.openmap.geo.Geo;
+import com.bbn.openmap.geo.GeoArray;
+import com.bbn.openmap.geo.Intersection;
+
+/**
+ * Intersection.isPointInPolygon() for points around a large polygon, about
+ * half of them inside.
+ */
+public class IntersectionBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POINTS = 1000;
+
+    public String getName() {
+        return "geo";
+    }
+
+    public List<Benchmark> getBenchmarks(SyntheticData data) {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        Random random = data.random();
+
+        final Geo[] points = new Geo[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            points[i] = new Geo(40.0 + random.nextDouble() * 16.0 - 8.0, -70.0
+                    + random.nextDouble() * 16.0 - 8.0);
+        }
+
+        for (final int numVertices : new int[] { 16, 1000 }) {
+            final double[] ll = SyntheticData.polygon(random, 40.0, -70.0, 6.0, numVertices);
+
+            benchmarks.add(new Benchmark(getName() + ".Intersection.isPointInPolygon[" + numVertices
+                    + "]") {
+                GeoArray poly = GeoArray.Double.createFromLatLonDegrees(ll);
+
+                public Object run() {
+                    int inside = 0;
+                    for (Geo point : points) {
+                        if (Intersection.isPointInPolygon(point, poly)) {
+                            inside++;
+                        }
+                    }
+                    return inside;
+                }
+
+                public int getItemCount() {
+                    return NUM_POINTS;
+                }
+            });
+        }
+        return benchmarks;
+    }
+}
@@ -0,0 +1,134 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.awt.geom.Point2D;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.bbn.openmap.proj.CADRG;
+import com.bbn.openmap.proj.Ellipsoid;
+import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.Gnomonic;
+import com.bbn.openmap.proj.LLXY;
+import com.bbn.openmap.proj.LambertConformal;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * GeoProj.forward(), GeoProj.inverse() and the batch GeoProj.forwardRaw() for
+ * the common projections, over a fixed set of random points.
+ */
+public class ProjectionBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POINTS = 10000;
+    public final static int WIDTH = 1024;
+    public final static int HEIGHT = 768;
+
+    public String getName() {
+        return "proj";
+    }
+
+    /**
+     * @return one of each of the projections being tested, centered over the
+     *         north Atlantic at a world-ish scale.
+     */
+    public static List<GeoProj> projections() {
+        LatLonPoint center = new LatLonPoint.Double(40.0, -40.0);
+        float scale = 50000000f;
+        List<GeoProj> projs = new ArrayList<GeoProj>();
+        projs.add(new Mercator(center, scale, WIDTH, HEIGHT));
+        projs.add(new LLXY(center, scale, WIDTH, HEIGHT));
+        projs.add(new CADRG(center, scale, WIDTH, HEIGHT));
+        projs.add(new Orthographic(center, scale, WIDTH, HEIGHT));
+        projs.add(new Gnomonic(center, scale, WIDTH, HEIGHT));
+        projs.add(new LambertConformal(center, scale, WIDTH, HEIGHT, -40.0, 30.0, 50.0, 40.0, 0, 0, Ellipsoid.WGS_84));
+        return projs;
+    }
+
+    public List<Benchmark> getBenchmarks(SyntheticData data) {
+        Random random = data.random();
+        final double[] lats = new double[NUM_POINTS];
+        final double[] lons = new double[NUM_POINTS];
+        final double[] radLats = new double[NUM_POINTS];
+        final double[] radLons = new double[NUM_POINTS];
+        final double[] xs = new double[NUM_POINTS];
+        final double[] ys = new double[NUM_POINTS];
+        for (int i = 0; i < NUM_POINTS; i++) {
+            lats[i] = random.nextDouble() * 160.0 - 80.0;
+            lons[i] = random.nextDouble() * 360.0 - 180.0;
+            radLats[i] = Math.toRadians(lats[i]);
+            radLons[i] = Math.toRadians(lons[i]);
+            xs[i] = random.nextDouble() * WIDTH;
+            ys[i] = random.nextDouble() * HEIGHT;
+        }
+
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (final GeoProj proj : projections()) {
+            String projName = proj.getName().replace(" ", "");
+
+            benchmarks.add(new Benchmark(getName() + ".forward[" + projName + "]") {
+                Point2D pt = new Point2D.Double();
+
+                public Object run() {
+                    double sum = 0;
+                    for (int i = 0; i < NUM_POINTS; i++) {
+                        proj.forward(lats[i], lons[i], pt);
+                        sum += pt.getX();
+                    }
+                    return sum;
+                }
+
+                public int getItemCount() {
+                    return NUM_POINTS;
+                }
+            });
+
+            benchmarks.add(new Benchmark(getName() + ".forwardRaw[" + projName + "]") {
+                float[] xcoords = new float[NUM_POINTS];
+                float[] ycoords = new float[NUM_POINTS];
+                boolean[] visible = new boolean[NUM_POINTS];
+
+                public Object run() {
+                    return proj.forwardRaw(radLats, radLons, 0, xcoords, ycoords, visible, 0, NUM_POINTS);
+                }
+
+                public int getItemCount() {
+                    return NUM_POINTS;
+                }
+            });
+
+            benchmarks.add(new Benchmark(getName() + ".inverse[" + projName + "]") {
+                LatLonPoint llp = new LatLonPoint.Double();
+
+                public Object run() {
+                    double sum = 0;
+                    for (int i = 0; i < NUM_POINTS; i++) {
+                        proj.inverse(xs[i], ys[i], llp);
+                        sum += llp.getY();
+                    }
+                    return sum;
+                }
+
+                public int getItemCount() {
+                    return NUM_POINTS;
+                }
+            });
+        }
+        return benchmarks;
+    }
+}
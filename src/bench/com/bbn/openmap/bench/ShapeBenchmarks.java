@@ -0,0 +1,103 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.bbn.openmap.dataAccess.shape.DbfFile;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
+import com.bbn.openmap.layer.shape.SpatialIndex;
+
+/**
+ * SpatialIndex.locateRecords() window queries and DbfFile.readData() on a
+ * synthetic polygon shape file set.
+ */
+public class ShapeBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POLYS = 5000;
+    public final static int NUM_VERTICES = 32;
+    public final static int NUM_WINDOWS = 100;
+
+    public String getName() {
+        return "shape";
+    }
+
+    public List<Benchmark> getBenchmarks(final SyntheticData data) throws Exception {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        final File shp = data.shapeFile(NUM_POLYS, NUM_VERTICES);
+        final String params = "[" + NUM_POLYS + "x" + NUM_VERTICES + "]";
+
+        // 10 degree query windows, about what a zoomed in map shows.
+        Random random = data.random();
+        final double[] windows = new double[NUM_WINDOWS * 4];
+        for (int i = 0; i < NUM_WINDOWS; i++) {
+            double x = random.nextDouble() * 350.0 - 180.0;
+            double y = random.nextDouble() * 120.0 - 65.0;
+            windows[i * 4] = x;
+            windows[i * 4 + 1] = y;
+            windows[i * 4 + 2] = x + 10.0;
+            windows[i * 4 + 3] = y + 10.0;
+        }
+
+        benchmarks.add(new Benchmark(getName() + ".SpatialIndex.locateRecords" + params) {
+            SpatialIndex index;
+
+            public void setUp() throws Exception {
+                index = new SpatialIndex(shp.getAbsolutePath());
+            }
+
+            public Object run() throws Exception {
+                int count = 0;
+                for (int i = 0; i < windows.length; i += 4) {
+                    count += index.locateRecords(windows[i], windows[i + 1], windows[i + 2], windows[i + 3]).length;
+                }
+                return count;
+            }
+
+            public void tearDown() {
+                index.close(true);
+            }
+
+            public int getItemCount() {
+                return NUM_WINDOWS;
+            }
+        });
+
+        benchmarks.add(new Benchmark(getName() + ".DbfFile.readData[" + NUM_POLYS + "]") {
+            String dbf = SpatialIndex.dbf(shp.getAbsolutePath());
+
+            public Object run() throws Exception {
+                BinaryFile bf = new BinaryMappedFile(dbf);
+                try {
+                    DbfFile dbfFile = new DbfFile(bf);
+                    dbfFile.readData();
+                    return dbfFile.getRowCount();
+                } finally {
+                    bf.close();
+                }
+            }
+
+            public int getItemCount() {
+                return NUM_POLYS;
+            }
+        });
+
+        return benchmarks;
+    }
+}
@@ -0,0 +1,313 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.bench;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.bbn.openmap.dataAccess.shape.DbfTableModel;
+import com.bbn.openmap.dataAccess.shape.EsriPolygon;
+import com.bbn.openmap.dataAccess.shape.EsriPolygonList;
+import com.bbn.openmap.dataAccess.shape.output.DbfOutputStream;
+import com.bbn.openmap.dataAccess.shape.output.ShpOutputStream;
+import com.bbn.openmap.dataAccess.shape.output.ShxOutputStream;
+import com.bbn.openmap.geo.Geo;
+import com.bbn.openmap.layer.shape.SpatialIndex;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+
+/**
+ * Generates the data the benchmarks run on. Everything comes from a Random
+ * with a fixed seed, so the same seed always makes the same polygons, points
+ * and shape files, and results can be compared between runs and machines
+ * without any data files.
+ * <p>
+ * Shape files and VPF tables are written to a temporary directory that is
+ * deleted by cleanUp().
+ */
+public class SyntheticData {
+
+    public final static long DEFAULT_SEED = 20101014L;
+
+    protected long seed;
+    protected File workDir;
+    protected Map<String, File> shapeFiles = new HashMap<String, File>();
+    protected Map<String, File> vpfTables = new HashMap<String, File>();
+
+    public SyntheticData() {
+        this(DEFAULT_SEED);
+    }
+
+    public SyntheticData(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return a new Random for the seed. Each data set gets its own, so the
+     *         data doesn't depend on what was generated before it.
+     */
+    public Random random() {
+        return new Random(seed);
+    }
+
+    /**
+     * Create a closed, star shaped polygon around a center.
+     *
+     * @param random source of the vertex jitter.
+     * @param lat center latitude in decimal degrees.
+     * @param lon center longitude in decimal degrees.
+     * @param radius the average distance of the vertices from the center, in
+     *        degrees.
+     * @param numVertices number of vertices, not counting the closing vertex.
+     * @return lat, lon, lat, lon... in decimal degrees, with the first vertex
+     *         repeated at the end.
+     */
+    public static double[] polygon(Random random, double lat, double lon, double radius,
+                                   int numVertices) {
+        double[] ll = new double[(numVertices + 1) * 2];
+        for (int i = 0; i < numVertices; i++) {
+            double angle = 2 * Math.PI * i / numVertices;
+            double r = radius * (0.6 + 0.4 * random.nextDouble());
+            ll[i * 2] = lat + r * Math.sin(angle);
+            ll[i * 2 + 1] = lon + r * Math.cos(angle);
+        }
+        ll[numVertices * 2] = ll[0];
+        ll[numVertices * 2 + 1] = ll[1];
+        return ll;
+    }
+
+    /**
+     * Create polygons scattered between 60 south and 60 north.
+     *
+     * @param count number of polygons.
+     * @param numVertices vertices per polygon.
+     * @return the decimal degree coordinates of each polygon.
+     */
+    public List<double[]> polygons(int count, int numVertices) {
+        Random random = random();
+        List<double[]> polys = new ArrayList<double[]>(count);
+        for (int i = 0; i < count; i++) {
+            double lat = random.nextDouble() * 120.0 - 60.0;
+            double lon = random.nextDouble() * 350.0 - 175.0;
+            double radius = 0.5 + random.nextDouble() * 4.5;
+            polys.add(polygon(random, lat, lon, radius, numVertices));
+        }
+        return polys;
+    }
+
+    /**
+     * Create an OMGraphicList of filled OMPolys.
+     *
+     * @param count number of polygons.
+     * @param numVertices vertices per polygon.
+     */
+    public OMGraphicList polyList(int count, int numVertices) {
+        OMGraphicList list = new OMGraphicList(count);
+        Random random = random();
+        for (double[] ll : polygons(count, numVertices)) {
+            OMPoly poly = new OMPoly(ll, OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+            poly.setLinePaint(Color.black);
+            poly.setFillPaint(new Color(random.nextInt(0xffffff)));
+            list.add(poly);
+        }
+        return list;
+    }
+
+    /**
+     * Create random points between 60 south and 60 north.
+     *
+     * @param count number of points.
+     */
+    public Geo[] points(int count) {
+        Random random = random();
+        Geo[] geos = new Geo[count];
+        for (int i = 0; i < count; i++) {
+            geos[i] = new Geo(random.nextDouble() * 120.0 - 60.0, random.nextDouble() * 360.0 - 180.0);
+        }
+        return geos;
+    }
+
+    /**
+     * Write a polygon shape file set, shp, shx, dbf and ssx, for polygons(count,
+     * numVertices). Each record gets a name, id and area attribute. The files
+     * are only written once for each count and vertex number.
+     *
+     * @return the shp file.
+     */
+    public File shapeFile(int count, int numVertices) throws IOException {
+        String name = "poly_" + count + "_" + numVertices;
+        File shp = shapeFiles.get(name);
+        if (shp != null) {
+            return shp;
+        }
+
+        File dir = getWorkDir();
+        shp = new File(dir, name + ".shp");
+
+        EsriPolygonList list = new EsriPolygonList(count);
+        DbfTableModel model = new DbfTableModel(3);
+        model.setColumnName(0, "NAME");
+        model.setType(0, DbfTableModel.TYPE_CHARACTER);
+        model.setLength(0, 20);
+        model.setDecimalCount(0, (byte) 0);
+        model.setColumnName(1, "ID");
+        model.setType(1, DbfTableModel.TYPE_NUMERIC);
+        model.setLength(1, 10);
+        model.setDecimalCount(1, (byte) 0);
+        model.setColumnName(2, "AREA");
+        model.setType(2, DbfTableModel.TYPE_NUMERIC);
+        model.setLength(2, 16);
+        model.setDecimalCount(2, (byte) 3);
+
+        int id = 0;
+        for (double[] ll : polygons(count, numVertices)) {
+            list.add(new EsriPolygon(ll, OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT));
+            List<Object> record = new ArrayList<Object>(3);
+            record.add("Polygon " + id);
+            record.add(new Double(id));
+            record.add(new Double(area(ll)));
+            model.addRecord(record);
+            id++;
+        }
+
+        ShpOutputStream pos = new ShpOutputStream(new FileOutputStream(shp));
+        int[][] indexData = pos.writeGeometry(list);
+        ShxOutputStream xos = new ShxOutputStream(new FileOutputStream(new File(dir, name
+                + ".shx")));
+        xos.writeIndex(indexData, list.getType(), list.getExtents());
+        DbfOutputStream dos = new DbfOutputStream(new FileOutputStream(new File(dir, name
+                + ".dbf")));
+        dos.writeModel(model);
+
+        SpatialIndex.FileIndex.create(shp.getAbsolutePath());
+
+        shapeFiles.put(name, shp);
+        return shp;
+    }
+
+    /**
+     * Write a little-endian VPF edge table with the columns of a level 3
+     * topology edge table, with one edge for each of polygons(count,
+     * numVertices). The face and edge columns are cross-tile identifiers, and
+     * the coordinates are 2-coordinate floats. There's no variable length
+     * index, so the table can only be read in order. The table is only
+     * written once for each count and vertex number.
+     *
+     * @return the edge table file.
+     */
+    public File vpfEdgeTable(int count, int numVertices) throws IOException {
+        String name = "edg_" + count + "_" + numVertices;
+        File edg = vpfTables.get(name);
+        if (edg != null) {
+            return edg;
+        }
+
+        String[] triplets = { "right_face", "left_face", "right_edge", "left_edge" };
+        StringBuffer header = new StringBuffer("L;Synthetic Edge Table;-;");
+        header.append("id=I,1,P,Row Identifier,-,-,-,:");
+        header.append("start_node=I,1,N,Start Node,-,-,-,:");
+        header.append("end_node=I,1,N,End Node,-,-,-,:");
+        for (String triplet : triplets) {
+            header.append(triplet).append("=K,1,N,").append(triplet).append(",-,-,-,:");
+        }
+        header.append("coordinates=C,*,N,Coordinates,-,-,-,:;");
+        byte[] headerBytes = header.toString().getBytes("ISO-8859-1");
+
+        List<double[]> polys = polygons(count, numVertices);
+        ByteBuffer buf = ByteBuffer.allocate(4 + headerBytes.length + count
+                * (12 + triplets.length * 5 + 4 + (numVertices + 1) * 8));
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(headerBytes.length);
+        buf.put(headerBytes);
+        int id = 1;
+        for (double[] ll : polys) {
+            buf.putInt(id);
+            buf.putInt(id * 2 - 1);
+            buf.putInt(id * 2);
+            for (int i = 0; i < triplets.length; i++) {
+                // Only the current tile key, as a 4 byte int.
+                buf.put((byte) 0xC0);
+                buf.putInt(id);
+            }
+            buf.putInt(ll.length / 2);
+            for (int i = 0; i < ll.length; i += 2) {
+                buf.putFloat((float) ll[i + 1]);
+                buf.putFloat((float) ll[i]);
+            }
+            id++;
+        }
+
+        edg = new File(getWorkDir(), name);
+        FileOutputStream fos = new FileOutputStream(edg);
+        try {
+            fos.write(buf.array(), 0, buf.position());
+        } finally {
+            fos.close();
+        }
+
+        vpfTables.put(name, edg);
+        return edg;
+    }
+
+    /**
+     * The planar area of a decimal degree polygon, just something to put in
+     * the dbf file.
+     */
+    protected static double area(double[] ll) {
+        double sum = 0;
+        for (int i = 0; i < ll.length - 2; i += 2) {
+            sum += ll[i + 1] * ll[i + 2] - ll[i + 3] * ll[i];
+        }
+        return Math.abs(sum / 2);
+    }
+
+    protected File getWorkDir() throws IOException {
+        if (workDir == null) {
+            workDir = File.createTempFile("ombench", "");
+            if (!workDir.delete() || !workDir.mkdir()) {
+                throw new IOException("can't create benchmark directory " + workDir);
+            }
+        }
+        return workDir;
+    }
+
+    /**
+     * Delete any files that were written.
+     */
+    public void cleanUp() {
+        if (workDir != null) {
+            File[] files = workDir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            workDir.delete();
+            workDir = null;
+        }
+        shapeFiles.clear();
+        vpfTables.clear();
+    }
+}
@@ -0,0 +1,109 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.bench;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.bbn.openmap.layer.vpf.CoordFloatString;
+import com.bbn.openmap.layer.vpf.DcwCrossTileID;
+import com.bbn.openmap.layer.vpf.DcwRecordFile;
+import com.bbn.openmap.layer.vpf.DcwRow;
+
+/**
+ * DcwRecordFile reading every row of a synthetic VPF edge table, into a List
+ * of boxed values and into a reused DcwRow, pulling the node ids, the current
+ * tile key of the face and edge columns and the coordinate count out of each
+ * row. The DcwRow reads the coordinates into an array it reuses.
+ */
+public class VPFBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_EDGES = 5000;
+    public final static int NUM_VERTICES = 32;
+
+    public String getName() {
+        return "vpf";
+    }
+
+    public List<Benchmark> getBenchmarks(final SyntheticData data) throws Exception {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        final File edg = data.vpfEdgeTable(NUM_EDGES, NUM_VERTICES);
+        final String params = "[" + NUM_EDGES + "x" + NUM_VERTICES + "]";
+
+        benchmarks.add(new Benchmark(getName() + ".DcwRecordFile.parseRow[List]" + params) {
+            DcwRecordFile table;
+
+            public void setUp() throws Exception {
+                table = new DcwRecordFile(edg.getAbsolutePath());
+            }
+
+            public Object run() throws Exception {
+                long sum = 0;
+                table.seekToRow(1);
+                for (List<Object> row = new ArrayList<Object>(table.getColumnCount()); table.parseRow(row);) {
+                    sum += ((Number) row.get(1)).intValue() + ((Number) row.get(2)).intValue();
+                    for (int i = 3; i < 7; i++) {
+                        sum += ((DcwCrossTileID) row.get(i)).currentTileKey;
+                    }
+                    sum += ((CoordFloatString) row.get(7)).tcount;
+                }
+                return sum;
+            }
+
+            public void tearDown() {
+                table.close();
+            }
+
+            public int getItemCount() {
+                return NUM_EDGES;
+            }
+        });
+
+        benchmarks.add(new Benchmark(getName() + ".DcwRecordFile.parseRow[DcwRow]" + params) {
+            DcwRecordFile table;
+            DcwRow row;
+
+            public void setUp() throws Exception {
+                table = new DcwRecordFile(edg.getAbsolutePath());
+                row = table.createRow();
+            }
+
+            public Object run() throws Exception {
+                long sum = 0;
+                table.seekToRow(1);
+                while (table.parseRow(row)) {
+                    sum += row.getInt(1) + row.getInt(2);
+                    for (int i = 3; i < 7; i++) {
+                        sum += row.getInt(i);
+                    }
+                    sum += row.getTupleCount(7);
+                }
+                return sum;
+            }
+
+            public void tearDown() {
+                table.close();
+            }
+
+            public int getItemCount() {
+                return NUM_EDGES;
+            }
+        });
+
+        return benchmarks;
+    }
+}
@@ -37,6 +37,11 @@ import com.bbn.openmap.util.PropUtils;
  * # default, don't really need to specify the class property
  * #class=com.bbn.openmap.maptileservlet.StandardMapTileSet
  * rootDir=the path to the root of the tile directory, the parent of the z-level directory.
+ * # Optional, create missing tiles with a MapTileMaker.
+ * #emptyTileHandler=com.bbn.openmap.dataAccess.mapTile.MapTileMaker
+ * # Optional, have the MapTileMaker render blocks of 4x4 tiles at once and
+ * # keep the other tiles of the block for the requests that follow.
+ * #metaTileSize=4
  * </pre>
  * 
  * As an example, a url for accessing a tile from this server would be:
@@ -0,0 +1,261 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * The DTEDElevationStore holds the elevation posts of a DTED frame in one flat
+ * buffer outside of the java heap, laid out the way they are in the file: a
+ * data record for each longitude line, each holding the posts of that line
+ * from south to north. The buffer is either a read-only memory map of the
+ * frame file, or a direct buffer the records have been read into, so a frame
+ * doesn't need a java array for every longitude line, and the posts aren't
+ * garbage collected.
+ * <P>
+ * The posts are read from the buffer as they're asked for, using the record
+ * length as the stride between longitude lines, and are converted from the
+ * signed magnitude format the file uses. The buffer isn't modified after it's
+ * created, so a store can be read from many threads at the same time. Views of
+ * part of the store can be made with getView(), and read without copying the
+ * posts.
+ */
+public class DTEDElevationStore {
+
+    /**
+     * Number of bytes in front of the posts in each data record, the sentinel,
+     * block count, longitude count and latitude count.
+     */
+    public final static int RECORD_HEADER_SIZE = 8;
+    /** Number of bytes after the posts in each data record, the checksum. */
+    public final static int RECORD_CHECKSUM_SIZE = 4;
+
+    /** The posts, big endian, in the file layout. */
+    protected final ByteBuffer buffer;
+    /** The number of longitude lines (x). */
+    protected final int numColumns;
+    /** The number of posts in each longitude line (y). */
+    protected final int numRows;
+    /** The number of bytes from one longitude line to the next. */
+    protected final int stride;
+    /** Whether the buffer is a map of the frame file. */
+    protected final boolean mapped;
+
+    /**
+     * Create a store over a buffer holding the data records of a frame,
+     * starting with the first record.
+     * 
+     * @param buffer the data records.
+     * @param numColumns the number of longitude lines.
+     * @param numRows the number of posts in each longitude line.
+     * @param mapped whether the buffer is a map of the frame file.
+     */
+    protected DTEDElevationStore(ByteBuffer buffer, int numColumns, int numRows, boolean mapped) {
+        this.buffer = buffer;
+        this.numColumns = numColumns;
+        this.numRows = numRows;
+        this.stride = getRecordSize(numRows);
+        this.mapped = mapped;
+        buffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @param numRows the number of posts in each longitude line.
+     * @return the number of bytes in a data record.
+     */
+    public static int getRecordSize(int numRows) {
+        return RECORD_HEADER_SIZE + 2 * numRows + RECORD_CHECKSUM_SIZE;
+    }
+
+    /**
+     * Create a store for the data records of a frame file. If the file is a
+     * local file and mapping is wanted, the records are mapped from the file
+     * and read from the system's file cache as they're needed. Otherwise, all
+     * of the records are read into a direct buffer through the BinaryFile.
+     * 
+     * @param binFile the open frame file, used if the records are read.
+     * @param path the path of the frame file, used if the records are mapped.
+     * @param dataStart the offset of the first data record in the file.
+     * @param numColumns the number of longitude lines.
+     * @param numRows the number of posts in each longitude line.
+     * @param map whether the file should be mapped, if it can be.
+     * @return DTEDElevationStore
+     * @throws IOException if the file can't be read.
+     * @throws FormatException if the file is too short for the records.
+     */
+    public static DTEDElevationStore create(BinaryFile binFile, String path, long dataStart, int numColumns, int numRows,
+                                            boolean map)
+            throws IOException, FormatException {
+        long length = (long) numColumns * getRecordSize(numRows);
+        if (numColumns <= 0 || numRows <= 0 || length > Integer.MAX_VALUE) {
+            throw new FormatException("DTEDElevationStore: bad post counts " + numColumns + "x" + numRows);
+        }
+
+        File file = (path == null) ? null : new File(path);
+        if (map && file != null && file.isFile()) {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() < dataStart + length) {
+                    throw new FormatException("DTEDElevationStore: " + path + " is too short for its posts");
+                }
+                // The mapping stays valid after the file is closed.
+                return new DTEDElevationStore(channel.map(FileChannel.MapMode.READ_ONLY, dataStart, length), numColumns,
+                                              numRows, true);
+            } finally {
+                raf.close();
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) length);
+        int recordSize = getRecordSize(numRows);
+        binFile.seek(dataStart);
+        for (int x = 0; x < numColumns; x++) {
+            buffer.put(binFile.readBytes(recordSize, false));
+        }
+        buffer.clear();
+        return new DTEDElevationStore(buffer, numColumns, numRows, false);
+    }
+
+    /**
+     * @return the number of longitude lines.
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return the number of posts in each longitude line.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return true if the posts are mapped from the frame file.
+     */
+    public boolean isMapped() {
+        return mapped;
+    }
+
+    /**
+     * Get a post. The 0, 0 post is the lower left corner of the frame.
+     * 
+     * @param x the longitude line index.
+     * @param y the post index in the longitude line.
+     * @return elevation in meters.
+     */
+    public short get(int x, int y) {
+        short value = buffer.getShort(x * stride + RECORD_HEADER_SIZE + 2 * y);
+        // Signed magnitude, the high bit is the sign.
+        return value < 0 ? (short) -(value & 0x7fff) : value;
+    }
+
+    /**
+     * Copy posts from a longitude line into an array.
+     * 
+     * @param x the longitude line index.
+     * @param y the index of the first post.
+     * @param dest the array to copy into.
+     * @param offset the index of dest to put the first post.
+     * @param length the number of posts to copy.
+     */
+    public void getColumn(int x, int y, short[] dest, int offset, int length) {
+        int index = x * stride + RECORD_HEADER_SIZE + 2 * y;
+        for (int i = 0; i < length; i++, index += 2) {
+            short value = buffer.getShort(index);
+            dest[offset + i] = value < 0 ? (short) -(value & 0x7fff) : value;
+        }
+    }
+
+    /**
+     * Get a view of part of the store. The indexes are inclusive, and have to
+     * be within the store.
+     * 
+     * @param startx the left longitude line index.
+     * @param starty the lower post index.
+     * @param endx the right longitude line index.
+     * @param endy the upper post index.
+     * @return View with its 0, 0 post at startx, starty.
+     */
+    public View getView(int startx, int starty, int endx, int endy) {
+        return new View(this, startx, starty, endx - startx + 1, endy - starty + 1);
+    }
+
+    /**
+     * A read-only window on part of a DTEDElevationStore. The posts are read
+     * from the store, nothing is copied when the view is made.
+     */
+    public static class View {
+        protected final DTEDElevationStore store;
+        protected final int x0;
+        protected final int y0;
+        protected final int numColumns;
+        protected final int numRows;
+
+        public View(DTEDElevationStore store, int x0, int y0, int numColumns, int numRows) {
+            this.store = store;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.numColumns = numColumns;
+            this.numRows = numRows;
+        }
+
+        public int getNumColumns() {
+            return numColumns;
+        }
+
+        public int getNumRows() {
+            return numRows;
+        }
+
+        /**
+         * Get a post, 0, 0 is the lower left post of the view.
+         */
+        public short get(int x, int y) {
+            return store.get(x0 + x, y0 + y);
+        }
+
+        /**
+         * Copy a longitude line of the view into an array.
+         * 
+         * @param x the longitude line index in the view.
+         * @param dest the array to copy into.
+         * @param offset the index of dest to put the lowest post.
+         */
+        public void getColumn(int x, short[] dest, int offset) {
+            store.getColumn(x0 + x, y0, dest, offset, numRows);
+        }
+
+        /**
+         * @return the posts of the view in a new array, indexed [x][y].
+         */
+        public short[][] toArray() {
+            short[][] matrix = new short[numColumns][numRows];
+            for (int x = 0; x < numColumns; x++) {
+                getColumn(x, matrix[x], 0);
+            }
+            return matrix;
+        }
+    }
+}
@@ -25,8 +25,8 @@ package com.bbn.openmap.dataAccess.dted;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 
-import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
 import com.bbn.openmap.io.Closable;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -59,11 +59,11 @@ public class DTEDFrame
     /** The path to the frame, including the frame name. */
     protected String path;
     /**
-     * The array of elevation posts. Note: the 0 index of the array in both
-     * directions is in the lower left corner of the matrix. As you increase
-     * indexes in both dimensions, you go up-right.
+     * The elevation posts, held outside of the java heap. Note: the 0 index in
+     * both directions is in the lower left corner of the matrix. As you
+     * increase indexes in both dimensions, you go up-right.
      */
-    protected short[][] elevations; // elevation posts
+    protected DTEDElevationStore posts;
 
     /** Data set identification section of the file. */
     public DTEDFrameDSI dsi;
@@ -91,28 +91,26 @@ public class DTEDFrame
      * Constructor with colortable and presentation information.
      * 
      * @param filePath complete path to the DTED frame.
-     * @param readWholeFile If true, all of the elevation data will be read at
-     *        load time. If false, elevation post data will be read in per
-     *        longitude column depending on the need. False is recommended for
-     *        DTEd level 1 and 2.
+     * @param readWholeFile If true, all of the elevation data will be read
+     *        into memory at load time. If false, the elevation posts are
+     *        mapped from the file and paged in as they are needed, which is
+     *        recommended for DTED level 1 and 2. Posts from files that aren't
+     *        local files are always read at load time.
      */
     public DTEDFrame(String filePath, boolean readWholeFile) {
+        path = filePath;
         try {
-            binFile = new BinaryBufferedFile(filePath);
+            binFile = new BinaryMappedFile(filePath);
 
             read(binFile, readWholeFile);
-            if (readWholeFile)
-                close(true);
-            else
-                BinaryFile.addClosable(this);
+            // The posts are held by the store, the file isn't needed.
+            close(true);
 
         } catch (FileNotFoundException e) {
             Debug.error("DTEDFrame: file " + filePath + " not found");
         } catch (IOException e) {
             Debug.error("DTEDFrame: File IO Error!\n" + e.toString());
         }
-
-        path = filePath;
     }
 
     /**
@@ -120,19 +118,21 @@ public class DTEDFrame
      * 
      * @param binFile the binary buffered file opened on the DTED frame file
      * @param readWholeFile flag controlling whether all the row data is read at
-     *        this time. Otherwise, the rows are read as needed.
+     *        this time. Otherwise, the rows are mapped from the file.
      */
     protected void read(BinaryFile binFile, boolean readWholeFile) {
         binFile.byteOrder(true); // boolean msbfirst
         dsi = new DTEDFrameDSI(binFile);
         uhl = new DTEDFrameUHL(binFile);
         acc = new DTEDFrameACC(binFile);
-        // Allocate just the columns now - we'll do the rows as
-        // needed...
-        elevations = new short[uhl.num_lon_lines][];
-        if (readWholeFile)
-            readDataRecords();
-        frame_is_valid = true;
+        try {
+            posts = DTEDElevationStore.create(binFile, path, UHL_SIZE + DSI_SIZE + ACC_SIZE, uhl.num_lon_lines, uhl.num_lat_points, !readWholeFile);
+            frame_is_valid = true;
+        } catch (IOException e) {
+            Debug.error("DTEDFrame: Error reading elevation posts of " + path + ": " + e.getMessage());
+        } catch (FormatException f) {
+            Debug.error("DTEDFrame: File IO Format error reading elevation posts of " + path + ": " + f.getMessage());
+        }
     }
 
     /**
@@ -163,24 +163,6 @@ public class DTEDFrame
         }
     }
 
-    /**
-     * If the BinaryBufferedFile was closed, this method attempts to reopen it.
-     * 
-     * @return true if the opening was successful.
-     */
-    protected boolean reopen() {
-        try {
-            binFile = new BinaryBufferedFile(path);
-            return true;
-        } catch (FileNotFoundException e) {
-            Debug.error("DTEDFrame reopen(): file " + path + " not found");
-            return false;
-        } catch (IOException e) {
-            Debug.error("DTEDFrame close(): File IO Error!\n" + e.toString());
-            return false;
-        }
-    }
-
     // ////////////////
     // These functions can be called from the outside,
     // as queries about the data
@@ -203,10 +185,7 @@ public class DTEDFrame
                 int lat_index = Math.round((lat - dsi.sw_lat) * 36000 / uhl.lat_post_interval);
                 int lon_index = Math.round((lon - dsi.sw_lon) * 36000 / uhl.lon_post_interval);
 
-                if (elevations[lon_index] == null)
-                    readDataRecord(lon_index);
-
-                return (int) elevations[lon_index][lat_index];
+                return (int) posts.get(lon_index, lat_index);
             }
         }
         return -32767; // Considered a null elevation value
@@ -234,11 +213,6 @@ public class DTEDFrame
                 /* int lflat_index = (int) Math.floor(lat_index); */
                 int lclat_index = (int) Math.ceil(lat_index);
 
-                if (elevations[lflon_index] == null)
-                    readDataRecord(lflon_index);
-                if (elevations[lclon_index] == null)
-                    readDataRecord(lclon_index);
-
                 // ////////////////////////////////////////////////////
                 // Print out grid of 20x20 elevations with
                 // the "asked for" point being in the middle
@@ -248,17 +222,16 @@ public class DTEDFrame
                 // System.out.println();
                 // for(int k = lflon_index - 5; k < lclon_index + 5;
                 // k++) {
-                // if (elevations[k]==null) readDataRecord(k);
-                // System.out.print(elevations[k][l] + " ");
+                // System.out.print(posts.get(k, l) + " ");
                 // }
                 // }
                 // System.out.println();System.out.println();
                 // ////////////////////////////////////////////////////
 
-                int ul = elevations[lflon_index][lclat_index];
-                int ur = elevations[lclon_index][lclat_index];
-                int ll = elevations[lflon_index][lclat_index];
-                int lr = elevations[lclon_index][lclat_index];
+                int ul = posts.get(lflon_index, lclat_index);
+                int ur = posts.get(lclon_index, lclat_index);
+                int ll = posts.get(lflon_index, lclat_index);
+                int lr = posts.get(lclon_index, lclat_index);
 
                 float answer = resolveFourPoints(ul, ur, lr, ll, lat_index, lon_index);
                 return Math.round(answer);
@@ -360,6 +333,36 @@ public class DTEDFrame
      *         on the DTED level.
      */
     public short[][] getElevations(int startx, int starty, int endx, int endy) {
+        return getElevationView(startx, starty, endx, endy).toArray();
+    }
+
+    /**
+     * Return a view of the posts between lat lons. The posts aren't copied,
+     * they're read from the frame's elevation store when asked for.
+     * 
+     * @param ullat upper latitude in decimal degrees.
+     * @param ullon left longitude in decimal degrees.
+     * @param lrlat lower latitude in decimal degrees.
+     * @param lrlon right longitude in decimal degrees.
+     * @return view of the elevations in meters, with 0, 0 at the lower left.
+     */
+    public DTEDElevationStore.View getElevationView(float ullat, float ullon, float lrlat, float lrlon) {
+        int[] indexes = getIndexesFromLatLons(ullat, ullon, lrlat, lrlon);
+        return getElevationView(indexes[0], indexes[1], indexes[2], indexes[3]);
+    }
+
+    /**
+     * Return a view of the posts between indexes, without copying them.
+     * Assumes that the indexes are checked to not exceed their bounds as
+     * defined in the file. getIndexesFromLatLons() checks this.
+     * 
+     * @param startx starting index (left) of the greater matrix.
+     * @param starty starting index (lower) of the greater matrix.
+     * @param endx ending index (right) of the greater matrix.
+     * @param endy ending index (top) of the greater matrix.
+     * @return view of the elevations in meters, with 0, 0 at the lower left.
+     */
+    public DTEDElevationStore.View getElevationView(int startx, int starty, int endx, int endy) {
         int upper = endy;
         int lower = starty;
         int right = endx;
@@ -378,15 +381,15 @@ public class DTEDFrame
             lower = endy;
         }
 
-        short[][] matrix = new short[right - left + 1][upper - lower + 1];
-        int matrixColumn = 0;
-        for (int x = left; x <= right; x++) {
-            if (elevations[x] == null)
-                readDataRecord(x);
-            System.arraycopy(elevations[x], lower, matrix[matrixColumn], 0, (upper - lower + 1));
-            matrixColumn++;
-        }
-        return matrix;
+        return posts.getView(left, lower, right, upper);
+    }
+
+    /**
+     * @return the store holding the elevation posts of the frame, null if the
+     *         frame isn't valid.
+     */
+    public DTEDElevationStore getElevationStore() {
+        return posts;
     }
 
     // ////////////////
@@ -410,63 +413,6 @@ public class DTEDFrame
         return result;
     }
 
-    /**
-     * Reads one longitude line of posts. Assumes that the binFile is valid.
-     * 
-     * @return true if the column of data was successfully read
-     */
-    protected boolean readDataRecord(int lon_index) {
-        try {
-            if (binFile == null) {
-                if (!reopen()) {
-                    return false;
-                }
-            }
-
-            // Set to beginning of file section, then skip to index
-            // data
-            // 12 = 1+3+2+2+4 = counts and checksum
-            // 2*uhl....size of elevation post space
-            binFile.seek(UHL_SIZE + DSI_SIZE + ACC_SIZE + (lon_index * (12 + (2 * uhl.num_lat_points))));
-            binFile.read(); // sent byte
-            binFile.skipBytes(3); // 3 byte data_block_count
-            binFile.readShort(); // longitude count
-            binFile.readShort(); // latitude count
-            // Allocate the rows of the row
-            elevations[lon_index] = new short[uhl.num_lat_points];
-            for (int j = 0; j < uhl.num_lat_points; j++) {
-                elevations[lon_index][j] = binFile.readShortData();
-            }
-
-        } catch (IOException e3) {
-            Debug.error("DTEDFrame.RDR: Error reading file.");
-            e3.printStackTrace();
-            elevations[lon_index] = null;
-            return false;
-        } catch (FormatException f) {
-            Debug.error("DTEDFrame.RDR: File IO Format error!");
-            elevations[lon_index] = null;
-            return false;
-        }
-        return true;
-    }
-
-    /**
-     * Read all the elevation posts, at one time. Assumes that the file is open
-     * and ready.
-     * 
-     * @return true if the elevation columns were read.
-     */
-    protected boolean readDataRecords() {
-        boolean ret = true;
-        for (int lon_index = 0; lon_index < uhl.num_lon_lines; lon_index++) {
-            if (readDataRecord(lon_index) == false) {
-                ret = false;
-            }
-        }
-        return ret;
-    }
-
     public OMGrid getOMGrid() {
         // vResolution decimal degrees per row
         double vResolution = (double) dsi.lat_post_interval / 36000.0; // Tenths
@@ -491,7 +437,7 @@ public class DTEDFrame
 
         OMDTEDGrid omg =
                 new OMDTEDGrid(dsi.lat_origin, dsi.lon_origin, dsi.ne_lat, dsi.ne_lon, (float) vResolution, (float) hResolution,
-                               new OMGridData.Short(elevations));
+                               new OMGridData.Short(getElevations(0, 0, uhl.num_lon_lines - 1, uhl.num_lat_points - 1)));
         omg.setUnits(Length.METER);
         return omg;
     }
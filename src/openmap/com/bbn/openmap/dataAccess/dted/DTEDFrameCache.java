@@ -238,48 +238,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      * @param max_size the new size of the cache.
      */
     public void resizeCache(int max_size) {
-
-        CacheObject[] oldObjs = objs;
-
-        if (max_size != objs.length && max_size > 0) {
-            objs = new CacheObject[max_size];
-        }
-
-        for (int i = 0; i < objs.length; i++) {
-
-            if (i >= oldObjs.length) {
-                break;
-            }
-
-            DTEDCacheObject dco = (DTEDCacheObject) oldObjs[i];
-
-            if (dco == null) {
-                // We load from the front to the back 0 -> length - 1;
-                // Once you hit a null, the rest should be null, too.
-                objs[i] = null;
-                continue;
-            }
-
-            DTEDFrame frame = (DTEDFrame) (dco.obj);
-            dco.cachedTime = 0;
-
-            if (frame == null) {
-                Debug.output("DTEDFrameCache: No Frame for key!");
-                continue;
-            }
-
-            if (oldObjs == objs) {
-                continue;
-            }
-
-            if (i < oldObjs.length) {
-                objs[i] = oldObjs[i];
-            } else {
-                objs[i] = null;
-            }
-        }
-
-        oldObjs = null;
+        super.resizeCache(max_size);
     }
 
     public int getHighestResLevel() {
@@ -448,7 +407,8 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
         int[] xLengths = new int[xSize];
         int[] yLengths = new int[ySize];
 
-        short[][][][] es = new short[xSize][ySize][][];
+        // Views of the posts in each frame, copied once into the result.
+        DTEDElevationStore.View[][] es = new DTEDElevationStore.View[xSize][ySize];
         int x, y;
         DTEDFrame frame = null;
         boolean needCalc = false;
@@ -485,12 +445,12 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
                     // upperlat + ", " +
                     // lowerlon + ", " +
                     // lowerlat+ ", " + upperlon);
-                    es[x][y] = thisFrame.getElevations(upperlat,
+                    es[x][y] = thisFrame.getElevationView(upperlat,
                             lowerlon,
                             lowerlat,
                             upperlon);
-                    xLengths[x] = es[x][y].length;
-                    yLengths[y] = es[x][y][0].length;
+                    xLengths[x] = es[x][y].getNumColumns();
+                    yLengths[y] = es[x][y].getNumRows();
                     frame = thisFrame;
                 } else {
                     if (refFrame != null) {
@@ -554,12 +514,8 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
                 // Make sure the frame exists and is found...
                 if (es[x][y] != null) {
                     // Through each lon row in each little matrix
-                    for (int i = 0; i < es[x][y].length; i++) {
-                        System.arraycopy(es[x][y][i],
-                                0,
-                                matrix[i + xspacer],
-                                yspacer,
-                                es[x][y][i].length);
+                    for (int i = 0; i < es[x][y].getNumColumns(); i++) {
+                        es[x][y].getColumn(i, matrix[i + xspacer], yspacer);
                     }
                     // On the last one lon column, increase the spacer
                     // for the
@@ -501,7 +501,7 @@ public class DTEDFrameCacheHandler extends CacheHandler implements DTEDConstants
             return null;
         }
 
-        replaceLeastUsed(ret);
+        ret = replaceLeastUsed(ret);
         if (Debug.debugging("dted")) {
             Debug.output("DTEDFrameCacheHandler.get():  loading new frame into cache (" + lat + ":"
                     + lon + ":" + level + ")");
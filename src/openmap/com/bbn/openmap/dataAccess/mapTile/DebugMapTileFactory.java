@@ -47,7 +47,7 @@ public class DebugMapTileFactory extends StandardMapTileFactory {
                         + x + "|" + y, OMText.JUSTIFY_CENTER));
                 raster.setSelected(true);
 
-                return new CacheObject(imagePath, raster);
+                return new CacheObject(imagePath, raster, getTileWeight(bi));
             } catch (InterruptedException e) {
                 // TODO Auto-generated catch block
                 e.printStackTrace();
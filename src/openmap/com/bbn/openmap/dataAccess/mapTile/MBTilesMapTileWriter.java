@@ -0,0 +1,342 @@
+/* 
+ * <copyright>
+ *  Copyright 2014 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.Environment;
+import com.bbn.openmap.I18n;
+import com.bbn.openmap.PropertyConsumer;
+import com.bbn.openmap.image.ImageFormatter;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * The MBTilesMapTileWriter is a MapTileWriter that stores tiles in a single
+ * mbtiles file, the sqlite database layout read by the TileMillMapTileFactory.
+ * Tiles are written in batches, one transaction per batch, and a batch is
+ * committed early when the MapTileMaker flushes the writer. Tile images are
+ * stored once per unique content, keyed by a hash of the image bytes, so the
+ * many identical tiles covering empty areas (ocean, for instance) only take up
+ * the space of one image. Requires the sqlitejdbc package.
+ * <p>
+ * 
+ * The properties for this component, scoped by the MapTileMaker prefix, are:
+ * <p>
+ * 
+ * <pre>
+ * tileWriter=com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter
+ * # path to the mbtiles file to create or add to
+ * mbtilesFile=path to file
+ * # number of tiles written per transaction, default 500
+ * batchSize=500
+ * # optional, name stored in the mbtiles metadata
+ * mbtilesName=name of tile set
+ * </pre>
+ * 
+ * @author dietrick
+ */
+public class MBTilesMapTileWriter implements MapTileWriter, PropertyConsumer {
+
+    public final static String MBTILES_FILE_PROPERTY = "mbtilesFile";
+    public final static String BATCH_SIZE_PROPERTY = "batchSize";
+    public final static String NAME_PROPERTY = "mbtilesName";
+    public final static String JDBC_CLASS = "org.sqlite.JDBC";
+
+    protected static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter");
+
+    protected String prefix;
+    protected String mbtilesFile;
+    protected String name = "OpenMap Tiles";
+    protected int batchSize = 500;
+
+    protected Connection conn;
+    protected PreparedStatement mapInsert;
+    protected PreparedStatement imageInsert;
+    protected int numPending = 0;
+    protected long numTiles = 0;
+    /**
+     * The tile ids of the images already stored.
+     */
+    protected Set<String> imageIds = new HashSet<String>();
+    /**
+     * The tile ids of the images in the pending batch, added to imageIds when
+     * the batch is committed.
+     */
+    protected Set<String> pendingImageIds = new HashSet<String>();
+
+    public MBTilesMapTileWriter() {
+    }
+
+    public MBTilesMapTileWriter(String mbtilesFile) {
+        this.mbtilesFile = mbtilesFile;
+    }
+
+    public synchronized void open(MapTileMaker mapTileMaker) throws IOException {
+        if (mbtilesFile == null) {
+            throw new IOException("MBTilesMapTileWriter needs a file path to write to");
+        }
+
+        try {
+            Class.forName(JDBC_CLASS);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("can't locate sqlite JDBC components");
+        }
+
+        try {
+            conn = DriverManager.getConnection(getJdbcPath());
+            Statement stat = conn.createStatement();
+            stat.executeUpdate("create table if not exists map (zoom_level integer, tile_column integer, tile_row integer, tile_id text);");
+            stat.executeUpdate("create unique index if not exists map_index on map (zoom_level, tile_column, tile_row);");
+            stat.executeUpdate("create table if not exists images (tile_data blob, tile_id text);");
+            stat.executeUpdate("create unique index if not exists images_id on images (tile_id);");
+            stat.executeUpdate("create table if not exists metadata (name text, value text);");
+            stat.executeUpdate("create unique index if not exists name on metadata (name);");
+            stat.executeUpdate("create view if not exists tiles as select map.zoom_level as zoom_level, map.tile_column as tile_column, map.tile_row as tile_row, images.tile_data as tile_data from map join images on images.tile_id = map.tile_id;");
+            stat.close();
+
+            conn.setAutoCommit(false);
+
+            PreparedStatement metadata = conn.prepareStatement("insert or replace into metadata (name, value) values (?, ?);");
+            setMetadata(metadata, "name", name);
+            setMetadata(metadata, "type", "baselayer");
+            setMetadata(metadata, "version", "1.0");
+            setMetadata(metadata, "description", name);
+            ImageFormatter formatter = mapTileMaker.getFormatter();
+            if (formatter != null) {
+                setMetadata(metadata, "format", formatter.getFormatLabel().toLowerCase());
+            }
+            metadata.close();
+
+            mapInsert = conn.prepareStatement("insert or replace into map (zoom_level, tile_column, tile_row, tile_id) values (?, ?, ?, ?);");
+            imageInsert = conn.prepareStatement("insert or ignore into images (tile_data, tile_id) values (?, ?);");
+            conn.commit();
+        } catch (SQLException sqle) {
+            throw new IOException("problem opening " + mbtilesFile + ": " + sqle.getMessage());
+        }
+    }
+
+    protected void setMetadata(PreparedStatement metadata, String key, String value)
+            throws SQLException {
+        metadata.setString(1, key);
+        metadata.setString(2, value);
+        metadata.executeUpdate();
+    }
+
+    public synchronized String writeTile(byte[] imageBytes, int x, int y, int zoomLevel)
+            throws IOException {
+        if (conn == null) {
+            throw new IOException("MBTilesMapTileWriter not open");
+        }
+
+        String tileId = getTileId(imageBytes);
+        // mbtiles rows are numbered from the bottom, TMS style.
+        int row = (1 << zoomLevel) - y - 1;
+
+        try {
+            if (!imageIds.contains(tileId) && !pendingImageIds.contains(tileId)) {
+                imageInsert.setBytes(1, imageBytes);
+                imageInsert.setString(2, tileId);
+                imageInsert.addBatch();
+                pendingImageIds.add(tileId);
+            }
+
+            mapInsert.setInt(1, zoomLevel);
+            mapInsert.setInt(2, x);
+            mapInsert.setInt(3, row);
+            mapInsert.setString(4, tileId);
+            mapInsert.addBatch();
+
+            numTiles++;
+            if (++numPending >= batchSize) {
+                commitBatch();
+            }
+        } catch (SQLException sqle) {
+            throw new IOException("problem writing tile " + zoomLevel + "/" + x + "/" + y + ": "
+                    + sqle.getMessage());
+        }
+
+        return mbtilesFile + ":" + zoomLevel + "/" + x + "/" + row;
+    }
+
+    public synchronized void flush() throws IOException {
+        if (conn == null) {
+            return;
+        }
+        try {
+            commitBatch();
+        } catch (SQLException sqle) {
+            throw new IOException("problem writing tiles: " + sqle.getMessage());
+        }
+    }
+
+    /**
+     * Write the pending batch of tiles to the database. The image ids of the
+     * batch are only recorded as stored once the batch is committed. If it
+     * can't be, the batch is rolled back and dropped, so the images will be
+     * written again if their tiles are.
+     * 
+     * @throws SQLException
+     */
+    protected synchronized void commitBatch() throws SQLException {
+        if (numPending > 0) {
+            try {
+                imageInsert.executeBatch();
+                mapInsert.executeBatch();
+                conn.commit();
+                imageIds.addAll(pendingImageIds);
+            } catch (SQLException sqle) {
+                numTiles -= numPending;
+                rollbackBatch();
+                throw sqle;
+            } finally {
+                pendingImageIds.clear();
+                numPending = 0;
+            }
+        }
+    }
+
+    /**
+     * Roll back the transaction for a batch that couldn't be committed, and
+     * clear the statement batches.
+     */
+    protected void rollbackBatch() {
+        try {
+            conn.rollback();
+            imageInsert.clearBatch();
+            mapInsert.clearBatch();
+        } catch (SQLException sqle) {
+            logger.warning("problem rolling back tiles for " + mbtilesFile + ": "
+                    + sqle.getMessage());
+        }
+    }
+
+    /**
+     * Create the tile id for the image bytes, a hash of the contents.
+     * 
+     * @param imageBytes the formatted tile image.
+     * @return hex String of the SHA-1 hash of the bytes.
+     */
+    protected String getTileId(byte[] imageBytes) throws IOException {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(imageBytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException("can't create tile id: " + nsae.getMessage());
+        }
+    }
+
+    public synchronized StandardMapTileFactory getTileFactory() throws IOException {
+        flush();
+        return new TileMillMapTileFactory(getJdbcPath());
+    }
+
+    public synchronized void close() throws IOException {
+        if (conn != null) {
+            try {
+                commitBatch();
+                mapInsert.close();
+                imageInsert.close();
+                conn.close();
+                logger.info("wrote " + numTiles + " tiles, " + imageIds.size()
+                        + " unique images, to " + mbtilesFile);
+            } catch (SQLException sqle) {
+                throw new IOException("problem closing " + mbtilesFile + ": " + sqle.getMessage());
+            } finally {
+                conn = null;
+                imageIds.clear();
+                pendingImageIds.clear();
+                numTiles = 0;
+            }
+        }
+    }
+
+    protected String getJdbcPath() {
+        return "jdbc:sqlite:" + mbtilesFile;
+    }
+
+    public String getMbtilesFile() {
+        return mbtilesFile;
+    }
+
+    public void setMbtilesFile(String mbtilesFile) {
+        this.mbtilesFile = mbtilesFile;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public void setProperties(Properties setList) {
+        setProperties(null, setList);
+    }
+
+    public void setProperties(String prefix, Properties setList) {
+        setPropertyPrefix(prefix);
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+
+        mbtilesFile = setList.getProperty(prefix + MBTILES_FILE_PROPERTY, mbtilesFile);
+        name = setList.getProperty(prefix + NAME_PROPERTY, name);
+        setBatchSize(PropUtils.intFromProperties(setList, prefix + BATCH_SIZE_PROPERTY, batchSize));
+    }
+
+    public Properties getProperties(Properties getList) {
+        if (getList == null) {
+            getList = new Properties();
+        }
+        String prefix = PropUtils.getScopedPropertyPrefix(this);
+        getList.put(prefix + MBTILES_FILE_PROPERTY, PropUtils.unnull(mbtilesFile));
+        getList.put(prefix + NAME_PROPERTY, PropUtils.unnull(name));
+        getList.put(prefix + BATCH_SIZE_PROPERTY, Integer.toString(batchSize));
+        return getList;
+    }
+
+    public Properties getPropertyInfo(Properties list) {
+        if (list == null) {
+            list = new Properties();
+        }
+        I18n i18n = Environment.getI18n();
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter.class, MBTILES_FILE_PROPERTY, "MBTiles File", "Path to the mbtiles file to write tiles into", "com.bbn.openmap.util.propertyEditor.FilePropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter.class, NAME_PROPERTY, "Name", "Name of the tile set, stored in the mbtiles metadata", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter.class, BATCH_SIZE_PROPERTY, "Batch Size", "Number of tiles written in each database transaction", null);
+        return list;
+    }
+
+    public void setPropertyPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public String getPropertyPrefix() {
+        return prefix;
+    }
+}
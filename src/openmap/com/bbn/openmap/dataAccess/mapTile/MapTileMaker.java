@@ -31,24 +31,40 @@ import java.awt.Paint;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 
 import com.bbn.openmap.Environment;
 import com.bbn.openmap.Layer;
+import com.bbn.openmap.PropertyConsumer;
 import com.bbn.openmap.image.ImageFormatter;
 import com.bbn.openmap.image.ImageServer;
 import com.bbn.openmap.image.PNG32ImageFormatter;
@@ -56,6 +72,7 @@ import com.bbn.openmap.image.SunJPEGFormatter;
 import com.bbn.openmap.layer.imageTile.MapTileLayer;
 import com.bbn.openmap.layer.shape.ShapeLayer;
 import com.bbn.openmap.omGraphics.OMColor;
+import com.bbn.openmap.plugin.PlugInLayer;
 import com.bbn.openmap.proj.Mercator;
 import com.bbn.openmap.proj.Proj;
 import com.bbn.openmap.proj.Projection;
@@ -104,7 +121,33 @@ import com.bbn.openmap.util.PropUtils;
  * zoom1.range=0
  * 
  * # and repeat for every zoomLevel defined
+ * 
+ * # Optional, the number of threads used to create tiles (default is 1). Each
+ * # thread uses its own copies of the layers, created from these properties.
+ * threads=8
+ * # Optional, a file recording the tile columns that have been completed. If
+ * # the file exists when tile creation starts, those columns are skipped.
+ * checkpointFile=Path to checkpoint file
+ * # Optional, a MapTileWriter that stores the tiles instead of writing a file
+ * # for each tile under the rootDir.  Its properties are scoped by this prefix.
+ * tileWriter=com.bbn.openmap.dataAccess.mapTile.MBTilesMapTileWriter
+ * mbtilesFile=Path to mbtiles file
+ * # Optional, render blocks of metaTileSize x metaTileSize tiles as one image
+ * # and slice it into tiles (default is 1, each tile rendered by itself).
+ * metaTileSize=4
+ * # Optional, the number of sliced metatiles kept for empty tile requests
+ * # (default is 4).
+ * metaTileCacheSize=4
  * </pre>
+ * <p>
+ * 
+ * With a metaTileSize greater than 1, the layers prepare their graphics once
+ * for a whole block of tiles instead of once for every tile, and labels and
+ * other graphics crossing tile edges inside a block are drawn whole. The
+ * blocks are aligned on multiples of the metaTileSize in tile coordinates, so
+ * tiles are the same no matter which tile of a block is asked for first. When
+ * the MapTileMaker is used as an EmptyTileHandler, the other tiles of a
+ * rendered block are kept for the requests for them that usually follow.
  * 
  * @author dietrick
  */
@@ -112,11 +155,51 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
 
     public final static String ROOT_DIRECTORY_PROPERTY = "rootDir";
     public final static String ZOOM_LEVELS_PROPERTY = "zoomLevels";
+    public final static String THREADS_PROPERTY = "threads";
+    public final static String CHECKPOINT_FILE_PROPERTY = "checkpointFile";
+    public final static String TILE_WRITER_PROPERTY = "tileWriter";
+    public final static String META_TILE_SIZE_PROPERTY = "metaTileSize";
+    public final static String META_TILE_CACHE_SIZE_PROPERTY = "metaTileCacheSize";
 
     protected String rootDir;
     protected List<ZoomLevelMaker> zoomLevels;
     protected MapTileCoordinateTransform mtcTransform = new OSMMapTileCoordinateTransform();
     protected int TILE_SIZE = mtcTransform.getTileSize();
+    /**
+     * The number of threads used to create tiles.
+     */
+    protected int numThreads = 1;
+    /**
+     * The path to the checkpoint file, may be null.
+     */
+    protected String checkpointFile;
+    /**
+     * If set, stores the tiles instead of writing them into separate files
+     * under the root directory.
+     */
+    protected MapTileWriter tileWriter;
+    /**
+     * The properties used to configure this MapTileMaker, used to create the
+     * copies of the layers needed by each tile creating thread.
+     */
+    protected Properties configProperties;
+    /**
+     * The number of tiles across and down rendered together as a metatile, 1
+     * to render each tile by itself.
+     */
+    protected int metaTileSize = 1;
+    /**
+     * The number of sliced metatiles kept for getImageForEmptyTile.
+     */
+    protected int metaTileCacheSize = 4;
+    /**
+     * Sliced metatiles for getImageForEmptyTile, most recently used last.
+     */
+    protected LinkedHashMap<String, BufferedImage[][]> metaTileCache = new LinkedHashMap<String, BufferedImage[][]>(8, .75f, true);
+    /**
+     * The number of tiles created by the current makeTiles call.
+     */
+    protected final AtomicLong tileCount = new AtomicLong();
 
     /**
      * Empty constructor that expects to be configured later.
@@ -170,7 +253,20 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
         super.setProperties(prefix, props);
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
+        configProperties = props;
         rootDir = props.getProperty(prefix + ROOT_DIRECTORY_PROPERTY, rootDir);
+        numThreads = PropUtils.intFromProperties(props, prefix + THREADS_PROPERTY, numThreads);
+        checkpointFile = props.getProperty(prefix + CHECKPOINT_FILE_PROPERTY, checkpointFile);
+        setMetaTileSize(PropUtils.intFromProperties(props, prefix + META_TILE_SIZE_PROPERTY, metaTileSize));
+        setMetaTileCacheSize(PropUtils.intFromProperties(props, prefix + META_TILE_CACHE_SIZE_PROPERTY, metaTileCacheSize));
+
+        String tileWriterString = props.getProperty(prefix + TILE_WRITER_PROPERTY);
+        if (tileWriterString != null) {
+            Object obj = ComponentFactory.create(tileWriterString, getPropertyPrefix(), props);
+            if (obj instanceof MapTileWriter) {
+                setTileWriter((MapTileWriter) obj);
+            }
+        }
         List<ZoomLevelMaker> zoomLevels = (List<ZoomLevelMaker>) PropUtils.objectsFromProperties(props, prefix
                 + ZOOM_LEVELS_PROPERTY, ComponentFactory.ClassNameProperty);
         getZoomLevels().addAll(zoomLevels);
@@ -180,6 +276,16 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
         props = super.getProperties(props);
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + ROOT_DIRECTORY_PROPERTY, PropUtils.unnull(rootDir));
+        props.put(prefix + THREADS_PROPERTY, Integer.toString(numThreads));
+        props.put(prefix + CHECKPOINT_FILE_PROPERTY, PropUtils.unnull(checkpointFile));
+        props.put(prefix + META_TILE_SIZE_PROPERTY, Integer.toString(metaTileSize));
+        props.put(prefix + META_TILE_CACHE_SIZE_PROPERTY, Integer.toString(metaTileCacheSize));
+        if (tileWriter != null) {
+            props.put(prefix + TILE_WRITER_PROPERTY, tileWriter.getClass().getName());
+            if (tileWriter instanceof PropertyConsumer) {
+                ((PropertyConsumer) tileWriter).getProperties(props);
+            }
+        }
 
         StringBuffer buf = new StringBuffer();
         for (ZoomLevelMaker zfi : getZoomLevels()) {
@@ -197,6 +303,10 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
     public Properties getPropertyInfo(Properties props) {
         props = super.getPropertyInfo(props);
         PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, ROOT_DIRECTORY_PROPERTY, "Tile Directory", "Root directory for holding tile files.", "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, THREADS_PROPERTY, "Threads", "Number of threads creating tiles.", null);
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, CHECKPOINT_FILE_PROPERTY, "Checkpoint File", "File recording completed tile columns, used to resume tile creation.", "com.bbn.openmap.util.propertyEditor.FilePropertyEditor");
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, META_TILE_SIZE_PROPERTY, "Metatile Size", "Number of tiles across and down rendered as one image and sliced into tiles.", null);
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, META_TILE_CACHE_SIZE_PROPERTY, "Metatile Cache Size", "Number of sliced metatiles kept for empty tile requests.", null);
         return props;
     }
 
@@ -260,8 +370,27 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
             throws IOException {
 
         byte[] imageBytes = zoomInfo.makeTile(uvx, uvy, this, proj);
+        return writeTile(imageBytes, zoomInfo, (int) uvx, (int) uvy);
+    }
 
-        String filePath = zoomInfo.formatImageFilePath(getRootDir(), (int) uvx, (int) uvy);
+    /**
+     * Store the tile image bytes. If a MapTileWriter is set, it gets the tile,
+     * otherwise the tile is written to a file under the root directory.
+     * 
+     * @param imageBytes the formatted image bytes.
+     * @param zoomInfo the ZoomLevelInfo for the tile.
+     * @param x the uv x coordinate of the tile.
+     * @param y the uv y coordinate of the tile.
+     * @return the location the tile was written to.
+     * @throws IOException
+     */
+    protected String writeTile(byte[] imageBytes, ZoomLevelInfo zoomInfo, int x, int y)
+            throws IOException {
+        if (tileWriter != null) {
+            return tileWriter.writeTile(imageBytes, x, y, zoomInfo.getZoomLevel());
+        }
+
+        String filePath = zoomInfo.formatImageFilePath(getRootDir(), x, y);
         return writeImageFile(imageBytes, filePath, true);
     }
 
@@ -317,6 +446,10 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
             return null;
         }
 
+        if (metaTileSize > 1) {
+            return getMetaTileImageForEmptyTile(x, y, zoomLevel, layers, mtcTransform);
+        }
+
         LatLonPoint center = tileUVToLatLon(new Point2D.Double(x + .5, y + .5), zoomLevel);
         Mercator m = new Mercator(center, mtcTransform.getScaleForZoom(zoomLevel), TILE_SIZE, TILE_SIZE);
 
@@ -361,10 +494,29 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
      * layers already set on the MapTileMaker, or it can have a List of Layer
      * objects to use. The root output directory has to be set in the
      * MapTileMaker. The image formatter also needs to be set.
+     * <p>
+     * If the number of threads is greater than 1, the tile columns for each
+     * zoom level are divided among the threads. Each thread gets its own
+     * projection and its own copies of the layers, created from the properties
+     * used to configure this MapTileMaker. If the MapTileMaker wasn't
+     * configured with properties, or if a ZoomLevelMaker has a List of Layer
+     * objects, the tiles are created on the calling thread. Tiles scaled for
+     * zoom level ranges are always created on the calling thread, after the
+     * tiles for the zoom level are done.
+     * <p>
+     * If a checkpoint file is set, every completed tile column is recorded in
+     * it, and columns already recorded are skipped.
      */
     public void makeTiles() {
 
-        if (rootDir != null) {
+        if (tileWriter != null) {
+            try {
+                tileWriter.open(this);
+            } catch (IOException ioe) {
+                logger.warning("can't open tile writer: " + ioe.getMessage());
+                return;
+            }
+        } else if (rootDir != null) {
             File rd = new File(rootDir);
             if (!rd.exists()) {
                 rd.mkdir();
@@ -373,126 +525,706 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
 
         Proj proj = new Mercator(new LatLonPoint.Double(), 10000, MapTileCoordinateTransform.TILE_SIZE, MapTileCoordinateTransform.TILE_SIZE);
 
-        List<ZoomLevelMaker> zoomLevels = getZoomLevels();
-        for (ZoomLevelMaker zfi : zoomLevels) {
-            logger.info("writing zoom level " + zfi.getName() + " tiles...");
-            int zoomLevel = zfi.getZoomLevel();
-            for (Rectangle2D bounds : zfi.getUVBounds(mtcTransform, zoomLevel)) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine(" creating tiles " + bounds);
+        Checkpoint checkpoint = null;
+        if (checkpointFile != null && checkpointFile.length() > 0) {
+            try {
+                checkpoint = new Checkpoint(new File(checkpointFile));
+            } catch (IOException ioe) {
+                logger.warning("can't use checkpoint file " + checkpointFile + ": "
+                        + ioe.getMessage());
+            }
+        }
+
+        ExecutorService executor = null;
+        ThreadLocal<MapTileMaker> workers = null;
+        ThreadLocal<Proj> projections = null;
+        if (isParallel()) {
+            logger.info("creating tiles with " + numThreads + " threads");
+            executor = Executors.newFixedThreadPool(numThreads);
+            // Each thread keeps its worker, with its own layers, and its
+            // projection for all of the zoom levels.
+            workers = new ThreadLocal<MapTileMaker>() {
+                protected MapTileMaker initialValue() {
+                    return createWorker();
+                }
+            };
+            projections = new ThreadLocal<Proj>() {
+                protected Proj initialValue() {
+                    return new Mercator(new LatLonPoint.Double(), 10000, MapTileCoordinateTransform.TILE_SIZE, MapTileCoordinateTransform.TILE_SIZE);
                 }
-                int startx = (int) bounds.getX();
-                int starty = (int) bounds.getY();
-                int xofflimit = (int) bounds.getWidth();
-                int yofflimit = (int) bounds.getHeight();
+            };
+        }
 
-                for (int xoff = 0; xoff < xofflimit; xoff++) {
-                    int x = startx + xoff;
+        tileCount.set(0);
+        long startTime = System.currentTimeMillis();
+
+        try {
+            List<ZoomLevelMaker> zoomLevels = getZoomLevels();
+            for (ZoomLevelMaker zfi : zoomLevels) {
+                logger.info("writing zoom level " + zfi.getName() + " tiles...");
+                int zoomLevel = zfi.getZoomLevel();
+
+                if (executor != null) {
+                    makeTilesInParallel(zfi, executor, workers, projections, checkpoint, startTime);
+                } else {
+                    int boundsIndex = 0;
+                    for (Rectangle2D bounds : zfi.getUVBounds(mtcTransform, zoomLevel)) {
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.fine(" creating tiles " + bounds);
+                        }
+                        int startx = (int) bounds.getX();
+                        int starty = (int) bounds.getY();
+                        int xofflimit = (int) bounds.getWidth();
+                        int yofflimit = (int) bounds.getHeight();
 
-                    // Reset every x loop for first time check through y loop
-                    String parentDirPath = null;
+                        int endx = startx + xofflimit;
+                        for (int x = startx; x < endx; x = getNextColumn(x)) {
+                            String key = getCheckpointKey(zoomLevel, boundsIndex, x);
+                            if (checkpoint != null && checkpoint.isDone(key)) {
+                                continue;
+                            }
 
-                    for (int yoff = 0; yoff < yofflimit; yoff++) {
-                        int y = starty + yoff;
+                            makeColumn(this, zfi, x, Math.min(getNextColumn(x), endx), starty, yofflimit, proj);
 
-                        if (parentDirPath == null) {
-                            parentDirPath = zfi.formatParentDirectoryName(getRootDir(), x, y);
-                            File parentDir = new File(parentDirPath);
-                            if (!parentDir.exists()) {
-                                parentDir.mkdirs();
+                            if (checkpoint != null) {
+                                setDone(checkpoint, key);
                             }
                         }
+                        boundsIndex++;
+                    }
+                }
+
+                // At this point, for a specific ZoomLevelInfo, the basic tiles for
+                // it have been created. Now we can check the range and create tiles
+                // for the range out of the new tiles.
+                int range = zfi.getRange();
+                String rangeKey = Checkpoint.getRangeKey(zoomLevel);
+                if (range < zoomLevel && (checkpoint == null || !checkpoint.isDone(rangeKey))) {
+                    Properties rangeProps = new Properties();
+                    MapTileLayer tileLayer = new MapTileLayer();
+                    StandardMapTileFactory tileFactory = getRangeTileFactory();
+                    tileLayer.setTileFactory(tileFactory);
+
+                    List<Layer> subLayers = new ArrayList<Layer>();
+                    subLayers.add(tileLayer);
+
+                    for (int rangeZoomLevel = zoomLevel - 1; rangeZoomLevel >= range; rangeZoomLevel--) {
+                        tileLayer.setZoomLevel(rangeZoomLevel);
+                        ZoomLevelInfo rangeZFI = new ZoomLevelInfo();
+                        rangeZFI.setZoomLevel(rangeZoomLevel);
+                        rangeZFI.setScale(mtcTransform.getScaleForZoom(rangeZoomLevel));
+                        // Create new tiles from the tiles one zoom level up
+                        tileLayer.setZoomLevel(rangeZoomLevel + 1);
+
+                        for (Rectangle2D rawBounds : zfi.getBounds()) {
+                            Rectangle2D bounds = rangeZFI.getUVBounds(rawBounds, mtcTransform, rangeZoomLevel);
+                            if (logger.isLoggable(Level.INFO)) {
+                                logger.fine(" creating subtiles " + bounds);
+                            }
+                            int startx = (int) bounds.getX();
+                            int starty = (int) bounds.getY();
+                            int xofflimit = (int) bounds.getWidth();
+                            int yofflimit = (int) bounds.getHeight();
+
+                            for (int xoff = 0; xoff < xofflimit; xoff++) {
+                                int x = startx + xoff;
+
+                                // Reset every x loop for first time check through y
+                                // loop
+                                String parentDirPath = null;
+
+                                for (int yoff = 0; yoff < yofflimit; yoff++) {
+                                    int y = starty + yoff;
+
+                                    if (parentDirPath == null && tileWriter == null) {
+                                        parentDirPath = rangeZFI.formatParentDirectoryName(getRootDir(), x, y);
+                                        File parentDir = new File(parentDirPath);
+                                        if (!parentDir.exists()) {
+                                            parentDir.mkdirs();
+                                        }
+                                    }
+
+                                    try {
+
+                                        byte[] imageBytes = makeTile(x, y, rangeZoomLevel, subLayers, proj, OMColor.clear);
+
+                                        String outputFile = writeTile(imageBytes, rangeZFI, x, y);
+                                        tileCount.incrementAndGet();
+
+                                        if (logger.isLoggable(Level.INFO)) {
+                                            logger.finer("wrote: " + outputFile);
+                                        }
+                                    } catch (IOException ioe) {
+                                        logger.warning("Caught IOException writing " + x + ", " + y
+                                                + ", " + zfi);
+                                    }
+                                }
 
-                        try {
-                            String outputFile = makeTileFile(x, y, zfi, proj);
-                            if (logger.isLoggable(Level.FINER)) {
-                                logger.finer("wrote: " + outputFile);
                             }
-                        } catch (IOException ioe) {
-                            logger.warning("Caught IOException writing " + x + ", " + y + ", "
-                                    + zfi);
+
                         }
                     }
 
+                    if (checkpoint != null) {
+                        setDone(checkpoint, rangeKey);
+                    }
                 }
+
+                logTileRate(startTime);
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
             }
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+            if (tileWriter != null) {
+                try {
+                    tileWriter.close();
+                } catch (IOException ioe) {
+                    logger.warning("problem closing tile writer: " + ioe.getMessage());
+                }
+            }
+        }
 
-            // At this point, for a specific ZoomLevelInfo, the basic tiles for
-            // it have been created. Now we can check the range and create tiles
-            // for the range out of the new tiles.
-            int range = zfi.getRange();
-            if (range < zoomLevel) {
-                Properties rangeProps = new Properties();
-                MapTileLayer tileLayer = new MapTileLayer();
-                StandardMapTileFactory tileFactory = new StandardMapTileFactory();
-                tileFactory.setRootDir(getRootDir());
-                tileFactory.setFileExt(getFormatter().getFormatLabel());
-                tileLayer.setTileFactory(tileFactory);
-
-                List<Layer> subLayers = new ArrayList<Layer>();
-                subLayers.add(tileLayer);
-
-                for (int rangeZoomLevel = zoomLevel - 1; rangeZoomLevel >= range; rangeZoomLevel--) {
-                    tileLayer.setZoomLevel(rangeZoomLevel);
-                    ZoomLevelInfo rangeZFI = new ZoomLevelInfo();
-                    rangeZFI.setZoomLevel(rangeZoomLevel);
-                    rangeZFI.setScale(mtcTransform.getScaleForZoom(rangeZoomLevel));
-                    // Create new tiles from the tiles one zoom level up
-                    tileLayer.setZoomLevel(rangeZoomLevel + 1);
-
-                    for (Rectangle2D rawBounds : zfi.getBounds()) {
-                        Rectangle2D bounds = rangeZFI.getUVBounds(rawBounds, mtcTransform, rangeZoomLevel);
-                        if (logger.isLoggable(Level.INFO)) {
-                            logger.fine(" creating subtiles " + bounds);
-                        }
-                        int startx = (int) bounds.getX();
-                        int starty = (int) bounds.getY();
-                        int xofflimit = (int) bounds.getWidth();
-                        int yofflimit = (int) bounds.getHeight();
+        logger.info("done writing tiles");
+    }
 
-                        for (int xoff = 0; xoff < xofflimit; xoff++) {
-                            int x = startx + xoff;
+    /**
+     * Get the StandardMapTileFactory used to read the tiles of one zoom level
+     * when creating tiles for a lower zoom level.
+     * 
+     * @return StandardMapTileFactory reading the tiles written so far.
+     */
+    protected StandardMapTileFactory getRangeTileFactory() {
+        if (tileWriter != null) {
+            try {
+                return tileWriter.getTileFactory();
+            } catch (IOException ioe) {
+                logger.warning("problem reading tiles from tile writer: " + ioe.getMessage());
+            }
+        }
 
-                            // Reset every x loop for first time check through y
-                            // loop
-                            String parentDirPath = null;
+        StandardMapTileFactory tileFactory = new StandardMapTileFactory();
+        tileFactory.setRootDir(getRootDir());
+        tileFactory.setFileExt(getFormatter().getFormatLabel());
+        return tileFactory;
+    }
 
-                            for (int yoff = 0; yoff < yofflimit; yoff++) {
-                                int y = starty + yoff;
+    /**
+     * Check if tiles can be created by more than one thread. The number of
+     * threads has to be greater than one, and the layers have to be defined in
+     * the properties used to configure this MapTileMaker so each thread can
+     * have its own copies.
+     * 
+     * @return true if tiles will be created in parallel.
+     */
+    protected boolean isParallel() {
+        if (numThreads <= 1) {
+            return false;
+        }
 
-                                if (parentDirPath == null) {
-                                    parentDirPath = rangeZFI.formatParentDirectoryName(getRootDir(), x, y);
-                                    File parentDir = new File(parentDirPath);
-                                    if (!parentDir.exists()) {
-                                        parentDir.mkdirs();
-                                    }
-                                }
+        if (configProperties == null) {
+            logger.info("MapTileMaker wasn't configured with properties, layers can't be copied for threads, creating tiles on one thread");
+            return false;
+        }
+
+        for (ZoomLevelMaker zfi : getZoomLevels()) {
+            if (zfi.getLayerList() != null) {
+                logger.info("zoom level " + zfi.getName()
+                        + " has a list of layer objects, creating tiles on one thread");
+                return false;
+            }
+        }
 
-                                try {
+        return true;
+    }
 
-                                    byte[] imageBytes = makeTile(x, y, rangeZoomLevel, subLayers, proj, OMColor.clear);
+    /**
+     * Create the tiles for a zoom level, dividing the tile columns among the
+     * threads of the executor. Returns after all of the columns are finished,
+     * logging the tile creation rate while waiting.
+     * 
+     * @param zfi the ZoomLevelMaker describing the tiles.
+     * @param executor the ExecutorService running the column tasks.
+     * @param workers the MapTileMaker of each executor thread.
+     * @param projections the projection of each executor thread.
+     * @param checkpoint the Checkpoint recording finished columns, may be null.
+     * @param startTime the time tile creation started, for rate reporting.
+     */
+    protected void makeTilesInParallel(final ZoomLevelMaker zfi, ExecutorService executor,
+                                       final ThreadLocal<MapTileMaker> workers,
+                                       final ThreadLocal<Proj> projections,
+                                       final Checkpoint checkpoint, long startTime) {
 
-                                    String filePath = rangeZFI.formatImageFilePath(getRootDir(), (int) x, (int) y);
-                                    String outputFile = writeImageFile(imageBytes, filePath, true);
+        final int zoomLevel = zfi.getZoomLevel();
+        List<Future<?>> columns = new ArrayList<Future<?>>();
+        int boundsIndex = 0;
 
-                                    if (logger.isLoggable(Level.INFO)) {
-                                        logger.finer("wrote: " + outputFile);
-                                    }
-                                } catch (IOException ioe) {
-                                    logger.warning("Caught IOException writing " + x + ", " + y
-                                            + ", " + zfi);
-                                }
-                            }
+        for (Rectangle2D bounds : zfi.getUVBounds(mtcTransform, zoomLevel)) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(" creating tiles " + bounds);
+            }
+            final int starty = (int) bounds.getY();
+            final int yofflimit = (int) bounds.getHeight();
+            int startx = (int) bounds.getX();
+            int endx = startx + (int) bounds.getWidth();
+
+            for (int xi = startx; xi < endx; xi = getNextColumn(xi)) {
+                final int x = xi;
+                final int nextx = Math.min(getNextColumn(x), endx);
+                final String key = getCheckpointKey(zoomLevel, boundsIndex, x);
+                if (checkpoint != null && checkpoint.isDone(key)) {
+                    continue;
+                }
 
+                columns.add(executor.submit(new Runnable() {
+                    public void run() {
+                        makeColumn(workers.get(), zfi, x, nextx, starty, yofflimit, projections.get());
+                        if (checkpoint != null) {
+                            setDone(checkpoint, key);
                         }
+                    }
+                }));
+            }
+            boundsIndex++;
+        }
 
+        for (Future<?> column : columns) {
+            while (true) {
+                try {
+                    column.get(10, TimeUnit.SECONDS);
+                    break;
+                } catch (TimeoutException te) {
+                    logTileRate(startTime);
+                } catch (InterruptedException ie) {
+                    logger.warning("interrupted while creating tiles");
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException ee) {
+                    logger.warning("problem creating tile column: " + ee.getCause());
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the MapTileMaker used by a tile creating thread. The new
+     * MapTileMaker is configured with the same ImageServer properties as this
+     * one, so it has its own copies of the layers. The rest of the settings
+     * are copied, and the tile writer is shared, so a worker doesn't create
+     * and open a tile writer or zoom levels of its own.
+     * 
+     * @return MapTileMaker for a thread.
+     */
+    protected MapTileMaker createWorker() {
+        MapTileMaker worker = new MapTileMaker();
+        worker.setWorkerProperties(getPropertyPrefix(), configProperties);
+        worker.setRootDir(getRootDir());
+        worker.setBackground(getBackground());
+        worker.setCanvasPool(getCanvasPool());
+        worker.mtcTransform = mtcTransform;
+        worker.tileWriter = tileWriter;
+        worker.metaTileSize = metaTileSize;
+        worker.metaTileCacheSize = metaTileCacheSize;
+        return worker;
+    }
+
+    /**
+     * Set up a worker with just the ImageServer properties, the layers and
+     * the formatter.
+     */
+    protected void setWorkerProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        configProperties = props;
+    }
+
+    /**
+     * Get the first tile column after the column or metatile column that
+     * starts at x.
+     * 
+     * @param x a uv x coordinate.
+     * @return x + 1, or the start of the next metatile column.
+     */
+    protected int getNextColumn(int x) {
+        if (metaTileSize > 1) {
+            return (x / metaTileSize + 1) * metaTileSize;
+        }
+        return x + 1;
+    }
+
+    /**
+     * Get the checkpoint key for the column, or metatile column, starting at x.
+     */
+    protected String getCheckpointKey(int zoomLevel, int boundsIndex, int x) {
+        if (metaTileSize > 1) {
+            return Checkpoint.getMetaTileKey(zoomLevel, boundsIndex, x, metaTileSize);
+        }
+        return Checkpoint.getKey(zoomLevel, boundsIndex, x);
+    }
+
+    /**
+     * Create the tiles for the columns from x to endx, one column unless
+     * metatiles are being rendered.
+     * 
+     * @param maker the MapTileMaker to create the tiles with.
+     * @param zfi the ZoomLevelMaker describing the tiles.
+     * @param x the first uv x coordinate.
+     * @param endx the uv x coordinate after the last column.
+     * @param starty the first uv y coordinate of the columns.
+     * @param yofflimit the number of tiles in the columns.
+     * @param proj the projection to use for the tiles.
+     */
+    protected void makeColumn(MapTileMaker maker, ZoomLevelMaker zfi, int x, int endx, int starty,
+                              int yofflimit, Proj proj) {
+        if (metaTileSize > 1) {
+            makeMetaTileColumn(maker, zfi, x, endx, starty, yofflimit, proj);
+        } else {
+            makeTileColumn(maker, zfi, x, starty, yofflimit, proj);
+        }
+    }
+
+    /**
+     * Create the tiles for the columns of one metatile column, rendering a
+     * metatile for each block of rows and slicing it into tiles. Only the
+     * tiles between x and endx, starty and starty + yofflimit are written.
+     * 
+     * @param maker the MapTileMaker to create the tiles with.
+     * @param zfi the ZoomLevelMaker describing the tiles.
+     * @param x the first uv x coordinate, inside one metatile column.
+     * @param endx the uv x coordinate after the last column.
+     * @param starty the first uv y coordinate of the columns.
+     * @param yofflimit the number of tiles in the columns.
+     * @param proj the projection to use for the metatiles.
+     */
+    protected void makeMetaTileColumn(MapTileMaker maker, ZoomLevelMaker zfi, int x, int endx,
+                                      int starty, int yofflimit, Proj proj) {
+        if (tileWriter == null) {
+            for (int tx = x; tx < endx; tx++) {
+                File parentDir = new File(zfi.formatParentDirectoryName(getRootDir(), tx, starty));
+                if (!parentDir.exists()) {
+                    parentDir.mkdirs();
+                }
+            }
+        }
+
+        int zoomLevel = zfi.getZoomLevel();
+        int metaX = (x / metaTileSize) * metaTileSize;
+        int endy = starty + yofflimit;
+        List<Layer> layers = maker.getTileLayers(zfi);
+        ImageFormatter imageFormatter = maker.getFormatter().makeClone();
+
+        for (int y = starty; y < endy; y = (y / metaTileSize + 1) * metaTileSize) {
+            int metaY = (y / metaTileSize) * metaTileSize;
+            int nexty = Math.min(metaY + metaTileSize, endy);
+            BufferedImage image = maker.renderMetaTile(metaX, metaY, zoomLevel, layers, proj, maker.getBackground(), mtcTransform);
+            BufferedImage[][] tiles = maker.sliceMetaTile(image, metaX, metaY, zoomLevel, mtcTransform);
+
+            for (int tx = x; tx < endx; tx++) {
+                for (int ty = y; ty < nexty; ty++) {
+                    BufferedImage tile = tiles[tx - metaX][ty - metaY];
+                    if (tile == null) {
+                        continue;
+                    }
+                    try {
+                        String outputFile = maker.writeTile(imageFormatter.formatImage(tile), zfi, tx, ty);
+                        tileCount.incrementAndGet();
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.finer("wrote: " + outputFile);
+                        }
+                    } catch (IOException ioe) {
+                        logger.warning("Caught IOException writing " + tx + ", " + ty + ", " + zfi);
                     }
                 }
+            }
 
+            if (image != null && maker.getCanvasPool() != null) {
+                maker.getCanvasPool().release(image);
             }
         }
+    }
 
-        logger.info("done writing tiles");
+    /**
+     * Render a metatile, a block of metaTileSize x metaTileSize tiles, as one
+     * image and slice it into tiles. Tiles past the edge of the world at the
+     * zoom level are left out of the block.
+     * 
+     * @param metaX the uv x coordinate of the first tile column of the block.
+     * @param metaY the uv y coordinate of the first tile row of the block.
+     * @param zoomLevel the zoom level of the tiles.
+     * @param layers the layers to render, the first one on top.
+     * @param proj the projection to use, will be changed to cover the block.
+     * @param background the paint to use for the background of the image.
+     * @param mtct the transform for tile coordinates.
+     * @return BufferedImage[column][row] of tile images, relative to metaX,
+     *         metaY, with nulls for tiles outside of the world.
+     */
+    public BufferedImage[][] makeMetaTile(int metaX, int metaY, int zoomLevel, List<Layer> layers,
+                                          Proj proj, Paint background,
+                                          MapTileCoordinateTransform mtct) {
+        BufferedImage image = renderMetaTile(metaX, metaY, zoomLevel, layers, proj, background, mtct);
+        return sliceMetaTile(image, metaX, metaY, zoomLevel, mtct);
+    }
+
+    /**
+     * Render the image for a metatile. The image is taken from the canvas pool
+     * if there is one, and can be handed back to it when the tiles sliced from
+     * it aren't needed anymore.
+     * 
+     * @return the image covering the tiles of the metatile inside the world,
+     *         or null if there aren't any or the image can't be created.
+     * @see #makeMetaTile(int, int, int, List, Proj, Paint,
+     *      MapTileCoordinateTransform)
+     */
+    protected BufferedImage renderMetaTile(int metaX, int metaY, int zoomLevel, List<Layer> layers,
+                                           Proj proj, Paint background,
+                                           MapTileCoordinateTransform mtct) {
+        int edgeTileCount = 1 << zoomLevel;
+        int cols = Math.max(0, Math.min(metaTileSize, edgeTileCount - metaX));
+        int rows = Math.max(0, Math.min(metaTileSize, edgeTileCount - metaY));
+        if (cols == 0 || rows == 0) {
+            return null;
+        }
+
+        int tileSize = mtct.getTileSize();
+        Point2D center = mtct.tileUVToLatLon(new Point2D.Double(metaX + cols / 2.0, metaY + rows
+                / 2.0), zoomLevel, null);
+        proj.setScale(mtct.getScaleForZoom(zoomLevel));
+        proj.setCenter(center);
+        proj.setWidth(cols * tileSize);
+        proj.setHeight(rows * tileSize);
+
+        ImageFormatter imageFormatter = getFormatter().makeClone();
+        Graphics graphics = createGraphics(imageFormatter, cols * tileSize, rows * tileSize);
+        if (graphics == null) {
+            return null;
+        }
+
+        proj.drawBackground((Graphics2D) graphics, background);
+        for (int i = layers.size() - 1; i >= 0; i--) {
+            Layer layer = layers.get(i);
+            try {
+                layer.renderDataForProjection(proj, graphics);
+            } catch (Exception e) {
+                logger.warning("problem rendering " + layer.getName() + " for metatile: " + e.getMessage());
+            }
+        }
+        graphics.dispose();
+
+        BufferedImage image = imageFormatter.getBufferedImage();
+        imageFormatter.setBufferedImage(null);
+        return image;
+    }
+
+    /**
+     * Slice a metatile image into tiles. The tiles share the pixels of the
+     * metatile image.
+     * 
+     * @param image the metatile image from renderMetaTile, may be null.
+     * @return BufferedImage[column][row] of tile images, relative to metaX,
+     *         metaY, with nulls for tiles outside of the world.
+     */
+    protected BufferedImage[][] sliceMetaTile(BufferedImage image, int metaX, int metaY,
+                                              int zoomLevel, MapTileCoordinateTransform mtct) {
+        BufferedImage[][] tiles = new BufferedImage[metaTileSize][metaTileSize];
+        if (image == null) {
+            return tiles;
+        }
+
+        int tileSize = mtct.getTileSize();
+        int cols = image.getWidth() / tileSize;
+        int rows = image.getHeight() / tileSize;
+        boolean yUp = mtct.isYDirectionUp();
+        for (int col = 0; col < cols; col++) {
+            for (int row = 0; row < rows; row++) {
+                // uv y grows south unless the transform says otherwise.
+                int imageRow = yUp ? rows - 1 - row : row;
+                tiles[col][row] = image.getSubimage(col * tileSize, imageRow * tileSize, tileSize, tileSize);
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Get a tile for getImageForEmptyTile from the metatile it is part of,
+     * rendering and slicing the metatile if it isn't in the cache.
+     */
+    protected synchronized BufferedImage getMetaTileImageForEmptyTile(int x, int y, int zoomLevel,
+                                                                      Layer[] layers,
+                                                                      MapTileCoordinateTransform mtct) {
+        int metaX = (x / metaTileSize) * metaTileSize;
+        int metaY = (y / metaTileSize) * metaTileSize;
+        String key = zoomLevel + "/" + metaX + "/" + metaY;
+
+        BufferedImage[][] tiles = metaTileCache.get(key);
+        if (tiles == null) {
+            Proj proj = new Mercator(new LatLonPoint.Double(), 10000, mtct.getTileSize(), mtct.getTileSize());
+            tiles = makeMetaTile(metaX, metaY, zoomLevel, Arrays.asList(layers), proj, getBackground(), mtct);
+            metaTileCache.put(key, tiles);
+            Iterator<String> it = metaTileCache.keySet().iterator();
+            while (metaTileCache.size() > metaTileCacheSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+        return tiles[x - metaX][y - metaY];
+    }
+
+    /**
+     * Get the layers for the tiles of a zoom level, the ZoomLevelMaker's List
+     * of Layer objects if it has one, or the layers of this MapTileMaker named
+     * by the ZoomLevelMaker's layer marker names.
+     * 
+     * @param zfi the ZoomLevelMaker for the tiles.
+     * @return List of Layers, the first one on top.
+     */
+    protected List<Layer> getTileLayers(ZoomLevelMaker zfi) {
+        if (zfi.getLayerList() != null) {
+            return zfi.getLayerList();
+        }
+
+        List<Layer> tileLayers = new ArrayList<Layer>();
+        Layer[] layers = getLayers();
+        for (String layerName : zfi.getLayers()) {
+            for (Layer layer : layers) {
+                String prefix = layer.getPropertyPrefix();
+                if (prefix == null && layer instanceof PlugInLayer) {
+                    prefix = ((PlugInLayer) layer).getPlugIn().getPropertyPrefix();
+                }
+                if (layerName.equals(prefix)) {
+                    tileLayers.add(layer);
+                }
+            }
+        }
+        return tileLayers;
+    }
+
+    /**
+     * Create the tiles for one column of a zoom level.
+     * 
+     * @param maker the MapTileMaker to create the tiles with.
+     * @param zfi the ZoomLevelMaker describing the tiles.
+     * @param x the uv x coordinate of the column.
+     * @param starty the first uv y coordinate of the column.
+     * @param yofflimit the number of tiles in the column.
+     * @param proj the projection to use for the tiles.
+     */
+    protected void makeTileColumn(MapTileMaker maker, ZoomLevelMaker zfi, int x, int starty,
+                                  int yofflimit, Proj proj) {
+        if (tileWriter == null) {
+            String parentDirPath = zfi.formatParentDirectoryName(getRootDir(), x, starty);
+            File parentDir = new File(parentDirPath);
+            if (!parentDir.exists()) {
+                parentDir.mkdirs();
+            }
+        }
+
+        for (int yoff = 0; yoff < yofflimit; yoff++) {
+            int y = starty + yoff;
+
+            try {
+                String outputFile = maker.makeTileFile(x, y, zfi, proj);
+                tileCount.incrementAndGet();
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.finer("wrote: " + outputFile);
+                }
+            } catch (IOException ioe) {
+                logger.warning("Caught IOException writing " + x + ", " + y + ", " + zfi);
+            }
+        }
+    }
+
+    /**
+     * Log the number of tiles created since tile creation started, and the
+     * number of tiles created per second.
+     * 
+     * @param startTime the time tile creation started.
+     */
+    protected void logTileRate(long startTime) {
+        long count = tileCount.get();
+        double seconds = (System.currentTimeMillis() - startTime) / 1000.0;
+        logger.info(count + " tiles written in " + Math.round(seconds) + " seconds ("
+                + (seconds > 0 ? Math.round(count / seconds) : count) + " tiles/sec)");
+    }
+
+    /**
+     * Record finished tiles in the checkpoint. The tile writer is flushed
+     * first, so the checkpoint never lists tiles that are still waiting to be
+     * stored. If the flush fails, the key isn't recorded and the tiles will be
+     * made again on resume.
+     * 
+     * @param checkpoint the Checkpoint to record the key in.
+     * @param key the key for the finished column or range.
+     */
+    protected void setDone(Checkpoint checkpoint, String key) {
+        if (tileWriter != null) {
+            try {
+                tileWriter.flush();
+            } catch (IOException ioe) {
+                logger.warning("problem storing tiles, not recording " + key + " as done: "
+                        + ioe.getMessage());
+                return;
+            }
+        }
+        checkpoint.setDone(key);
+    }
+
+    /**
+     * The Checkpoint keeps track of the tile columns that have been completed,
+     * in a file so tile creation can be resumed later. Each line of the file is
+     * a key for a completed column, or for the completed range tiles of a zoom
+     * level.
+     */
+    protected static class Checkpoint {
+        protected Set<String> done = new HashSet<String>();
+        protected PrintWriter out;
+
+        public Checkpoint(File file) throws IOException {
+            if (file.exists()) {
+                BufferedReader in = new BufferedReader(new FileReader(file));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        line = line.trim();
+                        if (line.length() > 0) {
+                            done.add(line);
+                        }
+                    }
+                } finally {
+                    in.close();
+                }
+                logger.info("resuming from checkpoint, " + done.size() + " entries completed");
+            }
+            out = new PrintWriter(new FileWriter(file, true));
+        }
+
+        public static String getKey(int zoomLevel, int boundsIndex, int x) {
+            return zoomLevel + " " + boundsIndex + " " + x;
+        }
+
+        public static String getMetaTileKey(int zoomLevel, int boundsIndex, int x, int metaTileSize) {
+            return zoomLevel + " " + boundsIndex + " " + x + " meta" + metaTileSize;
+        }
+
+        public static String getRangeKey(int zoomLevel) {
+            return zoomLevel + " range";
+        }
+
+        public synchronized boolean isDone(String key) {
+            return done.contains(key);
+        }
+
+        public synchronized void setDone(String key) {
+            done.add(key);
+            out.println(key);
+            out.flush();
+        }
+
+        public synchronized void close() {
+            out.close();
+        }
     }
 
     public String getRootDir() {
@@ -503,6 +1235,74 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
         this.rootDir = rootDir;
     }
 
+    public MapTileWriter getTileWriter() {
+        return tileWriter;
+    }
+
+    /**
+     * Set the MapTileWriter used to store tiles.
+     * 
+     * @param tileWriter the MapTileWriter, or null to write each tile to a
+     *        file under the root directory.
+     */
+    public void setTileWriter(MapTileWriter tileWriter) {
+        this.tileWriter = tileWriter;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used to create tiles.
+     * 
+     * @param numThreads if greater than 1, tiles will be created in parallel
+     *        if the layers can be copied for each thread.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getMetaTileSize() {
+        return metaTileSize;
+    }
+
+    /**
+     * Set the number of tiles across and down rendered as one metatile image.
+     * 
+     * @param metaTileSize 1 to render each tile by itself.
+     */
+    public synchronized void setMetaTileSize(int metaTileSize) {
+        this.metaTileSize = Math.max(1, metaTileSize);
+        metaTileCache.clear();
+    }
+
+    public int getMetaTileCacheSize() {
+        return metaTileCacheSize;
+    }
+
+    /**
+     * Set the number of sliced metatiles kept for getImageForEmptyTile.
+     */
+    public synchronized void setMetaTileCacheSize(int metaTileCacheSize) {
+        this.metaTileCacheSize = Math.max(1, metaTileCacheSize);
+    }
+
+    public String getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * Set the path to the file used to record completed tile columns. If the
+     * file exists when makeTiles is called, the columns listed in it are
+     * skipped.
+     * 
+     * @param checkpointFile path to file, null for no checkpointing.
+     */
+    public void setCheckpointFile(String checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
     public List<ZoomLevelMaker> getZoomLevels() {
         if (zoomLevels == null) {
             zoomLevels = new LinkedList<ZoomLevelMaker>();
@@ -578,6 +1378,9 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
 
         ap.add("properties", "The properties file to use for image tiles.", 1);
         ap.add("create", "Create a sample properties file at a path", 1);
+        ap.add("threads", "The number of threads to use to create tiles", 1);
+        ap.add("checkpoint", "A file used to record completed tiles, and resume from", 1);
+        ap.add("metatile", "The number of tiles across and down to render as one image", 1);
 
         if (!ap.parse(args)) {
             ap.printUsage();
@@ -599,6 +1402,22 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
                 props.load(inputStream);
 
                 MapTileMaker tim = new MapTileMaker(props);
+
+                String[] threadArg = ap.getArgValues("threads");
+                if (threadArg != null) {
+                    tim.setNumThreads(Integer.parseInt(threadArg[0]));
+                }
+
+                String[] checkpointArg = ap.getArgValues("checkpoint");
+                if (checkpointArg != null) {
+                    tim.setCheckpointFile(checkpointArg[0]);
+                }
+
+                String[] metaTileArg = ap.getArgValues("metatile");
+                if (metaTileArg != null) {
+                    tim.setMetaTileSize(Integer.parseInt(metaTileArg[0]));
+                }
+
                 tim.makeTiles();
 
             } catch (MalformedURLException murle) {
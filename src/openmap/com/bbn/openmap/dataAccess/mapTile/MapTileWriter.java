@@ -0,0 +1,66 @@
+/* 
+ * <copyright>
+ *  Copyright 2014 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.io.IOException;
+
+/**
+ * A MapTileWriter is used by the MapTileMaker to store the tiles it creates,
+ * in place of writing each tile into its own file under the root directory.
+ * The MapTileMaker may call writeTile from several threads at the same time,
+ * so implementations need to be thread-safe.
+ * 
+ * @author dietrick
+ */
+public interface MapTileWriter {
+
+    /**
+     * Called by the MapTileMaker before any tiles are written.
+     * 
+     * @param mapTileMaker the MapTileMaker creating tiles.
+     * @throws IOException if the tile storage can't be opened.
+     */
+    void open(MapTileMaker mapTileMaker) throws IOException;
+
+    /**
+     * Store a tile.
+     * 
+     * @param imageBytes the formatted image bytes for the tile.
+     * @param x the uv x coordinate of the tile.
+     * @param y the uv y coordinate of the tile.
+     * @param zoomLevel the zoom level of the tile.
+     * @return a description of where the tile was written, for logging.
+     * @throws IOException
+     */
+    String writeTile(byte[] imageBytes, int x, int y, int zoomLevel) throws IOException;
+
+    /**
+     * Make sure all the tiles written so far are stored. Called by the
+     * MapTileMaker before it records finished tiles in its checkpoint file,
+     * so tile creation that's resumed after a crash doesn't skip tiles that
+     * were never stored.
+     * 
+     * @throws IOException if pending tiles can't be written.
+     */
+    void flush() throws IOException;
+
+    /**
+     * Get a MapTileFactory that can read the tiles written so far. Used by the
+     * MapTileMaker to create tiles for zoom level ranges from tiles it has
+     * already created.
+     * 
+     * @return StandardMapTileFactory reading from the tile storage.
+     * @throws IOException if pending tiles can't be written.
+     */
+    StandardMapTileFactory getTileFactory() throws IOException;
+
+    /**
+     * Called by the MapTileMaker when all tiles have been written.
+     * 
+     * @throws IOException
+     */
+    void close() throws IOException;
+}
@@ -131,7 +131,8 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
      * before going off to the server. If a local directory is listed as a
      * cache, any retrieved files will be stored there for future use. We are
      * using the local name of the file as the cache key for all tiles for
-     * consistency - all tiles are looked up with local cache locations.
+     * consistency - all tiles are looked up with local cache locations. Returns
+     * null if there isn't a tile for the location.
      */
     public CacheObject load(Object key, int x, int y, int zoomLevel, Projection proj) {
         if (key instanceof String) {
@@ -167,7 +168,7 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
                      * the local dir is defined.
                      */
                     if (raster != null) {
-                        return new CacheObject(key, raster);
+                        return new CacheObject(key, raster, getTileWeight(rasterImage));
                     }
 
                 } catch (InterruptedException ie) {
@@ -180,14 +181,29 @@ public class ServerMapTileFactory extends StandardMapTileFactory implements MapT
 
             /*
              * At this point, nothing was found for this location, so it's an
-             * empty tile.
+             * empty tile. The caller makes it, load() can run on the tile
+             * loading threads and empty tile handlers aren't thread-safe.
              */
-            return getEmptyTile(key, x, y, zoomLevel, proj);
         }
 
         return null;
     }
 
+    /**
+     * Get a tile from the cache or the server, with an empty tile for a
+     * location the server doesn't have a tile for.
+     */
+    public Object get(Object key, int x, int y, int zoomLevel, Projection proj) {
+        Object obj = super.get(key, x, y, zoomLevel, proj);
+        if (obj == null) {
+            CacheObject empty = getEmptyTile(key, x, y, zoomLevel, proj);
+            if (empty != null) {
+                obj = replaceLeastUsed(empty).obj;
+            }
+        }
+        return obj;
+    }
+
     /**
      * Tries to get the image bytes from imagePath URL. If image found, will
      * write it locally to localFilePath for caching.
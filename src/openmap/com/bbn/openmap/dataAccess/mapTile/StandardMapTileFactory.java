@@ -27,6 +27,7 @@ import java.awt.Image;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
@@ -37,6 +38,16 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.logging.Level;
@@ -79,6 +90,10 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * rootDir=the path to the parent directory of the tiles. The factory will construct specific file paths that are appended to this value.
  * fileExt=the file extension to append to the tile names
  * cacheSize=the number of mapTiles the factory should hold on to. The default is 100.
+ * # optional limit on the bytes of image data held in the cache, in addition to the cacheSize limit.
+ * cacheBytes=the number of image bytes the factory should hold on to. The default is 0, no limit.
+ * # the number of threads used to load tiles not found in the cache. The default is 4, 1 loads tiles serially.
+ * loadThreads=4
  * # default is OSMMapTileCoordinateTransform, but it depends on the source of tiles.  GDAL is TSMMapTileCoordinateTransform
  * mapTileTransform=com.bbn.openmap.dataAccess.mapTile.OSMMapTileCoordinateTransform, or com.bbn.openmap.dataAccess.mapTile.TSMMapTileCoordinateTransform
  * # what to do about missing tiles?
@@ -99,6 +114,9 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
     public final static String ROOT_DIR_PROPERTY = "rootDir";
     public final static String FILE_EXT_PROPERTY = "fileExt";
     public final static String CACHE_SIZE_PROPERTY = "cacheSize";
+    public final static String CACHE_BYTES_PROPERTY = "cacheBytes";
+    public final static String LOAD_THREADS_PROPERTY = "loadThreads";
+    public final static int DEFAULT_LOAD_THREADS = 4;
     public final static String MTCTRANSFORM_PROPERTY = "mapTileTransform";
     public final static String EMPTY_TILE_HANDLER_PROPERTY = "emptyTileHandler";
     public final static String ZOOM_LEVEL_INFO_PROPERTY = "zoomLevelInfo";
@@ -150,6 +168,16 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
      * sources have different origins for tile coordinates.
      */
     protected MapTileCoordinateTransform mtcTransform = new OSMMapTileCoordinateTransform();
+    /**
+     * The number of threads used to load tiles that aren't in the cache. Tiles
+     * are loaded, decoded and prepared concurrently, and added to the list as
+     * they arrive. If 1, tiles are loaded one at a time on the calling thread.
+     */
+    protected int loadThreads = DEFAULT_LOAD_THREADS;
+    /**
+     * The thread pool used to load tiles, created when needed.
+     */
+    private ThreadPoolExecutor loadExecutor;
 
     public StandardMapTileFactory() {
         super(100);
@@ -202,7 +230,7 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
                     OMGraphic raster = createOMGraphicFromBufferedImage(bi, x, y, zoomLevel, proj);
 
                     if (raster != null) {
-                        return new CacheObject(imagePath, raster);
+                        return new CacheObject(imagePath, raster, getTileWeight(bi));
                     }
 
                 } else {
@@ -254,6 +282,23 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         return raster;
     }
 
+    /**
+     * Figure out the cache weight of a tile, which is the number of bytes used
+     * by the tile image data. Used by the cache when the cacheBytes property
+     * limits the amount of image data kept in memory.
+     * 
+     * @param bi the BufferedImage used for the tile
+     * @return number of bytes of image data, 1 if the image is null.
+     */
+    protected long getTileWeight(BufferedImage bi) {
+        if (bi == null) {
+            return 1;
+        }
+        DataBuffer db = bi.getRaster().getDataBuffer();
+        return Math.max(1, (long) db.getSize() * db.getNumBanks()
+                * DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+    }
+
     /**
      * Create an OMScalingRaster that matches the basic projection of the
      * current map. Only scales evenly for the opposite corner points.
@@ -349,8 +394,7 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
             return null;
         }
 
-        replaceLeastUsed(ret);
-        return ret.obj;
+        return replaceLeastUsed(ret).obj;
     }
 
     /**
@@ -410,7 +454,7 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
                         }
                     }
 
-                    return new CacheObject(key, raster);
+                    return new CacheObject(key, raster, getTileWeight(bi));
                 }
 
             } catch (InterruptedException e) {
@@ -550,11 +594,12 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
      * 
      * @author dietrick
      */
-    class LoadObj {
+    protected class LoadObj {
         String imagePath;
         int x;
         int y;
         int zoomLevel;
+        CacheObject loaded;
 
         LoadObj(String p, int x, int y, int z) {
             this.imagePath = p;
@@ -637,17 +682,23 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
          * Load the tiles that are not already in the cache, that need to be
          * fetched from the source.
          */
-        for (LoadObj reload : reloads) {
-            // Check and see of we should bother fetching the new tile.
-            if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+        if (loadThreads > 1 && reloads.size() > 1) {
+            if (!loadTiles(reloads, proj, list)) {
                 return;
             }
+        } else {
+            for (LoadObj reload : reloads) {
+                // Check and see of we should bother fetching the new tile.
+                if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+                    return;
+                }
 
-            loadTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj, list);
+                loadTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj, list);
 
-            // OK, got it, notify requester the list has been updated.
-            if (mapTileRequester != null) {
-                mapTileRequester.listUpdated();
+                // OK, got it, notify requester the list has been updated.
+                if (mapTileRequester != null) {
+                    mapTileRequester.listUpdated();
+                }
             }
         }
 
@@ -733,6 +784,148 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         }
     }
 
+    /**
+     * Load tiles concurrently, using the load thread pool. The tiles are
+     * loaded, decoded and prepared by the pool threads, and each tile is
+     * generated and added to the list on the calling thread as it arrives,
+     * followed by a call to the MapTileRequester listUpdated() method. If the
+     * MapTileRequester says it doesn't want to continue (the projection
+     * changed), the tiles still being loaded are cancelled.
+     * 
+     * @param reloads the tiles to load.
+     * @param proj the current projection.
+     * @param list the OMGraphicList to add the tiles to.
+     * @return true if all the tiles were handled, false if the request was
+     *         cancelled.
+     */
+    protected boolean loadTiles(List<LoadObj> reloads, final Projection proj, OMGraphicList list) {
+        CompletionService<LoadObj> loader = new ExecutorCompletionService<LoadObj>(getLoadExecutor());
+        List<Future<LoadObj>> pending = new ArrayList<Future<LoadObj>>(reloads.size());
+
+        for (final LoadObj reload : reloads) {
+            pending.add(loader.submit(new Callable<LoadObj>() {
+                public LoadObj call() throws Exception {
+                    if (mapTileRequester == null || mapTileRequester.shouldContinue()) {
+                        reload.loaded = load(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj);
+                    }
+                    return reload;
+                }
+            }));
+        }
+
+        try {
+            int numLoaded = 0;
+            while (numLoaded < reloads.size()) {
+                if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+                    logger.fine("tile loading cancelled");
+                    return false;
+                }
+
+                Future<LoadObj> done = loader.poll(100, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    continue;
+                }
+                numLoaded++;
+
+                LoadObj reload;
+                try {
+                    reload = done.get();
+                } catch (ExecutionException ee) {
+                    logger.warning("problem loading tile: " + ee.getCause());
+                    continue;
+                }
+
+                CacheObject ret = reload.loaded;
+                if (ret == null) {
+                    // Empty tile handlers aren't expected to be thread-safe.
+                    ret = getEmptyTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj);
+                }
+
+                addTile(ret, reload.imagePath, proj, list);
+
+                if (mapTileRequester != null) {
+                    mapTileRequester.listUpdated();
+                }
+            }
+        } catch (InterruptedException ie) {
+            logger.fine("interrupted while loading tiles");
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            for (Future<LoadObj> future : pending) {
+                future.cancel(true);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Get the thread pool used to load tiles, creating it if needed. The pool
+     * threads time out when they aren't used.
+     */
+    protected synchronized ExecutorService getLoadExecutor() {
+        if (loadExecutor == null) {
+            int numThreads = Math.max(1, loadThreads);
+            loadExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "MapTileLoader");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+            loadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return loadExecutor;
+    }
+
+    /**
+     * Get the number of threads used to load tiles that aren't in the cache.
+     */
+    public int getLoadThreads() {
+        return loadThreads;
+    }
+
+    /**
+     * Set the number of threads used to load tiles that aren't in the cache.
+     * If 1, tiles are loaded one at a time on the thread calling getTiles().
+     * 
+     * @param loadThreads number of threads.
+     */
+    public synchronized void setLoadThreads(int loadThreads) {
+        this.loadThreads = Math.max(1, loadThreads);
+        if (loadExecutor != null) {
+            loadExecutor.shutdown();
+            loadExecutor = null;
+        }
+    }
+
+    /**
+     * Add a loaded tile to the cache and to the list, after generating it with
+     * the projection.
+     * 
+     * @param ret the CacheObject holding the tile, may be null.
+     * @param imagePath the image path for the tile.
+     * @param proj the current projection.
+     * @param list the OMGraphicList to add the tile to.
+     */
+    protected void addTile(CacheObject ret, String imagePath, Projection proj, OMGraphicList list) {
+        if (ret != null) {
+            ret = replaceLeastUsed(ret);
+            OMGraphic raster = (OMGraphic) ret.obj;
+
+            if (raster != null) {
+
+                raster.generate(proj);
+                list.add(raster);
+
+                if (logger.isLoggable(Level.FINE)) {
+                    raster.putAttribute(OMGraphic.TOOLTIP, imagePath);
+                }
+            }
+        }
+    }
+
     /**
      * Handles going to the cache, getting the cache to load the tile, and then
      * manage the resulting OMRaster tile. Adds the tile to the list after
@@ -757,20 +950,7 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
             ret = getEmptyTile(imagePath, x, y, zoomLevel, proj);
         }
 
-        if (ret != null) {
-            replaceLeastUsed(ret);
-            OMGraphic raster = (OMGraphic) ret.obj;
-
-            if (raster != null) {
-
-                raster.generate(proj);
-                list.add(raster);
-
-                if (logger.isLoggable(Level.FINE)) {
-                    raster.putAttribute(OMGraphic.TOOLTIP, imagePath);
-                }
-            }
-        }
+        addTile(ret, imagePath, proj, list);
     }
 
     /**
@@ -905,6 +1085,8 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         getList.put(prefix + ROOT_DIR_PROPERTY, PropUtils.unnull(rootDirProperty));
         getList.put(prefix + FILE_EXT_PROPERTY, PropUtils.unnull(fileExt));
         getList.put(prefix + CACHE_SIZE_PROPERTY, Integer.toString(getCacheSize()));
+        getList.put(prefix + CACHE_BYTES_PROPERTY, Long.toString(getCacheWeight()));
+        getList.put(prefix + LOAD_THREADS_PROPERTY, Integer.toString(loadThreads));
         getList.put(prefix + MTCTRANSFORM_PROPERTY, mtcTransform.getClass().toString());
         if (emptyTileHandler != null) {
             getList.put(prefix + EMPTY_TILE_HANDLER_PROPERTY, emptyTileHandler.getClass().toString());
@@ -935,6 +1117,8 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, ROOT_DIR_PROPERTY, "Tile Directory", "Root directory containing image tiles", "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, FILE_EXT_PROPERTY, "Image File Extension", "Extension of image files (.jpg, .png, etc)", null);
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, CACHE_SIZE_PROPERTY, "Cache Size", "Number of tile images held in memory", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, CACHE_BYTES_PROPERTY, "Cache Bytes", "Number of bytes of tile image data held in memory (0 for no limit)", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, LOAD_THREADS_PROPERTY, "Load Threads", "Number of threads loading tiles not found in the cache (1 loads tiles serially)", null);
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, ZOOM_LEVEL_TILE_SIZE_PROPERTY, "Zoom Level Tile Size", "The maximum pixel size of a tile before switching to a higher zoom level (350 is default)", null);
         return list;
     }
@@ -999,6 +1183,8 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         }
 
         super.resetCache(PropUtils.intFromProperties(setList, prefix + CACHE_SIZE_PROPERTY, getCacheSize()));
+        setCacheWeight(PropUtils.longFromProperties(setList, prefix + CACHE_BYTES_PROPERTY, getCacheWeight()));
+        setLoadThreads(PropUtils.intFromProperties(setList, prefix + LOAD_THREADS_PROPERTY, loadThreads));
 
         zoomLevelTileSize = PropUtils.intFromProperties(setList, prefix
                 + ZOOM_LEVEL_TILE_SIZE_PROPERTY, zoomLevelTileSize);
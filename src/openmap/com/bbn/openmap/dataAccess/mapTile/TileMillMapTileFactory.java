@@ -120,7 +120,7 @@ public class TileMillMapTileFactory
                 OMGraphic raster = createOMGraphicFromBufferedImage(bi, x, y, zoomLevel, proj);
 
                 if (raster != null) {
-                    return new CacheObject((String) key, raster);
+                    return new CacheObject((String) key, raster, getTileWeight(bi));
                 }
 
             }
@@ -34,8 +34,8 @@ import java.util.List;
 import java.util.Locale;
 
 import com.bbn.openmap.dataAccess.shape.output.DbfOutputStream;
-import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.util.ArgParser;
 import com.bbn.openmap.util.Debug;
@@ -293,7 +293,7 @@ public class DbfFile
     public static DbfTableModel getDbfTableModel(String dbf) {
         DbfFile model = null;
         try {
-            BinaryBufferedFile bbf = new BinaryBufferedFile(dbf);
+            BinaryFile bbf = new BinaryMappedFile(dbf);
             model = new DbfFile(bbf);
             model.close();
         } catch (Exception exception) {
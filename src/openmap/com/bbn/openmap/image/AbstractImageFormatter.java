@@ -29,6 +29,10 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.Properties;
 
 import com.bbn.openmap.Layer;
@@ -56,6 +60,10 @@ public abstract class AbstractImageFormatter
 
     protected BufferedImage bufferedImage;
     protected String propertiesPrefix;
+    /**
+     * Where getGraphics gets its BufferedImage from, if set.
+     */
+    protected CanvasPool canvasPool;
 
     public AbstractImageFormatter() {
     }
@@ -71,6 +79,31 @@ public abstract class AbstractImageFormatter
      */
     public abstract byte[] formatImage(BufferedImage bi);
 
+    /**
+     * Convert a BufferedImage to a image file format, writing it to an
+     * OutputStream. This version writes the bytes from formatImage(bi),
+     * formatters that can encode straight into a stream should override it.
+     * 
+     * @param bi a BufferedImage.
+     * @param out the OutputStream to write the formatted image to.
+     */
+    public void formatImage(BufferedImage bi, OutputStream out) throws IOException {
+        out.write(formatImage(bi));
+    }
+
+    /**
+     * Convert a BufferedImage to a image file format, writing it to a
+     * WritableByteChannel.
+     * 
+     * @param bi a BufferedImage.
+     * @param channel the WritableByteChannel to write the formatted image to.
+     */
+    public void formatImage(BufferedImage bi, WritableByteChannel channel) throws IOException {
+        OutputStream out = Channels.newOutputStream(channel);
+        formatImage(bi, out);
+        out.flush();
+    }
+
     /**
      * Create a new instance of the same type of formatter. If you are running
      * in a multi-threaded environment, you'll need to provide a new instance of
@@ -274,7 +307,11 @@ public abstract class AbstractImageFormatter
      * @see java.awt.image.BufferedImage
      */
     public Graphics getGraphics(int width, int height, int imageType) {
-        bufferedImage = new BufferedImage(width, height, imageType);
+        if (canvasPool != null) {
+            bufferedImage = canvasPool.get(width, height, imageType);
+        } else {
+            bufferedImage = new BufferedImage(width, height, imageType);
+        }
 
         GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
         Graphics g = ge.createGraphics(bufferedImage);
@@ -282,6 +319,21 @@ public abstract class AbstractImageFormatter
         return g;
     }
 
+    public CanvasPool getCanvasPool() {
+        return canvasPool;
+    }
+
+    /**
+     * Set the CanvasPool that getGraphics takes its BufferedImage from. The
+     * image isn't returned to the pool by the formatter, whoever set the pool
+     * does that when the image has been formatted.
+     * 
+     * @param canvasPool the pool, or null to create a new image each time.
+     */
+    public void setCanvasPool(CanvasPool canvasPool) {
+        this.canvasPool = canvasPool;
+    }
+
     /**
      * Return the BufferedImage contained within the formatter.
      * 
@@ -358,6 +410,23 @@ public abstract class AbstractImageFormatter
         }
     }
 
+    /**
+     * Write the formatted image to an OutputStream. Formatters that don't
+     * render into a BufferedImage (like the SVGFormatter) have the bytes from
+     * getImageBytes() written instead.
+     * 
+     * @param out the OutputStream to write the formatted image to.
+     */
+    public void writeImageBytes(OutputStream out) throws IOException {
+        BufferedImage bi = getBufferedImage();
+        if (bi != null) {
+            Debug.message("formatter", "Formatter: writing formatted image bytes...");
+            formatImage(bi, out);
+        } else {
+            out.write(getImageBytes());
+        }
+    }
+
     /**
      * Scale the internal BufferedImage, then return the image bytes of the
      * formatted image.
@@ -376,6 +445,25 @@ public abstract class AbstractImageFormatter
         }
     }
 
+    /**
+     * Scale the internal BufferedImage, then write the formatted image to an
+     * OutputStream.
+     * 
+     * @param scaledWidth the desired pixel width of the image.
+     * @param scaledHeight the desired pixel height of the image.
+     * @param out the OutputStream to write the formatted image to.
+     */
+    public void writeScaledImageBytes(int scaledWidth, int scaledHeight, OutputStream out)
+            throws IOException {
+        BufferedImage bi = getScaledBufferedImage(scaledWidth, scaledHeight);
+        if (bi != null) {
+            Debug.message("formatter", "Formatter: writing formatted image bytes...");
+            formatImage(bi, out);
+        } else {
+            out.write(getScaledImageBytes(scaledWidth, scaledHeight));
+        }
+    }
+
     /**
      * Set the layers and image type in the properties.
      */
@@ -0,0 +1,221 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.image;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * A pool of BufferedImage canvases for map images, kept by size and image
+ * type. A server creating images of the same few sizes over and over can take
+ * a canvas from the pool instead of allocating a new one for each image, and
+ * put it back when the image has been formatted. Canvases taken from the pool
+ * are cleared to transparent before they are handed out.
+ * <P>
+ * The pool holds on to at most maxBytes of image memory, the canvases
+ * returned longest ago are dropped first when it would be more. The hit and
+ * miss counts tell how often a canvas could be reused.
+ */
+public class CanvasPool {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.image.CanvasPool");
+
+    /**
+     * The default limit on pooled image memory, 32 MB.
+     */
+    public final static long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+    protected long maxBytes;
+    protected long pooledBytes;
+    /**
+     * The pooled canvases for each size and type.
+     */
+    protected final Map<String, LinkedList<BufferedImage>> pools = new HashMap<String, LinkedList<BufferedImage>>();
+    /**
+     * All of the pooled canvases, the one returned longest ago first.
+     */
+    protected final LinkedList<BufferedImage> returned = new LinkedList<BufferedImage>();
+
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Create a CanvasPool holding up to DEFAULT_MAX_BYTES of images.
+     */
+    public CanvasPool() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the most image memory to keep in the pool.
+     */
+    public CanvasPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a cleared canvas, from the pool if it has one of the size and type,
+     * new otherwise.
+     * 
+     * @param width pixel width of the canvas.
+     * @param height pixel height of the canvas.
+     * @param imageType BufferedImage image type.
+     * @return BufferedImage
+     */
+    public BufferedImage get(int width, int height, int imageType) {
+        BufferedImage image = null;
+        synchronized (this) {
+            LinkedList<BufferedImage> pool = pools.get(getKey(width, height, imageType));
+            if (pool != null && !pool.isEmpty()) {
+                image = pool.removeLast();
+                returned.remove(image);
+                pooledBytes -= getSize(image);
+            }
+        }
+
+        if (image == null) {
+            misses.incrementAndGet();
+            return new BufferedImage(width, height, imageType);
+        }
+
+        hits.incrementAndGet();
+        clear(image);
+        return image;
+    }
+
+    /**
+     * Put a canvas back in the pool. The caller must not use the canvas, or
+     * any image sharing its pixels, after this.
+     * 
+     * @param image the canvas, can be null.
+     */
+    public void release(BufferedImage image) {
+        if (image == null || image.getType() == BufferedImage.TYPE_CUSTOM) {
+            return;
+        }
+
+        long size = getSize(image);
+        if (size > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            String key = getKey(image.getWidth(), image.getHeight(), image.getType());
+            LinkedList<BufferedImage> pool = pools.get(key);
+            if (pool == null) {
+                pool = new LinkedList<BufferedImage>();
+                pools.put(key, pool);
+            } else if (pool.contains(image)) {
+                return;
+            }
+
+            pool.addLast(image);
+            returned.addLast(image);
+            pooledBytes += size;
+
+            Iterator<BufferedImage> it = returned.iterator();
+            while (pooledBytes > maxBytes && it.hasNext()) {
+                BufferedImage oldest = it.next();
+                it.remove();
+                pools.get(getKey(oldest.getWidth(), oldest.getHeight(), oldest.getType())).remove(oldest);
+                pooledBytes -= getSize(oldest);
+            }
+        }
+    }
+
+    /**
+     * Drop all of the pooled canvases.
+     */
+    public synchronized void clear() {
+        pools.clear();
+        returned.clear();
+        pooledBytes = 0;
+    }
+
+    /**
+     * Clear a reused canvas to transparent, the way a new one starts out.
+     */
+    protected void clear(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setComposite(AlphaComposite.Clear);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+    }
+
+    protected String getKey(int width, int height, int imageType) {
+        return width + "x" + height + ":" + imageType;
+    }
+
+    /**
+     * @return the number of bytes of pixel data in the image.
+     */
+    protected static long getSize(BufferedImage image) {
+        DataBuffer db = image.getRaster().getDataBuffer();
+        return (long) db.getSize() * db.getNumBanks() * (DataBuffer.getDataTypeSize(db.getDataType()) / 8);
+    }
+
+    /**
+     * @return the number of canvases handed out from the pool.
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of canvases that had to be created.
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of canvases in the pool.
+     */
+    public synchronized int getPooledCount() {
+        return returned.size();
+    }
+
+    /**
+     * @return the bytes of image memory in the pool.
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Set the most image memory to keep in the pool, takes effect on the next
+     * release.
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public String toString() {
+        return "CanvasPool[hits=" + getHits() + ", misses=" + getMisses() + ", pooled="
+                + getPooledCount() + ", bytes=" + getPooledBytes() + "/" + maxBytes + "]";
+    }
+}
@@ -17,11 +17,24 @@ package com.bbn.openmap.image;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 
 import com.bbn.openmap.util.Debug;
 
+/**
+ * An ImageFormatter that uses an ImageIO ImageWriter to encode images. Images
+ * can be encoded straight into an OutputStream without holding the whole
+ * encoded image in memory.
+ */
 public abstract class ImageIOFormatter extends AbstractImageFormatter {
 
     protected String formatName;
@@ -42,13 +55,63 @@ public abstract class ImageIOFormatter extends AbstractImageFormatter {
     public byte[] formatImage(BufferedImage bi) {
         try {
             ByteArrayOutputStream byo = new ByteArrayOutputStream();
-            ImageIO.write(bi, getFormatName(), byo);
+            formatImage(bi, byo);
             return byo.toByteArray();
         } catch (java.io.IOException ioe) {
             Debug.error("ImageIOFormatter caught IOException formatting image!");
             return new byte[0];
         }
     }
+
+    /**
+     * Encode the image with the ImageWriter for the format, writing the
+     * encoded bytes to the OutputStream as they are created.
+     * 
+     * @param bi a BufferedImage.
+     * @param out the OutputStream to write the formatted image to.
+     */
+    public void formatImage(BufferedImage bi, OutputStream out) throws IOException {
+        ImageWriter writer = getImageWriter();
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(out);
+        try {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(prepareImage(bi), null, null), getWriteParam(writer));
+            ios.flush();
+        } finally {
+            writer.dispose();
+            ios.close();
+        }
+    }
+
+    /**
+     * Get a new ImageWriter for the format. The caller should dispose() it
+     * when finished.
+     * 
+     * @throws IOException if there isn't an ImageWriter for the format.
+     */
+    protected ImageWriter getImageWriter() throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(getFormatName());
+        if (!writers.hasNext()) {
+            throw new IOException("no ImageWriter for " + getFormatName());
+        }
+        return writers.next();
+    }
+
+    /**
+     * Get the parameters for the ImageWriter. Returns null for the writer's
+     * defaults, subclasses can override for format specific settings.
+     */
+    protected ImageWriteParam getWriteParam(ImageWriter writer) {
+        return null;
+    }
+
+    /**
+     * Make any changes to the image needed before it is encoded, like color
+     * reduction. Returns the image unchanged, subclasses can override.
+     */
+    protected BufferedImage prepareImage(BufferedImage bi) {
+        return bi;
+    }
     
     /**
      * Return the applicable Graphics to use to paint the layers into.
@@ -28,9 +28,12 @@ import java.awt.Graphics2D;
 import java.awt.Paint;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Hashtable;
@@ -76,10 +79,11 @@ import com.bbn.openmap.util.PropUtils;
  * layer array contents and the request layer mask at the time the request
  * processing is started, not when it is submitted.
  * <P>
- * Right now, the ImageServer is single threaded - processing requests one after
- * another. The request setup was written to support multi-threaded processing,
- * though, where each image could be generated in it's own thread. That code is
- * not written - maybe someday.
+ * The ImageServer is single threaded - processing requests one after another,
+ * since the layers keep state for the projection they last rendered. To
+ * generate images for independent requests in parallel, use a
+ * MapRequestHandlerPool, where each worker thread has its own ImageServer and
+ * layers.
  * <P>
  * <code><pre>
  *                 
@@ -99,6 +103,9 @@ import com.bbn.openmap.util.PropUtils;
  *                    formatter1.class=&lt;classname of formatter 1&gt;
  *                    # Add other formatter1 properties
  *                    formatter2.class=&lt;classname of formatter 2&gt;
+ *                    # Optional, bytes of image canvases kept for reuse
+ *                    # between requests, 0 turns it off (default 32 MB).
+ *                    imageServer.canvasPoolSize=33554432
  *                    
  *                   
  *                  
@@ -148,9 +155,27 @@ public class ImageServer
      */
     public static final String BackgroundProperty = "background";
 
+    /**
+     * Property for the most bytes of image memory kept in the canvas pool, 0
+     * to create a new image for every request.
+     */
+    public static final String CanvasPoolSizeProperty = "canvasPoolSize";
+
     /** Flag to do graphics and text anti-aliasing on the map image. */
     protected boolean doAntiAliasing = false;
 
+    /**
+     * The pool of image canvases reused between requests, created when the
+     * first image is rendered unless one is set with setCanvasPool().
+     */
+    protected CanvasPool canvasPool;
+
+    /**
+     * The most bytes of image memory kept in a canvas pool created by this
+     * ImageServer, 0 if a new image is created for each request.
+     */
+    protected long canvasPoolSize = CanvasPool.DEFAULT_MAX_BYTES;
+
     /**
      * A place to hold on to a property prefix in case one is used. Useful for
      * ImageServer properties files where more than one image server is defined.
@@ -344,19 +369,76 @@ public class ImageServer
      * @return a byte[] representing the formatted image.
      */
     public byte[] createImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers, Paint background) {
+        ImageFormatter imageFormatter = renderImage(proj, showLayers, background);
+        if (imageFormatter == null) {
+            return new byte[0];
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            return getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+    }
+
+    /**
+     * Create an image like createImage(Projection, int, int, List, Paint)
+     * does, but write the formatted image to an OutputStream as it is encoded
+     * instead of returning it in a byte[]. Large images don't have to be held
+     * in memory twice, once as pixels and once encoded. Nothing is written if
+     * the image can't be created.
+     * 
+     * @param proj projection of map.
+     * @param scaledWidth scaled pixel width of final image. If you don't want
+     *        it scaled, use -1.
+     * @param scaledHeight scaled pixel height of final image. If you don't want
+     *        it scaled, use -1.
+     * @param showLayers Layer marker names reflecting the layers that should be
+     *        part of this image.
+     * @param background the Paint to be used for the background of this image.
+     * @param out the OutputStream to write the formatted image to, not closed.
+     * @return true if an image was written.
+     */
+    public boolean writeImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers, Paint background, OutputStream out)
+            throws IOException {
+        ImageFormatter imageFormatter = renderImage(proj, showLayers, background);
+        if (imageFormatter == null) {
+            return false;
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            writeFormattedImage(imageFormatter, scaledWidth, scaledHeight, out);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+        return true;
+    }
+
+    /**
+     * Render the layers named in showLayers into the image of a new
+     * ImageFormatter.
+     * 
+     * @param proj projection of map.
+     * @param showLayers Layer marker names reflecting the layers that should be
+     *        part of this image.
+     * @param background the Paint to be used for the background of this image.
+     * @return the ImageFormatter holding the image, or null if it can't be
+     *         created.
+     */
+    protected ImageFormatter renderImage(Projection proj, List<String> showLayers, Paint background) {
 
         logger.fine("using the new ProjectionPainter interface!  createImage with layer string array.");
 
         if (formatter == null) {
             logger.warning("no formatter set! Can't create image.");
-            return new byte[0];
+            return null;
         }
 
         ImageFormatter imageFormatter = formatter.makeClone();
         java.awt.Graphics graphics = createGraphics(imageFormatter, proj.getWidth(), proj.getHeight());
 
         if (graphics == null) {
-            return new byte[0];
+            return null;
         }
 
         ((Proj) proj).drawBackground((Graphics2D) graphics, background);
@@ -389,9 +471,8 @@ public class ImageServer
             logger.fine("no layers available for image");
         }
 
-        byte[] formattedImage = getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
         graphics.dispose();
-        return formattedImage;
+        return imageFormatter;
     }
 
     /**
@@ -407,19 +488,71 @@ public class ImageServer
      * @return a byte[] representing the formatted image.
      */
     public byte[] createImageFromLayers(Projection proj, int scaledWidth, int scaledHeight, List<Layer> layers, Paint background) {
+        ImageFormatter imageFormatter = renderImageFromLayers(proj, layers, background);
+        if (imageFormatter == null) {
+            return new byte[0];
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            return getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+    }
+
+    /**
+     * Create an image from a set of layers, writing the formatted image to an
+     * OutputStream as it is encoded. Nothing is written if the image can't be
+     * created.
+     * 
+     * @param proj projection of map.
+     * @param scaledWidth scaled pixel width of final image. If you don't want
+     *        it scaled, use -1.
+     * @param scaledHeight scaled pixel height of final image. If you don't want
+     *        it scaled, use -1.
+     * @param layers A set of layers to paint into the image.
+     * @param background the Paint to be used for the background of this image.
+     * @param out the OutputStream to write the formatted image to, not closed.
+     * @return true if an image was written.
+     */
+    public boolean writeImageFromLayers(Projection proj, int scaledWidth, int scaledHeight, List<Layer> layers, Paint background, OutputStream out)
+            throws IOException {
+        ImageFormatter imageFormatter = renderImageFromLayers(proj, layers, background);
+        if (imageFormatter == null) {
+            return false;
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            writeFormattedImage(imageFormatter, scaledWidth, scaledHeight, out);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+        return true;
+    }
+
+    /**
+     * Render a set of layers into the image of a new ImageFormatter.
+     * 
+     * @param proj projection of map.
+     * @param layers A set of layers to paint into the image.
+     * @param background the Paint to be used for the background of this image.
+     * @return the ImageFormatter holding the image, or null if it can't be
+     *         created.
+     */
+    protected ImageFormatter renderImageFromLayers(Projection proj, List<Layer> layers, Paint background) {
 
         logger.fine("using the new ProjectionPainter interface!  createImage with layer list.");
 
         if (formatter == null) {
             logger.warning("no formatter set! Can't create image.");
-            return new byte[0];
+            return null;
         }
 
         ImageFormatter imageFormatter = formatter.makeClone();
         java.awt.Graphics graphics = createGraphics(imageFormatter, proj.getWidth(), proj.getHeight());
 
         if (graphics == null) {
-            return new byte[0];
+            return null;
         }
 
         ((Proj) proj).drawBackground((Graphics2D) graphics, background);
@@ -441,9 +574,8 @@ public class ImageServer
             logger.fine("no layers available for image");
         }
 
-        byte[] formattedImage = getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
         graphics.dispose();
-        return formattedImage;
+        return imageFormatter;
     }
 
     /**
@@ -504,12 +636,70 @@ public class ImageServer
      * @return a byte[] representing the formatted image.
      */
     public byte[] createImage(Projection proj, int scaledWidth, int scaledHeight, int includedLayerMask, Paint background) {
+        ImageFormatter imageFormatter = renderImage(proj, includedLayerMask, background);
+        if (imageFormatter == null) {
+            return new byte[0];
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            return getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+    }
+
+    /**
+     * Create an image like createImage(Projection, int, int, int, Paint) does,
+     * but write the formatted image to an OutputStream as it is encoded.
+     * Nothing is written if the image can't be created.
+     * 
+     * @param proj projection of map.
+     * @param scaledWidth scaled pixel width of final image. If you don't want
+     *        it scaled, use -1.
+     * @param scaledHeight scaled pixel height of final image. If you don't want
+     *        it scaled, use -1.
+     * @param includedLayerMask a mask signifying which of the ImageServer
+     *        layers to use in the image.
+     * @param background the background Paint to use for the image, behind the
+     *        layers.
+     * @param out the OutputStream to write the formatted image to, not closed.
+     * @return true if an image was written.
+     */
+    public boolean writeImage(Projection proj, int scaledWidth, int scaledHeight, int includedLayerMask, Paint background, OutputStream out)
+            throws IOException {
+        ImageFormatter imageFormatter = renderImage(proj, includedLayerMask, background);
+        if (imageFormatter == null) {
+            return false;
+        }
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            writeFormattedImage(imageFormatter, scaledWidth, scaledHeight, out);
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
+        return true;
+    }
+
+    /**
+     * Render the layers selected by the mask into the image of a new
+     * ImageFormatter.
+     * 
+     * @param proj projection of map.
+     * @param includedLayerMask a mask signifying which of the ImageServer
+     *        layers to use in the image. Bit 1 of the mask refers to layer[0],
+     *        etc.
+     * @param background the background Paint to use for the image, behind the
+     *        layers.
+     * @return the ImageFormatter holding the image, or null if it can't be
+     *         created.
+     */
+    protected ImageFormatter renderImage(Projection proj, int includedLayerMask, Paint background) {
 
         logger.fine("using the new ProjectionPainter interface!  createImage with layer mask.");
 
         if (formatter == null) {
             logger.warning("no formatter set! Can't create image.");
-            return new byte[0];
+            return null;
         }
 
         ImageFormatter imageFormatter = formatter.makeClone();
@@ -517,7 +707,7 @@ public class ImageServer
         Graphics graphics = createGraphics(imageFormatter, proj.getWidth(), proj.getHeight());
 
         if (graphics == null) {
-            return new byte[0];
+            return null;
         }
 
         ((Proj) proj).drawBackground((Graphics2D) graphics, background);
@@ -546,9 +736,8 @@ public class ImageServer
             }
         }
 
-        byte[] formattedImage = getFormattedImage(imageFormatter, scaledWidth, scaledHeight);
         graphics.dispose();
-        return formattedImage;
+        return imageFormatter;
     }
 
     /**
@@ -568,6 +757,10 @@ public class ImageServer
             return null;
         }
 
+        if (formatter instanceof AbstractImageFormatter) {
+            ((AbstractImageFormatter) formatter).setCanvasPool(getCanvasPool());
+        }
+
         graphics = formatter.getGraphics(width, height, getTransparent());
 
         if (graphics == null) {
@@ -588,6 +781,50 @@ public class ImageServer
         return graphics;
     }
 
+    /**
+     * Return the canvas an image was drawn into to the canvas pool, once the
+     * image has been formatted and nothing refers to it.
+     * 
+     * @param formatter the ImageFormatter the canvas was used by, let go of
+     *        its image.
+     * @param canvas the image created for the formatter by createGraphics.
+     */
+    protected void releaseCanvas(ImageFormatter formatter, BufferedImage canvas) {
+        formatter.setBufferedImage(null);
+        CanvasPool pool = getCanvasPool();
+        if (pool != null) {
+            pool.release(canvas);
+        }
+    }
+
+    /**
+     * Get the pool of image canvases, creating it with the canvasPoolSize if
+     * one hasn't been set.
+     * 
+     * @return the CanvasPool, or null if canvases aren't pooled.
+     */
+    public synchronized CanvasPool getCanvasPool() {
+        if (canvasPool == null && canvasPoolSize > 0) {
+            canvasPool = new CanvasPool(canvasPoolSize);
+        }
+        return canvasPool;
+    }
+
+    /**
+     * Set the pool of image canvases. Servers creating ImageServers for each
+     * request, or keeping several of them, should share one pool between
+     * them, since each pool holds on to its own image memory.
+     * 
+     * @param canvasPool the CanvasPool, or null to create a new image for
+     *        every request.
+     */
+    public synchronized void setCanvasPool(CanvasPool canvasPool) {
+        this.canvasPool = canvasPool;
+        if (canvasPool == null) {
+            canvasPoolSize = 0;
+        }
+    }
+
     /**
      * Format the image that is contained in the ImageFormatter, scaling to a
      * particular size if the scaledWidth and scaledHeight are greater than 0.
@@ -611,6 +848,33 @@ public class ImageServer
         return formattedImage;
     }
 
+    /**
+     * Write the image that is contained in the ImageFormatter to an
+     * OutputStream, scaling to a particular size if the scaledWidth and
+     * scaledHeight are greater than 0. AbstractImageFormatters encode straight
+     * into the stream, other ImageFormatters are asked for the image bytes.
+     */
+    protected void writeFormattedImage(ImageFormatter formatter, int scaledWidth, int scaledHeight, OutputStream out)
+            throws IOException {
+
+        if (!(formatter instanceof AbstractImageFormatter)) {
+            out.write(getFormattedImage(formatter, scaledWidth, scaledHeight));
+            return;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("ready to write formatted image.");
+        }
+
+        AbstractImageFormatter aif = (AbstractImageFormatter) formatter;
+        if (scaledWidth > 0 && scaledHeight > 0) {
+            aif.writeScaledImageBytes(scaledWidth, scaledHeight, out);
+        } else {
+            logger.fine("ImageServer: using full scale image (unscaled).");
+            aif.writeImageBytes(out);
+        }
+    }
+
     /**
      * Set the layers and image type in the properties.
      */
@@ -638,6 +902,13 @@ public class ImageServer
         formatter = getFormatters(props);
         doAntiAliasing = PropUtils.booleanFromProperties(props, prefix + AntiAliasingProperty, false);
 
+        synchronized (this) {
+            canvasPoolSize = PropUtils.longFromProperties(props, prefix + CanvasPoolSizeProperty, CanvasPool.DEFAULT_MAX_BYTES);
+            if (canvasPoolSize <= 0) {
+                canvasPool = null;
+            }
+        }
+
         background = getBackground(props, prefix + BackgroundProperty);
     }
 
@@ -724,6 +995,8 @@ public class ImageServer
         props.put(prefix + ImageFormattersProperty, buf.toString().trim());
 
         props.put(prefix + AntiAliasingProperty, Boolean.toString(doAntiAliasing));
+        CanvasPool pool = getCanvasPool();
+        props.put(prefix + CanvasPoolSizeProperty, Long.toString(pool == null ? 0 : pool.getMaxBytes()));
 
         if (background instanceof Color) {
             String colorString = Integer.toHexString(((Color) background).getRGB());
@@ -744,6 +1017,7 @@ public class ImageServer
         list.put(ImageServerLayersProperty, "A list of marker names (space-separated) for layer definitions");
         list.put(ImageFormattersProperty, "A list of marker names (space-separated) for ImageFormatter definitions");
         list.put(AntiAliasingProperty, "Whether to use anti-aliasing for the image");
+        list.put(CanvasPoolSizeProperty, "The most bytes of image memory to keep for reuse, 0 for none");
         return list;
     }
 
@@ -1155,13 +1429,15 @@ public class ImageServer
             logger.fine("creating image with projection " + proj);
         }
 
-        byte[] imageBytes = is.createImage(proj);
         String finalOutputPath = outputPath + appendix;
-        FileOutputStream fos = new FileOutputStream(finalOutputPath);
+        OutputStream fos = new BufferedOutputStream(new FileOutputStream(finalOutputPath));
 
-        fos.write(imageBytes);
-        fos.flush();
-        fos.close();
+        try {
+            is.writeImage(proj, -1, -1, 0xFFFFFFFF, is.getBackground(), fos);
+            fos.flush();
+        } finally {
+            fos.close();
+        }
 
         return finalOutputPath;
     }
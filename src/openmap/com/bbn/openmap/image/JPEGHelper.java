@@ -27,6 +27,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.util.Iterator;
@@ -65,6 +66,22 @@ public class JPEGHelper {
             throws IOException {
 
         ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encodeJPEG(image, quality, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Write the JPEG encoded image to an OutputStream as it is encoded. The
+     * OutputStream is not closed.
+     *
+     * @param image the image to encode
+     * @param quality the JPEG quality factor to use in encoding
+     * @param out the OutputStream to write the encoded image to
+     * @exception IOException an error occurred in encoding the image
+     */
+    public static void encodeJPEG(BufferedImage image, float quality,
+                                  OutputStream out) throws IOException {
+
         ImageOutputStream iosout = new MemoryCacheImageOutputStream(out);
 
         if (Debug.debugging("jpeghelper")) {
@@ -87,14 +104,16 @@ public class JPEGHelper {
         }
 
         IIOImage iioi = new IIOImage(image, null, null);
-        writer.write(null, iioi, iwp);
-
-        writer.dispose();
+        try {
+            writer.write(null, iioi, iwp);
+            iosout.flush();
+        } finally {
+            writer.dispose();
+            iosout.close();
+        }
         if (Debug.debugging("jpeghelper")) {
             Debug.output("encoded?");
         }
-
-        return out.toByteArray();
     }
 
     /**
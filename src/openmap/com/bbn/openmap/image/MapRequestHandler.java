@@ -25,7 +25,10 @@ package com.bbn.openmap.image;
 import java.awt.Paint;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.net.URLDecoder;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Vector;
 
@@ -118,8 +121,21 @@ public class MapRequestHandler extends ImageServer implements
         setProperties(prefix, props);
     }
 
-    public void setProperties(String prefix, Properties props) {
-        super.setProperties(prefix, props);
+    /**
+     * Create a MapRequestHandler that reuses any layers in the
+     * instantiatedLayers map that have the same marker names as the layers in
+     * the properties, and adds the layers it has to create to the map.
+     * 
+     * @see MapRequestHandlerPool
+     */
+    public MapRequestHandler(String prefix, Properties props,
+            Map<String, Layer> instantiatedLayers) throws IOException {
+        setProperties(prefix, props, instantiatedLayers);
+    }
+
+    public void setProperties(String prefix, Properties props,
+                              Map<String, Layer> instantiatedLayers) {
+        super.setProperties(prefix, props, instantiatedLayers);
 
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
@@ -344,6 +360,29 @@ public class MapRequestHandler extends ImageServer implements
         Paint bgPaint = ImageServerUtils.getBackground(requestProperties,
                 getBackground());
 
+        setRequestFormatter(requestProperties, projection);
+
+        List<String> layers = getRequestLayers(requestProperties);
+        if (layers != null) {
+            return createImage(projection, -1, -1, layers, bgPaint);
+        } else {
+            return createImage(projection,
+                    -1,
+                    -1,
+                    calculateVisibleLayerMask(),
+                    bgPaint);
+        }
+    }
+
+    /**
+     * Set the formatter for the FORMAT of a map request, the default formatter
+     * is used if the request doesn't have one.
+     * 
+     * @param requestProperties the request in properties format.
+     * @param projection the projection of the request, for debugging output.
+     */
+    protected void setRequestFormatter(Properties requestProperties,
+                                       Projection projection) {
         boolean formatFound = false;
 
         String format = requestProperties.getProperty(FORMAT);
@@ -360,8 +399,16 @@ public class MapRequestHandler extends ImageServer implements
             
             Debug.output("Creating image with projection: " + projection);
         }
+    }
 
-        byte[] image;
+    /**
+     * Get the layer marker names for the image of a map request.
+     * 
+     * @param requestProperties the request in properties format.
+     * @return List of layer names, or null if the visibility of the layers
+     *         should be used to choose them.
+     */
+    protected List<String> getRequestLayers(Properties requestProperties) {
 
         // We need to think about using the layer mask, parsing it
         // intelligently, and not using it if it's a little freaky.
@@ -392,7 +439,7 @@ public class MapRequestHandler extends ImageServer implements
                 Debug.output("MRH.handleMapRequest: requested layers >> "
                         + layers);
             }
-            image = createImage(projection, -1, -1, layers, bgPaint);
+            return layers;
         } else {
             // if LAYERS property is not specified
             // Check default layers or if visibility should be used to
@@ -402,35 +449,33 @@ public class MapRequestHandler extends ImageServer implements
                 if (Debug.debugging("imageserver")) {
                     Debug.output("MRH.handleMapRequest: Using visibility to determine layers");
                 }
-                image = createImage(projection,
-                        -1,
-                        -1,
-                        calculateVisibleLayerMask(),
-                        bgPaint);
+                return null;
             } else {
                 Vector<String> layers = PropUtils.parseMarkers(defaultLayers, " ");
                 if (Debug.debugging("imageserver")) {
                     Debug.output("MRH.handleMapRequest: requested layers >> "
                             + layers + " out of " + getAllLayerNames());
                 }
-                image = createImage(projection, -1, -1, layers, bgPaint);
+                return layers;
             }
         }
-        return image;
     }
 
     /**
      * Handle a Map Request. Appends a content type to the output stream which
-     * may mess things up for servlets.
+     * may mess things up for servlets. The image is written to the stream as
+     * it is encoded, after a header without a Content-Length, so the
+     * connection has to be closed after the response.
      */
     public void handleMapRequest(Properties requestProperties, OutputStream out)
             throws IOException, MapRequestFormatException {
 
-        byte[] image = handleMapRequest(requestProperties);
-
-        if (Debug.debugging("imageserver")) {
-            Debug.output("MRH: have completed image, size " + image.length);
-        }
+        Proj projection = ImageServerUtils.createOMProjection(requestProperties,
+                defaultProjection);
+        Paint bgPaint = ImageServerUtils.getBackground(requestProperties,
+                getBackground());
+        setRequestFormatter(requestProperties, projection);
+        List<String> layers = getRequestLayers(requestProperties);
 
         String contentType = getFormatterContentType(getFormatter());
 
@@ -440,7 +485,23 @@ public class MapRequestHandler extends ImageServer implements
 
         Debug.message("imageserver", "MRH: have type = " + contentType);
 
-        HttpConnection.writeHttpResponse(out, contentType, image);
+        OutputStreamWriter osw = new OutputStreamWriter(out);
+        HttpConnection.writeHttpResponseHeader(osw, contentType);
+        osw.flush();
+
+        if (layers != null) {
+            writeImage(projection, -1, -1, layers, bgPaint, out);
+        } else {
+            writeImage(projection,
+                    -1,
+                    -1,
+                    calculateVisibleLayerMask(),
+                    bgPaint,
+                    out);
+        }
+        out.flush();
+
+        Debug.message("imageserver", "MRH: have completed image");
     }
 
     /**
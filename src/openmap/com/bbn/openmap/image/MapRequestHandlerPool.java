@@ -0,0 +1,276 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.image;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * The MapRequestHandlerPool lets independent map requests render at the same
+ * time. A MapRequestHandler renders one request at a time, because its layers
+ * hold on to the projection and the graphics they created for the last
+ * request, and the OMGraphicHandlerLayers serialize renderDataForProjection().
+ * The pool holds a number of MapRequestHandlers, the workers, created from the
+ * same properties, and each worker has its own layer instances. A request is
+ * handed to an idle worker, and waits for one if they are all busy. If more
+ * requests are waiting than the queue limit allows, the request is turned away
+ * with a RenderQueueFullException instead of piling up.
+ * <P>
+ * Each worker loads its own copy of the layer data, so memory use grows with
+ * the pool size. Layers that don't keep any projection state between calls to
+ * renderDataForProjection() (or that are thread-safe about it) can be listed
+ * in the sharedLayers property, and a single instance of those layers is
+ * shared by all of the workers.
+ * <P>
+ * The properties are the ones used for the MapRequestHandler, with these
+ * additions:
+ * 
+ * <pre>
+ * 
+ *  # Number of workers, defaults to the number of processors.
+ *  renderPoolSize=4
+ *  # Number of requests that can wait for a worker, defaults to 4 times
+ *  # the pool size. 0 turns away any request that arrives when all the
+ *  # workers are busy.
+ *  renderQueueLimit=16
+ *  # Marker names of layers that can be shared by the workers.
+ *  sharedLayers=graticule
+ * 
+ * </pre>
+ * 
+ * @see MapRequestHandler
+ * @see SimpleHttpImageServer
+ */
+public class MapRequestHandlerPool {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.image.MapRequestHandlerPool");
+
+    /** Property for the number of workers in the pool. */
+    public final static String RenderPoolSizeProperty = "renderPoolSize";
+    /** Property for the number of requests that can wait for a worker. */
+    public final static String RenderQueueLimitProperty = "renderQueueLimit";
+    /**
+     * Property for the space separated marker names of layers that can be
+     * shared by the workers.
+     */
+    public final static String SharedLayersProperty = "sharedLayers";
+
+    /** All of the workers. */
+    protected List<MapRequestHandler> handlers;
+    /** The workers that aren't handling a request. */
+    protected BlockingQueue<MapRequestHandler> idleHandlers;
+    /**
+     * Permits for the requests being rendered or waiting, one for each worker
+     * plus the queue limit.
+     */
+    protected Semaphore admission;
+    protected int queueLimit;
+
+    /**
+     * Create a pool from unscoped properties.
+     */
+    public MapRequestHandlerPool(Properties props) throws IOException {
+        this(null, props);
+    }
+
+    /**
+     * Create a pool, with the pool size and queue limit set in the
+     * properties.
+     */
+    public MapRequestHandlerPool(String prefix, Properties props)
+            throws IOException {
+        this(prefix, props, getPoolSize(prefix, props), getQueueLimit(prefix,
+                props));
+    }
+
+    /**
+     * Create a pool.
+     * 
+     * @param prefix the property prefix for the MapRequestHandlers.
+     * @param props the MapRequestHandler properties.
+     * @param poolSize the number of workers.
+     * @param queueLimit the number of requests that can wait for a worker.
+     */
+    public MapRequestHandlerPool(String prefix, Properties props, int poolSize,
+            int queueLimit) throws IOException {
+
+        poolSize = Math.max(1, poolSize);
+        this.queueLimit = Math.max(0, queueLimit);
+
+        String sharedValue = props.getProperty(PropUtils.getScopedPropertyPrefix(prefix)
+                + SharedLayersProperty);
+        Vector<String> sharedLayers = PropUtils.parseSpacedMarkers(sharedValue);
+        Map<String, Layer> instantiatedLayers = new HashMap<String, Layer>();
+
+        CanvasPool canvasPool = null;
+        handlers = new ArrayList<MapRequestHandler>(poolSize);
+        idleHandlers = new ArrayBlockingQueue<MapRequestHandler>(poolSize);
+
+        for (int i = 0; i < poolSize; i++) {
+            MapRequestHandler handler = createHandler(prefix,
+                    props,
+                    instantiatedLayers);
+            if (i == 0) {
+                // The first worker created all of the layers, the others
+                // only get to reuse the shared ones.
+                instantiatedLayers.keySet().retainAll(sharedLayers);
+                canvasPool = handler.getCanvasPool();
+            } else {
+                // One canvas pool for all of the workers, instead of one
+                // holding on to image memory for each.
+                handler.setCanvasPool(canvasPool);
+            }
+            handlers.add(handler);
+            idleHandlers.add(handler);
+        }
+
+        admission = new Semaphore(poolSize + this.queueLimit, true);
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("created " + poolSize + " workers, queue limit "
+                    + this.queueLimit + ", shared layers "
+                    + instantiatedLayers.keySet());
+        }
+    }
+
+    protected static int getPoolSize(String prefix, Properties props) {
+        return PropUtils.intFromProperties(props,
+                PropUtils.getScopedPropertyPrefix(prefix)
+                        + RenderPoolSizeProperty,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    protected static int getQueueLimit(String prefix, Properties props) {
+        return PropUtils.intFromProperties(props,
+                PropUtils.getScopedPropertyPrefix(prefix)
+                        + RenderQueueLimitProperty,
+                4 * Math.max(1, getPoolSize(prefix, props)));
+    }
+
+    /**
+     * Create one of the workers. Override to create MapRequestHandler
+     * subclasses. The instantiatedLayers map has to be passed to the
+     * MapRequestHandler so shared layers are reused.
+     */
+    protected MapRequestHandler createHandler(String prefix, Properties props,
+                                              Map<String, Layer> instantiatedLayers)
+            throws IOException {
+        return new MapRequestHandler(prefix, props, instantiatedLayers);
+    }
+
+    /**
+     * Get an idle worker, waiting for one if they are all busy. The worker has
+     * to be given back with release() when the request is done.
+     * 
+     * @return MapRequestHandler that belongs to the caller until released.
+     * @throws RenderQueueFullException if too many requests are already
+     *         waiting.
+     * @throws InterruptedIOException if the thread is interrupted while
+     *         waiting.
+     */
+    public MapRequestHandler acquire() throws IOException {
+        if (!admission.tryAcquire()) {
+            throw new RenderQueueFullException("All " + handlers.size()
+                    + " map request workers are busy and " + queueLimit
+                    + " requests are waiting");
+        }
+
+        try {
+            return idleHandlers.take();
+        } catch (InterruptedException ie) {
+            admission.release();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for a map request worker");
+        }
+    }
+
+    /**
+     * Give a worker back to the pool.
+     */
+    public void release(MapRequestHandler handler) {
+        idleHandlers.add(handler);
+        admission.release();
+    }
+
+    /**
+     * Handle a request with an idle worker.
+     * 
+     * @see MapRequestHandler#handleRequest(String)
+     */
+    public byte[] handleRequest(String request) throws IOException,
+            MapRequestFormatException {
+        MapRequestHandler handler = acquire();
+        try {
+            return handler.handleRequest(request);
+        } finally {
+            release(handler);
+        }
+    }
+
+    /**
+     * Handle a request with an idle worker, writing the response to the
+     * OutputStream.
+     * 
+     * @see MapRequestHandler#handleRequest(String, OutputStream)
+     */
+    public void handleRequest(String request, OutputStream out)
+            throws IOException, MapRequestFormatException {
+        MapRequestHandler handler = acquire();
+        try {
+            handler.handleRequest(request, out);
+        } finally {
+            release(handler);
+        }
+    }
+
+    /**
+     * @return an unmodifiable list of all the workers, for configuring them.
+     *         Don't use them for requests directly.
+     */
+    public List<MapRequestHandler> getHandlers() {
+        return Collections.unmodifiableList(handlers);
+    }
+
+    public int getPoolSize() {
+        return handlers.size();
+    }
+
+    public int getQueueLimit() {
+        return queueLimit;
+    }
+
+    /**
+     * @return the number of requests being rendered or waiting for a worker.
+     */
+    public int getActiveCount() {
+        return handlers.size() + queueLimit - admission.availablePermits();
+    }
+}
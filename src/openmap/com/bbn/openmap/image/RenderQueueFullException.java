@@ -0,0 +1,40 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.image;
+
+import java.io.IOException;
+
+/**
+ * The RenderQueueFullException is thrown by the MapRequestHandlerPool when a
+ * request arrives and all of the workers are busy and the queue of waiting
+ * requests is full. The caller should tell the client to try again later.
+ * 
+ * @see MapRequestHandlerPool
+ */
+public class RenderQueueFullException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructs a <code>RenderQueueFullException</code>, saving a reference
+     * to the error message string <tt>s</tt> for later retrieval by the
+     * <tt>getMessage</tt> method.
+     * 
+     * @param s the detail message.
+     */
+    public RenderQueueFullException(String s) {
+        super(s);
+    }
+}
@@ -31,10 +31,12 @@ import java.util.Properties;
 import com.bbn.openmap.PropertyHandler;
 import com.bbn.openmap.util.ArgParser;
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.http.HttpConnection;
 import com.bbn.openmap.util.http.HttpRequestEvent;
 import com.bbn.openmap.util.http.HttpRequestListener;
 import com.bbn.openmap.util.http.HttpServer;
+import com.bbn.openmap.util.http.PooledHttpServer;
 
 /**
  * The SimpleHttpImageServer is an ImageServer extended into a simple
@@ -99,15 +101,55 @@ import com.bbn.openmap.util.http.HttpServer;
  * set of layers. This lets there be more layers available to the
  * client than would be sent by default (if the client doesn't specify
  * layers).
+ * <P>
+ * 
+ * Requests are handled one at a time by a single MapRequestHandler unless the
+ * renderPoolSize property is set, in which case a MapRequestHandlerPool is
+ * used to render that many requests at the same time. The renderQueueLimit
+ * and sharedLayers properties described in the MapRequestHandlerPool
+ * documentation can be used with it.
+ * <P>
+ * 
+ * Connections are handled by a PooledHttpServer, which keeps connections open
+ * for more requests. These properties can be used to configure it:
+ * 
+ * <pre>
+ * 
+ *  # Threads handling connections (32)
+ *  httpMaxThreads=32
+ *  # Open connections allowed, others get a 503 response (256)
+ *  httpMaxConnections=256
+ *  # Milliseconds an idle connection is kept open (5000)
+ *  httpKeepAliveTimeout=5000
+ *  # Requests handled on one connection before it is closed (100)
+ *  httpMaxKeepAliveRequests=100
+ *  # Idle connections kept open at one time, less than the threads (8)
+ *  httpMaxIdleConnections=8
+ * 
+ * </pre>
  * 
  * @see ImageServer
+ * @see MapRequestHandlerPool
  */
 public class SimpleHttpImageServer implements HttpRequestListener {
 
     protected HttpServer httpd;
     protected MapRequestHandler iServer;
+    /**
+     * Handles the requests instead of iServer when the renderPoolSize
+     * property is set.
+     */
+    protected MapRequestHandlerPool iServerPool;
     public final static String ErrorMessage = "OpenMap SimpleHttpImageServer:  Image request not understood.  Please send request in this format:\n\nhttp://server_address/openmap?REQUEST=MAP&SCALE=XXXXXXX&LAT=y&LON=x&...\n\nArguments:\nLAT=latitude\nLON=longitude\nSCALE=1:scale\nPROJTYPE=projection ID\nHEIGHT=pixel height\nWIDTH=pixel width\n\nArguments may be in any order after the '?'";
 
+    public final static String HttpMaxThreadsProperty = "httpMaxThreads";
+    public final static String HttpMaxConnectionsProperty = "httpMaxConnections";
+    public final static String HttpKeepAliveTimeoutProperty = "httpKeepAliveTimeout";
+    public final static String HttpMaxKeepAliveRequestsProperty = "httpMaxKeepAliveRequests";
+    public final static String HttpMaxIdleConnectionsProperty = "httpMaxIdleConnections";
+
+    public final static String BusyMessage = "OpenMap SimpleHttpImageServer:  The server is busy, please try again later.";
+
     public final static char queryChar = '?';
 
     public SimpleHttpImageServer(Properties props) throws IOException {
@@ -116,10 +158,41 @@ public class SimpleHttpImageServer implements HttpRequestListener {
 
     public SimpleHttpImageServer(int port, boolean asDeamon, Properties props)
             throws IOException {
-        httpd = new HttpServer(port, asDeamon);
+        httpd = createHttpServer(port, asDeamon, props);
         httpd.addHttpRequestListener(this);
 
-        iServer = new MapRequestHandler(props);
+        if (props.getProperty(MapRequestHandlerPool.RenderPoolSizeProperty) != null) {
+            iServerPool = new MapRequestHandlerPool(props);
+            iServer = iServerPool.getHandlers().get(0);
+        } else {
+            iServer = new MapRequestHandler(props);
+        }
+    }
+
+    /**
+     * Create the HttpServer that listens for requests, a PooledHttpServer
+     * configured from the properties.
+     */
+    protected HttpServer createHttpServer(int port, boolean asDeamon,
+                                          Properties props)
+            throws IOException {
+        PooledHttpServer server = new PooledHttpServer(port, asDeamon);
+        server.setMaxThreads(PropUtils.intFromProperties(props,
+                HttpMaxThreadsProperty,
+                server.getMaxThreads()));
+        server.setMaxConnections(PropUtils.intFromProperties(props,
+                HttpMaxConnectionsProperty,
+                server.getMaxConnections()));
+        server.setKeepAliveTimeout(PropUtils.intFromProperties(props,
+                HttpKeepAliveTimeoutProperty,
+                server.getKeepAliveTimeout()));
+        server.setMaxKeepAliveRequests(PropUtils.intFromProperties(props,
+                HttpMaxKeepAliveRequestsProperty,
+                server.getMaxKeepAliveRequests()));
+        server.setMaxIdleConnections(PropUtils.intFromProperties(props,
+                HttpMaxIdleConnectionsProperty,
+                server.getMaxIdleConnections()));
+        return server;
     }
 
     public void start() {
@@ -127,7 +200,8 @@ public class SimpleHttpImageServer implements HttpRequestListener {
     }
     
     /**
-     * Get the MapRequestHandler that is handling map image requests.
+     * Get the MapRequestHandler that is handling map image requests. If a
+     * MapRequestHandlerPool is being used, this is the first of its workers.
      */
     public MapRequestHandler getMapRequestHandler() {
         return iServer;
@@ -136,10 +210,31 @@ public class SimpleHttpImageServer implements HttpRequestListener {
     /**
      * If you want to configure the MapRequestHandler and set it in
      * the SHIS, you can use this method. This will cause the SHIS to
-     * assume that the MapRequestHandler is ready to go.
+     * assume that the MapRequestHandler is ready to go, and stop using the
+     * MapRequestHandlerPool if one was being used.
      */
     public void setMapRequestHandler(MapRequestHandler mrh) {
         iServer = mrh;
+        iServerPool = null;
+    }
+
+    /**
+     * Get the MapRequestHandlerPool handling map image requests, null if
+     * requests are handled by a single MapRequestHandler.
+     */
+    public MapRequestHandlerPool getMapRequestHandlerPool() {
+        return iServerPool;
+    }
+
+    /**
+     * Set a MapRequestHandlerPool to handle map image requests, or null to go
+     * back to the single MapRequestHandler.
+     */
+    public void setMapRequestHandlerPool(MapRequestHandlerPool pool) {
+        iServerPool = pool;
+        if (pool != null) {
+            iServer = pool.getHandlers().get(0);
+        }
     }
 
     /**
@@ -167,7 +262,17 @@ public class SimpleHttpImageServer implements HttpRequestListener {
         }
 
         try {
-            iServer.handleRequest(request, e.getOutputStream());
+            MapRequestHandlerPool pool = iServerPool;
+            if (pool != null) {
+                pool.handleRequest(request, e.getOutputStream());
+            } else {
+                iServer.handleRequest(request, e.getOutputStream());
+            }
+        } catch (RenderQueueFullException rqfe) {
+            Debug.message("shis", "SHIS: " + rqfe.getMessage());
+            HttpConnection.writeHttpResponse(e.getOutputStream(),
+                    HttpConnection.CONTENT_PLAIN,
+                    BusyMessage);
         } catch (IOException ioe) {
             Debug.error("SHIS: caught IOException - \n" + ioe.getMessage());
         } catch (MapRequestFormatException exception) {
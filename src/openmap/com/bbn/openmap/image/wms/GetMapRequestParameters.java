@@ -36,6 +36,12 @@ class GetMapRequestParameters extends WmsRequestParameters implements FormatRequ
 	 */
 	public final List<String> layerNames = new ArrayList<String>();
 
+	/**
+	 * The style name for each of the layer names, an empty string for the
+	 * default style.
+	 */
+	public final List<String> styleNames = new ArrayList<String>();
+
 	/**
 	 * All top level layer names for each of the layer names. So, if the request
 	 * has two sub level layer names with the same top level layer name, this
@@ -0,0 +1,615 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.image.wms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * A cache of rendered GetMap responses for the WmsRequestHandler. Tiled WMS
+ * clients ask for the same BBOX, WIDTH, HEIGHT, LAYERS, STYLES and FORMAT
+ * combinations over and over, and the cached image bytes can be sent back
+ * without rendering the layers again.
+ * <P>
+ * 
+ * Responses are kept in memory, and the least recently used ones are dropped
+ * when the memory size limit is reached. If a cache directory is set,
+ * responses are also written there, so they survive memory eviction and
+ * restarts, and the least recently used files are deleted when the disk size
+ * limit is reached.
+ * <P>
+ * 
+ * Each response has an ETag made from a digest of the image bytes, so clients
+ * sending If-None-Match can get a 304 (Not Modified) instead of the image.
+ * <P>
+ * 
+ * The cache doesn't know when layer data changes. Call invalidateLayer() with
+ * the WMS layer name when a layer's data changes, or invalidateAll(), to get
+ * fresh images rendered. Images that were being rendered when the cache was
+ * invalidated aren't kept, if the renderer passes the getGeneration() from
+ * before rendering to put().
+ * <P>
+ * 
+ * Properties, created with createFromProperties():
+ * 
+ * <pre>
+ * 
+ *  # Bytes of image data kept in memory, the cache is off if neither this nor
+ *  # the cacheDir property is set.
+ *  openmap.wms.cacheMemorySize=33554432
+ *  # Directory for cached responses, optional.
+ *  openmap.wms.cacheDir=/var/cache/openmap-wms
+ *  # Bytes of image data kept in the cache directory (268435456).
+ *  openmap.wms.cacheDiskSize=268435456
+ * 
+ * </pre>
+ */
+public class GetMapResponseCache {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.image.wms.GetMapResponseCache");
+
+    public static final String CacheMemorySizeProperty = "cacheMemorySize";
+    public static final String CacheDirProperty = "cacheDir";
+    public static final String CacheDiskSizeProperty = "cacheDiskSize";
+
+    public static final long DEFAULT_MEMORY_SIZE = 32L * 1024 * 1024;
+    public static final long DEFAULT_DISK_SIZE = 256L * 1024 * 1024;
+
+    /** File name extension of cached responses in the cache directory. */
+    public static final String FILE_EXTENSION = ".wmc";
+
+    protected long maxMemorySize;
+    protected long memorySize;
+    /** Memory tier, in least recently used order. */
+    protected LinkedHashMap<String, Response> memory = new LinkedHashMap<String, Response>(64, 0.75f, true);
+
+    protected File cacheDir;
+    protected long maxDiskSize;
+    protected long diskSize;
+    /** Disk tier index, in least recently used order. */
+    protected LinkedHashMap<String, DiskEntry> disk = new LinkedHashMap<String, DiskEntry>(64, 0.75f, true);
+
+    protected long hits;
+    protected long misses;
+
+    /** Counts the invalidations of the cache. */
+    protected long generation;
+    /** The generation of the last invalidateAll(). */
+    protected long allInvalidated;
+    /** The generation of the last invalidateLayer() for each layer name. */
+    protected Map<String, Long> layerInvalidated = new HashMap<String, Long>();
+
+    /**
+     * Create a memory only cache.
+     * 
+     * @param maxMemorySize bytes of image data to keep in memory.
+     */
+    public GetMapResponseCache(long maxMemorySize) {
+        this.maxMemorySize = Math.max(0, maxMemorySize);
+    }
+
+    /**
+     * Create a cache with a disk tier. Responses already in the cache
+     * directory are indexed and used.
+     * 
+     * @param maxMemorySize bytes of image data to keep in memory.
+     * @param cacheDir directory for cached responses, created if needed.
+     * @param maxDiskSize bytes of image data to keep in the directory.
+     */
+    public GetMapResponseCache(long maxMemorySize, File cacheDir, long maxDiskSize)
+            throws IOException {
+        this(maxMemorySize);
+        if (cacheDir != null) {
+            if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+                throw new IOException("Can't create WMS cache directory " + cacheDir);
+            }
+            this.cacheDir = cacheDir;
+            this.maxDiskSize = Math.max(0, maxDiskSize);
+            loadDiskIndex();
+        }
+    }
+
+    /**
+     * Create a cache from the openmap.wms.cache properties.
+     * 
+     * @return GetMapResponseCache, or null if the properties don't ask for a
+     *         cache.
+     */
+    public static GetMapResponseCache createFromProperties(Properties props) throws IOException {
+        String prefix = WmsRequestHandler.WMSPrefix;
+        String dir = props.getProperty(prefix + CacheDirProperty);
+        if (props.getProperty(prefix + CacheMemorySizeProperty) == null && dir == null) {
+            return null;
+        }
+
+        long memorySize = PropUtils.longFromProperties(props, prefix + CacheMemorySizeProperty, DEFAULT_MEMORY_SIZE);
+        if (dir == null) {
+            return new GetMapResponseCache(memorySize);
+        }
+        long diskSize = PropUtils.longFromProperties(props, prefix + CacheDiskSizeProperty, DEFAULT_DISK_SIZE);
+        return new GetMapResponseCache(memorySize, new File(dir), diskSize);
+    }
+
+    /**
+     * Get a cached response.
+     * 
+     * @param key the normalized request, from
+     *        WmsRequestHandler.getCacheKey().
+     * @return Response, or null if it isn't cached.
+     */
+    public Response get(String key) {
+        DiskEntry entry;
+        long readGeneration;
+        synchronized (this) {
+            Response response = memory.get(key);
+            if (response != null) {
+                hits++;
+                return response;
+            }
+            entry = disk.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            readGeneration = generation;
+        }
+
+        // Other requests don't wait for the file to be read.
+        Response response;
+        try {
+            response = read(entry.file, true);
+            if (response != null && !response.key.equals(key)) {
+                response = null;
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.FINE, "can't read " + entry.file, ioe);
+            response = null;
+        }
+
+        synchronized (this) {
+            if (disk.get(key) == entry) {
+                if (response == null) {
+                    removeDisk(key);
+                } else if (generation == readGeneration) {
+                    putMemory(response);
+                }
+            }
+            if (response != null) {
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Add a response to the cache. The response isn't checked against
+     * invalidations that happened while it was rendered, use put(Response,
+     * long) for that.
+     */
+    public void put(Response response) {
+        put(response, getGeneration());
+    }
+
+    /**
+     * Add a response to the cache, unless the cache was invalidated for any
+     * of its layers since the generation was taken.
+     * 
+     * @param response the rendered response.
+     * @param renderGeneration the getGeneration() from before the image was
+     *        rendered.
+     */
+    public void put(Response response, long renderGeneration) {
+        synchronized (this) {
+            if (isStale(response, renderGeneration)) {
+                return;
+            }
+            putMemory(response);
+        }
+
+        if (cacheDir == null || response.image.length > maxDiskSize) {
+            return;
+        }
+
+        // Other requests don't wait for the file to be written, it's
+        // written to a temporary file and only renamed into place here.
+        File tmp = null;
+        try {
+            tmp = File.createTempFile("wms", ".tmp", cacheDir);
+            write(response, tmp);
+            synchronized (this) {
+                if (isStale(response, renderGeneration)) {
+                    tmp.delete();
+                    return;
+                }
+                removeDisk(response.key);
+                File file = getFile(response.key);
+                if (!tmp.renameTo(file)) {
+                    throw new IOException("Can't rename " + tmp + " to " + file);
+                }
+                int size = (int) file.length();
+                disk.put(response.key, new DiskEntry(file, size, response.layerNames));
+                diskSize += size;
+                trimDisk();
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "can't cache " + response.key + " on disk", ioe);
+            if (tmp != null) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Get the current generation of the cache, to pass to put() with the
+     * response rendered after this call.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * @return true if the cache was invalidated for any of the layers of the
+     *         response after the generation.
+     */
+    protected boolean isStale(Response response, long renderGeneration) {
+        if (allInvalidated > renderGeneration) {
+            return true;
+        }
+        for (String layerName : response.layerNames) {
+            Long invalidated = layerInvalidated.get(layerName);
+            if (invalidated != null && invalidated.longValue() > renderGeneration) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected void putMemory(Response response) {
+        Response old = memory.remove(response.key);
+        if (old != null) {
+            memorySize -= old.image.length;
+        }
+        if (response.image.length > maxMemorySize) {
+            return;
+        }
+        memory.put(response.key, response);
+        memorySize += response.image.length;
+
+        Iterator<Response> it = memory.values().iterator();
+        while (memorySize > maxMemorySize && it.hasNext()) {
+            memorySize -= it.next().image.length;
+            it.remove();
+        }
+    }
+
+    protected void removeDisk(String key) {
+        DiskEntry entry = disk.remove(key);
+        if (entry != null) {
+            diskSize -= entry.size;
+            entry.file.delete();
+        }
+    }
+
+    protected void trimDisk() {
+        Iterator<DiskEntry> it = disk.values().iterator();
+        while (diskSize > maxDiskSize && it.hasNext()) {
+            DiskEntry entry = it.next();
+            diskSize -= entry.size;
+            entry.file.delete();
+            it.remove();
+        }
+    }
+
+    /**
+     * Drop the cached responses that use a layer. Call this when the data for
+     * the layer changes.
+     * 
+     * @param wmsLayerName the WMS name of the layer, as used in the LAYERS
+     *        parameter.
+     */
+    public synchronized void invalidateLayer(String wmsLayerName) {
+        layerInvalidated.put(wmsLayerName, Long.valueOf(++generation));
+
+        Iterator<Response> mit = memory.values().iterator();
+        while (mit.hasNext()) {
+            Response response = mit.next();
+            if (response.layerNames.contains(wmsLayerName)) {
+                memorySize -= response.image.length;
+                mit.remove();
+            }
+        }
+
+        Iterator<DiskEntry> dit = disk.values().iterator();
+        while (dit.hasNext()) {
+            DiskEntry entry = dit.next();
+            if (entry.layerNames.contains(wmsLayerName)) {
+                diskSize -= entry.size;
+                entry.file.delete();
+                dit.remove();
+            }
+        }
+    }
+
+    /**
+     * Drop all of the cached responses.
+     */
+    public synchronized void invalidateAll() {
+        allInvalidated = ++generation;
+        layerInvalidated.clear();
+        memory.clear();
+        memorySize = 0;
+        for (DiskEntry entry : disk.values()) {
+            entry.file.delete();
+        }
+        disk.clear();
+        diskSize = 0;
+    }
+
+    /**
+     * The cache file for a key, named with a digest of the key.
+     */
+    protected File getFile(String key) {
+        try {
+            return new File(cacheDir, toHex(MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8")))
+                    + FILE_EXTENSION);
+        } catch (Exception e) {
+            return new File(cacheDir, Integer.toHexString(key.hashCode()) + FILE_EXTENSION);
+        }
+    }
+
+    /**
+     * Index the responses in the cache directory, oldest first.
+     */
+    protected void loadDiskIndex() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long m1 = f1.lastModified();
+                long m2 = f2.lastModified();
+                return m1 < m2 ? -1 : (m1 == m2 ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                // Left over from a write that didn't finish.
+                file.delete();
+                continue;
+            }
+            if (!file.getName().endsWith(FILE_EXTENSION)) {
+                continue;
+            }
+            try {
+                Response header = read(file, false);
+                if (header != null) {
+                    int size = (int) Math.min(Integer.MAX_VALUE, file.length());
+                    disk.put(header.key, new DiskEntry(file, size, header.layerNames));
+                    diskSize += size;
+                }
+            } catch (IOException ioe) {
+                file.delete();
+            }
+        }
+        trimDisk();
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("indexed " + disk.size() + " cached responses in " + cacheDir);
+        }
+    }
+
+    /**
+     * Write a cache file.
+     * 
+     * @param response the response to write.
+     * @param file the file to write to.
+     */
+    protected void write(Response response, File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dos.writeUTF(response.key);
+            dos.writeUTF(response.contentType);
+            dos.writeUTF(response.eTag);
+            dos.writeInt(response.layerNames.size());
+            for (String layerName : response.layerNames) {
+                dos.writeUTF(layerName);
+            }
+            dos.writeInt(response.image.length);
+            dos.write(response.image);
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Read a cache file.
+     * 
+     * @param file the cache file.
+     * @param withImage false to only read the header, and return a Response
+     *        with no image bytes.
+     */
+    protected Response read(File file, boolean withImage) throws IOException {
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            String key = dis.readUTF();
+            String contentType = dis.readUTF();
+            String eTag = dis.readUTF();
+            int numLayers = dis.readInt();
+            List<String> layerNames = new ArrayList<String>(numLayers);
+            for (int i = 0; i < numLayers; i++) {
+                layerNames.add(dis.readUTF());
+            }
+            byte[] image = new byte[0];
+            if (withImage) {
+                image = new byte[dis.readInt()];
+                dis.readFully(image);
+            }
+            return new Response(key, contentType, image, eTag, layerNames);
+        } finally {
+            dis.close();
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getMemorySize() {
+        return memorySize;
+    }
+
+    public synchronized long getDiskSize() {
+        return diskSize;
+    }
+
+    /**
+     * Create an ETag for image bytes, a quoted digest of the bytes.
+     */
+    public static String createETag(byte[] image) {
+        try {
+            return "\"" + toHex(MessageDigest.getInstance("MD5").digest(image)) + "\"";
+        } catch (NoSuchAlgorithmException nsae) {
+            return "\"" + Integer.toHexString(Arrays.hashCode(image)) + "-"
+                    + Integer.toHexString(image.length) + "\"";
+        }
+    }
+
+    /**
+     * Check an If-None-Match header value against an ETag.
+     * 
+     * @param ifNoneMatch the header value, a comma separated list of ETags or
+     *        *. May be null.
+     * @param eTag the ETag of the current response.
+     * @return true if the client already has the response.
+     */
+    public static boolean eTagMatches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A rendered GetMap response.
+     */
+    public static class Response {
+        protected final String key;
+        protected final String contentType;
+        protected final byte[] image;
+        protected final String eTag;
+        protected final List<String> layerNames;
+
+        /**
+         * @param key the normalized request.
+         * @param contentType the content type of the image.
+         * @param image the formatted image bytes.
+         * @param eTag the ETag for the image, created from the image bytes
+         *        if null.
+         * @param layerNames the WMS names of the layers in the image, used
+         *        for invalidation.
+         */
+        public Response(String key, String contentType, byte[] image, String eTag,
+                List<String> layerNames) {
+            this.key = key;
+            this.contentType = contentType;
+            this.image = image;
+            this.eTag = (eTag != null) ? eTag : createETag(image);
+            this.layerNames = Collections.unmodifiableList(new ArrayList<String>(layerNames));
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public byte[] getImage() {
+            return image;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public List<String> getLayerNames() {
+            return layerNames;
+        }
+    }
+
+    /**
+     * Index entry for a response in the cache directory.
+     */
+    protected static class DiskEntry {
+        protected final File file;
+        protected final int size;
+        protected final List<String> layerNames;
+
+        protected DiskEntry(File file, int size, List<String> layerNames) {
+            this.file = file;
+            this.size = size;
+            this.layerNames = layerNames;
+        }
+    }
+}
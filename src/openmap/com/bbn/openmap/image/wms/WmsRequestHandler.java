@@ -10,9 +10,12 @@ import java.awt.Color;
 import java.awt.Paint;
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -23,6 +26,7 @@ import java.util.regex.Pattern;
 
 import com.bbn.openmap.Layer;
 import com.bbn.openmap.event.ProjectionEvent;
+import com.bbn.openmap.image.AbstractImageFormatter;
 import com.bbn.openmap.image.ImageFormatter;
 import com.bbn.openmap.image.ImageServer;
 import com.bbn.openmap.image.ImageServerConstants;
@@ -36,7 +40,9 @@ import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
 import com.bbn.openmap.util.PropUtils;
 import com.bbn.openmap.util.http.HttpConnection;
+import com.bbn.openmap.util.http.IConditionalHttpResponse;
 import com.bbn.openmap.util.http.IHttpResponse;
+import com.bbn.openmap.util.http.IStreamingHttpResponse;
 
 /**
  * @version $Header:
@@ -56,6 +62,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
     private WmsLayerFactory wmsLayerFactory;
     private Map<String, ImageFormatter> imageFormatterByContentType = new HashMap<String, ImageFormatter>();
     private FeatureInfoResponse featureInfoResponse;
+    private GetMapResponseCache responseCache;
     public static final String WMSPrefix = CapabilitiesSupport.WMSPrefix;
     private static final String FeatureInfoResponseClassNameProperty = "featureInfoResponse.class";
 
@@ -236,15 +243,48 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      */
     public void handleGetMapRequest(Properties requestProperties, IHttpResponse httpResponse)
             throws IOException, MapRequestFormatException, WMSException {
-        byte[] image = handleGetMapRequest(requestProperties);
+        GetMapRequestParameters parameters = checkGetMapRequest(requestProperties);
+
+        // Without a cache to keep the image bytes for, the image can be
+        // encoded straight into the response. The ETag is made from the image
+        // bytes and would have to be sent before them, so the streamed
+        // response doesn't have one, and a request that could be answered
+        // with a 304 gets the whole image first.
+        if (getResponseCache() == null && httpResponse instanceof IStreamingHttpResponse
+                && !hasIfNoneMatch(httpResponse)) {
+            writeMapResponse(requestProperties, parameters, (IStreamingHttpResponse) httpResponse);
+            return;
+        }
+
+        GetMapResponseCache.Response response = getMapResponse(requestProperties, parameters);
+        byte[] image = response.getImage();
         if (Debug.debugging("imageserver")) {
             Debug.output("OGCMRH: have completed image, size " + image.length);
         }
-        String contentType = getFormatter().getContentType();
+        String contentType = response.getContentType();
         if (contentType == null) {
             contentType = HttpConnection.CONTENT_PLAIN;
         }
-        httpResponse.writeHttpResponse(contentType, image);
+
+        if (httpResponse instanceof IConditionalHttpResponse) {
+            IConditionalHttpResponse conditionalResponse = (IConditionalHttpResponse) httpResponse;
+            if (GetMapResponseCache.eTagMatches(conditionalResponse.getIfNoneMatch(), response.getETag())) {
+                conditionalResponse.writeNotModified(response.getETag());
+            } else {
+                conditionalResponse.writeHttpResponse(contentType, image, response.getETag());
+            }
+        } else {
+            httpResponse.writeHttpResponse(contentType, image);
+        }
+    }
+
+    /**
+     * @return true if the request being responded to has an If-None-Match
+     *         header, so a 304 (Not Modified) response might do.
+     */
+    protected boolean hasIfNoneMatch(IHttpResponse httpResponse) {
+        return httpResponse instanceof IConditionalHttpResponse
+                && ((IConditionalHttpResponse) httpResponse).getIfNoneMatch() != null;
     }
 
     /**
@@ -256,6 +296,34 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      */
     public byte[] handleGetMapRequest(Properties requestProperties)
             throws IOException, MapRequestFormatException, WMSException {
+        return getMapResponse(requestProperties).getImage();
+    }
+
+    /**
+     * Get the response for a GetMap request, from the response cache if there
+     * is one and it has the response, rendered otherwise.
+     * 
+     * @param requestProperties
+     * @return the GetMap response
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected GetMapResponseCache.Response getMapResponse(Properties requestProperties)
+            throws IOException, MapRequestFormatException, WMSException {
+        return getMapResponse(requestProperties, checkGetMapRequest(requestProperties));
+    }
+
+    /**
+     * Check the parameters of a GetMap request, and set the formatter for it.
+     * 
+     * @param requestProperties
+     * @return the checked GetMap parameters
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected GetMapRequestParameters checkGetMapRequest(Properties requestProperties)
+            throws MapRequestFormatException, WMSException {
         GetMapRequestParameters parameters = new GetMapRequestParameters();
 
         checkVersion(requestProperties, parameters);
@@ -264,18 +332,150 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         setFormatter(parameters.formatter);
 
         checkBackground(requestProperties, parameters);
-        Paint bgPaint = parameters.background;
 
         checkProjectionType(requestProperties, parameters);
         checkWidthAndHeight(requestProperties, parameters);
         checkBoundingBox(requestProperties, parameters);
-        Proj projection = createProjection(requestProperties, parameters);
-
         checkLayersAndStyles(requestProperties, parameters);
+        return parameters;
+    }
+
+    /**
+     * Get the response for a checked GetMap request, from the response cache
+     * if there is one and it has the response, rendered otherwise.
+     * 
+     * @param requestProperties
+     * @param parameters the checked GetMap parameters
+     * @return the GetMap response
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected GetMapResponseCache.Response getMapResponse(Properties requestProperties,
+                                                          GetMapRequestParameters parameters)
+            throws IOException, MapRequestFormatException, WMSException {
+        Paint bgPaint = parameters.background;
+
+        GetMapResponseCache cache = getResponseCache();
+        String key = null;
+        long generation = 0;
+        if (cache != null) {
+            key = getCacheKey(requestProperties, parameters);
+            // Taken before rendering, so an image rendered while the cache
+            // is invalidated isn't kept.
+            generation = cache.getGeneration();
+            GetMapResponseCache.Response response = cache.get(key);
+            if (response != null) {
+                Debug.message("ms", "handleGetMapRequest: cached response for " + key);
+                return response;
+            }
+        }
+
+        Proj projection = createProjection(requestProperties, parameters);
 
         Debug.message("ms", "handleGetMapRequest: createImage layers:"
                 + parameters.topLayerNames.toString());
-        return createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, bgPaint);
+        byte[] image = createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, bgPaint);
+
+        GetMapResponseCache.Response response = new GetMapResponseCache.Response(key, parameters.formatter.getContentType(), image, null, parameters.layerNames);
+        // Empty images are failures, don't keep them.
+        if (cache != null && image.length > 0) {
+            cache.put(response, generation);
+        }
+        return response;
+    }
+
+    /**
+     * Render the image for a checked GetMap request and encode it straight
+     * into the response, so the encoded image is never held in memory. No
+     * ETag is sent, since it isn't known until the image is encoded.
+     * 
+     * @param requestProperties
+     * @param parameters the checked GetMap parameters
+     * @param httpResponse output
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected void writeMapResponse(Properties requestProperties, GetMapRequestParameters parameters,
+                                    IStreamingHttpResponse httpResponse)
+            throws IOException, MapRequestFormatException, WMSException {
+        Proj projection = createProjection(requestProperties, parameters);
+
+        Debug.message("ms", "handleGetMapRequest: writeImage layers:"
+                + parameters.topLayerNames.toString());
+        OutputStream out = httpResponse.getOutputStream(parameters.formatter.getContentType());
+        writeImage(projection, parameters.width, parameters.height, parameters.topLayerNames, parameters.background, out);
+        out.flush();
+    }
+
+    /**
+     * Create the response cache key for a GetMap request. Requests that would
+     * get the same image have the same key: the parsed bounding box, size,
+     * layers and styles, format and background, plus any parameters that
+     * aren't standard GetMap parameters since layers may use them.
+     * 
+     * @param requestProperties
+     * @param parameters the checked GetMap parameters.
+     * @return String key
+     */
+    protected String getCacheKey(Properties requestProperties, GetMapRequestParameters parameters) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(parameters.getVersion()).append('|');
+        key.append(parameters.crs.getCode()).append('|');
+        key.append(parameters.bboxLatLonLowerLeft.getY()).append(',');
+        key.append(parameters.bboxLatLonLowerLeft.getX()).append(',');
+        key.append(parameters.bboxLatLonUpperRight.getY()).append(',');
+        key.append(parameters.bboxLatLonUpperRight.getX()).append('|');
+        key.append(parameters.width).append('x').append(parameters.height).append('|');
+        key.append(parameters.formatter.getContentType()).append('|');
+        key.append(parameters.getTransparent()).append('|');
+        if (parameters.background instanceof Color) {
+            key.append(Integer.toHexString(((Color) parameters.background).getRGB()));
+        } else {
+            key.append(parameters.background);
+        }
+        for (int i = 0; i < parameters.layerNames.size(); i++) {
+            key.append('|').append(parameters.layerNames.get(i));
+            key.append(':').append(parameters.styleNames.get(i));
+        }
+
+        List<String> otherNames = new ArrayList<String>();
+        for (Object name : requestProperties.keySet()) {
+            if (!GETMAP_CACHE_KEY_PARAMETERS.contains(name)) {
+                otherNames.add(name.toString());
+            }
+        }
+        Collections.sort(otherNames);
+        for (String name : otherNames) {
+            key.append('|').append(name).append('=').append(requestProperties.getProperty(name));
+        }
+        return key.toString();
+    }
+
+    /**
+     * The GetMap parameters that are covered by the parsed parameters in the
+     * cache key.
+     */
+    private static final Set<String> GETMAP_CACHE_KEY_PARAMETERS = new HashSet<String>(Arrays.asList(new String[] {
+            REQUEST, SERVICE, VERSION, FORMAT, SRS, CRS, BBOX, WIDTH, HEIGHT, LAYERS, STYLES,
+            TRANSPARENT, BGCOLOR, EXCEPTIONS }));
+
+    /**
+     * Get the cache used for GetMap responses, null if there isn't one.
+     */
+    public GetMapResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Set the cache used for GetMap responses. The cache can be shared by
+     * WmsRequestHandlers with the same layers and properties, so it can
+     * outlive a request handler created for each request. Set to null to
+     * render every request.
+     */
+    public void setResponseCache(GetMapResponseCache cache) {
+        responseCache = cache;
     }
 
     public byte[] handleGetLegendGraphicRequest(Properties requestProperties)
@@ -300,16 +500,19 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             return new byte[0];
         }
 
-        Legend legend = layer.getLegend();
-        if (legend != null) {
-            legend.setSize(parameters.getWidth(), parameters.getHeight());
-            legend.paint(graphics);
-        }
-
-        byte[] formattedImage = getFormattedImage(imageFormatter, parameters.getWidth(), parameters.getHeight());
-        graphics.dispose();
+        BufferedImage canvas = imageFormatter.getBufferedImage();
+        try {
+            Legend legend = layer.getLegend();
+            if (legend != null) {
+                legend.setSize(parameters.getWidth(), parameters.getHeight());
+                legend.paint(graphics);
+            }
 
-        return formattedImage;
+            graphics.dispose();
+            return getFormattedImage(imageFormatter, parameters.getWidth(), parameters.getHeight());
+        } finally {
+            releaseCanvas(imageFormatter, canvas);
+        }
     }
 
     /**
@@ -465,6 +668,21 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         return formattedImage;
     }
 
+    /**
+     * Write the image without scaling, for the same reason getFormattedImage
+     * doesn't scale.
+     */
+    @Override
+    protected void writeFormattedImage(ImageFormatter formatter, int scaledWidth, int scaledHeight, OutputStream out)
+            throws IOException {
+        Debug.message("imageserver", "ImageServer: using full scale image (unscaled).");
+        if (formatter instanceof AbstractImageFormatter) {
+            ((AbstractImageFormatter) formatter).writeImageBytes(out);
+        } else {
+            out.write(formatter.getImageBytes());
+        }
+    }
+
     /**
      * @param requestProperties
      * @throws WMSException
@@ -613,6 +831,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
 
         parameters.topLayerNames.clear();
         parameters.layerNames.clear();
+        parameters.styleNames.clear();
 
         /*
          * The order of layers, because the WMS should first render layer at the
@@ -641,10 +860,11 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             }
 
             // apply style to layer
+            String styleName = "";
             if (styles_in == null) {
                 wmsLayer.setDefaultStyle();
             } else {
-                String styleName = styles_in[i];
+                styleName = styles_in[i];
                 if (styleName.length() == 0) {
                     wmsLayer.setDefaultStyle();
                 } else if (wmsLayer.isStyleSupported(styleName)) {
@@ -655,6 +875,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             }
 
             parameters.layerNames.add(layerName);
+            parameters.styleNames.add(styleName);
         }
         if (parameters.layerNames.isEmpty()) {
             throw new WMSException("LAYERS not specified.", WMSException.LAYERNOTDEFINED);
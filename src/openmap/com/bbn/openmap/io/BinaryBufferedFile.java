@@ -540,6 +540,46 @@ public class BinaryBufferedFile extends BinaryFile {
         }
     }
 
+    /**
+     * Reads an array of floats from the input into an array of doubles,
+     * straight from the buffer like readFloatArray(float[], int, int).
+     * 
+     * @param vec the vector to read into
+     * @param offset the first float read goes into vec[offset]
+     * @param len the number of floats to read from the stream
+     * @exception EOFException not enough bytes were left in the file
+     * @exception FormatException rethrow of IOExceptions encountered while
+     *            reading the bytes for the integer
+     */
+    public void readFloatArray(double vec[], int offset, int len)
+            throws EOFException, FormatException {
+        while (len > 0) {
+            int floatsleft = bytesinbuffer / 4;
+            if (floatsleft == 0) {
+                assertSize(4); // force a buffer refill
+                continue;
+            }
+            int reallyread = (len < floatsleft) ? len : floatsleft;
+            int cursor = curptr;
+            if (MSBFirst) {
+                for (int i = 0; i < reallyread; i++) {
+                    int floatasint = MoreMath.BuildIntegerBE(buffer, cursor);
+                    vec[offset++] = Float.intBitsToFloat(floatasint);
+                    cursor += 4;
+                }
+            } else {
+                for (int i = 0; i < reallyread; i++) {
+                    int floatasint = MoreMath.BuildIntegerLE(buffer, cursor);
+                    vec[offset++] = Float.intBitsToFloat(floatasint);
+                    cursor += 4;
+                }
+            }
+            len -= reallyread;
+            bytesinbuffer -= (4 * reallyread);
+            curptr = cursor;
+        }
+    }
+
     /**
      * Reads and returns a long.
      * 
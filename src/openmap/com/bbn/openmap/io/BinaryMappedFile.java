@@ -0,0 +1,194 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A BinaryBufferedFile that memory maps local files with a
+ * MappedFileInputReader. Seeks don't throw away a buffer, and the array reads
+ * are bulk copies from ByteBuffer views of the file. If the file isn't local
+ * (a resource, jar entry or URL), or can't be mapped, the BinaryMappedFile acts
+ * just like a BinaryBufferedFile.
+ *
+ * @see com.bbn.openmap.io.MappedFileInputReader
+ */
+public class BinaryMappedFile extends BinaryBufferedFile {
+
+    /** The mapped reader, null if the file isn't mapped. */
+    private MappedFileInputReader mapped = null;
+
+    /**
+     * Constructs a BinaryMappedFile with a File.
+     *
+     * @param f the input file
+     * @exception IOException pass-through errors from opening the file
+     */
+    public BinaryMappedFile(File f) throws IOException {
+        super(f);
+        mapFile(f);
+    }
+
+    /**
+     * Constructs a BinaryMappedFile with a filename. The file is mapped if it's
+     * a local file, otherwise it's read the way a BinaryBufferedFile reads it.
+     *
+     * @param name the name/path of the input file
+     * @exception IOException pass-through errors from opening the file
+     */
+    public BinaryMappedFile(String name) throws IOException {
+        super(name);
+        if (getInputReader() instanceof FileInputReader) {
+            mapFile(new File(((FileInputReader) getInputReader()).getAbsolutePath()));
+        }
+    }
+
+    /**
+     * A simple factory method that lets you try to create something without
+     * having to really deal with failure. Returns a BinaryMappedFile if
+     * successful, null if not.
+     */
+    public static BinaryMappedFile create(String name) {
+        BinaryMappedFile bf = null;
+        try {
+            bf = new BinaryMappedFile(name);
+        } catch (IOException ioe) {
+        }
+        return bf;
+    }
+
+    /**
+     * Replace the RandomAccessFile reader with a mapped one. If the mapping
+     * fails, the original reader is kept.
+     */
+    protected void mapFile(File f) {
+        try {
+            MappedFileInputReader reader = new MappedFileInputReader(f);
+            InputReader old = getInputReader();
+            setInputReader(reader);
+            if (old != null) {
+                old.close();
+            }
+        } catch (IOException ioe) {
+            // Fall back on the buffered reads.
+        }
+    }
+
+    /**
+     * @return true if the file is being read through a memory map.
+     */
+    public boolean isMapped() {
+        return mapped != null;
+    }
+
+    public void setInputReader(InputReader reader) {
+        super.setInputReader(reader);
+        mapped = (reader instanceof MappedFileInputReader) ? (MappedFileInputReader) reader
+                : null;
+    }
+
+    public long skipBytes(long n) throws IOException {
+        return mapped != null ? mapped.skipBytes(n) : super.skipBytes(n);
+    }
+
+    public long getFilePointer() throws IOException {
+        return mapped != null ? mapped.getFilePointer() : super.getFilePointer();
+    }
+
+    public void seek(long pos) throws IOException {
+        if (mapped != null) {
+            mapped.seek(pos);
+        } else {
+            super.seek(pos);
+        }
+    }
+
+    public long available() throws IOException {
+        return mapped != null ? mapped.available() : super.available();
+    }
+
+    public void dispose() throws IOException {
+        mapped = null;
+        super.dispose();
+    }
+
+    public int read() throws IOException {
+        return mapped != null ? mapped.read() : super.read();
+    }
+
+    public int read(byte b[], int off, int len) throws IOException {
+        return mapped != null ? mapped.read(b, off, len) : super.read(b, off, len);
+    }
+
+    public int read(byte b[]) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    public byte[] readBytes(int howmany, boolean allowless)
+            throws EOFException, FormatException {
+        return mapped != null ? mapped.readBytes(howmany, allowless)
+                : super.readBytes(howmany, allowless);
+    }
+
+    public short readShort() throws EOFException, FormatException {
+        return mapped != null ? mapped.readShort(MSBFirst) : super.readShort();
+    }
+
+    public void readShortArray(short vec[], int offset, int len)
+            throws EOFException, FormatException {
+        if (mapped != null) {
+            mapped.readShortArray(vec, offset, len, MSBFirst);
+        } else {
+            super.readShortArray(vec, offset, len);
+        }
+    }
+
+    public int readInteger() throws EOFException, FormatException {
+        return mapped != null ? mapped.readInteger(MSBFirst) : super.readInteger();
+    }
+
+    public void readIntegerArray(int vec[], int offset, int len)
+            throws EOFException, FormatException {
+        if (mapped != null) {
+            mapped.readIntegerArray(vec, offset, len, MSBFirst);
+        } else {
+            super.readIntegerArray(vec, offset, len);
+        }
+    }
+
+    public void readFloatArray(float vec[], int offset, int len)
+            throws EOFException, FormatException {
+        if (mapped != null) {
+            mapped.readFloatArray(vec, offset, len, MSBFirst);
+        } else {
+            super.readFloatArray(vec, offset, len);
+        }
+    }
+
+    public long readLong() throws EOFException, FormatException {
+        return mapped != null ? mapped.readLong(MSBFirst) : super.readLong();
+    }
+
+    public String readFixedLengthString(int length) throws EOFException,
+            FormatException {
+        if (mapped != null) {
+            byte foo[] = mapped.readBytes(length, false);
+            return new String(foo, 0, length);
+        }
+        return super.readFixedLengthString(length);
+    }
+}
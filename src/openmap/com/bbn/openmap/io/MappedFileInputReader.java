@@ -0,0 +1,510 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.MoreMath;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * An InputReader for local files that uses a memory mapped view of the file
+ * instead of a RandomAccessFile. Seeks are just assignments, and the
+ * multibyte and array reads are handed off to ByteBuffer views of the mapped
+ * file, which is a lot faster than going through read() for shape files, DTED
+ * and RPF frames that are accessed with lots of small random reads.
+ * <P>
+ * A single MappedByteBuffer can't address more than 2GB, so the file is mapped
+ * in chunks. Reads that span two chunks are split up.
+ * <P>
+ * The file channel is closed as soon as the file is mapped, so a
+ * MappedFileInputReader doesn't hold a file descriptor. close() releases the
+ * mapping, and the file is mapped again if it's read after that.
+ *
+ * @see com.bbn.openmap.io.BinaryMappedFile
+ */
+public class MappedFileInputReader implements InputReader {
+
+    /**
+     * The default number of bytes covered by each mapped chunk of the file,
+     * 1GB.
+     */
+    public final static int DEFAULT_CHUNK_SIZE = 1 << 30;
+
+    /**
+     * Needed for input reader interface.
+     */
+    protected String name = null;
+    /**
+     * Needed for remapping files that have been closed.
+     */
+    protected String absolutePath = null;
+    /** The number of bytes covered by each chunk. */
+    protected int chunkSize;
+    /** The mapped chunks of the file, null if the reader is closed. */
+    protected MappedByteBuffer[] chunks = null;
+    /** The length of the file. */
+    protected long length;
+    /** The index of the next byte to be read. */
+    protected long position = 0;
+
+    /**
+     * Constructs a MappedFileInputReader for a file, mapped in 1GB chunks.
+     *
+     * @param f the file to be mapped for reading
+     * @exception IOException pass-through errors from mapping the file
+     */
+    public MappedFileInputReader(File f) throws IOException {
+        this(f, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a MappedFileInputReader for a file path, mapped in 1GB chunks.
+     *
+     * @param f the path to the file to be mapped for reading
+     * @exception IOException pass-through errors from mapping the file
+     */
+    public MappedFileInputReader(String f) throws IOException {
+        this(new File(f), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Constructs a MappedFileInputReader for a file.
+     *
+     * @param f the file to be mapped for reading
+     * @param chunkSize the maximum number of bytes to map in one buffer.
+     * @exception IOException pass-through errors from mapping the file
+     */
+    public MappedFileInputReader(File f, int chunkSize) throws IOException {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedFileInputReader created from "
+                    + f.getAbsolutePath());
+        }
+        if (chunkSize < 8) {
+            throw new IllegalArgumentException("chunk size too small: "
+                    + chunkSize);
+        }
+        name = f.getName();
+        absolutePath = f.getAbsolutePath();
+        this.chunkSize = chunkSize;
+        chunks = init(f);
+    }
+
+    /**
+     * Map the file. If there are too many files open, calls
+     * BinaryFile.closeClosable to try to get an open file pointer from the
+     * system, and then tries again.
+     *
+     * @param f a java.io.File
+     * @return the mapped chunks of the file.
+     * @throws IOException
+     */
+    protected MappedByteBuffer[] init(File f) throws IOException {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(f, "r");
+        } catch (IOException i) {
+            if (f.exists() && f.canRead()) {
+                BinaryFile.closeClosable();
+                raf = new RandomAccessFile(f, "r");
+            } else {
+                throw i;
+            }
+        }
+
+        try {
+            FileChannel channel = raf.getChannel();
+            length = channel.size();
+            int numChunks = (int) ((length + chunkSize - 1) / chunkSize);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[numChunks];
+            for (int i = 0; i < numChunks; i++) {
+                long start = (long) i * chunkSize;
+                long size = Math.min(chunkSize, length - start);
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+            return mapped;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Get the file name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the absolute path of the file.
+     */
+    public String getAbsolutePath() {
+        return absolutePath;
+    }
+
+    /**
+     * Makes sure the file is mapped, remapping it if it's been closed.
+     *
+     * @return the mapped chunks of the file.
+     * @throws IOException
+     */
+    protected MappedByteBuffer[] checkChunks() throws IOException {
+        if (chunks == null && absolutePath != null) {
+            chunks = init(new File(absolutePath));
+        }
+        if (chunks == null) {
+            throw new IOException("MappedFileInputReader: " + name
+                    + " is closed");
+        }
+        return chunks;
+    }
+
+    /**
+     * Returns the chunk holding the byte at the current position, with its
+     * position set to that byte and its byte order set as requested. Don't
+     * call this at the end of the file.
+     */
+    protected ByteBuffer currentChunk(boolean msbFirst) throws IOException {
+        ByteBuffer chunk = checkChunks()[(int) (position / chunkSize)];
+        chunk.position((int) (position % chunkSize));
+        chunk.order(msbFirst ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        return chunk;
+    }
+
+    /**
+     * Checks that numBytes can be read from the current position.
+     *
+     * @exception EOFException no bytes are left in the file
+     * @exception FormatException some, but not enough, bytes are left
+     */
+    protected void assertAvailable(long numBytes) throws EOFException,
+            FormatException {
+        long left = length - position;
+        if (left < numBytes) {
+            if (left <= 0) {
+                throw new EOFException("MappedFileInputReader, no bytes left in "
+                        + name + ", trying to read " + numBytes);
+            }
+            throw new FormatException("MappedFileInputReader: failed to read "
+                    + numBytes + " bytes from " + name + ", only " + left
+                    + " bytes available");
+        }
+    }
+
+    /**
+     * Skip over n bytes in the input file
+     *
+     * @param n the number of bytes to skip
+     * @return the actual number of bytes skipped.
+     */
+    public long skipBytes(long n) throws IOException {
+        long skip = Math.max(0, Math.min(n, length - position));
+        position += skip;
+        return skip;
+    }
+
+    /**
+     * Get the index of the next character to be read
+     *
+     * @return the index
+     */
+    public long getFilePointer() throws IOException {
+        return position;
+    }
+
+    /**
+     * Set the index of the next character to be read.
+     *
+     * @param pos the position to seek to.
+     */
+    public void seek(long pos) throws IOException {
+        if (pos < 0) {
+            throw new IOException("MappedFileInputReader: negative seek offset "
+                    + pos);
+        }
+        position = pos;
+    }
+
+    /**
+     * Retrieve the length of the file being accessed.
+     *
+     * @return the length of the file (counted in bytes)
+     */
+    public long length() throws IOException {
+        return length;
+    }
+
+    /**
+     * Return how many bytes left to be read in the file.
+     *
+     * @return the number of bytes remaining to be read (counted in bytes)
+     */
+    public long available() throws IOException {
+        return length - position;
+    }
+
+    /**
+     * Releases the mapping of the file. The file will be mapped again if it's
+     * read after this.
+     */
+    public void close() throws IOException {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedFileInputReader.close()");
+        }
+        chunks = null;
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @return one byte from the file. -1 for EOF
+     */
+    public int read() throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        MappedByteBuffer chunk = checkChunks()[(int) (position / chunkSize)];
+        int b = chunk.get((int) (position % chunkSize)) & 0xff;
+        position++;
+        return b;
+    }
+
+    /**
+     * Read from the file
+     *
+     * @param b The byte array to read into
+     * @param off the first array position to read into
+     * @param len the number of bytes to read
+     * @return the number of bytes read, -1 at EOF.
+     */
+    public int read(byte b[], int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - position);
+        int numread = 0;
+        while (numread < len) {
+            ByteBuffer chunk = currentChunk(true);
+            int copy = Math.min(len - numread, chunk.remaining());
+            chunk.get(b, off + numread, copy);
+            numread += copy;
+            position += copy;
+        }
+        return numread;
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @param b the byte array to read into. Equivalent to
+     *        <code>read(b, 0, b.length)</code>
+     * @return the number of bytes read
+     */
+    public int read(byte b[]) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    /**
+     * Read from the file.
+     *
+     * @param howmany the number of bytes to read
+     * @param allowless if we can return fewer bytes than requested
+     * @return the array of bytes read.
+     * @exception FormatException Any IO Exceptions, plus an end-of-file
+     *            encountered after reading some, but now enough, bytes when
+     *            allowless was <code>false</code>
+     * @exception EOFException Encountered an end-of-file while allowless was
+     *            <code>false</code>, but NO bytes had been read.
+     */
+    public byte[] readBytes(int howmany, boolean allowless)
+            throws EOFException, FormatException {
+        if (!allowless) {
+            assertAvailable(howmany);
+        }
+        try {
+            int count = (int) Math.max(0, Math.min(howmany, length - position));
+            byte foo[] = new byte[count];
+            read(foo, 0, count);
+            return foo;
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readBytes IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads a short, in the given byte order.
+     */
+    public short readShort(boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(2);
+        try {
+            ByteBuffer chunk = currentChunk(msbFirst);
+            if (chunk.remaining() >= 2) {
+                position += 2;
+                return chunk.getShort();
+            }
+            return MoreMath.BuildShort(readBytes(2, false), msbFirst);
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readShort IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads an integer, in the given byte order.
+     */
+    public int readInteger(boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(4);
+        try {
+            ByteBuffer chunk = currentChunk(msbFirst);
+            if (chunk.remaining() >= 4) {
+                position += 4;
+                return chunk.getInt();
+            }
+            return MoreMath.BuildInteger(readBytes(4, false), msbFirst);
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readInteger IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads a long, in the given byte order.
+     */
+    public long readLong(boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(8);
+        try {
+            ByteBuffer chunk = currentChunk(msbFirst);
+            if (chunk.remaining() >= 8) {
+                position += 8;
+                return chunk.getLong();
+            }
+            return MoreMath.BuildLong(readBytes(8, false), msbFirst);
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readLong IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads an array of shorts through a ShortBuffer view of the mapped file.
+     *
+     * @param vec the array to write the shorts into
+     * @param offset the first array index to write to
+     * @param len the number of shorts to read
+     * @param msbFirst the byte order of the shorts in the file
+     */
+    public void readShortArray(short vec[], int offset, int len,
+                               boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(2L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer chunk = currentChunk(msbFirst);
+                int count = Math.min(len, chunk.remaining() / 2);
+                if (count == 0) {
+                    // value straddles two chunks
+                    vec[offset++] = readShort(msbFirst);
+                    len--;
+                    continue;
+                }
+                chunk.asShortBuffer().get(vec, offset, count);
+                position += 2L * count;
+                offset += count;
+                len -= count;
+            }
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readShortArray IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads an array of integers through an IntBuffer view of the mapped file.
+     *
+     * @param vec the array to write the integers into
+     * @param offset the first array index to write to
+     * @param len the number of integers to read
+     * @param msbFirst the byte order of the integers in the file
+     */
+    public void readIntegerArray(int vec[], int offset, int len,
+                                 boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(4L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer chunk = currentChunk(msbFirst);
+                int count = Math.min(len, chunk.remaining() / 4);
+                if (count == 0) {
+                    vec[offset++] = readInteger(msbFirst);
+                    len--;
+                    continue;
+                }
+                chunk.asIntBuffer().get(vec, offset, count);
+                position += 4L * count;
+                offset += count;
+                len -= count;
+            }
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readIntegerArray IOException: "
+                    + i.getMessage());
+        }
+    }
+
+    /**
+     * Reads an array of floats through a FloatBuffer view of the mapped file.
+     *
+     * @param vec the array to write the floats into
+     * @param offset the first array index to write to
+     * @param len the number of floats to read
+     * @param msbFirst the byte order of the floats in the file
+     */
+    public void readFloatArray(float vec[], int offset, int len,
+                               boolean msbFirst) throws EOFException,
+            FormatException {
+        assertAvailable(4L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer chunk = currentChunk(msbFirst);
+                int count = Math.min(len, chunk.remaining() / 4);
+                if (count == 0) {
+                    vec[offset++] = Float.intBitsToFloat(readInteger(msbFirst));
+                    len--;
+                    continue;
+                }
+                chunk.asFloatBuffer().get(vec, offset, count);
+                position += 4L * count;
+                offset += count;
+                len -= count;
+            }
+        } catch (IOException i) {
+            throw new FormatException("MappedFileInputReader: readFloatArray IOException: "
+                    + i.getMessage());
+        }
+    }
+}
@@ -61,6 +61,7 @@ import com.bbn.openmap.omGraphics.event.GestureResponsePolicy;
 import com.bbn.openmap.omGraphics.event.MapMouseInterpreter;
 import com.bbn.openmap.omGraphics.event.StandardMapMouseInterpreter;
 import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.util.Cancellable;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.ISwingWorker;
 import com.bbn.openmap.util.PaletteHelper;
@@ -158,11 +159,18 @@ import com.bbn.openmap.util.PropUtils;
  * 
  *     layer.mouseModes=Gestures
  *     layer.consumeEvents=true
+ * 
+ *     # generate large lists over all of the processors
+ *     layer.parallelGenerate=true
+ *     layer.parallelGenerateThreshold=5000
+ *     # render the list without locking it against the layer worker
+ *     layer.snapshotList=true
  *
  *
  * </pre>
  */
-public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolicy, OMGraphicHandler {
+public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolicy, OMGraphicHandler,
+        Cancellable {
 
     public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.OMGraphicHandlerLayer");
 
@@ -221,6 +229,33 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * contacting servers. The default setting is, however, true.
      */
     public final static String InterruptableProperty = "interruptable";
+    /**
+     * The property to tell the layer to generate its OMGraphicList over all of
+     * the available processors in prepare(), when the list has at least
+     * parallelGenerateThreshold graphics on it. The graphics on the list have
+     * to be safe to generate at the same time. The default is false.
+     */
+    public final static String ParallelGenerateProperty = "parallelGenerate";
+    /**
+     * The property for the smallest number of graphics on the list that will
+     * be generated in parallel, if parallelGenerate is true. Smaller lists are
+     * generated in the layer's worker thread.
+     */
+    public final static String ParallelGenerateThresholdProperty = "parallelGenerateThreshold";
+    /**
+     * The default parallelGenerateThreshold, 5000.
+     */
+    public final static int DEFAULT_PARALLEL_GENERATE_THRESHOLD = 5000;
+    /**
+     * The property to tell the layer to put the OMGraphicLists it's given in
+     * snapshot mode, so the paint thread renders a snapshot of the list
+     * without locking it, and doesn't wait for a layer worker using the same
+     * list. Good for layers that replace their list on projection changes
+     * instead of adding to it. The default is false.
+     * 
+     * @see com.bbn.openmap.omGraphics.OMList#setSnapshotMode(boolean)
+     */
+    public final static String SnapshotListProperty = "snapshotList";
 
     /**
      * Filter support that can be used to manage OMGraphics.
@@ -289,6 +324,57 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         return interruptable;
     }
 
+    /**
+     * Flag for generating the list over all of the processors.
+     */
+    protected boolean parallelGenerate = false;
+
+    /**
+     * The smallest list size that will be generated in parallel.
+     */
+    protected int parallelGenerateThreshold = DEFAULT_PARALLEL_GENERATE_THRESHOLD;
+
+    /**
+     * Sets whether large lists are generated over all of the processors in
+     * prepare().
+     */
+    public void setParallelGenerate(boolean b) {
+        parallelGenerate = b;
+    }
+
+    public boolean isParallelGenerate() {
+        return parallelGenerate;
+    }
+
+    /**
+     * Sets the smallest number of graphics on the list that will be generated
+     * in parallel.
+     */
+    public void setParallelGenerateThreshold(int threshold) {
+        parallelGenerateThreshold = threshold;
+    }
+
+    public int getParallelGenerateThreshold() {
+        return parallelGenerateThreshold;
+    }
+
+    /**
+     * Flag for putting lists in snapshot mode.
+     */
+    protected boolean snapshotList = false;
+
+    /**
+     * Sets whether the OMGraphicLists given to setList() are put in snapshot
+     * mode. Doesn't change the current list.
+     */
+    public void setSnapshotList(boolean b) {
+        snapshotList = b;
+    }
+
+    public boolean isSnapshotList() {
+        return snapshotList;
+    }
+
     // OMGraphicHandler methods, deferred to FilterSupport...
 
     /**
@@ -351,6 +437,9 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * canSetGraphicList == true.
      */
     public void setList(OMGraphicList omgl) {
+        if (snapshotList && omgl != null) {
+            omgl.setSnapshotMode(true);
+        }
         filter.setList(omgl);
     }
 
@@ -624,12 +713,33 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         // if the layer hasn't been added to the MapBean
         // the projection could be null.
         if (currentList != null && proj != null) {
-            currentList.generate(proj);
+            generateList(currentList, proj);
         }
 
         return currentList;
     }
 
+    /**
+     * Generate a list with a projection, called from prepare(). If
+     * parallelGenerate is set, there is more than one processor and the list
+     * is at least parallelGenerateThreshold in size, the list is split up over
+     * the processors, and generation stops if the layer is cancelled.
+     * Otherwise the list is generated in the calling thread.
+     * 
+     * @param list the OMGraphicList to generate.
+     * @param proj the Projection to generate with.
+     * @return true if all of the graphics on the list were generated.
+     */
+    protected boolean generateList(OMGraphicList list, Projection proj) {
+        if (parallelGenerate && list.size() >= parallelGenerateThreshold) {
+            int numTasks = Runtime.getRuntime().availableProcessors();
+            if (numTasks > 1) {
+                return list.generate(proj, true, numTasks, this);
+            }
+        }
+        return list.generate(proj);
+    }
+
     /**
      * Lock object used for managing LayerWorker and queue synchronization.
      */
@@ -888,6 +998,11 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         setTransparency(PropUtils.floatFromProperties(props, realPrefix + TransparencyProperty, getTransparency()));
 
         setInterruptable(PropUtils.booleanFromProperties(props, realPrefix + InterruptableProperty, isInterruptable()));
+
+        setParallelGenerate(PropUtils.booleanFromProperties(props, realPrefix + ParallelGenerateProperty, isParallelGenerate()));
+        setParallelGenerateThreshold(PropUtils.intFromProperties(props, realPrefix + ParallelGenerateThresholdProperty, getParallelGenerateThreshold()));
+
+        setSnapshotList(PropUtils.booleanFromProperties(props, realPrefix + SnapshotListProperty, isSnapshotList()));
     }
 
     /**
@@ -961,6 +1076,11 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 
         props.put(prefix + InterruptableProperty, Boolean.toString(isInterruptable()));
 
+        props.put(prefix + ParallelGenerateProperty, Boolean.toString(isParallelGenerate()));
+        props.put(prefix + ParallelGenerateThresholdProperty, Integer.toString(getParallelGenerateThreshold()));
+
+        props.put(prefix + SnapshotListProperty, Boolean.toString(isSnapshotList()));
+
         return props;
     }
 
@@ -1024,6 +1144,12 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 
         PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, InterruptableProperty, "Interruptable", "Flat to set whether the layer should immediately stop performing current work when the projection changes.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
+        PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, ParallelGenerateProperty, "Parallel generate", "Flag to generate large lists of graphics over all of the processors.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+
+        PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, ParallelGenerateThresholdProperty, "Parallel generate threshold", "The smallest number of graphics on the list that will be generated in parallel.", null);
+
+        PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, SnapshotListProperty, "Snapshot list", "Flag to render a snapshot of the list without locking it.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+
         return list;
     }
 
@@ -50,6 +50,8 @@ public class DTEDCacheHandler {
     /** The real frame cache. */
     protected DTEDFrameCache frameCache;
     protected int frameCacheSize = -1; // No limit.
+    /** Loads the frames around the view in the background, may be null. */
+    protected DTEDFramePrefetcher prefetcher;
     /** The colors used by the frames to create the images. */
     protected DTEDFrameColorTable colortable; // numColors, reduced
     // colortable
@@ -120,6 +122,45 @@ public class DTEDCacheHandler {
         return frameCacheSize;
     }
 
+    /**
+     * Turn on the background loading of the frames around the view. When it's
+     * on, the DTEDCacheManager calls prefetch() after it's gotten the images
+     * for the view.
+     */
+    public void setPrefetch(boolean prefetch) {
+        if (prefetch && prefetcher == null) {
+            prefetcher = new DTEDFramePrefetcher(frameCache);
+        } else if (!prefetch && prefetcher != null) {
+            prefetcher.cancel();
+            prefetcher = null;
+        }
+    }
+
+    /**
+     * Get the DTEDFramePrefetcher loading frames around the view, null if
+     * prefetching is off.
+     */
+    public DTEDFramePrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * Start loading the frames around the current view in the background, if
+     * prefetching is on.
+     */
+    public void prefetch() {
+        if (prefetcher != null) {
+            prefetcher.prefetch();
+        }
+    }
+
+    /**
+     * Get the cache holding the frames.
+     */
+    public DTEDFrameCache getFrameCache() {
+        return frameCache;
+    }
+
     /**
      * Get an elevation at a point. Always uses the cache to load the frame and
      * get the data.
@@ -171,6 +212,10 @@ public class DTEDCacheHandler {
 
         firstImageReturned = true;
 
+        if (prefetcher != null) {
+            prefetcher.viewChanged(lat1, lon1, lat2, lon2, dfsi.dtedLevel);
+        }
+
         // upper lat of top frame of the screen
         // lower lat of bottom frame of the screen
         // left lon of left frame of the screen
@@ -72,6 +72,10 @@ public class DTEDCacheManager {
     protected int numColors;
     protected int opaqueness = DTEDFrameColorTable.DEFAULT_OPAQUENESS;
     protected int cacheSize = DTEDCacheHandler.FRAME_CACHE_SIZE;
+    /** Whether the cache handlers load frames around the view. */
+    protected boolean prefetch = false;
+    /** Whether lower DTED level frames are prefetched, too. */
+    protected boolean prefetchLowerLevels = false;
 
     /**
      * Constructor that uses the default paths and the default number of colors.
@@ -139,6 +143,75 @@ public class DTEDCacheManager {
         return cacheSize;
     }
 
+    /**
+     * Set whether the cache handlers load the frames around the view in the
+     * background after the images for the view have been created, so they're
+     * ready when the map is panned.
+     */
+    public void setPrefetch(boolean value) {
+        prefetch = value;
+        for (int i = 0; i < MAX_NUM_BOXES; i++) {
+            if (caches[i] != null) {
+                setPrefetch(caches[i]);
+            }
+        }
+    }
+
+    public boolean getPrefetch() {
+        return prefetch;
+    }
+
+    /**
+     * Set whether the frames of the lower DTED levels ahead of the view are
+     * prefetched, too. Only used if prefetch is on.
+     */
+    public void setPrefetchLowerLevels(boolean value) {
+        prefetchLowerLevels = value;
+        setPrefetch(prefetch);
+    }
+
+    public boolean getPrefetchLowerLevels() {
+        return prefetchLowerLevels;
+    }
+
+    protected void setPrefetch(DTEDCacheHandler handler) {
+        handler.setPrefetch(prefetch);
+        DTEDFramePrefetcher prefetcher = handler.getPrefetcher();
+        if (prefetcher != null) {
+            prefetcher.setPrefetchLowerLevels(prefetchLowerLevels);
+        }
+    }
+
+    /**
+     * The prefetch hit rate for all the cache handlers, the fraction of the
+     * frames needed for the views that weren't cached before, and were there
+     * because they had been prefetched.
+     * 
+     * @return hit rate, 0 - 1.
+     */
+    public double getPrefetchHitRate() {
+        int hits = 0;
+        int total = 0;
+        for (int i = 0; i < MAX_NUM_BOXES; i++) {
+            if (caches[i] != null) {
+                DTEDFrameCache frameCache = caches[i].getFrameCache();
+                hits += frameCache.getPrefetchHits();
+                total += frameCache.getPrefetchHits() + frameCache.getDemandLoads();
+            }
+        }
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Create a DTEDCacheHandler for one of the boxes on the map.
+     */
+    protected DTEDCacheHandler createCacheHandler() {
+        DTEDCacheHandler handler = new DTEDCacheHandler(dtedDirPaths, numColors, opaqueness, cacheSize);
+        handler.setSubframeInfo(subframeInfo);
+        setPrefetch(handler);
+        return handler;
+    }
+
     /**
      * Get an elevation at a point. Always uses the main cache to load the frame
      * and get the data.
@@ -235,8 +308,7 @@ public class DTEDCacheManager {
          */
 
         if (caches[0] == null) {
-            caches[0] = new DTEDCacheHandler(dtedDirPaths, numColors, opaqueness, cacheSize);
-            caches[0].setSubframeInfo(subframeInfo);
+            caches[0] = createCacheHandler();
         }
 
         caches[0].setProjection(proj, lat[ya - lat_minus], lon[xa - lon_minus], lat[ya], lon[xa]);
@@ -244,8 +316,7 @@ public class DTEDCacheManager {
         // Dateline split
         if (lon_minus == 1) {
             if (caches[1] == null) {
-                caches[1] = new DTEDCacheHandler(dtedDirPaths, numColors, opaqueness, cacheSize);
-                caches[1].setSubframeInfo(subframeInfo);
+                caches[1] = createCacheHandler();
             }
 
             caches[1].setProjection(proj, lat[ya - lat_minus], lon[0], lat[ya], -1f * lon[1]); // -1
@@ -259,8 +330,7 @@ public class DTEDCacheManager {
         // Equator Split
         if (lat_minus == 1) {
             if (caches[2] == null) {
-                caches[2] = new DTEDCacheHandler(dtedDirPaths, numColors, opaqueness, cacheSize);
-                caches[2].setSubframeInfo(subframeInfo);
+                caches[2] = createCacheHandler();
             }
 
             caches[2].setProjection(proj, lat[0], lon[xa - lon_minus], -1f * lat[1], // flip
@@ -272,8 +342,7 @@ public class DTEDCacheManager {
         // Both!!
         if (lon_minus == 1 && lat_minus == 1) {
             if (caches[3] == null) {
-                caches[3] = new DTEDCacheHandler(dtedDirPaths, numColors, opaqueness, cacheSize);
-                caches[3].setSubframeInfo(subframeInfo);
+                caches[3] = createCacheHandler();
             }
 
             caches[3].setProjection(proj, lat[0], lon[0], -1f * lat[1],// flip
@@ -296,6 +365,13 @@ public class DTEDCacheManager {
                 }
             }
         }
+
+        // With the view taken care of, start loading what's around it.
+        for (int nbox = 0; nbox < MAX_NUM_BOXES; nbox++) {
+            if (caches[nbox] != null) {
+                caches[nbox].prefetch();
+            }
+        }
         return graphics;
     }
 
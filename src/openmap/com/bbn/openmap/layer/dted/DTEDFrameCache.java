@@ -23,9 +23,15 @@
 package com.bbn.openmap.layer.dted;
 
 import java.awt.geom.Point2D;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.ListIterator;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.bbn.openmap.PropertyConsumer;
+import com.bbn.openmap.dataAccess.dted.DTEDElevationStore;
 import com.bbn.openmap.dataAccess.dted.DTEDFrameUtil;
 import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.proj.EqualArc;
@@ -42,6 +48,11 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * provided paths to the dted directory, which is the top level directory in a
  * dted file structure. The paths are provided in a String array, so you can
  * have data in different places on a system, including a CDROM drive. 
+ * <P>
+ * Frames can also be loaded ahead of time with prefetch(), usually from a
+ * DTEDFramePrefetcher running in another thread. The cache keeps track of how
+ * many frames asked for by get() were already there because of a prefetch, so
+ * the prefetch hit rate can be reported.
  */
 public class DTEDFrameCache
         extends CacheHandler
@@ -71,6 +82,18 @@ public class DTEDFrameCache
 
     protected String propertyPrefix = null;
 
+    /**
+     * The paths of the frames loaded by prefetch() that haven't been asked for
+     * by get() yet.
+     */
+    protected final Set<String> prefetched = Collections.synchronizedSet(new HashSet<String>());
+    /** The number of frames added to the cache by prefetch(). */
+    protected final AtomicInteger prefetchLoads = new AtomicInteger();
+    /** The number of frames asked for by get() that had been prefetched. */
+    protected final AtomicInteger prefetchHits = new AtomicInteger();
+    /** The number of frames that get() had to load itself. */
+    protected final AtomicInteger demandLoads = new AtomicInteger();
+
     public DTEDFrameCache() {
         super();
     }
@@ -156,6 +179,129 @@ public class DTEDFrameCache
         return null;
     }
 
+    /**
+     * Get an object from the cache, loading it if it isn't there. Overridden
+     * to keep track of the prefetch hits and the frames that had to be loaded
+     * on demand.
+     * 
+     * @param key complete path to the frame, as a string.
+     * @return DTEDSubframedFrame, or null if it can't be loaded.
+     */
+    public Object get(Object key) {
+        CacheObject co = searchCache(key);
+        if (co != null) {
+            if (prefetched.remove(key)) {
+                prefetchHits.incrementAndGet();
+            }
+            return co.obj;
+        }
+        if (key != null) {
+            demandLoads.incrementAndGet();
+            // A prefetched frame tossed before it was asked for wasn't a hit.
+            prefetched.remove(key);
+        }
+        return super.get(key);
+    }
+
+    /**
+     * Check if the frame for a path is in the cache, without marking it as
+     * recently used.
+     * 
+     * @param key complete path to the frame, as a string.
+     */
+    public synchronized boolean isCached(Object key) {
+        return key != null && objs.containsKey(key);
+    }
+
+    /**
+     * Load the frame for a lat/lon and dted level into the cache, if it isn't
+     * there already. Meant to be called from a background thread so the frame
+     * is ready when the map moves over it. The frame is read outside of the
+     * cache lock, and its subframes are set up for the current subframe
+     * layout before it's added.
+     * 
+     * @param lat latitude of point
+     * @param lon longitude of point
+     * @param level the dted level wanted (0, 1, 2)
+     * @return true if a frame was loaded and added to the cache.
+     */
+    public boolean prefetch(double lat, double lon, int level) {
+        String name = findFileName(lat, lon, level);
+        if (name == null || isCached(name)) {
+            return false;
+        }
+
+        CacheObject co = load(name);
+        if (co == null) {
+            return false;
+        }
+
+        synchronized (this) {
+            DTEDSubframedFrame frame = (DTEDSubframedFrame) co.obj;
+            // The subframe layout may have changed while the frame was read.
+            if (frame.number_horiz_subframes != numXSubframes || frame.number_vert_subframes != numYSubframes) {
+                frame.initSubframes(numXSubframes, numYSubframes);
+            }
+
+            if (replaceLeastUsed(co) != co) {
+                // get() beat us to it.
+                return false;
+            }
+
+            prefetchLoads.incrementAndGet();
+            prefetched.add(name);
+            if (prefetched.size() > getCacheSize()) {
+                // Forget the prefetched frames that have been tossed.
+                prefetched.retainAll(objs.keySet());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of frames added to the cache by prefetch().
+     */
+    public int getPrefetchLoads() {
+        return prefetchLoads.get();
+    }
+
+    /**
+     * @return the number of frames asked for by get() that had been loaded by
+     *         prefetch().
+     */
+    public int getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    /**
+     * @return the number of frames get() had to load itself.
+     */
+    public int getDemandLoads() {
+        return demandLoads.get();
+    }
+
+    /**
+     * The prefetch hit rate is the fraction of the frames get() needed that
+     * weren't already cached, and were there because of a prefetch.
+     * 
+     * @return the hit rate, 0 - 1, or 0 if no frames have been needed yet.
+     */
+    public double getPrefetchHitRate() {
+        int hits = prefetchHits.get();
+        int total = hits + demandLoads.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Reset the prefetch counts.
+     */
+    public void resetPrefetchStatistics() {
+        prefetchLoads.set(0);
+        prefetchHits.set(0);
+        demandLoads.set(0);
+        prefetched.clear();
+    }
+
     /**
      * A private class that makes sure that cached frames get disposed properly.
      */
@@ -218,65 +364,32 @@ public class DTEDFrameCache
      */
     public void resizeCache(int max_size, int num_x_subframes, int num_y_subframes) {
 
-        boolean destructive = false;
-
-        if (num_x_subframes > 0 && num_y_subframes > 0) {
-            numXSubframes = num_x_subframes;
-            numYSubframes = num_y_subframes;
-            destructive = true;
-            Debug.message("dted", "DTEDFrameCache: destructive resizing");
-        } else {
-            Debug.message("dted", "DTEDFrameCache: passive resizing");
-        }
-
-        CacheObject[] oldObjs = objs;
-
-        if (max_size != objs.length && max_size > 0) {
-            objs = new CacheObject[max_size];
-        }
-
-        for (int i = 0; i < objs.length; i++) {
-
-            if (i >= oldObjs.length) {
-                break;
-            }
-
-            DTEDCacheObject dco = (DTEDCacheObject) oldObjs[i];
+        // Locked so a frame being prefetched gets the new subframe layout.
+        synchronized (this) {
+            boolean destructive = false;
 
-            if (dco == null) {
-                // We load from the front to the back 0 -> length - 1;
-                // Once you hit a null, the rest should be null, too.
-                objs[i] = null;
-                continue;
-            }
-
-            DTEDSubframedFrame frame = (DTEDSubframedFrame) (dco.obj);
-            dco.cachedTime = 0;
-
-            if (frame == null) {
-                Debug.output("DTEDFrameCache: No Frame for key!");
-                continue;
+            if (num_x_subframes > 0 && num_y_subframes > 0) {
+                numXSubframes = num_x_subframes;
+                numYSubframes = num_y_subframes;
+                destructive = true;
+                Debug.message("dted", "DTEDFrameCache: destructive resizing");
+            } else {
+                Debug.message("dted", "DTEDFrameCache: passive resizing");
             }
 
             if (destructive) {
-                frame.initSubframes(num_x_subframes, num_y_subframes);
-            } else {
-                // If it's not destructive, and the size didn't
-                // change, then just continue through the loop
-                // resetting the cachedTime for the CacheObjects.
-                if (oldObjs == objs) {
-                    continue;
+                for (ListIterator<CacheObject> it = listIterator(); it.hasNext();) {
+                    DTEDSubframedFrame frame = (DTEDSubframedFrame) it.next().obj;
+                    if (frame == null) {
+                        Debug.output("DTEDFrameCache: No Frame for key!");
+                        continue;
+                    }
+                    frame.initSubframes(num_x_subframes, num_y_subframes);
                 }
             }
 
-            if (i < oldObjs.length) {
-                objs[i] = oldObjs[i];
-            } else {
-                objs[i] = null;
-            }
+            super.resizeCache(max_size);
         }
-
-        oldObjs = null;
     }
 
     /**
@@ -416,7 +529,8 @@ public class DTEDFrameCache
         int[] xLengths = new int[xSize];
         int[] yLengths = new int[ySize];
 
-        short[][][][] es = new short[xSize][ySize][][];
+        // Views of the posts in each frame, copied once into the result.
+        DTEDElevationStore.View[][] es = new DTEDElevationStore.View[xSize][ySize];
         int x, y;
         DTEDSubframedFrame frame = null;
         boolean needCalc = false;
@@ -453,9 +567,9 @@ public class DTEDFrameCache
                     // upperlat + ", " +
                     // lowerlon + ", " +
                     // lowerlat+ ", " + upperlon);
-                    es[x][y] = thisFrame.getElevations(upperlat, lowerlon, lowerlat, upperlon);
-                    xLengths[x] = es[x][y].length;
-                    yLengths[y] = es[x][y][0].length;
+                    es[x][y] = thisFrame.getElevationView(upperlat, lowerlon, lowerlat, upperlon);
+                    xLengths[x] = es[x][y].getNumColumns();
+                    yLengths[y] = es[x][y].getNumRows();
                     frame = thisFrame;
                 } else {
                     if (refFrame != null) {
@@ -511,8 +625,8 @@ public class DTEDFrameCache
                 // Make sure the frame exists and is found...
                 if (es[x][y] != null) {
                     // Through each lon row in each little matrix
-                    for (int i = 0; i < es[x][y].length; i++) {
-                        System.arraycopy(es[x][y][i], 0, matrix[i + xspacer], yspacer, es[x][y][i].length);
+                    for (int i = 0; i < es[x][y].getNumColumns(); i++) {
+                        es[x][y].getColumn(i, matrix[i + xspacer], yspacer);
                     }
                     // On the last one lon column, increase the spacer
                     // for the
@@ -0,0 +1,316 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.dted;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.util.TaskService;
+
+/**
+ * The DTEDFramePrefetcher loads DTED frames into a DTEDFrameCache in the
+ * background, ahead of the view. It's told about each view the map shows, and
+ * keeps track of the direction the map is being panned in from the movement
+ * of the view center. After the frames for a view have been used, prefetch()
+ * loads the ring of frames around the view, the frames in the pan direction
+ * first, and optionally the frames of the lower DTED levels ahead of the view.
+ * When the next view comes in the prefetch in progress is stopped, so it
+ * doesn't hold up the frames the new view needs.
+ * <P>
+ * The number of frames prefetched is limited to the room left in the cache
+ * after the frames of the current view, so the prefetch doesn't push out the
+ * frames being displayed.
+ */
+public class DTEDFramePrefetcher {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.dted.DTEDFramePrefetcher");
+
+    /** The default maximum number of frames loaded for a view. */
+    public final static int DEFAULT_MAX_PREFETCH = 12;
+
+    /** The cache the frames are loaded into. */
+    protected DTEDFrameCache frameCache;
+    /** The maximum number of frames loaded for a view. */
+    protected int maxPrefetch = DEFAULT_MAX_PREFETCH;
+    /** Whether the lower DTED level frames ahead of the view are loaded. */
+    protected boolean prefetchLowerLevels = false;
+    /**
+     * Incremented for every view, a prefetch task stops when it doesn't match
+     * the number it was started with.
+     */
+    protected final AtomicInteger generation = new AtomicInteger();
+
+    // The frames of the current view, the way the DTEDCacheHandler figures
+    // them, lons from left up to right, lats from down to up.
+    protected int frameLeft, frameRight, frameDown, frameUp;
+    protected int level;
+    protected boolean haveView = false;
+
+    // The center of the last view, and the direction the map is moving.
+    protected double centerLat, centerLon;
+    protected double panLat, panLon;
+
+    /**
+     * Create a prefetcher for a frame cache.
+     * 
+     * @param cache the DTEDFrameCache to load frames into.
+     */
+    public DTEDFramePrefetcher(DTEDFrameCache cache) {
+        frameCache = cache;
+    }
+
+    public DTEDFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * Set the maximum number of frames loaded for a view.
+     */
+    public void setMaxPrefetch(int max) {
+        maxPrefetch = max;
+    }
+
+    public int getMaxPrefetch() {
+        return maxPrefetch;
+    }
+
+    /**
+     * Set whether the frames of the lower DTED levels ahead of the view are
+     * prefetched, after the frames of the level being viewed.
+     */
+    public void setPrefetchLowerLevels(boolean value) {
+        prefetchLowerLevels = value;
+    }
+
+    public boolean getPrefetchLowerLevels() {
+        return prefetchLowerLevels;
+    }
+
+    /**
+     * Let the prefetcher know about a new view, before its frames are fetched.
+     * Stops any prefetch in progress, and updates the pan direction.
+     * 
+     * @param lat1 latitude of the upper left corner of the view, in decimal
+     *        degrees.
+     * @param lon1 longitude of the upper left corner of the view, in decimal
+     *        degrees.
+     * @param lat2 latitude of the lower right corner of the view, in decimal
+     *        degrees.
+     * @param lon2 longitude of the lower right corner of the view, in decimal
+     *        degrees.
+     * @param dtedLevel the DTED level being viewed.
+     */
+    public synchronized void viewChanged(double lat1, double lon1, double lat2, double lon2, int dtedLevel) {
+        cancel();
+
+        double lat = (lat1 + lat2) / 2.0;
+        double lon = (lon1 + lon2) / 2.0;
+        int left = (int) Math.floor(lon1);
+        int right = (int) Math.ceil(lon2);
+        int down = (int) Math.floor(lat2);
+        int up = (int) Math.floor(lat1);
+
+        if (haveView) {
+            boolean sameSize = (right - left) == (frameRight - frameLeft) && (up - down) == (frameUp - frameDown);
+            double dLat = lat - centerLat;
+            double dLon = lon - centerLon;
+            double dist = Math.sqrt(dLat * dLat + dLon * dLon);
+            if (!sameSize || dtedLevel != level) {
+                // Zoomed, no direction to go on.
+                panLat = 0;
+                panLon = 0;
+            } else if (dist > 0) {
+                panLat = dLat / dist;
+                panLon = dLon / dist;
+            }
+        }
+
+        centerLat = lat;
+        centerLon = lon;
+        frameLeft = left;
+        frameRight = right;
+        frameDown = down;
+        frameUp = up;
+        level = dtedLevel;
+        haveView = true;
+    }
+
+    /**
+     * Stop the prefetch in progress, if there is one. The frame being loaded
+     * is finished and added to the cache.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Start loading the frames around the current view in the background.
+     * Should be called after the frames for the view have been fetched.
+     */
+    public synchronized void prefetch() {
+        if (!haveView) {
+            return;
+        }
+
+        int visible = (frameRight - frameLeft) * (frameUp - frameDown + 1);
+        int room = Math.min(maxPrefetch, frameCache.getCacheSize() - visible);
+        if (room <= 0) {
+            return;
+        }
+
+        final List<int[]> frames = getPrefetchFrames(room);
+        if (frames.isEmpty()) {
+            return;
+        }
+
+        final int gen = generation.incrementAndGet();
+        try {
+            TaskService.singleton().spawn(new Runnable() {
+                public void run() {
+                    load(frames, gen);
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            logger.fine("prefetch not started, no threads available");
+        }
+    }
+
+    /**
+     * Load the frames, stopping if another view comes in.
+     * 
+     * @param frames lat, lon, level for each frame.
+     * @param gen the generation the prefetch was started for.
+     */
+    protected void load(List<int[]> frames, int gen) {
+        int loaded = 0;
+        for (int[] f : frames) {
+            if (generation.get() != gen) {
+                break;
+            }
+            try {
+                if (frameCache.prefetch(f[0] + .5, f[1] + .5, f[2])) {
+                    loaded++;
+                }
+            } catch (RuntimeException re) {
+                logger.log(Level.FINE, "problem prefetching frame at " + f[0] + ", " + f[1], re);
+            }
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("prefetched " + loaded + " of " + frames.size() + " frames, hit rate "
+                    + Math.round(frameCache.getPrefetchHitRate() * 100) + "% (" + frameCache.getPrefetchHits()
+                    + " hits, " + frameCache.getDemandLoads() + " demand loads)");
+        }
+    }
+
+    /**
+     * Figure out which frames to prefetch for the current view, in the order
+     * they should be loaded. The ring of frames around the view is sorted so
+     * the frames in the pan direction come first, then the closest ones. The
+     * lower DTED level frames for the ring frames ahead of the view follow, if
+     * they're wanted, and then the ring frames behind the view.
+     * 
+     * @param max the maximum number of frames to return.
+     * @return list of lat, lon, level for each frame, lat/lon of the lower
+     *         left corner of the frame.
+     */
+    protected List<int[]> getPrefetchFrames(int max) {
+        final double cLat = (frameUp + 1 + frameDown) / 2.0;
+        final double cLon = (frameRight + frameLeft) / 2.0;
+        final double pLat = panLat;
+        final double pLon = panLon;
+
+        List<int[]> ring = new ArrayList<int[]>();
+        for (int lon = frameLeft - 1; lon <= frameRight; lon++) {
+            for (int lat = frameDown - 1; lat <= frameUp + 1; lat++) {
+                boolean inView = lon >= frameLeft && lon < frameRight && lat >= frameDown && lat <= frameUp;
+                if (inView || lat < -90 || lat > 89) {
+                    continue;
+                }
+                int wlon = lon;
+                if (wlon >= 180) {
+                    wlon -= 360;
+                } else if (wlon < -180) {
+                    wlon += 360;
+                }
+                ring.add(new int[] {
+                    lat,
+                    wlon,
+                    level,
+                    lat,
+                    lon
+                });
+            }
+        }
+
+        Collections.sort(ring, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                double aLat = a[3] + .5 - cLat;
+                double aLon = a[4] + .5 - cLon;
+                double bLat = b[3] + .5 - cLat;
+                double bLon = b[4] + .5 - cLon;
+                double aAhead = Math.signum(aLat * pLat + aLon * pLon);
+                double bAhead = Math.signum(bLat * pLat + bLon * pLon);
+                if (aAhead != bAhead) {
+                    return aAhead > bAhead ? -1 : 1;
+                }
+                double aDist = aLat * aLat + aLon * aLon;
+                double bDist = bLat * bLat + bLon * bLon;
+                return aDist < bDist ? -1 : (aDist > bDist ? 1 : 0);
+            }
+        });
+
+        // The frames in the pan direction, or all of them if the map isn't
+        // being panned.
+        boolean panning = pLat != 0 || pLon != 0;
+        List<int[]> ahead = new ArrayList<int[]>();
+        List<int[]> behind = new ArrayList<int[]>();
+        for (int[] f : ring) {
+            double dot = (f[3] + .5 - cLat) * pLat + (f[4] + .5 - cLon) * pLon;
+            if (!panning || dot > 0) {
+                ahead.add(f);
+            } else {
+                behind.add(f);
+            }
+        }
+
+        List<int[]> frames = new ArrayList<int[]>(ahead);
+        if (prefetchLowerLevels) {
+            for (int l = level - 1; l >= DTEDFrameSubframe.LEVEL_0; l--) {
+                for (int[] f : ahead) {
+                    frames.add(new int[] {
+                        f[0],
+                        f[1],
+                        l,
+                        f[3],
+                        f[4]
+                    });
+                }
+            }
+        }
+        frames.addAll(behind);
+
+        if (frames.size() > max) {
+            frames = new ArrayList<int[]>(frames.subList(0, max));
+        }
+        return frames;
+    }
+}
@@ -122,6 +122,11 @@ import com.bbn.openmap.util.PropUtils;
  *     # DTEDFrameCache.FRAME_CACHE_SIZE, which is 15 to help smaller systems.  Better
  *     # caching happens, the larger the number.
  *     dted.cacheSize=40
+ *     # Load the frames around the view in the background, the frames in the
+ *     # direction the map is being panned first (false by default).
+ *     dted.prefetch=true
+ *     # Also prefetch the lower level frames ahead of the view (false by default).
+ *     dted.prefetch.lowerLevels=false
  *     #-------------------------------------
  *     # End of properties for DTEDLayer
  *     #-------------------------------------
@@ -172,6 +177,10 @@ public class DTEDLayer
     protected boolean killCache = true;
     /** The number of frames held by the cache objects. */
     protected int cacheSize = DTEDCacheHandler.FRAME_CACHE_SIZE;
+    /** Flag to load the frames around the view in the background. */
+    protected boolean prefetch = false;
+    /** Flag to prefetch the lower level frames ahead of the view, too. */
+    protected boolean prefetchLowerLevels = false;
 
     public static final String DTEDPathsProperty = "paths";
     public static final String DTED2PathsProperty = "level2.paths";
@@ -184,6 +193,8 @@ public class DTEDLayer
     public static final String DTEDMinScaleProperty = "min.scale";
     public static final String DTEDKillCacheProperty = "kill.cache";
     public static final String DTEDFrameCacheSizeProperty = "cacheSize";
+    public static final String DTEDPrefetchProperty = "prefetch";
+    public static final String DTEDPrefetchLowerLevelsProperty = "prefetch.lowerLevels";
 
     private String level0Command = "setLevelTo0";
     private String level1Command = "setLevelTo1";
@@ -287,6 +298,8 @@ public class DTEDLayer
             // Debug.output("DTEDLayer: Creating cache! (This is a one-time operation!)");
             cache = new DTEDCacheManager(paths, numColors, opaqueness);
             cache.setCacheSize(cacheSize);
+            cache.setPrefetch(prefetch);
+            cache.setPrefetchLowerLevels(prefetchLowerLevels);
             DTEDFrameSubframeInfo dfsi = new DTEDFrameSubframeInfo(viewType, bandHeight, dtedLevel, slopeAdjust);
             cache.setSubframeInfo(dfsi);
         }
@@ -337,6 +350,10 @@ public class DTEDLayer
 
         setKillCache(PropUtils.booleanFromProperties(properties, prefix + DTEDKillCacheProperty, getKillCache()));
 
+        setPrefetch(PropUtils.booleanFromProperties(properties, prefix + DTEDPrefetchProperty, getPrefetch()));
+
+        setPrefetchLowerLevels(PropUtils.booleanFromProperties(properties, prefix + DTEDPrefetchLowerLevelsProperty, getPrefetchLowerLevels()));
+
     }
 
     /**
@@ -565,6 +582,34 @@ public class DTEDLayer
         }
     }
 
+    /**
+     * Get whether the frames around the view are loaded in the background.
+     */
+    public boolean getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(boolean value) {
+        prefetch = value;
+        if (cache != null) {
+            cache.setPrefetch(value);
+        }
+    }
+
+    /**
+     * Get whether the lower level frames ahead of the view are prefetched.
+     */
+    public boolean getPrefetchLowerLevels() {
+        return prefetchLowerLevels;
+    }
+
+    public void setPrefetchLowerLevels(boolean value) {
+        prefetchLowerLevels = value;
+        if (cache != null) {
+            cache.setPrefetchLowerLevels(value);
+        }
+    }
+
     /**
      * Get the number of colors used in the DTED images.
      */
@@ -362,11 +362,6 @@ public class DTEDSubframedFrame
                 xc = 0;
             if (xc > dsi.num_lon_points - 1)
                 xc = (short) (dsi.num_lon_points - 1);
-
-            if ((elevations[xc] == null) && !readDataRecord(xc)) {
-                Debug.error("DTEDFrame: Problem reading lat point line in data record");
-                return null;
-            }
             if (dfsi.viewType == DTEDFrameSubframe.SLOPESHADING
                     || (dfsi.viewType == DTEDFrameSubframe.COLOREDSHADING && colortable.colors.length > DTEDFrameColorTable.NUM_ELEVATION_COLORS)) {
                 // This is actually finding the right x post for this
@@ -384,11 +379,6 @@ public class DTEDSubframedFrame
                     xse = (short) (dsi.num_lon_points - 1);
                     xnw = (short) (xse - 2.0 * Math.ceil(lon_interval));
                 }
-
-                if (((elevations[xnw] == null) && !readDataRecord(xnw)) || ((elevations[xse] == null) && !readDataRecord(xse))) {
-                    Debug.error("DTEDFrame: Problem reading lat point line in data record");
-                    return null;
-                }
             }
 
             // Now, calculate the data and assign the pixels based on
@@ -399,7 +389,7 @@ public class DTEDSubframedFrame
                 yc = (short) (start_lat_index - ((y) * lat_interval));
                 if (yc < 0)
                     yc = 0;
-                elevation = (int) elevations[xc][yc];
+                elevation = (int) posts.get(xc, yc);
 
                 // elevation shading
                 if (dfsi.viewType == DTEDFrameSubframe.METERSHADING || dfsi.viewType == DTEDFrameSubframe.FEETSHADING) {
@@ -460,9 +450,9 @@ public class DTEDSubframedFrame
                     if (yc == dsi.num_lat_lines - 1 || ynw > dsi.num_lat_lines - 1)
                         ynw = (short) (dsi.num_lat_lines - 1);
 
-                    e2 = elevations[xse][yse]; // down & right
+                    e2 = posts.get(xse, yse); // down & right
                     // elevation
-                    e1 = elevations[xnw][ynw]; // up and left
+                    e1 = posts.get(xnw, ynw); // up and left
                     // elevation
 
                     slope = (e2 - e1) / distance; // slope relative to
@@ -25,7 +25,6 @@ package com.bbn.openmap.layer.link;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.DataInput;
-import java.io.DataInputStream;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.InputStream;
@@ -54,6 +53,18 @@ import com.bbn.openmap.util.Debug;
  * connected until the client is finished. The server can request to
  * be disconnected, however, and the ClientLink provides a method for
  * the client to check if that request has been made.
+ * <P>
+ * 
+ * A Link uses the original, unframed protocol by default. When the
+ * protocol version is set to PROTOCOL_VERSION_2, the Link lets the
+ * other side know that it understands version 2 by adding a
+ * PROTOCOL_V2_HEADER to the front of its transmissions. Older Java
+ * links skip that header, but other link servers (like the C server)
+ * may not, so version 2 has to be turned on. Once the other side has
+ * shown it understands version 2, each transmission is written as one
+ * length-prefixed frame, which can be deflated if either side asks
+ * for compression. A frame is read off the socket in one piece, and
+ * then parsed from memory.
  */
 public class Link implements LinkConstants {
     /** The apparent maximum size of a header. */
@@ -61,7 +72,7 @@ public class Link implements LinkConstants {
     /** For outgoing traffic. */
     protected LinkOutputStream dos = null;
     /** For incoming traffic. */
-    protected DataInputStream dis = null;
+    protected LinkInputStream dis = null;
     /** Used to read/create strings from off the input stream. */
     protected char[] charArray = new char[MAX_HEADER_LENGTH];
     /**
@@ -105,6 +116,8 @@ public class Link implements LinkConstants {
     protected LinkGUIList guiList = null;
     /** The socket used for the link. Kept for convenience. */
     protected Socket socket = null;
+    /** Set when cleanUp() has closed the streams. */
+    protected volatile boolean closed = false;
     /**
      * The lock. This should only be changed within a synchronized
      * block of code, synchronized on the link object.!! Otherwise,
@@ -117,6 +130,29 @@ public class Link implements LinkConstants {
      * default.
      */
     protected boolean obeyCommandToExit = false;
+    /**
+     * The highest protocol version this side of the link will use,
+     * PROTOCOL_VERSION_1 by default.
+     */
+    protected int protocolVersion = PROTOCOL_VERSION_1;
+    /**
+     * The protocol version the other side of the link has shown it
+     * understands.
+     */
+    protected volatile int peerProtocolVersion = PROTOCOL_VERSION_1;
+    /** Whether this side of the link asks for deflated frames. */
+    protected boolean compression = false;
+    /** Whether the other side of the link asked for deflated frames. */
+    protected volatile boolean peerCompression = false;
+    /**
+     * The default size of a transmission, in bytes, before its frame
+     * is deflated.
+     */
+    public final static int DEFAULT_COMPRESSION_THRESHOLD = 1024;
+    /** The size of a transmission before its frame is deflated. */
+    protected int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    /** Set while a transmission is being written. */
+    protected boolean writingTransmission = false;
 
     /**
      * Open up a link over a socket.
@@ -128,7 +164,7 @@ public class Link implements LinkConstants {
         this.socket = socket;
         InputStream is = socket.getInputStream();
         BufferedInputStream bis = new BufferedInputStream(is);
-        this.dis = new DataInputStream(bis);
+        this.dis = new LinkInputStream(bis);
 
         OutputStream os = socket.getOutputStream();
         BufferedOutputStream bos = new BufferedOutputStream(os);
@@ -140,26 +176,48 @@ public class Link implements LinkConstants {
      * resources when the link is through being used.
      */
     public void cleanUp() {
+        // The streams are closed but kept, so another thread still
+        // reading the link gets an IOException.
+        closed = true;
         try {
             this.dis.close();
             this.dos.close();
         } catch (IOException ioe) {
         }
+    }
 
-        this.dis = null;
-        this.dos = null;
+    /**
+     * @return true if the link has been cleaned up or its socket
+     *         closed, so nothing more can be read from it.
+     */
+    public boolean isClosed() {
+        return closed || (socket != null && socket.isClosed());
     }
 
     /**
      * The method to call at the beginning of a request or response.
      * It writes the header given to the link. This header is expected
-     * on the other side of the link.
+     * on the other side of the link. At the start of a transmission,
+     * a frame is started if both sides understand protocol version 2,
+     * otherwise the version 2 header is written first if this side
+     * understands it.
      * 
      * @param messageHeader Header string, defined in the Link object,
      *        that describes the tranmission.
      * @throws IOException
      */
     public void start(String messageHeader) throws IOException {
+        if (!writingTransmission) {
+            writingTransmission = true;
+            if (protocolVersion >= PROTOCOL_VERSION_2) {
+                if (peerProtocolVersion >= PROTOCOL_VERSION_2) {
+                    dos.startFrame();
+                } else {
+                    dos.write((compression ? PROTOCOL_V2_COMPRESS_HEADER
+                            : PROTOCOL_V2_HEADER).getBytes());
+                }
+            }
+        }
         dos.write(messageHeader.getBytes());
     }
 
@@ -177,6 +235,13 @@ public class Link implements LinkConstants {
     public void end(String endType) throws IOException {
         dos.write(endType.getBytes());
         if (END_TOTAL.equals(endType)) {
+            if (dos.isFraming()) {
+                boolean deflate = compression || peerCompression;
+                dos.endFrame(FRAME_HEADER.getBytes(),
+                        compression ? FRAME_COMPRESS_REQUESTED : 0,
+                        deflate ? compressionThreshold : -1);
+            }
+            writingTransmission = false;
             dos.flush();
         }
     }
@@ -239,8 +304,6 @@ public class Link implements LinkConstants {
         guiList = null;
         closeLink = false;
 
-        String delimiter = null;
-
         if (Debug.debugging("link")) {
             System.out.println("Link|readAndParse: listening to link:");
             System.out.println((proj == null ? " without " : " with ")
@@ -249,6 +312,26 @@ public class Link implements LinkConstants {
                     + "a layer");
         }
 
+        try {
+            readSections(graphics, proj, generator, layer);
+        } finally {
+            // Drop anything left over in a frame, the next
+            // transmission starts on the socket.
+            if (dis != null) {
+                dis.endFrame();
+            }
+        }
+    }
+
+    /**
+     * Read sections off the link until END_TOTAL is read.
+     */
+    protected void readSections(LinkOMGraphicList graphics, Projection proj,
+                                OMGridGenerator generator, Layer layer)
+            throws IOException {
+
+        String delimiter = null;
+
         while (true) {
             delimiter = readDelimiter(true);
             if (Debug.debugging("link")) {
@@ -289,6 +372,16 @@ public class Link implements LinkConstants {
                 start(PING_RESPONSE_HEADER);
                 end(END_TOTAL);
                 delimiter = readDelimiter(false);
+            } else if (delimiter == FRAME_HEADER) {
+                int flags = dis.readFrame();
+                peerProtocolVersion = PROTOCOL_VERSION_2;
+                peerCompression = (flags & FRAME_COMPRESS_REQUESTED) != 0;
+            } else if (delimiter == PROTOCOL_V2_HEADER) {
+                peerProtocolVersion = PROTOCOL_VERSION_2;
+                peerCompression = false;
+            } else if (delimiter == PROTOCOL_V2_COMPRESS_HEADER) {
+                peerProtocolVersion = PROTOCOL_VERSION_2;
+                peerCompression = true;
             }
 
             if (delimiter == END_TOTAL) {
@@ -305,6 +398,70 @@ public class Link implements LinkConstants {
         return obeyCommandToExit;
     }
 
+    /**
+     * Set the highest protocol version this side of the link will
+     * use. PROTOCOL_VERSION_1 keeps transmissions unframed, and
+     * doesn't let the other side know about version 2.
+     * 
+     * @param version PROTOCOL_VERSION_1 or PROTOCOL_VERSION_2.
+     */
+    public void setProtocolVersion(int version) {
+        protocolVersion = version;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * @return the protocol version the other side of the link has
+     *         shown it understands, PROTOCOL_VERSION_1 until
+     *         something has been read from it.
+     */
+    public int getPeerProtocolVersion() {
+        return peerProtocolVersion;
+    }
+
+    /**
+     * Set whether frames should be deflated, in both directions. The
+     * other side of the link is asked to deflate its frames, too, and
+     * will if it understands protocol version 2. Deflating costs some
+     * CPU time, and is worth it for large transmissions over slower
+     * networks.
+     */
+    public void setCompression(boolean value) {
+        compression = value;
+    }
+
+    public boolean getCompression() {
+        return compression;
+    }
+
+    /**
+     * Set the size of a transmission, in bytes, before its frame is
+     * deflated, when compression has been asked for.
+     */
+    public void setCompressionThreshold(int bytes) {
+        compressionThreshold = bytes;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * Set the largest frame, in bytes, that will be read off the link.
+     * Reading a larger frame throws an IOException, which fails the
+     * link.
+     */
+    public void setMaxFrameLength(int bytes) {
+        dis.setMaxFrameLength(bytes);
+    }
+
+    public int getMaxFrameLength() {
+        return dis.getMaxFrameLength();
+    }
+
     /**
      * After a readAndParse() has been called on a link, this can be
      * called to retrieve a graphics request, if one was sent.
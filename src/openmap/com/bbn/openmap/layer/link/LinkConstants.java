@@ -61,6 +61,36 @@ public interface LinkConstants {
     /** Header to instruct the other other side to quit. */
     public static final String SHUTDOWN_HEADER = "<SDWN>";
 
+    /** The original, unframed Link Protocol. */
+    public static final int PROTOCOL_VERSION_1 = 1;
+    /**
+     * The framed Link Protocol, where each request or response is
+     * sent as one length-prefixed, optionally deflated, frame.
+     */
+    public static final int PROTOCOL_VERSION_2 = 2;
+    /**
+     * Header written at the front of an unframed transmission to let
+     * the other side know that framed transmissions are understood.
+     * Older links skip it as an unknown header.
+     */
+    public static final String PROTOCOL_V2_HEADER = "<P2>";
+    /**
+     * Header written at the front of an unframed transmission to let
+     * the other side know that framed transmissions are understood,
+     * and that deflated frames are preferred.
+     */
+    public static final String PROTOCOL_V2_COMPRESS_HEADER = "<P2Z>";
+    /**
+     * Header for a protocol version 2 frame, followed by an int of
+     * frame flags, an int with the length of the transmission and an
+     * int with the number of payload bytes that follow.
+     */
+    public static final String FRAME_HEADER = "<F2>";
+    /** Frame flag set when the frame payload is deflated. */
+    public static final int FRAME_DEFLATED = 1 << 0;
+    /** Frame flag set when the sender prefers deflated frames. */
+    public static final int FRAME_COMPRESS_REQUESTED = 1 << 1;
+
     /** Bitmap graphic object header. */
     public static final String BITMAP_HEADER = "<B>";
     /** Text graphic object header. */
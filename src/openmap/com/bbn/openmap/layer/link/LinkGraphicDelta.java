@@ -0,0 +1,192 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The LinkGraphicDelta helps a LinkServer answer map requests with only the
+ * changes to the graphics the client already holds. A client that wants delta
+ * updates puts the identifiers of its graphics in the LPC_HELD_GRAPHICIDS
+ * property of the map request, along with an LPC_DELTA_BASE token. The server
+ * creates a LinkGraphicDelta from the request properties, and calls
+ * include() for each graphic in the new map extent to find out whether it
+ * has to be sent:
+ * 
+ * <pre>
+ * LinkGraphicDelta delta = new LinkGraphicDelta(query.getProperties());
+ * List toSend = new ArrayList();
+ * for (each graphic in the extent) {
+ *     if (delta.include(id, modifiedSinceLastSent)) {
+ *         toSend.add(graphic);
+ *     }
+ * }
+ * LinkGraphicList lgl = new LinkGraphicList(link, delta.setProperties(new LinkProperties()));
+ * // write the graphics in toSend...
+ * lgl.end(Link.END_TOTAL);
+ * </pre>
+ * 
+ * The graphics the client held that weren't included are listed for removal.
+ * If the request didn't ask for a delta, include() always returns true and
+ * setProperties() doesn't add anything, so the response is a complete list.
+ * Clients that don't ask for deltas and servers that don't provide them keep
+ * working with complete lists.
+ */
+public class LinkGraphicDelta implements LinkPropertiesConstants {
+
+    /** The graphic identifiers held by the client, null for no delta. */
+    protected Set<String> heldIds;
+    /** The LPC_DELTA_BASE token from the request. */
+    protected String base;
+    /** The graphic identifiers in the new extent. */
+    protected Set<String> currentIds = new HashSet<String>();
+
+    /**
+     * Create a LinkGraphicDelta for a map request.
+     * 
+     * @param requestProperties the properties of the LinkMapRequest.
+     */
+    public LinkGraphicDelta(LinkProperties requestProperties) {
+        String held = requestProperties.getProperty(LPC_HELD_GRAPHICIDS);
+        if (held != null) {
+            heldIds = new HashSet<String>(splitIds(held));
+            base = requestProperties.getProperty(LPC_DELTA_BASE, "");
+        }
+    }
+
+    /**
+     * @return true if the client asked for changes instead of a complete list.
+     */
+    public boolean isDeltaRequested() {
+        return heldIds != null;
+    }
+
+    /**
+     * @return true if the client holds a graphic with the identifier.
+     */
+    public boolean isHeld(String id) {
+        return heldIds != null && heldIds.contains(id);
+    }
+
+    /**
+     * Note that a graphic is in the new extent, and find out whether it needs
+     * to be sent.
+     * 
+     * @param id the graphic identifier, graphics without one are always sent.
+     * @param modified true if the graphic may have changed since it was sent
+     *        to the client.
+     * @return true if the graphic should be written to the response.
+     */
+    public boolean include(String id, boolean modified) {
+        if (id == null) {
+            return true;
+        }
+        currentIds.add(id);
+        return modified || !isHeld(id);
+    }
+
+    /**
+     * @return the identifiers of the held graphics that haven't been
+     *         included, which the client should drop.
+     */
+    public List<String> getRemovedIds() {
+        List<String> removed = new ArrayList<String>();
+        if (heldIds != null) {
+            for (String id : heldIds) {
+                if (!currentIds.contains(id)) {
+                    removed.add(id);
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Add the delta properties to the properties for the LinkGraphicList of
+     * the response, after all the graphics have been included. Does nothing
+     * if the client didn't ask for a delta.
+     * 
+     * @param graphicListProperties the properties for the LinkGraphicList.
+     * @return graphicListProperties
+     */
+    public LinkProperties setProperties(LinkProperties graphicListProperties) {
+        if (heldIds != null) {
+            graphicListProperties.setProperty(LPC_DELTA, base);
+            graphicListProperties.setProperty(LPC_REMOVED_GRAPHICIDS,
+                    joinIds(getRemovedIds()));
+        }
+        return graphicListProperties;
+    }
+
+    /**
+     * Set the map request properties that ask for a delta, for a client.
+     * 
+     * @param requestProperties the properties of the map request.
+     * @param heldIds the identifiers of the graphics held by the client.
+     * @param base a token for the server to return with the response.
+     */
+    public static void setRequestProperties(LinkProperties requestProperties,
+                                            Collection<String> heldIds,
+                                            String base) {
+        requestProperties.setProperty(LPC_HELD_GRAPHICIDS, joinIds(heldIds));
+        requestProperties.setProperty(LPC_DELTA_BASE, base);
+    }
+
+    /**
+     * @return true if the properties of a graphics response mark it as a
+     *         delta.
+     */
+    public static boolean isDelta(LinkProperties graphicListProperties) {
+        return graphicListProperties.getProperty(LPC_DELTA) != null;
+    }
+
+    /**
+     * Join graphic identifiers into an LPC_GRAPHICID_SEPARATOR separated
+     * string.
+     */
+    public static String joinIds(Collection<String> ids) {
+        StringBuilder sb = new StringBuilder();
+        for (Iterator<String> it = ids.iterator(); it.hasNext();) {
+            sb.append(it.next());
+            if (it.hasNext()) {
+                sb.append(LPC_GRAPHICID_SEPARATOR);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Split an LPC_GRAPHICID_SEPARATOR separated string into graphic
+     * identifiers.
+     */
+    public static List<String> splitIds(String ids) {
+        List<String> list = new ArrayList<String>();
+        if (ids != null && ids.length() > 0) {
+            int start = 0;
+            int end;
+            while ((end = ids.indexOf(LPC_GRAPHICID_SEPARATOR, start)) >= 0) {
+                list.add(ids.substring(start, end));
+                start = end + 1;
+            }
+            list.add(ids.substring(start));
+        }
+        return list;
+    }
+}
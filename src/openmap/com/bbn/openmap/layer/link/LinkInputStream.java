@@ -0,0 +1,184 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Extend DataInputStream so a protocol version 2 frame can be read
+ * off the link in one piece, and then read from memory as if it were
+ * coming off the link.
+ * 
+ * @see java.io.DataInputStream
+ */
+public class LinkInputStream extends DataInputStream {
+
+    /**
+     * The default largest frame, in bytes, that will be read off the
+     * link, deflated or inflated.
+     */
+    public final static int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+
+    /** The largest frame, in bytes, that will be read off the link. */
+    protected int maxFrameLength = DEFAULT_MAX_FRAME_LENGTH;
+    /** Holds the frame payload as read off the link. */
+    protected byte[] payloadBuffer = new byte[0];
+    /** Holds the inflated transmission of a deflated frame. */
+    protected byte[] inflateBuffer = new byte[0];
+    /** Reused for deflated frames, created when first needed. */
+    protected Inflater inflater;
+    /** The underlying stream, set while a frame is being read. */
+    protected InputStream frameSource = null;
+    /** The flags of the last frame read. */
+    protected int frameFlags = 0;
+
+    /**
+     * Creates a new link input stream to read data from the specified
+     * underlying input stream.
+     * 
+     * @param in the underlying input stream.
+     */
+    public LinkInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Read the rest of a frame after its header off the underlying
+     * stream. After this call, everything read comes from the frame
+     * until endFrame() is called.
+     * 
+     * @return the frame flags.
+     * @throws IOException if a frame is already being read, or if the
+     *         frame is corrupt or larger than the max frame length.
+     */
+    public int readFrame() throws IOException {
+        if (frameSource != null) {
+            throw new IOException("LinkInputStream: frame found inside a frame.");
+        }
+
+        int flags = readInt();
+        int length = readInt();
+        int payloadLength = readInt();
+        boolean deflated = (flags & LinkConstants.FRAME_DEFLATED) != 0;
+
+        if (length < 0 || payloadLength < 0
+                || (!deflated && payloadLength != length)) {
+            throw new IOException("LinkInputStream: bad frame lengths " + length
+                    + ", " + payloadLength);
+        }
+
+        if (length > maxFrameLength || payloadLength > maxFrameLength) {
+            throw new IOException("LinkInputStream: frame of "
+                    + Math.max(length, payloadLength)
+                    + " bytes is over the limit of " + maxFrameLength);
+        }
+
+        if (payloadBuffer.length < payloadLength) {
+            payloadBuffer = new byte[payloadLength];
+        }
+        readFully(payloadBuffer, 0, payloadLength);
+
+        byte[] frame = payloadBuffer;
+        if (deflated) {
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+            if (inflateBuffer.length < length) {
+                inflateBuffer = new byte[length];
+            }
+            inflater.reset();
+            inflater.setInput(payloadBuffer, 0, payloadLength);
+            try {
+                int count = 0;
+                while (count < length && !inflater.finished()) {
+                    int n = inflater.inflate(inflateBuffer, count, length - count);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    count += n;
+                }
+                if (count != length) {
+                    throw new IOException("LinkInputStream: deflated frame is short, "
+                            + count + " of " + length + " bytes");
+                }
+            } catch (DataFormatException dfe) {
+                throw new IOException("LinkInputStream: bad deflated frame: "
+                        + dfe.getMessage());
+            }
+            frame = inflateBuffer;
+        }
+
+        frameFlags = flags;
+        frameSource = in;
+        in = new ByteArrayInputStream(frame, 0, length);
+        return flags;
+    }
+
+    /**
+     * Set the largest frame, in bytes, that will be read off the link.
+     * A larger frame fails the read before anything is allocated for
+     * it.
+     */
+    public void setMaxFrameLength(int bytes) {
+        maxFrameLength = bytes;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    /**
+     * @return true if a frame is being read.
+     */
+    public boolean isFraming() {
+        return frameSource != null;
+    }
+
+    /**
+     * @return the flags of the last frame read.
+     */
+    public int getFrameFlags() {
+        return frameFlags;
+    }
+
+    /**
+     * Go back to reading from the underlying stream, dropping anything
+     * left in the current frame. Does nothing if a frame isn't being
+     * read.
+     */
+    public void endFrame() {
+        if (frameSource != null) {
+            in = frameSource;
+            frameSource = null;
+        }
+    }
+
+    /**
+     * Release the inflater along with the underlying stream.
+     */
+    public void close() throws IOException {
+        endFrame();
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+        super.close();
+    }
+}
@@ -30,7 +30,12 @@ import java.io.IOException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
 
 import com.bbn.openmap.MapBean;
@@ -78,6 +83,25 @@ import com.bbn.openmap.util.PropUtils;
  *       # server.  How the server handles the property depends on the server,
  *       # but non-applicable properties are ignored.
  *       link.propertiesURL=http://location.of.properties.file.com
+ *      
+ *       # Optional, the highest Link protocol version to use, 1 (the
+ *       # default) for the original protocol, 2 for framed
+ *       # transmissions when the server understands them. Only use 2
+ *       # with servers that skip unknown headers, like the Java
+ *       # LinkServer.
+ *       link.protocolVersion=2
+ *      
+ *       # Optional, ask for deflated transmissions, false by default.
+ *       # Only used with protocol version 2.
+ *       link.compress=false
+ *      
+ *       # Optional, send map requests over their own link, false by
+ *       # default. See the separateMapLink property below.
+ *       link.separateMapLink=false
+ *      
+ *       # Optional, ask the server to only send changes to the graphics
+ *       # the layer already has, false by default.
+ *       link.deltaUpdates=false
  * 
  * 
  * 
@@ -116,6 +140,18 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      * a coordinateed basis.
      */
     protected LinkManager linkManager = null;
+    /**
+     * The LinkManager for map requests, if they are sent over their own link.
+     * Null if map requests use the linkManager.
+     */
+    protected LinkManager mapLinkManager = null;
+    /** The thread listener reading responses off the map request link. */
+    protected LinkListener mapListener;
+    /**
+     * Set when a map request has been sent over the map request link and its
+     * graphics haven't come back yet.
+     */
+    protected volatile boolean mapRequestPending = false;
     /** The flag to suppress pop-up messages. */
     protected boolean quiet = false;
     /** The generator to use with LinkGrid objects. */
@@ -166,6 +202,57 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      */
     public final static String ExitOnCommandProperty = "exitOnCommand";
 
+    /**
+     * The property to set the highest Link protocol version to use, 1 or 2.
+     * Version 2 is only used if the server understands it. "protocolVersion"
+     */
+    public final static String ProtocolVersionProperty = "protocolVersion";
+
+    /**
+     * The property to set to true to ask for deflated transmissions over
+     * protocol version 2. False by default. "compress"
+     */
+    public final static String CompressionProperty = "compress";
+
+    /**
+     * The property to set to true to send map requests over their own link to
+     * the server, so the server handles them and gestures at the same time. A
+     * new map request cancels one still being worked on by replacing its link,
+     * and the server thread for the old link quits when it tries to answer.
+     * Only use this for servers that don't need gestures and map requests to
+     * share a LinkServer. False by default. "separateMapLink"
+     */
+    public final static String SeparateMapLinkProperty = "separateMapLink";
+
+    /**
+     * The property to set to true to ask the server to only send the changes
+     * to the graphics the layer already has with each map request. The IDs of
+     * the held graphics are sent with the request, and a server that uses a
+     * LinkGraphicDelta answers with new, modified and removed graphics. Other
+     * servers keep sending complete lists. False by default. "deltaUpdates"
+     * 
+     * @see LinkGraphicDelta
+     */
+    public final static String DeltaUpdatesProperty = "deltaUpdates";
+
+    /** Whether map requests ask for delta updates. */
+    protected boolean deltaUpdates = false;
+    /**
+     * The graphic IDs sent with recent map requests asking for delta updates,
+     * keyed by their LPC_DELTA_BASE tokens, oldest first.
+     */
+    protected LinkedHashMap<String, Set<String>> deltaBases = new LinkedHashMap<String, Set<String>>();
+    /** Counter for LPC_DELTA_BASE tokens. */
+    protected int deltaBaseCount = 0;
+    /** The most map requests waiting for a delta response that are tracked. */
+    public final static int MAX_DELTA_BASES = 16;
+    /**
+     * The last graphic list received from the server, which delta responses
+     * are merged into. The layer's own list is replaced with an empty
+     * OMGraphicList by the projection change policy, so it can't be used.
+     */
+    protected LinkOMGraphicList receivedList = null;
+
     /**
      * The default constructor for the Layer. All of the attributes are set to
      * their default values.
@@ -235,9 +322,28 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
 
     /**
      * Retrieves the current graphics list.
+     * 
+     * @return the LinkOMGraphicList, or null if the layer's list has been
+     *         reset to a plain OMGraphicList since the last server response.
      */
     public synchronized LinkOMGraphicList getGraphicList() {
-        return (LinkOMGraphicList) getList();
+        OMGraphicList list = getList();
+        return (list instanceof LinkOMGraphicList) ? (LinkOMGraphicList) list
+                : null;
+    }
+
+    /**
+     * @return the last graphic list received from the server, or null.
+     */
+    protected synchronized LinkOMGraphicList getReceivedList() {
+        return receivedList;
+    }
+
+    /**
+     * Set the last graphic list received from the server.
+     */
+    protected synchronized void setReceivedList(LinkOMGraphicList list) {
+        receivedList = list;
     }
 
     /**
@@ -246,6 +352,9 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      */
     public void removed(Container cont) {
         linkManager.resetLink();
+        if (mapLinkManager != null) {
+            mapLinkManager.resetLink();
+        }
     }
 
     /**
@@ -302,6 +411,24 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                 .booleanFromProperties(properties, realPrefix
                         + ExitOnCommandProperty, false));
 
+        linkManager.setProtocolVersion(PropUtils
+                .intFromProperties(properties, realPrefix
+                        + ProtocolVersionProperty, Link.PROTOCOL_VERSION_1));
+
+        linkManager.setCompression(PropUtils
+                .booleanFromProperties(properties, realPrefix
+                        + CompressionProperty, false));
+
+        mapLinkManager = null;
+        if (PropUtils.booleanFromProperties(properties, realPrefix
+                + SeparateMapLinkProperty, false)) {
+            mapLinkManager = new LinkManager(host, port);
+            mapLinkManager.setObeyCommandToExit(linkManager
+                    .getObeyCommandToExit());
+            mapLinkManager.setProtocolVersion(linkManager.getProtocolVersion());
+            mapLinkManager.setCompression(linkManager.getCompression());
+        }
+
         String propertiesURL = properties
                 .getProperty(realPrefix + ArgsProperty);
 
@@ -342,6 +469,9 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         distanceLimit = PropUtils.intFromProperties(properties, realPrefix
                 + DistanceLimitProperty, distanceLimit);
 
+        deltaUpdates = PropUtils.booleanFromProperties(properties, realPrefix
+                + DeltaUpdatesProperty, deltaUpdates);
+
         // listener = new LinkListener(linkManager, this,
         // currentGenerator);
     }
@@ -387,6 +517,39 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         return listener;
     }
 
+    /**
+     * Called by a LinkListener when it stops listening.
+     */
+    protected synchronized void listenerFinished(LinkListener ll) {
+        if (listener == ll) {
+            listener = null;
+        }
+        if (mapListener == ll) {
+            mapListener = null;
+        }
+    }
+
+    /**
+     * @return the LinkManager to send map requests with, which is the
+     *         linkManager unless map requests get their own link.
+     */
+    protected LinkManager getMapLinkManager() {
+        return mapLinkManager != null ? mapLinkManager : linkManager;
+    }
+
+    /**
+     * Make sure a LinkListener is reading responses off the map request link.
+     * 
+     * @param link the current map request link.
+     */
+    protected synchronized void startMapListener(ClientLink link) {
+        if (mapListener == null || mapListener.getLink() != link) {
+            mapListener = new LinkListener(mapLinkManager, this,
+                    currentGenerator, link);
+            mapListener.startUp();
+        }
+    }
+
     /**
      * Prepares the graphics for the layer. This is where the getRectangle()
      * method call is made on the link.
@@ -453,10 +616,19 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         // LinkOMGraphicList omGraphicList;
 
         // //////////// Call getRectangle for server....
+        LinkManager lm = getMapLinkManager();
         try {
+            if (lm != linkManager && mapRequestPending) {
+                // Cancel the map request the server is still working
+                // on, it's for an old projection.
+                Debug.message("link", getName()
+                        + "|LinkLayer.prepare(): cancelling stale map request");
+                lm.resetLink();
+            }
+
             // We do want the link object here... If another thread is
             // using the link, wait.
-            ClientLink l = linkManager.getLink(true);
+            ClientLink l = lm.getLink(true);
 
             if (l == null) {
                 System.err
@@ -464,12 +636,17 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                 return currentList;
             }
 
+            if (lm != linkManager) {
+                startMapListener(l);
+                mapRequestPending = true;
+            }
+
             synchronized (l) {
                 // omGraphicList = getGraphics(l, projection);
                 sendMapRequest(l, projection);
             }
 
-            linkManager.finLink();
+            lm.finLink();
 
         } catch (UnknownHostException uhe) {
             System.err.println("LinkLayer: unknown host!");
@@ -479,7 +656,8 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                     .println("LinkLayer: IOException contacting server for map request!");
             System.err.println(ioe);
 
-            linkManager.resetLink();
+            lm.resetLink();
+            mapRequestPending = false;
 
             if (!quiet) {
                 fireRequestMessage("Communication error between " + getName()
@@ -556,10 +734,15 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             boundingPolys[0] = new LinkBoundingPoly(ulLon, lrLat, lrLon, ulLat);
         }
 
+        LinkProperties requestArgs = args;
+        if (deltaUpdates) {
+            requestArgs = getDeltaRequestArgs();
+        }
+
         Point2D center = proj.getCenter();
         LinkMapRequest.write((float) center.getY(), (float) center.getX(), proj
                 .getScale(), proj.getHeight(), proj.getWidth(), boundingPolys,
-                             args, link);
+                             requestArgs, link);
 
         // ///////////////////////////////////////////////////
         // With asynchronous behavior, we don't listen to the reply
@@ -578,17 +761,83 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         // ///////////////////////////////////////////////////
     }
 
+    /**
+     * Copy the args for a map request, adding the IDs of the graphics the
+     * layer holds so the server can send only the changes to them.
+     */
+    protected LinkProperties getDeltaRequestArgs() {
+        LinkProperties requestArgs = (args != null) ? (LinkProperties) args.clone()
+                : new LinkProperties();
+        LinkOMGraphicList current = getReceivedList();
+        Set<String> ids = (current != null) ? current.getGraphicIds()
+                : new HashSet<String>();
+
+        String base;
+        synchronized (deltaBases) {
+            base = Integer.toString(++deltaBaseCount);
+            deltaBases.put(base, ids);
+            Iterator<String> it = deltaBases.keySet().iterator();
+            while (deltaBases.size() > MAX_DELTA_BASES && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+        LinkGraphicDelta.setRequestProperties(requestArgs, ids, base);
+        return requestArgs;
+    }
+
+    /**
+     * Get the graphic IDs sent with the map request that a delta response
+     * answers, and forget about that request and any older ones.
+     * 
+     * @param base the LPC_DELTA value of the response.
+     * @return the IDs, or null if the request isn't known.
+     */
+    protected Set<String> getDeltaBaseIds(String base) {
+        synchronized (deltaBases) {
+            if (!deltaBases.containsKey(base)) {
+                return null;
+            }
+            Set<String> ids = null;
+            Iterator<Map.Entry<String, Set<String>>> it = deltaBases.entrySet()
+                    .iterator();
+            while (ids == null && it.hasNext()) {
+                Map.Entry<String, Set<String>> entry = it.next();
+                if (entry.getKey().equals(base)) {
+                    ids = entry.getValue();
+                }
+                it.remove();
+            }
+            return ids;
+        }
+    }
+
     public void handleLinkGraphicList(LinkGraphicList lgl) {
         Debug.message("link", "LinkLayer.handleLinkGraphicList()");
 
         if (lgl != null) {
+            mapRequestPending = false;
             // Deal with all the messaging....
-            handleMessages(lgl.getProperties());
+            LinkProperties props = lgl.getProperties();
+            handleMessages(props);
             LinkOMGraphicList lomgl = lgl.getGraphics();
-            setGraphicList(lomgl);
-            // Do we need to regenerate?
             Projection proj = getProjection();
-            if (lomgl.getNeedToRegenerate(proj)) {
+
+            LinkOMGraphicList current = getReceivedList();
+            boolean merged = current != null && LinkGraphicDelta.isDelta(props);
+            if (merged) {
+                // The server only sent the changes to the graphics we
+                // had when the request was made.
+                Set<String> baseIds = getDeltaBaseIds(props.getProperty(LPC_DELTA));
+                lomgl = current.mergeDelta(lomgl,
+                        LinkGraphicDelta.splitIds(props.getProperty(LPC_REMOVED_GRAPHICIDS)),
+                        baseIds);
+            }
+
+            // Do we need to regenerate? The held graphics in a merged
+            // list were projected for an earlier view.
+            if (merged || lomgl.getNeedToRegenerate(proj)) {
                 // set to false in LinkGraphicList.readGraphics if the
                 // projection was there when the LinkGraphicList was
                 // created. If it wasn't there, we need to try to
@@ -598,6 +847,9 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                 lomgl.generate(proj);
             }
 
+            setReceivedList(lomgl);
+            setGraphicList(lomgl);
+
             repaint();
         }
     }
@@ -47,6 +47,11 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
      * started.
      */
     protected boolean listening = false;
+    /**
+     * If set, the only link this listener reads from. Otherwise, the
+     * listener reads whatever link the LinkManager has.
+     */
+    protected ClientLink link = null;
 
     /**
      * Default Constructor should not be used.
@@ -68,6 +73,29 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
         this.currentGenerator = generator;
     }
 
+    /**
+     * Create child thread that will handle one link to the client.
+     * The listener stops when the LinkManager replaces the link.
+     * 
+     * @param linkManager the LinkManager to communicate over.
+     * @param layer the LinkLayer to do the work.
+     * @param generator the OMGridGenerator.
+     * @param link the link to listen to.
+     */
+    public LinkListener(LinkManager linkManager, LinkLayer layer,
+            OMGridGenerator generator, ClientLink link) {
+        this(linkManager, layer, generator);
+        this.link = link;
+    }
+
+    /**
+     * @return the only link this listener reads from, or null if it
+     *         reads whatever link the LinkManager has.
+     */
+    public ClientLink getLink() {
+        return link;
+    }
+
     /**
      * A method used by outsiders to figure out if the LinkListener is
      * listening to the server. If false, start() may need to be
@@ -116,8 +144,9 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
                 Debug.error(ioe.getMessage());
             }
             Debug.message("link", "LinkListener: Server disconnected");
+        } finally {
+            layer.listenerFinished(this);
         }
-        layer.setListener(null);
     }
 
     /**
@@ -130,11 +159,12 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
 
         Debug.message("link", "LinkListener: Asynchronously listening...");
 
-        ClientLink link = linkManager.getLink(this);
+        ClientLink link = (this.link != null) ? this.link
+                : linkManager.getLink(this);
 
         Debug.message("link", "LinkListener got link...");
 
-        while (link != null) {
+        while (link != null && !link.isClosed()) {
             Debug.message("link", "LinkListener: listening...");
             link.readAndParse(null, currentGenerator, layer);
             Debug.message("link", "LinkListener: received content from server");
@@ -143,7 +173,11 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
             layer.handleLinkActionRequest(link.getActionRequest());
             layer.handleLinkActionList(link.getActionList());
 
-            link = linkManager.getLink(this);
+            if (this.link != null) {
+                link = linkManager.isCurrentLink(this.link) ? this.link : null;
+            } else {
+                link = linkManager.getLink(this);
+            }
         }
     }
 }
\ No newline at end of file
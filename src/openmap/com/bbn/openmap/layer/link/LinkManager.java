@@ -35,6 +35,8 @@ public class LinkManager {
     protected String host;
     protected int port;
     protected boolean obeyCommandToExit;
+    protected int protocolVersion = Link.PROTOCOL_VERSION_1;
+    protected boolean compression = false;
 
     /**
      * volatile because we want internal methods to get the message
@@ -59,6 +61,32 @@ public class LinkManager {
         return obeyCommandToExit;
     }
 
+    /**
+     * Set the highest Link protocol version to use for new links.
+     * 
+     * @see Link#setProtocolVersion(int)
+     */
+    public void setProtocolVersion(int version) {
+        protocolVersion = version;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * Set whether new links ask for deflated frames.
+     * 
+     * @see Link#setCompression(boolean)
+     */
+    public void setCompression(boolean value) {
+        compression = value;
+    }
+
+    public boolean getCompression() {
+        return compression;
+    }
+
     /**
      * This should be the only method a multi-threaded object uses to
      * gain use of the thread, i.e., on the client side where a GUI
@@ -84,6 +112,8 @@ public class LinkManager {
                 if (link == null) {
                     link = getLink();
                     link.setObeyCommandToExit(obeyCommandToExit);
+                    link.setProtocolVersion(protocolVersion);
+                    link.setCompression(compression);
                 }
             }
         }
@@ -133,6 +163,8 @@ public class LinkManager {
                 if (link == null) {
                     link = getLink();
                     link.setObeyCommandToExit(obeyCommandToExit);
+                    link.setProtocolVersion(protocolVersion);
+                    link.setCompression(compression);
                 }
             }
         }
@@ -140,6 +172,14 @@ public class LinkManager {
         return link;
     }
 
+    /**
+     * @return true if the link is the one this LinkManager is
+     *         currently handing out.
+     */
+    public boolean isCurrentLink(ClientLink l) {
+        return l != null && l == link;
+    }
+
     /**
      * Get the ClientLink however it is appropriate for this
      * LinkManager. In this case, the LinkManager will just use the
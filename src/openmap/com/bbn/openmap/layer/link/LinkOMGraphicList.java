@@ -23,8 +23,11 @@
 package com.bbn.openmap.layer.link;
 
 import java.awt.Graphics;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.ListIterator;
+import java.util.Set;
 
 import com.bbn.openmap.omGraphics.OMGeometry;
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -204,6 +207,89 @@ public class LinkOMGraphicList extends OMGraphicList implements
         }
     }
 
+    /**
+     * @return a copy of the graphic IDs of the graphics on the list.
+     */
+    public synchronized Set<String> getGraphicIds() {
+        Set<String> ids = new HashSet<String>();
+        for (Object id : hash.keySet()) {
+            ids.add((String) id);
+        }
+        return ids;
+    }
+
+    /**
+     * Create a new list from this one, with the changes from a delta
+     * graphics response. Graphics in changes replace graphics on this
+     * list with the same ID, and are added to the end of the list
+     * otherwise. Graphics with removed IDs are dropped.
+     * 
+     * @param changes the graphics from a graphics response marked as a
+     *        delta.
+     * @param removedIds the IDs of graphics to drop.
+     * @param baseIds the IDs of the graphics that the server was told
+     *        about in the map request. Graphics on this list that
+     *        aren't in baseIds or changes are dropped, since the server
+     *        didn't know about them. May be null if unknown.
+     * @return a new LinkOMGraphicList, with the projection of changes.
+     */
+    public synchronized LinkOMGraphicList mergeDelta(LinkOMGraphicList changes,
+                                                     Collection<String> removedIds,
+                                                     Set<String> baseIds) {
+        HashMap<String, OMGraphic> changed = new HashMap<String, OMGraphic>();
+        for (OMGraphic graphic : changes) {
+            String id = getGraphicId(graphic);
+            if (id != null) {
+                changed.put(id, graphic);
+            }
+        }
+        Set<String> removed = new HashSet<String>(removedIds);
+
+        LinkOMGraphicList merged = new LinkOMGraphicList(size()
+                + changes.size());
+        merged.setTraverseMode(getTraverseMode());
+        merged.setProjection(changes.getProjection());
+
+        for (OMGraphic graphic : this) {
+            String id = getGraphicId(graphic);
+            if (id != null) {
+                if (removed.contains(id)) {
+                    continue;
+                }
+                OMGraphic replacement = changed.remove(id);
+                if (replacement != null) {
+                    merged.add(replacement);
+                    continue;
+                }
+                if (baseIds != null && !baseIds.contains(id)) {
+                    continue;
+                }
+            }
+            merged.add(graphic);
+        }
+
+        for (OMGraphic graphic : changes) {
+            String id = getGraphicId(graphic);
+            if (id == null || changed.remove(id) != null) {
+                merged.add(graphic);
+            }
+        }
+
+        return merged;
+    }
+
+    /**
+     * @return the graphic ID of an OMGraphic, from its LinkProperties,
+     *         or null.
+     */
+    protected static String getGraphicId(OMGraphic graphic) {
+        Object obj = graphic.getAppObject();
+        if (obj instanceof LinkProperties) {
+            return ((LinkProperties) obj).getProperty(LPC_GRAPHICID);
+        }
+        return null;
+    }
+
     /**
      * Remove all elements from the graphic list.
      */
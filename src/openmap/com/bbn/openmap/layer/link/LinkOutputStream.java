@@ -22,15 +22,30 @@
 
 package com.bbn.openmap.layer.link;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.zip.Deflater;
 
 /**
- * Extend DataOutputStream so we can reset the written byte count.
+ * Extend DataOutputStream so we can reset the written byte count,
+ * and so a transmission can be collected and written as one protocol
+ * version 2 frame.
  * 
  * @see java.io.DataOutputStream
  */
 public class LinkOutputStream extends DataOutputStream {
+
+    /** Collects the transmission while a frame is being written. */
+    protected FrameBuffer frameBuffer;
+    /** Holds the deflated frame payload. */
+    protected FrameBuffer deflateBuffer;
+    /** Reused for deflated frames, created when first needed. */
+    protected Deflater deflater;
+    /** The underlying stream, set while a frame is being written. */
+    protected OutputStream frameTarget = null;
+
     /**
      * Creates a new link output stream to write data to the specified
      * underlying output stream.
@@ -52,4 +67,135 @@ public class LinkOutputStream extends DataOutputStream {
         written = 0;
         return temp;
     }
-}
\ No newline at end of file
+
+    /**
+     * Start collecting everything written into a frame, which is
+     * written to the underlying stream by endFrame(). Does nothing if
+     * a frame has already been started.
+     */
+    public void startFrame() {
+        if (frameTarget == null) {
+            if (frameBuffer == null) {
+                frameBuffer = new FrameBuffer();
+            }
+            frameBuffer.reset();
+            frameTarget = out;
+            out = frameBuffer;
+        }
+    }
+
+    /**
+     * @return true if a frame has been started and not ended.
+     */
+    public boolean isFraming() {
+        return frameTarget != null;
+    }
+
+    /**
+     * Write the frame that was started with startFrame() to the
+     * underlying stream. The frame header is followed by an int of
+     * frame flags, an int with the number of bytes written since
+     * startFrame(), an int with the number of payload bytes, and the
+     * payload bytes. The bytes for the frame header and lengths are
+     * not added to the written count. Nothing is flushed.
+     * 
+     * @param frameHeader the frame header bytes.
+     * @param flags frame flags to pass along to the other side.
+     * @param compressionThreshold the payload is deflated if at least
+     *        this many bytes were written, and it saves some room. Use
+     *        a negative number to never deflate.
+     * @throws IOException
+     */
+    public void endFrame(byte[] frameHeader, int flags,
+                         int compressionThreshold) throws IOException {
+        if (frameTarget == null) {
+            return;
+        }
+
+        out = frameTarget;
+        frameTarget = null;
+
+        byte[] payload = frameBuffer.getBuffer();
+        int length = frameBuffer.size();
+        int payloadLength = length;
+        flags &= ~LinkConstants.FRAME_DEFLATED;
+
+        if (compressionThreshold >= 0 && length >= compressionThreshold) {
+            if (deflater == null) {
+                deflater = new Deflater(Deflater.BEST_SPEED);
+                deflateBuffer = new FrameBuffer();
+            }
+            deflater.reset();
+            deflater.setInput(payload, 0, length);
+            deflater.finish();
+            deflateBuffer.reset();
+            deflateBuffer.deflate(deflater);
+
+            if (deflateBuffer.size() < length) {
+                payload = deflateBuffer.getBuffer();
+                payloadLength = deflateBuffer.size();
+                flags |= LinkConstants.FRAME_DEFLATED;
+            }
+        }
+
+        out.write(frameHeader);
+        writeRawInt(flags);
+        writeRawInt(length);
+        writeRawInt(payloadLength);
+        out.write(payload, 0, payloadLength);
+    }
+
+    /**
+     * Write an int to the underlying stream without counting it.
+     */
+    protected void writeRawInt(int v) throws IOException {
+        out.write((v >>> 24) & 0xFF);
+        out.write((v >>> 16) & 0xFF);
+        out.write((v >>> 8) & 0xFF);
+        out.write(v & 0xFF);
+    }
+
+    /**
+     * Release the deflater along with the underlying stream.
+     */
+    public void close() throws IOException {
+        if (frameTarget != null) {
+            out = frameTarget;
+            frameTarget = null;
+        }
+        if (deflater != null) {
+            deflater.end();
+            deflater = null;
+        }
+        super.close();
+    }
+
+    /**
+     * A ByteArrayOutputStream that provides access to its buffer, so
+     * frames don't have to be copied.
+     */
+    protected static class FrameBuffer extends ByteArrayOutputStream {
+
+        public FrameBuffer() {
+            super(8192);
+        }
+
+        public byte[] getBuffer() {
+            return buf;
+        }
+
+        /**
+         * Add the output of a finished deflater to the buffer.
+         */
+        public void deflate(Deflater deflater) {
+            while (!deflater.finished()) {
+                if (count == buf.length) {
+                    byte[] newBuf = new byte[buf.length * 2];
+                    System.arraycopy(buf, 0, newBuf, 0, count);
+                    buf = newBuf;
+                }
+                count += deflater.deflate(buf, count, buf.length - count);
+            }
+        }
+    }
+}
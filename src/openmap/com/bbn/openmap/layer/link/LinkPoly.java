@@ -71,10 +71,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(RENDERTYPE_LATLON);
         dos.writeByte(lType);
         dos.writeInt(llpoints.length);
-
-        for (int i = 0; i < llpoints.length; i++) {
-            dos.writeFloat((float) llpoints[i]);
-        }
+        LinkUtil.writeFloats(dos, llpoints, 0, llpoints.length);
 
         dos.writeByte(units);
         dos.writeInt(nsegs);
@@ -111,11 +108,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         }
 
         dos.writeInt(length);
-
-        for (int i = 0; i < length; i++) {
-            dos.writeFloat(latpoints[i]);
-            dos.writeFloat(lonpoints[i]);
-        }
+        LinkUtil.writeFloatPairs(dos, latpoints, lonpoints, length);
 
         dos.writeByte(units);
         dos.writeInt(nsegs);
@@ -138,10 +131,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(GRAPHICTYPE_POLY);
         dos.writeByte(RENDERTYPE_XY);
         dos.writeInt(xypoints.length);
-
-        for (int i = 0; i < xypoints.length; i++) {
-            dos.writeInt(xypoints[i]);
-        }
+        LinkUtil.writeInts(dos, xypoints, 0, xypoints.length);
         properties.write(dos);
     }
 
@@ -163,11 +153,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(RENDERTYPE_XY);
         int numPoints = xpoints.length + ypoints.length;
         dos.writeInt(numPoints);
-
-        for (int i = 0; i < numPoints / 2; i++) {
-            dos.writeInt(xpoints[i]);
-            dos.writeInt(ypoints[i]);
-        }
+        LinkUtil.writeIntPairs(dos, xpoints, ypoints, numPoints / 2);
 
         properties.write(dos);
     }
@@ -195,10 +181,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeFloat(latPoint);
         dos.writeFloat(lonPoint);
         dos.writeInt(xypoints.length);
-
-        for (int i = 0; i < xypoints.length; i++) {
-            dos.writeInt(xypoints[i]);
-        }
+        LinkUtil.writeInts(dos, xypoints, 0, xypoints.length);
 
         dos.writeByte(cMode);
         properties.write(dos);
@@ -230,11 +213,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeFloat(lonPoint);
         int numPoints = xpoints.length + ypoints.length;
         dos.writeInt(numPoints);
-
-        for (int i = 0; i < numPoints / 2; i++) {
-            dos.writeInt(xpoints[i]);
-            dos.writeInt(ypoints[i]);
-        }
+        LinkUtil.writeIntPairs(dos, xpoints, ypoints, numPoints / 2);
         dos.writeByte(cMode);
         properties.write(dos);
     }
@@ -311,9 +290,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             numPoints = dis.readInt();
 
             double[] llpoints = new double[numPoints];
-            for (int i = 0; i < numPoints; i++) {
-                llpoints[i] = dis.readFloat();
-            }
+            LinkUtil.readFloats(dis, llpoints, 0, numPoints);
             int units = dis.readByte();
             int nsegs = dis.readInt();
 
@@ -335,11 +312,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             numPoints = dis.readInt();
             xpoints = new int[numPoints / 2];
             ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            LinkUtil.readIntPairs(dis, xpoints, ypoints, numPoints / 2);
 
             if (Debug.debugging("linkdetail")) {
                 System.out.println("  X/Y LinkPoly:");
@@ -359,11 +332,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
 
             xpoints = new int[numPoints / 2];
             ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            LinkUtil.readIntPairs(dis, xpoints, ypoints, numPoints / 2);
             int cMode = dis.readByte();
 
             if (Debug.debugging("linkdetail")) {
@@ -84,6 +84,32 @@ public interface LinkPropertiesConstants {
     public final static String LPC_LINKRASTERIMAGEURL = "riu";
     /** The graphic identifier attribute name. */
     public final static String LPC_GRAPHICID = "gid";
+    /**
+     * In a map request, the identifiers of the graphics the client already
+     * holds, separated by LPC_GRAPHICID_SEPARATOR. Asks the server to only
+     * send the changes to those graphics.
+     */
+    public final static String LPC_HELD_GRAPHICIDS = "hgids";
+    /**
+     * In a map request with held graphic identifiers, a token the server
+     * should return in the LPC_DELTA property of its graphics response.
+     */
+    public final static String LPC_DELTA_BASE = "dbase";
+    /**
+     * In a graphics response, marks the graphics as changes to the graphics
+     * the client held when it made the map request. The value is the
+     * LPC_DELTA_BASE of the request. The graphics are new or modified, and
+     * replace held graphics with the same identifier. Held graphics that
+     * aren't mentioned are kept.
+     */
+    public final static String LPC_DELTA = "delta";
+    /**
+     * In a graphics response marked with LPC_DELTA, the identifiers of held
+     * graphics the client should drop, separated by LPC_GRAPHICID_SEPARATOR.
+     */
+    public final static String LPC_REMOVED_GRAPHICIDS = "rgids";
+    /** The separator for lists of graphic identifiers. */
+    public final static char LPC_GRAPHICID_SEPARATOR = ',';
 
     // These constants are to affect the map as a whole
     /** The latitude of the center of the map in decimal degrees. */
@@ -51,6 +51,8 @@ public class LinkServer extends Thread implements LinkPropertiesConstants {
     public LinkServer(Socket s) {
         try {
             link = new Link(s);
+            // Answer in protocol version 2 to clients that ask for it.
+            link.setProtocolVersion(Link.PROTOCOL_VERSION_2);
         } catch (java.io.IOException ioe) {
             System.err.println("LinkServer: IOException while creating child server:");
             System.err.println(ioe);
@@ -25,10 +25,20 @@
 package com.bbn.openmap.layer.link;
 
 import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 
 public class LinkUtil {
 
+    /**
+     * The most bytes moved at a time by the methods that read and
+     * write arrays of numbers.
+     */
+    protected final static int BULK_BUFFER_SIZE = 8192;
+
     /**
      * readString reads an expected number of characters off a
      * DataInput and creates a String from it.
@@ -64,4 +74,134 @@ public class LinkUtil {
         }
         return true;
     }
+
+    /**
+     * Get a buffer for moving numbers, big-endian like DataInput and
+     * DataOutput, that holds up to size bytes.
+     */
+    protected static ByteBuffer getBulkBuffer(int size) {
+        return ByteBuffer.allocate(Math.max(8, Math.min(size, BULK_BUFFER_SIZE)));
+    }
+
+    /**
+     * Write doubles as floats. The bytes on the link are the same as
+     * for calling writeFloat() for each value, but they are written
+     * in blocks.
+     */
+    public static void writeFloats(DataOutput dos, double[] values, int off,
+                                   int len) throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 4);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(floats.capacity(), end - off);
+            floats.clear();
+            for (int i = 0; i < n; i++) {
+                floats.put((float) values[off++]);
+            }
+            dos.write(buffer.array(), 0, n * 4);
+        }
+    }
+
+    /**
+     * Write floats from two arrays, alternating between them. The
+     * bytes on the link are the same as for calling writeFloat() for
+     * each value, but they are written in blocks.
+     */
+    public static void writeFloatPairs(DataOutput dos, float[] first,
+                                       float[] second, int len)
+            throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 8);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        int off = 0;
+        while (off < len) {
+            int n = Math.min(floats.capacity() / 2, len - off);
+            floats.clear();
+            for (int i = 0; i < n; i++, off++) {
+                floats.put(first[off]);
+                floats.put(second[off]);
+            }
+            dos.write(buffer.array(), 0, n * 8);
+        }
+    }
+
+    /**
+     * Write ints. The bytes on the link are the same as for calling
+     * writeInt() for each value, but they are written in blocks.
+     */
+    public static void writeInts(DataOutput dos, int[] values, int off, int len)
+            throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 4);
+        IntBuffer ints = buffer.asIntBuffer();
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(ints.capacity(), end - off);
+            ints.clear();
+            ints.put(values, off, n);
+            off += n;
+            dos.write(buffer.array(), 0, n * 4);
+        }
+    }
+
+    /**
+     * Write ints from two arrays, alternating between them. The bytes
+     * on the link are the same as for calling writeInt() for each
+     * value, but they are written in blocks.
+     */
+    public static void writeIntPairs(DataOutput dos, int[] first,
+                                     int[] second, int len)
+            throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 8);
+        IntBuffer ints = buffer.asIntBuffer();
+        int off = 0;
+        while (off < len) {
+            int n = Math.min(ints.capacity() / 2, len - off);
+            ints.clear();
+            for (int i = 0; i < n; i++, off++) {
+                ints.put(first[off]);
+                ints.put(second[off]);
+            }
+            dos.write(buffer.array(), 0, n * 8);
+        }
+    }
+
+    /**
+     * Read floats into an array of doubles. Reads the same bytes as
+     * calling readFloat() for each value, but reads them in blocks.
+     */
+    public static void readFloats(DataInput dis, double[] values, int off,
+                                  int len) throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 4);
+        FloatBuffer floats = buffer.asFloatBuffer();
+        int end = off + len;
+        while (off < end) {
+            int n = Math.min(floats.capacity(), end - off);
+            dis.readFully(buffer.array(), 0, n * 4);
+            floats.clear();
+            for (int i = 0; i < n; i++) {
+                values[off++] = floats.get();
+            }
+        }
+    }
+
+    /**
+     * Read ints into two arrays, alternating between them. Reads the
+     * same bytes as calling readInt() for each value, but reads them
+     * in blocks.
+     */
+    public static void readIntPairs(DataInput dis, int[] first, int[] second,
+                                    int len) throws IOException {
+        ByteBuffer buffer = getBulkBuffer(len * 8);
+        IntBuffer ints = buffer.asIntBuffer();
+        int off = 0;
+        while (off < len) {
+            int n = Math.min(ints.capacity() / 2, len - off);
+            dis.readFully(buffer.array(), 0, n * 8);
+            ints.clear();
+            for (int i = 0; i < n; i++, off++) {
+                first[off] = ints.get();
+                second[off] = ints.get();
+            }
+        }
+    }
 }
\ No newline at end of file
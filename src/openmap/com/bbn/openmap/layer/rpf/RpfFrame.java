@@ -46,8 +46,8 @@ import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 
-import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.layer.nitf.NitfHeader;
 import com.bbn.openmap.omGraphics.OMRasterObject;
@@ -142,7 +142,7 @@ public class RpfFrame {
 
    protected boolean initFile(String framePath) {
       try {
-         BinaryFile binFile = new BinaryBufferedFile(framePath);
+         BinaryFile binFile = new BinaryMappedFile(framePath);
          read(binFile);
          binFile.close();
       } catch (FileNotFoundException e) {
@@ -296,7 +296,7 @@ public class RpfFrame {
    public static Color[] getColors(String framePath, RpfColortable ct) {
       BinaryFile binFile = null;
       try {
-         binFile = new BinaryBufferedFile(framePath);
+         binFile = new BinaryMappedFile(framePath);
          // binFile = new BinaryFile(framePath);
          RpfFileSections rfs = new RpfFileSections();
          RpfHeader head = new RpfHeader();
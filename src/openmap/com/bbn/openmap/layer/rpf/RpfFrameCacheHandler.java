@@ -654,8 +654,7 @@ public class RpfFrameCacheHandler
          System.out.println(rfe);
       }
 
-      replaceLeastUsed(ret);
-      return ret.obj;
+      return replaceLeastUsed(ret).obj;
    }
 
    public CacheObject load(Object key) {
@@ -0,0 +1,556 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.shape;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.dataAccess.shape.EsriGraphic;
+import com.bbn.openmap.dataAccess.shape.EsriGraphicFactory;
+import com.bbn.openmap.dataAccess.shape.EsriGraphicList;
+import com.bbn.openmap.dataAccess.shape.ShapeConstants;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.omGraphics.DrawingAttributes;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.proj.Planet;
+import com.bbn.openmap.proj.ProjMath;
+
+/**
+ * A sidecar file for a shape file that holds generalized versions of the
+ * polyline and polygon records, for a set of scale bands. Each band has a
+ * scale, and the records of the band are simplified with the Douglas-Peucker
+ * algorithm so that no vertex moves more than half a pixel at that scale. When
+ * the map is zoomed out past a band's scale, the SpatialIndex creates the
+ * graphics from the band's simplified coordinates instead of decoding and
+ * projecting every vertex in the shape file.
+ * <p>
+ * Records that aren't polylines or polygons, or that don't lose any vertices
+ * in a band, aren't stored for that band, and are read from the shape file.
+ * The generalized coordinates are stored as floats, and the Z and M values
+ * aren't kept.
+ * <p>
+ * The file layout is a header with the band scales and the position of the
+ * index, followed by the generalized records, followed by the index: the byte
+ * offsets and record numbers of the records in the shape file, and then the
+ * position of each record's generalized data for each band (-1 if there
+ * isn't any). Everything is big endian.
+ *
+ * <pre>
+ *   java com.bbn.openmap.layer.shape.SpatialIndex -g file.shp [scale ...]
+ * </pre>
+ *
+ * creates file.sgx next to file.shp.
+ */
+public class GeneralizedShapeFile implements ShapeConstants {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.shape.GeneralizedShapeFile");
+
+    /** The default scale bands. */
+    public final static double[] DEFAULT_BAND_SCALES = new double[] { 1000000, 4000000,
+            16000000, 64000000 };
+
+    /** The maximum vertex displacement, in pixels at the band scale. */
+    public final static double PIXEL_TOLERANCE = .5;
+
+    /** Identifies a generalized shape sidecar file. */
+    protected final static int MAGIC = 0x53475846;
+
+    /** The sidecar file version. */
+    protected final static int VERSION = 1;
+
+    protected BinaryFile file;
+    protected double[] bandScales;
+    protected int numRecords;
+    protected long indexOffset;
+    /** The shape file byte offsets of the records, in ascending order. */
+    protected int[] byteOffsets;
+
+    /**
+     * Open a generalized shape file for reading.
+     *
+     * @param fileName path to the sgx file.
+     * @throws IOException
+     * @throws FormatException if the file isn't a generalized shape file.
+     */
+    public GeneralizedShapeFile(String fileName) throws IOException, FormatException {
+        file = new BinaryMappedFile(fileName);
+        file.byteOrder(true);
+        if (file.readInteger() != MAGIC || file.readInteger() != VERSION) {
+            file.close();
+            throw new FormatException(fileName + " isn't a generalized shape file");
+        }
+        int numBands = file.readInteger();
+        numRecords = file.readInteger();
+        indexOffset = file.readLong();
+        bandScales = new double[numBands];
+        for (int i = 0; i < numBands; i++) {
+            bandScales[i] = file.readDouble();
+        }
+        file.seek(indexOffset);
+        byteOffsets = new int[numRecords];
+        file.readIntegerArray(byteOffsets, 0, numRecords);
+    }
+
+    /**
+     * @return the scales of the bands, smallest first.
+     */
+    public double[] getBandScales() {
+        return bandScales.clone();
+    }
+
+    /**
+     * Figure out which band to use for a map scale.
+     *
+     * @param scale the scale of the map projection.
+     * @return the index of the band with the largest scale not larger than the
+     *         map scale, or -1 if the map is zoomed in closer than all of the
+     *         bands and the full resolution records should be used.
+     */
+    public int getBand(double scale) {
+        int band = -1;
+        for (int i = 0; i < bandScales.length; i++) {
+            if (bandScales[i] <= scale) {
+                band = i;
+            }
+        }
+        return band;
+    }
+
+    /**
+     * Create an OMGraphic from the generalized data for a record.
+     *
+     * @param band the band index, from getBand().
+     * @param byteOffset the offset of the record in the shape file, from the
+     *        SpatialIndex Entry.
+     * @param drawingAttributes rendering attributes for the OMGraphic.
+     * @param lineType the line type for the OMGraphic.
+     * @return OMGraphic, or null if there isn't any generalized data for the
+     *         record and it should be read from the shape file.
+     * @throws IOException
+     * @throws FormatException
+     */
+    public synchronized OMGraphic getGraphic(int band, int byteOffset,
+                                             DrawingAttributes drawingAttributes, int lineType)
+            throws IOException, FormatException {
+        if (band < 0 || band >= bandScales.length || file == null) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(byteOffsets, byteOffset);
+        if (index < 0) {
+            return null;
+        }
+
+        file.seek(indexOffset + (long) numRecords * 8 + ((long) band * numRecords + index) * 8);
+        long dataOffset = file.readLong();
+        if (dataOffset < 0) {
+            return null;
+        }
+        file.seek(indexOffset + (long) numRecords * 4 + index * 4);
+        int recordNumber = file.readInteger();
+
+        file.seek(dataOffset);
+        int shapeType = file.readInteger();
+        int numParts = file.readInteger();
+        boolean isPolygon = EsriGraphicFactory.isPolygon(shapeType);
+
+        EsriGraphic ret = null;
+        if (numParts > 1) {
+            ret = EsriGraphicFactory.createEsriGraphicList(shapeType);
+            ((EsriGraphicList) ret).setVague(true);
+        }
+
+        float[] xy = new float[0];
+        for (int p = 0; p < numParts; p++) {
+            int numPoints = file.readInteger();
+            if (xy.length < numPoints * 2) {
+                xy = new float[numPoints * 2];
+            }
+            file.readFloatArray(xy, 0, numPoints * 2);
+
+            // Same coordinate layout as EsriGraphicFactory.getCoords.
+            double[] coords = new double[isPolygon ? numPoints * 2 + 2 : numPoints * 2];
+            for (int j = 0; j < numPoints; j++) {
+                coords[j * 2] = ProjMath.degToRad(xy[j * 2 + 1]);
+                coords[j * 2 + 1] = ProjMath.degToRad(xy[j * 2]);
+            }
+            if (isPolygon) {
+                coords[numPoints * 2] = coords[0];
+                coords[numPoints * 2 + 1] = coords[1];
+            }
+
+            EsriGraphic poly = EsriGraphicFactory.createEsriPoly(shapeType, coords, lineType, drawingAttributes);
+            if (ret != null) {
+                ((EsriGraphicList) ret).add((OMGraphic) poly);
+            } else {
+                ret = poly;
+            }
+        }
+
+        OMGraphic omg = (OMGraphic) ret;
+        if (omg != null) {
+            omg.putAttribute(SHAPE_INDEX_ATTRIBUTE, new Integer(recordNumber - 1));
+        }
+        return omg;
+    }
+
+    /**
+     * Close the file, it will be reopened if needed.
+     */
+    public synchronized void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    /**
+     * Release the file for good.
+     */
+    public synchronized void dispose() throws IOException {
+        if (file != null) {
+            file.dispose();
+            file = null;
+        }
+    }
+
+    /**
+     * The simplification tolerance for a band scale, in degrees.
+     */
+    public static double getTolerance(double bandScale) {
+        double metersPerDegree = Planet.wgs84_earthEquatorialCircumferenceMeters_D / 360.0;
+        return bandScale / Planet.defaultPixelsPerMeter / metersPerDegree * PIXEL_TOLERANCE;
+    }
+
+    /**
+     * Douglas-Peucker line simplification.
+     *
+     * @param xy interleaved x, y coordinates.
+     * @param numPoints the number of points in xy.
+     * @param tolerance the maximum distance a removed point can be from the
+     *        simplified line.
+     * @return the indexes of the points to keep, in order. The first and last
+     *         points are always kept.
+     */
+    public static int[] simplify(double[] xy, int numPoints, double tolerance) {
+        if (numPoints <= 2) {
+            int[] all = new int[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        double tol2 = tolerance * tolerance;
+        boolean[] keep = new boolean[numPoints];
+        keep[0] = true;
+        keep[numPoints - 1] = true;
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = numPoints - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            double x1 = xy[first * 2];
+            double y1 = xy[first * 2 + 1];
+            double dx = xy[last * 2] - x1;
+            double dy = xy[last * 2 + 1] - y1;
+            double len2 = dx * dx + dy * dy;
+
+            double maxDist = -1;
+            int maxIndex = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = xy[i * 2] - x1;
+                double py = xy[i * 2 + 1] - y1;
+                double dist;
+                if (len2 == 0) {
+                    // closed ring, measure from the end point
+                    dist = px * px + py * py;
+                } else {
+                    double t = (px * dx + py * dy) / len2;
+                    t = Math.max(0, Math.min(1, t));
+                    double ex = px - t * dx;
+                    double ey = py - t * dy;
+                    dist = ex * ex + ey * ey;
+                }
+                if (dist > maxDist) {
+                    maxDist = dist;
+                    maxIndex = i;
+                }
+            }
+
+            if (maxIndex > 0 && maxDist > tol2) {
+                keep[maxIndex] = true;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = maxIndex;
+                stack[top++] = maxIndex;
+                stack[top++] = last;
+            }
+        }
+
+        int count = 0;
+        for (boolean k : keep) {
+            if (k) {
+                count++;
+            }
+        }
+        int[] ret = new int[count];
+        count = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if (keep[i]) {
+                ret[count++] = i;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Create a generalized shape file for a shape file.
+     *
+     * @param shpFileName the shape file.
+     * @param sgxFileName the generalized file to write.
+     * @param bandScales the scales of the bands, smallest first.
+     * @throws IOException
+     * @throws FormatException
+     */
+    public static void create(String shpFileName, String sgxFileName, double[] bandScales)
+            throws IOException, FormatException {
+
+        BinaryFile shp = new BinaryMappedFile(shpFileName);
+        try {
+            // First pass, find the records.
+            int[] offsets = new int[1024];
+            int[] recordNumbers = new int[1024];
+            int numRecords = 0;
+            long length = shp.length();
+            long pos = SpatialIndex.SHAPE_FILE_HEADER_LENGTH;
+            shp.byteOrder(true);
+            while (pos + SpatialIndex.SHAPE_RECORD_HEADER_LENGTH <= length) {
+                shp.seek(pos);
+                if (numRecords == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, numRecords * 2);
+                    recordNumbers = Arrays.copyOf(recordNumbers, numRecords * 2);
+                }
+                offsets[numRecords] = (int) pos;
+                recordNumbers[numRecords] = shp.readInteger();
+                numRecords++;
+                pos += SpatialIndex.SHAPE_RECORD_HEADER_LENGTH + shp.readInteger() * 2L;
+            }
+
+            long[][] dataOffsets = new long[bandScales.length][numRecords];
+
+            CountingOutputStream cos = new CountingOutputStream(new FileOutputStream(sgxFileName));
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(cos));
+            try {
+                dos.writeInt(MAGIC);
+                dos.writeInt(VERSION);
+                dos.writeInt(bandScales.length);
+                dos.writeInt(numRecords);
+                dos.writeLong(0); // index offset, filled in at the end
+                for (double scale : bandScales) {
+                    dos.writeDouble(scale);
+                }
+
+                double[] xy = new double[0];
+                int[] parts = new int[0];
+
+                for (int r = 0; r < numRecords; r++) {
+                    for (int b = 0; b < bandScales.length; b++) {
+                        dataOffsets[b][r] = -1;
+                    }
+
+                    shp.seek(offsets[r] + SpatialIndex.SHAPE_RECORD_HEADER_LENGTH);
+                    shp.byteOrder(false);
+                    int shapeType = shp.readInteger();
+                    if (!isPoly(shapeType)) {
+                        continue;
+                    }
+
+                    shp.skipBytes(4 * 8); // bounding box
+                    int numParts = shp.readInteger();
+                    int numPoints = shp.readInteger();
+                    if (numParts <= 0 || numPoints <= 0) {
+                        continue;
+                    }
+                    if (parts.length < numParts + 1) {
+                        parts = new int[numParts + 1];
+                    }
+                    shp.readIntegerArray(parts, 0, numParts);
+                    parts[numParts] = numPoints;
+                    if (xy.length < numPoints * 2) {
+                        xy = new double[numPoints * 2];
+                    }
+                    for (int i = 0; i < numPoints * 2; i++) {
+                        xy[i] = shp.readDouble();
+                    }
+
+                    for (int b = 0; b < bandScales.length; b++) {
+                        double tolerance = getTolerance(bandScales[b]);
+                        int[][] kept = new int[numParts][];
+                        int keptPoints = 0;
+                        for (int p = 0; p < numParts; p++) {
+                            int start = parts[p];
+                            int count = parts[p + 1] - start;
+                            kept[p] = simplifyPart(xy, start, count, tolerance,
+                                    EsriGraphicFactory.isPolygon(shapeType));
+                            keptPoints += kept[p].length;
+                        }
+
+                        if (keptPoints >= numPoints) {
+                            // Nothing gained, use the record from the shape file.
+                            continue;
+                        }
+
+                        dos.flush();
+                        dataOffsets[b][r] = cos.getCount();
+                        dos.writeInt(baseType(shapeType));
+                        dos.writeInt(numParts);
+                        for (int p = 0; p < numParts; p++) {
+                            int start = parts[p];
+                            dos.writeInt(kept[p].length);
+                            for (int k : kept[p]) {
+                                dos.writeFloat((float) xy[(start + k) * 2]);
+                                dos.writeFloat((float) xy[(start + k) * 2 + 1]);
+                            }
+                        }
+                    }
+                }
+
+                dos.flush();
+                long indexOffset = cos.getCount();
+                for (int r = 0; r < numRecords; r++) {
+                    dos.writeInt(offsets[r]);
+                }
+                for (int r = 0; r < numRecords; r++) {
+                    dos.writeInt(recordNumbers[r]);
+                }
+                for (int b = 0; b < bandScales.length; b++) {
+                    for (int r = 0; r < numRecords; r++) {
+                        dos.writeLong(dataOffsets[b][r]);
+                    }
+                }
+                dos.close();
+                dos = null;
+
+                RandomAccessFile raf = new RandomAccessFile(sgxFileName, "rw");
+                try {
+                    raf.seek(16);
+                    raf.writeLong(indexOffset);
+                } finally {
+                    raf.close();
+                }
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("wrote " + numRecords + " generalized records to " + sgxFileName);
+                }
+            } finally {
+                if (dos != null) {
+                    dos.close();
+                }
+            }
+        } finally {
+            shp.close();
+        }
+    }
+
+    /**
+     * Simplify one part of a record, keeping enough points for a polygon ring
+     * to still be a ring.
+     *
+     * @return indexes of kept points, relative to start.
+     */
+    protected static int[] simplifyPart(double[] xy, int start, int count, double tolerance,
+                                        boolean isPolygon) {
+        double[] part = Arrays.copyOfRange(xy, start * 2, (start + count) * 2);
+        int[] kept = simplify(part, count, tolerance);
+        int minPoints = isPolygon ? 4 : 2;
+        if (kept.length < minPoints && count >= minPoints) {
+            kept = new int[minPoints];
+            for (int i = 0; i < minPoints; i++) {
+                kept[i] = (int) ((long) i * (count - 1) / (minPoints - 1));
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return true for the polyline and polygon types, including Z and M.
+     */
+    protected static boolean isPoly(int shapeType) {
+        return baseType(shapeType) != SHAPE_TYPE_NULL;
+    }
+
+    /**
+     * Reduce the Z and M polyline and polygon types to the plain ones, since
+     * the generalized data doesn't have Z or M values.
+     *
+     * @return SHAPE_TYPE_POLYLINE, SHAPE_TYPE_POLYGON or SHAPE_TYPE_NULL
+     */
+    protected static int baseType(int shapeType) {
+        switch (shapeType) {
+        case SHAPE_TYPE_POLYLINE:
+        case SHAPE_TYPE_POLYLINEZ:
+        case SHAPE_TYPE_POLYLINEM:
+            return SHAPE_TYPE_POLYLINE;
+        case SHAPE_TYPE_POLYGON:
+        case SHAPE_TYPE_POLYGONZ:
+        case SHAPE_TYPE_POLYGONM:
+            return SHAPE_TYPE_POLYGON;
+        default:
+            return SHAPE_TYPE_NULL;
+        }
+    }
+
+    /**
+     * Keeps track of the number of bytes written, past 2GB.
+     */
+    protected static class CountingOutputStream extends FilterOutputStream {
+        protected long count = 0;
+
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+}
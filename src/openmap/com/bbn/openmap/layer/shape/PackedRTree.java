@@ -0,0 +1,341 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.shape;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A read-only R-tree of SpatialIndex entry bounding boxes, bulk loaded with
+ * the Sort-Tile-Recursive algorithm. The leaves are the entries, sorted into
+ * tiles of nodeSize entries that are close to each other, and each level above
+ * groups nodeSize nodes of the level below. A window query only descends into
+ * nodes whose bounds intersect the window, so it takes logarithmic time
+ * instead of looking at every entry in the spatial index.
+ * <p>
+ * The tree only holds the entry indexes and bounding boxes, and search results
+ * are the indexes of the matching entries in the list the tree was built from,
+ * in their original order. The tree can be written to a sidecar file (see
+ * SpatialIndex.rtree()), so it doesn't have to be sorted again the next time
+ * the shape file is opened.
+ */
+public class PackedRTree {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.shape.PackedRTree");
+
+    /** The default number of children for each node. */
+    public final static int DEFAULT_NODE_SIZE = 16;
+
+    /** Identifies a PackedRTree sidecar file. */
+    protected final static int MAGIC = 0x53525458;
+
+    /** The sidecar file version. */
+    protected final static int VERSION = 1;
+
+    /** The maximum number of children for each node. */
+    protected int nodeSize;
+
+    /**
+     * The original index of each leaf, in packed order.
+     */
+    protected int[] ids;
+
+    /**
+     * The bounding boxes of the nodes for each level, xmin, ymin, xmax, ymax
+     * for each node. Level 0 are the leaves, in packed order, and the last
+     * level holds the root.
+     */
+    protected double[][] levels;
+
+    /**
+     * Bulk load a tree from a list of entries, with the default node size.
+     *
+     * @param entries SpatialIndex entries.
+     */
+    public PackedRTree(List<SpatialIndex.Entry> entries) {
+        this(entries, DEFAULT_NODE_SIZE);
+    }
+
+    /**
+     * Bulk load a tree from a list of entries.
+     *
+     * @param entries SpatialIndex entries.
+     * @param nodeSize the number of children for each node, at least 2.
+     */
+    public PackedRTree(List<SpatialIndex.Entry> entries, int nodeSize) {
+        this.nodeSize = Math.max(2, nodeSize);
+
+        int n = entries.size();
+        final double[] cx = new double[n];
+        final double[] cy = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            SpatialIndex.Entry entry = entries.get(i);
+            cx[i] = (entry.xMin + entry.xMax) / 2;
+            cy[i] = (entry.yMin + entry.yMax) / 2;
+            order[i] = i;
+        }
+
+        // Sort by x, cut into vertical slices, and then sort each slice by y
+        // so that consecutive runs of nodeSize entries make compact tiles.
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(cx[i1], cx[i2]);
+            }
+        });
+
+        int leafNodes = (n + this.nodeSize - 1) / this.nodeSize;
+        int slices = (int) Math.ceil(Math.sqrt(leafNodes));
+        int sliceSize = Math.max(1, slices * this.nodeSize);
+        Comparator<Integer> byY = new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return Double.compare(cy[i1], cy[i2]);
+            }
+        };
+        for (int start = 0; start < n; start += sliceSize) {
+            Arrays.sort(order, start, Math.min(n, start + sliceSize), byY);
+        }
+
+        ids = new int[n];
+        double[] leaves = new double[n * 4];
+        for (int i = 0; i < n; i++) {
+            int id = order[i];
+            SpatialIndex.Entry entry = entries.get(id);
+            ids[i] = id;
+            leaves[i * 4] = entry.xMin;
+            leaves[i * 4 + 1] = entry.yMin;
+            leaves[i * 4 + 2] = entry.xMax;
+            leaves[i * 4 + 3] = entry.yMax;
+        }
+
+        levels = buildLevels(leaves, this.nodeSize);
+    }
+
+    /**
+     * Constructor used when reading a tree from a file.
+     */
+    protected PackedRTree(int nodeSize, int[] ids, double[][] levels) {
+        this.nodeSize = nodeSize;
+        this.ids = ids;
+        this.levels = levels;
+    }
+
+    /**
+     * Create the upper levels of the tree by grouping each nodeSize nodes of
+     * a level into a node of the level above, until there's one node left.
+     */
+    protected static double[][] buildLevels(double[] leaves, int nodeSize) {
+        List<double[]> levelList = new ArrayList<double[]>();
+        levelList.add(leaves);
+        double[] level = leaves;
+        while (level.length > 4) {
+            int count = level.length / 4;
+            int parents = (count + nodeSize - 1) / nodeSize;
+            double[] up = new double[parents * 4];
+            for (int p = 0; p < parents; p++) {
+                int start = p * nodeSize;
+                int end = Math.min(count, start + nodeSize);
+                double xmin = Double.POSITIVE_INFINITY;
+                double ymin = Double.POSITIVE_INFINITY;
+                double xmax = Double.NEGATIVE_INFINITY;
+                double ymax = Double.NEGATIVE_INFINITY;
+                for (int c = start; c < end; c++) {
+                    xmin = Math.min(xmin, level[c * 4]);
+                    ymin = Math.min(ymin, level[c * 4 + 1]);
+                    xmax = Math.max(xmax, level[c * 4 + 2]);
+                    ymax = Math.max(ymax, level[c * 4 + 3]);
+                }
+                up[p * 4] = xmin;
+                up[p * 4 + 1] = ymin;
+                up[p * 4 + 2] = xmax;
+                up[p * 4 + 3] = ymax;
+            }
+            levelList.add(up);
+            level = up;
+        }
+        return levelList.toArray(new double[levelList.size()][]);
+    }
+
+    /**
+     * @return the number of entries in the tree.
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Find the entries whose bounding boxes intersect a window, using the same
+     * test as SpatialIndex.intersects().
+     *
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @return the indexes of the matching entries in the list the tree was
+     *         built from, in ascending order.
+     */
+    public int[] search(double xmin, double ymin, double xmax, double ymax) {
+        int[] hits = new int[64];
+        int numHits = 0;
+
+        if (ids.length == 0) {
+            return new int[0];
+        }
+
+        // Each stack element is a level and a node index on that level. The
+        // depth of the stack never gets past nodeSize for each level.
+        int[] stack = new int[levels.length * nodeSize * 2 + 2];
+        int top = 0;
+        int root = levels.length - 1;
+        if (intersects(levels[root], 0, xmin, ymin, xmax, ymax)) {
+            stack[top++] = root;
+            stack[top++] = 0;
+        }
+
+        while (top > 0) {
+            int node = stack[--top];
+            int level = stack[--top];
+
+            if (level == 0) {
+                if (numHits == hits.length) {
+                    hits = Arrays.copyOf(hits, numHits * 2);
+                }
+                hits[numHits++] = ids[node];
+                continue;
+            }
+
+            double[] children = levels[level - 1];
+            int start = node * nodeSize;
+            int end = Math.min(children.length / 4, start + nodeSize);
+            for (int c = start; c < end; c++) {
+                if (intersects(children, c, xmin, ymin, xmax, ymax)) {
+                    stack[top++] = level - 1;
+                    stack[top++] = c;
+                }
+            }
+        }
+
+        int[] ret = Arrays.copyOf(hits, numHits);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Test a node's bounds against a window, the node bounds being in a level
+     * array at the node index.
+     */
+    protected static boolean intersects(double[] level, int node, double xmin,
+                                        double ymin, double xmax, double ymax) {
+        int i = node * 4;
+        return SpatialIndex.intersects(xmin, ymin, xmax, ymax, level[i],
+                level[i + 1], level[i + 2], level[i + 3]);
+    }
+
+    /**
+     * Write the tree to a file.
+     *
+     * @param file the sidecar file.
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeInt(nodeSize);
+            dos.writeInt(ids.length);
+            dos.writeInt(levels.length);
+            for (int id : ids) {
+                dos.writeInt(id);
+            }
+            for (double[] level : levels) {
+                dos.writeInt(level.length);
+                for (double d : level) {
+                    dos.writeDouble(d);
+                }
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Read a tree from a file.
+     *
+     * @param fileName the path to the sidecar file.
+     * @param numEntries the number of entries the tree should have, if the file
+     *        has a different number it's considered stale and null is
+     *        returned.
+     * @return PackedRTree, or null if the file can't be used.
+     */
+    public static PackedRTree read(String fileName, int numEntries) {
+        BinaryFile bf = null;
+        try {
+            bf = new BinaryMappedFile(fileName);
+            bf.byteOrder(true);
+            if (bf.readInteger() != MAGIC || bf.readInteger() != VERSION) {
+                logger.warning(fileName + " isn't a spatial index R-tree file");
+                return null;
+            }
+            int nodeSize = bf.readInteger();
+            int n = bf.readInteger();
+            int numLevels = bf.readInteger();
+            if (n != numEntries || nodeSize < 2 || numLevels < 1) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(fileName + " is out of date, has " + n + " entries, expected "
+                            + numEntries);
+                }
+                return null;
+            }
+
+            int[] ids = new int[n];
+            bf.readIntegerArray(ids, 0, n);
+            double[][] levels = new double[numLevels][];
+            for (int l = 0; l < numLevels; l++) {
+                double[] level = new double[bf.readInteger()];
+                for (int i = 0; i < level.length; i++) {
+                    level[i] = bf.readDouble();
+                }
+                levels[l] = level;
+            }
+            return new PackedRTree(nodeSize, ids, levels);
+        } catch (IOException ioe) {
+            logger.warning("problem reading " + fileName + ": " + ioe.getMessage());
+        } catch (FormatException fe) {
+            logger.warning("problem reading " + fileName + ": " + fe.getMessage());
+        } finally {
+            if (bf != null) {
+                try {
+                    bf.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -147,6 +147,15 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     protected int shadowX = 0;
     protected int shadowY = 0;
 
+    /**
+     * The name of the property that turns on generalized polylines and
+     * polygons for zoomed out maps, false by default. The generalized records
+     * are kept in a sgx file next to the shape file, created if needed.
+     */
+    public final static String generalizeProperty = "generalize";
+
+    protected boolean generalize = false;
+
     /** The spatial index of the shape file to be rendered. */
     protected SpatialIndex spatialIndex;
 
@@ -210,6 +219,9 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         if (shapeFileName != null && shapeFileName.length() > 0) {
 
             spatialIndex = SpatialIndex.locateAndSetShapeData(shapeFileName);
+            if (spatialIndex != null) {
+                spatialIndex.setGeneralize(generalize);
+            }
             String dbfFileName = SpatialIndex.dbf(shapeFileName);
 
             try {
@@ -264,6 +276,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         drawingAttributes.setProperties(prefix, props);
 
         String realPrefix = PropUtils.getScopedPropertyPrefix(this);
+        generalize = PropUtils.booleanFromProperties(props, realPrefix + generalizeProperty, generalize);
         setFileProperties(realPrefix, props);
 
         shadowX = PropUtils.intFromProperties(props, realPrefix + shadowXProperty, 0);
@@ -282,6 +295,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
 
         props.put(prefix + shadowXProperty, Integer.toString(shadowX));
         props.put(prefix + shadowYProperty, Integer.toString(shadowY));
+        props.put(prefix + generalizeProperty, Boolean.toString(generalize));
 
         if (drawingAttributes != null) {
             drawingAttributes.setPropertyPrefix(getPropertyPrefix());
@@ -325,7 +339,7 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, dummyMarker, "Rendering Attributes", "Attributes that determine how the shapes will be drawn.", "com.bbn.openmap.omGraphics.DrawingAttributesPropertyEditor");
 
         list.put(initPropertiesProperty, shapeFileProperty + " " + " " + pointImageURLProperty
-                + " " + shadowXProperty + " " + shadowYProperty + " " + dummyMarker + " "
+                + " " + shadowXProperty + " " + shadowYProperty + " " + generalizeProperty + " " + dummyMarker + " "
                 + AddToBeanContextProperty + " " + MinScaleProperty + " " + MaxScaleProperty);
 
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, shapeFileProperty, shapeFileProperty, "Location of Shape file - .shp (File, CURL or relative file path).", "com.bbn.openmap.util.propertyEditor.FUPropertyEditor");
@@ -336,6 +350,8 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
 
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, shadowYProperty, shadowYProperty, "Vertical pixel offset for shadow image for shapes.", null);
 
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, generalizeProperty, generalizeProperty, "Use simplified polylines and polygons when zoomed out.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+
         return list;
     }
 
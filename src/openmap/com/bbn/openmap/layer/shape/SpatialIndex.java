@@ -46,6 +46,7 @@ import com.bbn.openmap.dataAccess.shape.EsriGraphicFactory;
 import com.bbn.openmap.dataAccess.shape.ShapeUtils;
 import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.BinaryMappedFile;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.omGraphics.DrawingAttributes;
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -130,6 +131,17 @@ import com.bbn.openmap.util.PropUtils;
  * <DD><i>Creates spatial index <code>file.ssx</code> from shape file
  * <code>file.shp</code>. </i></DD>
  * <p>
+ * <DT>java com.bbn.openmap.layer.shape.SpatialIndex -r file.shp</DT>
+ * <DD><i>Creates R-tree file <code>file.srx</code> from spatial index
+ * <code>file.ssx</code>. Window queries on the spatial index use an R-tree,
+ * which is built when the index is first read unless an up to date srx file is
+ * next to the shape file. </i></DD>
+ * <p>
+ * <DT>java com.bbn.openmap.layer.shape.SpatialIndex -g file.shp [scale ...]</DT>
+ * <DD><i>Creates generalized records file <code>file.sgx</code> from shape
+ * file <code>file.shp</code>, with simplified polylines and polygons for each
+ * scale band. Used when generalize is set on the SpatialIndex. </i></DD>
+ * <p>
  * 
  * <H2>Notes</H2>
  * When reading the Shape file, the content length is the length of the record's
@@ -191,6 +203,21 @@ public class SpatialIndex extends ShapeUtils {
      */
     protected List<Entry> entries;
 
+    /**
+     * An R-tree built from the entries, for window queries.
+     */
+    protected PackedRTree rtree;
+
+    /**
+     * Whether generalized records should be used for zoomed out maps.
+     */
+    protected boolean generalize = false;
+
+    /**
+     * The generalized records for the shape file, if generalize is true.
+     */
+    protected GeneralizedShapeFile generalized;
+
     /**
      * A factory object to use to create OMGraphics from the shp file.
      */
@@ -236,6 +263,35 @@ public class SpatialIndex extends ShapeUtils {
         return ret;
     }
 
+    /**
+     * Figures out the R-tree sidecar file name from the shp file name.
+     * 
+     * @param shpFileName
+     * @return srx file name from shape file name
+     */
+    public static String rtree(String shpFileName) {
+        String ret = null;
+        if (shpFileName != null) {
+            ret = shpFileName.substring(0, shpFileName.indexOf(".shp")) + ".srx";
+        }
+        return ret;
+    }
+
+    /**
+     * Figures out the generalized records sidecar file name from the shp file
+     * name.
+     * 
+     * @param shpFileName
+     * @return sgx file name from shape file name
+     */
+    public static String generalized(String shpFileName) {
+        String ret = null;
+        if (shpFileName != null) {
+            ret = shpFileName.substring(0, shpFileName.indexOf(".shp")) + ".sgx";
+        }
+        return ret;
+    }
+
     /**
      * Figures out the dbf file name from the shp file name.
      * 
@@ -266,7 +322,7 @@ public class SpatialIndex extends ShapeUtils {
      * @throws IOException if the shapeFileName can't be found.
      */
     protected synchronized BinaryFile getShpFile(String shapeFileName) throws IOException {
-        return new BinaryBufferedFile(shapeFileName);
+        return new BinaryMappedFile(shapeFileName);
     }
 
     /**
@@ -357,20 +413,11 @@ public class SpatialIndex extends ShapeUtils {
     public ESRIRecord[] locateRecords(double xmin, double ymin, double xmax, double ymax)
             throws IOException, FormatException {
 
-        boolean gatherBounds = false;
-
-        if (bounds == null) {
-            bounds = new ESRIBoundingBox();
-            gatherBounds = true;
-        }
-
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("locateRecords:\n\txmin: " + xmin + "; ymin: " + ymin + "\n\txmax: " + xmax
                     + "; ymax: " + ymax);
         }
 
-        byte ixRecord[] = new byte[SPATIAL_INDEX_RECORD_LENGTH];
-        int recNum = 0;
         Vector<ESRIRecord> v = new Vector<ESRIRecord>();
         int sRecordSize = DEFAULT_SHAPE_RECORD_SIZE;
         byte sRecord[] = new byte[sRecordSize];
@@ -379,97 +426,67 @@ public class SpatialIndex extends ShapeUtils {
             return null;
         }
 
-        BinaryBufferedFile ssx = new BinaryBufferedFile(ssx(shpFileName));
+        Iterator<Entry> it = entryIterator(xmin, ymin, xmax, ymax, null);
+
         if (shp == null) {
             shp = getShpFile(shpFileName);
         }
 
         // Need to figure out what the shape type is...
-        ssx.seek(32);
-
-        // int shapeType = readLEInt(ssx);
-        // /
-        ssx.byteOrder(false);
-        int shapeType = ssx.readInteger();
-        // /
-        ssx.seek(100); // skip the file header
+        shp.seek(32);
+        shp.byteOrder(false);
+        int shapeType = shp.readInteger();
+        shp.byteOrder(true);
 
-        while (true) {
-            int result = ssx.read(ixRecord, 0, SPATIAL_INDEX_RECORD_LENGTH);
-            // if (result == -1) {
-            if (result <= 0) {
-                break;// EOF
-            } else {
-                recNum++;
-                double xmin2 = readLEDouble(ixRecord, 8);
-                double ymin2 = readLEDouble(ixRecord, 16);
-                double xmax2 = readLEDouble(ixRecord, 24);
-                double ymax2 = readLEDouble(ixRecord, 32);
-                if (logger.isLoggable(Level.FINER)) {
-                    logger.finer("Looking at rec num " + recNum);
-                    logger.finer("  " + xmin2 + ", " + ymin2 + "\n  " + xmax2 + ", " + ymax2);
-                }
+        while (it.hasNext()) {
+            int byteOffset = it.next().getByteOffset();
 
-                if (gatherBounds) {
-                    bounds.addPoint(xmin2, ymin2);
-                    bounds.addPoint(xmax2, ymax2);
+            try {
+                // The content length is in the record header, after the
+                // record number.
+                shp.seek(byteOffset + 4);
+                int contentLength = shp.readInteger();
+                int recordSize = (contentLength * 2) + 8;
+
+                if (recordSize < 0) {
+                    logger.warning("SpatialIndex: supposed to read record size of " + recordSize);
+                    break;
                 }
 
-                if (intersects(xmin, ymin, xmax, ymax, xmin2, ymin2, xmax2, ymax2)) {
-
-                    int offset = readBEInt(ixRecord, 0);
-                    int byteOffset = offset * 2;
-                    int contentLength = readBEInt(ixRecord, 4);
-                    int recordSize = (contentLength * 2) + 8;
-                    // System.out.print(".");
-                    // System.out.flush();
-
-                    if (recordSize < 0) {
-                        logger.warning("SpatialIndex: supposed to read record size of "
-                                + recordSize);
-                        break;
-                    }
-
-                    if (recordSize > sRecordSize) {
-                        sRecordSize = recordSize;
-                        if (logger.isLoggable(Level.FINER)) {
-                            logger.finer("Shapefile SpatialIndex record size: " + sRecordSize);
-                        }
-                        sRecord = new byte[sRecordSize];
-                    }
-
-                    if (logger.isLoggable(Level.FINE)) {
-                        logger.fine("going to shp byteOffset = " + byteOffset
-                                + " for record size = " + recordSize + ", offset = " + offset
-                                + ", shape type = " + shapeType);
+                if (recordSize > sRecordSize) {
+                    sRecordSize = recordSize;
+                    if (logger.isLoggable(Level.FINER)) {
+                        logger.finer("Shapefile SpatialIndex record size: " + sRecordSize);
                     }
+                    sRecord = new byte[sRecordSize];
+                }
 
-                    try {
-                        shp.seek(byteOffset);
-                        int nBytes = shp.read(sRecord, 0, recordSize);
-                        if (nBytes < recordSize) {
-                            logger.warning("Shapefile SpatialIndex expected " + recordSize
-                                    + " bytes, but got " + nBytes + " bytes instead.");
-                        }
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("going to shp byteOffset = " + byteOffset + " for record size = "
+                            + recordSize + ", shape type = " + shapeType);
+                }
 
-                        ESRIRecord record = makeESRIRecord(shapeType, sRecord, 0);
-                        v.addElement(record);
-                    } catch (IOException ioe) {
-                        logger.warning("SpatialIndex.locateRecords: IOException. ");
-                        ioe.printStackTrace();
-                        break;
-                    }
+                shp.seek(byteOffset);
+                int nBytes = shp.read(sRecord, 0, recordSize);
+                if (nBytes < recordSize) {
+                    logger.warning("Shapefile SpatialIndex expected " + recordSize
+                            + " bytes, but got " + nBytes + " bytes instead.");
                 }
+
+                ESRIRecord record = makeESRIRecord(shapeType, sRecord, 0);
+                v.addElement(record);
+            } catch (IOException ioe) {
+                logger.warning("SpatialIndex.locateRecords: IOException. ");
+                ioe.printStackTrace();
+                break;
             }
         }
 
         if (logger.isLoggable(Level.FINE)) {
-            logger.fine("Processed " + recNum + " records");
             logger.fine("Selected " + v.size() + " records");
         }
         int nRecords = v.size();
 
-        ssx.close();
         shp.close();
         shp = null;
         ESRIRecord result[] = new ESRIRecord[nRecords];
@@ -555,14 +572,32 @@ public class SpatialIndex extends ShapeUtils {
         OMGraphicList labels = new OMGraphicList();
         list.add(labels);
 
-        for (Iterator<?> it = entryIterator(dataProj); it.hasNext();) {
-            Entry entry = (Entry) it.next();
+        // Generalized records are in decimal degrees, so they can't be used
+        // with pre-projected data.
+        GeneralizedShapeFile genFile = null;
+        int band = -1;
+        if (mapProj != null && dataProj == null) {
+            genFile = getGeneralizedFile();
+            if (genFile != null) {
+                band = genFile.getBand(mapProj.getScale());
+            }
+        }
+
+        for (Iterator<Entry> it = entryIterator(xmin, ymin, xmax, ymax, dataProj); it.hasNext();) {
+            Entry entry = it.next();
 
             if (entry.intersects(xmin, ymin, xmax, ymax)) {
 
                 try {
 
-                    OMGraphic omg = (OMGraphic) factory.makeEsriGraphicFromRecord(entry.getByteOffset(), shpFile, drawingAttributes, pointIcon, byteTracker);
+                    OMGraphic omg = null;
+                    if (band >= 0) {
+                        omg = genFile.getGraphic(band, entry.getByteOffset(), drawingAttributes, factory.getLineType());
+                    }
+
+                    if (omg == null) {
+                        omg = (OMGraphic) factory.makeEsriGraphicFromRecord(entry.getByteOffset(), shpFile, drawingAttributes, pointIcon, byteTracker);
+                    }
 
                     if (omg != null) {
 
@@ -601,6 +636,10 @@ public class SpatialIndex extends ShapeUtils {
             dbfFile.close();
         }
 
+        if (genFile != null) {
+            genFile.close();
+        }
+
         return list;
 
     }
@@ -736,6 +775,20 @@ public class SpatialIndex extends ShapeUtils {
      */
     public Iterator<Entry> entryIterator(GeoCoordTransformation dataTransform)
             throws IOException, FormatException {
+        return new ArrayList<Entry>(getEntries(dataTransform)).iterator();
+    }
+
+    /**
+     * Returns the cached list of SpatialIndex entries, reading them from the
+     * spatial index file if needed.
+     * 
+     * @param dataTransform GeoCoordTransform for pre-projected data.
+     * @return list of entries, data transformed.
+     * @throws IOException
+     * @throws FormatException
+     */
+    protected List<Entry> getEntries(GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
         List<Entry> entriesHandle = entries;
         if (entriesHandle == null) {
             boolean gatherBounds = false;
@@ -746,9 +799,157 @@ public class SpatialIndex extends ShapeUtils {
 
             entriesHandle = readIndexFile(gatherBounds ? bounds : null, dataTransform);
             entries = entriesHandle;
+            rtree = null;
+        }
+        return entriesHandle;
+    }
+
+    /**
+     * Provides an iterator over the SpatialIndex entries that intersect a
+     * rectangle, in the order they are in the spatial index. Uses an R-tree
+     * built from the entries, so the entries that don't intersect the rectangle
+     * aren't looked at.
+     * 
+     * @param xmin the smaller of the x coordinates
+     * @param ymin the smaller of the y coordinates
+     * @param xmax the larger of the x coordinates
+     * @param ymax the larger of the y coordinates
+     * @param dataTransform GeoCoordTransform for pre-projected data.
+     * @return iterator over entries, data transformed.
+     * @throws IOException
+     * @throws FormatException
+     */
+    public Iterator<Entry> entryIterator(double xmin, double ymin, double xmax, double ymax,
+                                         GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        List<Entry> entriesHandle;
+        PackedRTree tree;
+        synchronized (this) {
+            entriesHandle = getEntries(dataTransform);
+            tree = getRTree(entriesHandle, dataTransform);
+        }
+
+        int[] hits = tree.search(xmin, ymin, xmax, ymax);
+        List<Entry> ret = new ArrayList<Entry>(hits.length);
+        for (int hit : hits) {
+            ret.add(entriesHandle.get(hit));
+        }
+        return ret.iterator();
+    }
+
+    /**
+     * Returns the R-tree for the entries, creating it if needed. If the
+     * entries came straight from the spatial index file and an up to date
+     * R-tree sidecar file exists next to the shape file, the tree is read from
+     * that.
+     * 
+     * @param entriesHandle the current entries.
+     * @param dataTransform GeoCoordTransform the entries were read with.
+     * @return PackedRTree for the entries
+     */
+    protected synchronized PackedRTree getRTree(List<Entry> entriesHandle,
+                                                GeoCoordTransformation dataTransform) {
+        PackedRTree tree = rtree;
+        if (tree == null) {
+            String rtreeFileName = rtree(shpFileName);
+            if (dataTransform == null && isCurrent(rtreeFileName)) {
+                tree = PackedRTree.read(rtreeFileName, entriesHandle.size());
+            }
+            if (tree == null) {
+                tree = new PackedRTree(entriesHandle);
+            }
+            rtree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Checks if a file generated from the spatial index file exists, and is
+     * newer than the spatial index file.
+     */
+    protected boolean isCurrent(String generatedFileName) {
+        if (generatedFileName == null) {
+            return false;
+        }
+        File generated = new File(generatedFileName);
+        File ssxFile = new File(ssx(shpFileName));
+        return generated.exists() && ssxFile.exists()
+                && generated.lastModified() >= ssxFile.lastModified();
+    }
+
+    /**
+     * Set whether generalized versions of the polyline and polygon records
+     * should be used when the map is zoomed out. The generalized records are
+     * read from a sgx file next to the shape file, which is created when it's
+     * first needed if it doesn't exist or is older than the shape file.
+     * 
+     * @param generalize true to use generalized records.
+     */
+    public synchronized void setGeneralize(boolean generalize) {
+        this.generalize = generalize;
+        if (!generalize && generalized != null) {
+            try {
+                generalized.dispose();
+            } catch (IOException ioe) {
+            }
+            generalized = null;
+        }
+    }
+
+    public boolean isGeneralize() {
+        return generalize;
+    }
+
+    /**
+     * Returns the generalized records for the shape file, opening or creating
+     * the sgx file if needed.
+     * 
+     * @return GeneralizedShapeFile, or null if generalize is false or the file
+     *         can't be created.
+     */
+    protected synchronized GeneralizedShapeFile getGeneralizedFile() {
+        if (!generalize || shpFileName == null) {
+            return null;
+        }
+
+        if (generalized == null) {
+            String sgxFileName = generalized(shpFileName);
+            File shpFile = new File(shpFileName);
+            File sgxFile = new File(sgxFileName);
+            try {
+                if (!sgxFile.exists() || sgxFile.lastModified() < shpFile.lastModified()) {
+                    if (!shpFile.exists()) {
+                        // Not a local file, can't write next to it.
+                        generalize = false;
+                        return null;
+                    }
+                    logger.info("creating generalized records for " + shpFileName);
+                    GeneralizedShapeFile.create(shpFileName, sgxFileName, GeneralizedShapeFile.DEFAULT_BAND_SCALES);
+                }
+                generalized = new GeneralizedShapeFile(sgxFileName);
+            } catch (IOException ioe) {
+                logger.warning("can't use generalized records for " + shpFileName + ": "
+                        + ioe.getMessage());
+                generalize = false;
+            } catch (FormatException fe) {
+                logger.warning("can't use generalized records for " + shpFileName + ": "
+                        + fe.getMessage());
+                generalize = false;
+            }
         }
+        return generalized;
+    }
 
-        return new ArrayList<Entry>(entriesHandle).iterator();
+    /**
+     * Writes the R-tree for the entries to a sidecar file next to the shape
+     * file, so it can be read instead of built the next time the shape file is
+     * opened.
+     * 
+     * @throws IOException
+     * @throws FormatException
+     */
+    public synchronized void writeRTree() throws IOException, FormatException {
+        new PackedRTree(getEntries(null)).write(new File(rtree(shpFileName)));
     }
 
     /**
@@ -788,7 +989,7 @@ public class SpatialIndex extends ShapeUtils {
             return SpatialIndex.MemoryIndex.create(shpFileName);
         }
 
-        BinaryBufferedFile ssx = new BinaryBufferedFile(ssxFileName);
+        BinaryBufferedFile ssx = new BinaryMappedFile(ssxFileName);
 
         ssx.byteOrder(false);
         ssx.seek(100); // skip the file header
@@ -874,7 +1075,7 @@ public class SpatialIndex extends ShapeUtils {
             return;
         }
 
-        BinaryBufferedFile ssx = new BinaryBufferedFile(ssx(shpFileName));
+        BinaryBufferedFile ssx = new BinaryMappedFile(ssx(shpFileName));
         ssx.seek(100); // skip the file header
         while (true) {
             int result = ssx.read(ixRecord, 0, SPATIAL_INDEX_RECORD_LENGTH);
@@ -914,6 +1115,13 @@ public class SpatialIndex extends ShapeUtils {
         out.println("java " + className + " -c file.shp");
         out.println("Creates spatial index <file.ssx> from " + "shape file <file.shp>.");
         out.println();
+        out.println("java " + className + " -r file.shp");
+        out.println("Creates R-tree file <file.srx> from " + "spatial index <file.ssx>.");
+        out.println();
+        out.println("java " + className + " -g file.shp [scale ...]");
+        out.println("Creates generalized records file <file.sgx> from "
+                + "shape file <file.shp>, for the given scale bands.");
+        out.println();
         out.println("java " + className + " -d file.shp");
         out.println("Dumps spatial index information, excluding "
                 + "bounding boxes to stdout.  Useful for " + "comparing to a shape index.");
@@ -1038,6 +1246,27 @@ public class SpatialIndex extends ShapeUtils {
         } else if ((argc == 2) && argv[0].equals("-c")) {
             String shapeFile = argv[1];
             SpatialIndex.FileIndex.create(shapeFile);
+        } else if ((argc >= 2) && argv[0].equals("-g")) {
+            String shapeFile = argv[1];
+            double[] scales = GeneralizedShapeFile.DEFAULT_BAND_SCALES;
+            if (argc > 2) {
+                scales = new double[argc - 2];
+                for (int i = 2; i < argc; i++) {
+                    scales[i - 2] = Double.parseDouble(argv[i]);
+                }
+            }
+            try {
+                GeneralizedShapeFile.create(shapeFile, generalized(shapeFile), scales);
+            } catch (FormatException fe) {
+                logger.warning(fe.getMessage());
+            }
+        } else if ((argc == 2) && argv[0].equals("-r")) {
+            String shapeFile = argv[1];
+            try {
+                new SpatialIndex(shapeFile).writeRTree();
+            } catch (FormatException fe) {
+                logger.warning(fe.getMessage());
+            }
         } else {
             printUsage(System.err);
             System.exit(1);
@@ -1080,6 +1309,12 @@ public class SpatialIndex extends ShapeUtils {
             if (done && entries != null) {
                 entries.clear();
                 entries = null;
+                rtree = null;
+            }
+
+            if (done && generalized != null) {
+                generalized.dispose();
+                generalized = null;
             }
 
             return true;
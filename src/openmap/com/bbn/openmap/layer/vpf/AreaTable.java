@@ -49,7 +49,7 @@ public class AreaTable extends PrimitiveTable {
     final private int ringStartColumn;
 
     /** TilingAdapters used to retrieve edge table information */
-    final private TilingAdapter edgeRightFaceAdapter, edgeLeftFaceAdapter, edgeRightEdgeAdapter,
+    final private TilingAdapter.RowAdapter edgeRightFaceAdapter, edgeLeftFaceAdapter, edgeRightEdgeAdapter,
             edgeLeftEdgeAdapter;
 
     /**
@@ -115,11 +115,11 @@ public class AreaTable extends PrimitiveTable {
     public int computeEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints)
             throws FormatException {
         int ring_ptr = ((Number) facevec.get(ringIDColumn)).intValue();
-        List<Object> ring1 = new ArrayList<Object>(rings.getColumnCount());
+        DcwRow ring1 = rings.createRow();
         rings.getRow(ring1, ring_ptr);
-        int fac_id = ((Number) ring1.get(faceIDColumn)).intValue();
+        int fac_id = ring1.getInt(faceIDColumn);
 
-        int startedgeid = ((Number) ring1.get(ringStartColumn)).intValue();
+        int startedgeid = ring1.getInt(ringStartColumn);
         if (startedgeid <= 0) {
             return 0;
         }
@@ -128,7 +128,9 @@ public class AreaTable extends PrimitiveTable {
         allLLPoints.clear();
         int polySize = 0;
         int prev_node = -1;
-        final List<Object> edge = new ArrayList<Object>(edges.getColumnCount());
+        // The edge row is reused for every edge around the ring, only the
+        // coordinates are kept.
+        final DcwRow edge = edges.createRow();
 
         do {
             edges.getRow(edge, nextedgeid);
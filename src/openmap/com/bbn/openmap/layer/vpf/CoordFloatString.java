@@ -62,6 +62,20 @@ public class CoordFloatString {
         }
     }
 
+    /**
+     * Construct a CoordFloatString from values that have already been read.
+     * The array is kept, not copied.
+     * 
+     * @param tuplecount the number of tuples
+     * @param tuplesize the number of floats in the tuple
+     * @param values the values, as x1,y1,[z1,]x2,y2,[z2,]...
+     */
+    public CoordFloatString(int tuplecount, int tuplesize, double[] values) {
+        tcount = tuplecount;
+        tsize = tuplesize;
+        vals = values;
+    }
+
     /**
      * The maximum indexable tuple value
      * 
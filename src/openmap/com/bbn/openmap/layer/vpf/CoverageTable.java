@@ -25,6 +25,11 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,6 +40,7 @@ import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.TaskService;
 
 /**
  * Encapsulate a VPF coverage directory. This class handles requests that happen
@@ -467,7 +473,7 @@ public class CoverageTable {
 
             boolean needToFindOurselves = true;
 
-            TilingAdapter fciTilingAdapter = fci.getTilingAdapter();
+            TilingAdapter.RowAdapter fciTilingAdapter = fci.getTilingAdapter();
             if (fciTilingAdapter == null) {
                 // no way to find primitives
                 continue;
@@ -485,7 +491,7 @@ public class CoverageTable {
             // OK, now we are looking in the Feature class file.
             try {
                 int getrow = 1;
-                for (List<Object> fcirow = new ArrayList<Object>(); fci.getRow(fcirow, getrow++);) {
+                for (DcwRow fcirow = fci.createRow(); fci.getRow(fcirow, getrow++);) {
 
                     if (Debug.debugging("vpfdetail")) {
                         Debug.output("CoverageTable new feature " + fcirow);
@@ -564,7 +570,7 @@ public class CoverageTable {
                     // drawFeature will return false...
 
                     int primitiveID = fciTilingAdapter.getPrimId(fcirow);
-                    int featureID = ((Number) fcirow.get(fciFeatureIDCol)).intValue();
+                    int featureID = fcirow.getInt(fciFeatureIDCol);
 
                     if (tables.drawFeature(primitiveID, warehouse, ll1, ll2, dpplat, dpplon, currentFeature, featureID) != null) {
                         didSomething = true;
@@ -592,6 +598,11 @@ public class CoverageTable {
      * in the thematic index is read to get the feature id numbers. The feature
      * table is referenced for the feature ID number in the tile, and then the
      * feature is drawn.
+     * <p>
+     * If the warehouse is a VPFFeatureGraphicWarehouse set up with more than
+     * one tile loader, the feature rows are still read here, but the tiles
+     * are read at the same time by loadTiles(), each with its own primitive
+     * tables.
      * 
      * @param fci the FeatureClassInfo (feature table)
      * @param warehouse the VPFFeatureGraphicWarehouse to use to draw the
@@ -614,7 +625,19 @@ public class CoverageTable {
             return false;
         }
 
-        List<Object> v = new ArrayList<Object>(); // hold fci row contents
+        DcwRow v = fci.createRow(); // hold fci row contents
+
+        List<TileFeatures> tileFeatures = null;
+        int tileLoaders = 1;
+        if (warehouse instanceof VPFFeatureGraphicWarehouse) {
+            tileLoaders = ((VPFFeatureGraphicWarehouse) warehouse).getTileLoaders();
+            if (tileLoaders > 1) {
+                tileFeatures = new ArrayList<TileFeatures>();
+                // Set up here so the attributes aren't modified while
+                // other threads are creating graphics.
+                ((VPFFeatureGraphicWarehouse) warehouse).initAttributesForFeature(this, currentFeature);
+            }
+        }
 
         try {
             int primitiveIdColIndex = fci.getTilePrimitiveIdColIndex();
@@ -636,6 +659,14 @@ public class CoverageTable {
 
                 if (currentTile.inRegion(ll1.getLatitude(), ll2.getLatitude(), ll2.getLongitude(), ll1.getLongitude())) {
 
+                    if (tileFeatures != null) {
+                        TileFeatures tf = readTileFeatures(fci, (VPFFeatureGraphicWarehouse) warehouse, currentTile, thematicIndex.get(indexes[i]), primitiveIdColIndex, v, currentFeature, featureType);
+                        if (tf != null) {
+                            tileFeatures.add(tf);
+                        }
+                        continue;
+                    }
+
                     tables.setTables(featureType, currentTile);
                     tables.findYourself(fci);
 
@@ -666,7 +697,7 @@ public class CoverageTable {
                             continue;
                         }
 
-                        int primitiveID = VPFUtil.objectToInt(v.get(primitiveIdColIndex));
+                        int primitiveID = VPFUtil.rowToInt(v, primitiveIdColIndex);
                         // for attribute retrieval, we need the featurePrimID.
                         tables.drawFeature(primitiveID, warehouse, ll1, ll2, dpplat, dpplon, currentFeature, featurePrimID);
                     }
@@ -679,6 +710,10 @@ public class CoverageTable {
                     }
                 }
             }
+
+            if (tileFeatures != null) {
+                loadTiles(tileFeatures, tileLoaders, (VPFFeatureGraphicWarehouse) warehouse, ll1, ll2, dpplat, dpplon);
+            }
             return true;
         } catch (FormatException f) {
             if (Debug.debugging("vpf.FormatException")) {
@@ -691,6 +726,117 @@ public class CoverageTable {
         }
     }
 
+    /**
+     * Gather what's needed to read a tile's features on another thread. The
+     * feature rows are read here, since the FeatureClassInfo is shared by all
+     * of the tiles, and the warehouse is asked if the tile needs to be read so
+     * it can set up for the tile in tile order.
+     * 
+     * @return TileFeatures for the tile, or null if the warehouse doesn't
+     *         need the tile contents.
+     */
+    protected TileFeatures readTileFeatures(FeatureClassInfo fci,
+                                            VPFFeatureGraphicWarehouse warehouse,
+                                            TileDirectory currentTile, int[] featureID,
+                                            int primitiveIdColIndex, DcwRow v,
+                                            String currentFeature, char featureType)
+            throws FormatException {
+
+        if (!warehouse.needToFetchTileContents(cat.libraryname, currentFeature, currentTile)) {
+            if (Debug.debugging("vpf")) {
+                Debug.output("Loaded Cached List for " + currentFeature + " and "
+                        + currentTile.getPath());
+            }
+            return null;
+        }
+
+        int[] primitiveID = new int[featureID.length];
+        for (int j = 0; j < featureID.length; j++) {
+            // couldn't get row for some reason, skipped when the tile is
+            // read.
+            primitiveID[j] = fci.getRow(v, featureID[j]) ? VPFUtil.rowToInt(v, primitiveIdColIndex)
+                    : -1;
+        }
+
+        return new TileFeatures(this, currentTile, featureType, currentFeature, fci, primitiveID, featureID, warehouse.createTileBuffer());
+    }
+
+    /**
+     * Read the features of a set of tiles, with up to tileLoaders tiles being
+     * read at the same time. The calling thread reads tiles too, and then adds
+     * the graphics for each tile to the warehouse in tile order.
+     * 
+     * @throws FormatException the first problem any of the tiles had, the
+     *         warehouse doesn't get any of the graphics if there is one.
+     */
+    protected void loadTiles(final List<TileFeatures> tileFeatures, int tileLoaders,
+                             final VPFFeatureGraphicWarehouse warehouse, final LatLonPoint ll1,
+                             final LatLonPoint ll2, final double dpplat, final double dpplon)
+            throws FormatException {
+
+        tileLoaders = Math.min(tileLoaders, tileFeatures.size());
+
+        final AtomicInteger nextTile = new AtomicInteger();
+        class TileLoader implements Callable<Boolean> {
+            public Boolean call() throws FormatException {
+                int index;
+                while ((index = nextTile.getAndIncrement()) < tileFeatures.size()) {
+                    tileFeatures.get(index).load(warehouse, ll1, ll2, dpplat, dpplon);
+                }
+                return Boolean.TRUE;
+            }
+        }
+        TileLoader loader = new TileLoader();
+
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        try {
+            for (int i = 1; i < tileLoaders; i++) {
+                futures.add(TaskService.singleton().spawn(loader));
+            }
+        } catch (RejectedExecutionException ree) {
+            // No more threads available, the loaders already running and
+            // this thread will read the rest of the tiles.
+        }
+
+        FormatException problem = null;
+        try {
+            loader.call();
+        } catch (FormatException fe) {
+            problem = fe;
+        }
+
+        for (Future<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                if (problem == null) {
+                    problem = new FormatException("interrupted reading tiles");
+                }
+            } catch (ExecutionException ee) {
+                Throwable cause = ee.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                if (problem == null) {
+                    problem = (cause instanceof FormatException) ? (FormatException) cause
+                            : new FormatException(cause.toString());
+                }
+            }
+        }
+
+        if (problem != null) {
+            throw problem;
+        }
+
+        for (TileFeatures tf : tileFeatures) {
+            warehouse.addTileBuffer(tf.buffer);
+        }
+    }
+
     /**
      * This is a method specifically designed for the
      * VPFAutoFeatureGraphicWarehouse, and the CoverageTable knows to check with
@@ -751,7 +897,7 @@ public class CoverageTable {
 
             boolean needToFindOurselves = true;
 
-            TilingAdapter fciTilingAdapter = fci.getTilingAdapter();
+            TilingAdapter.RowAdapter fciTilingAdapter = fci.getTilingAdapter();
             if (fciTilingAdapter == null) {
                 // no way to find primitives
                 continue;
@@ -767,9 +913,13 @@ public class CoverageTable {
              * fcirow holds all the information for a particular feature. The
              * fci lets you know what each column represents.
              */
-            for (List<Object> fcirow = new ArrayList<Object>(); fci.getRow(fcirow, getrow++);) {
+            DcwRow fcirow = fci.createRow();
+            // The warehouse and the FeaturePriorityHolders get the row as a
+            // List view, so only the columns they look at become objects.
+            List<Object> fcivec = fcirow.asList();
+            while (fci.getRow(fcirow, getrow++)) {
 
-                String facc = (String) fcirow.get(faccIndex);
+                String facc = fcirow.getString(faccIndex);
 
                 /**
                  * Get the list of FeaturePriorityHolders that correspond to
@@ -784,7 +934,7 @@ public class CoverageTable {
                          * Checking to see if the attributes for a particular
                          * feature match this particular FPH.
                          */
-                        if (ph.matches(facc, fci, fcirow)) {
+                        if (ph.matches(facc, fci, fcivec)) {
                             foundMatch = true;
                             if (logger.isLoggable(Level.FINE)) {
                                 logger.fine("+++ MATCH FOUND for " + facc + " tileid:"
@@ -876,18 +1026,18 @@ public class CoverageTable {
                             // drawFeature will return false...
 
                             int primitiveID = fciTilingAdapter.getPrimId(fcirow);
-                            int featureID = ((Number) fcirow.get(fciFeatureIDCol)).intValue();
+                            int featureID = fcirow.getInt(fciFeatureIDCol);
                             
                             OMGraphic omg = tables.drawFeature(primitiveID, warehouse, ll1, ll2, dpplat, dpplon, featureName, featureID);
 
                             if (omg != null) {
 
-                                warehouse.handleInformationForOMGraphic(omg, fci, fcirow);
+                                warehouse.handleInformationForOMGraphic(omg, fci, fcivec);
                                 ph.add(omg);
 
                                 if (false) {
                                     StringBuffer pout = new StringBuffer();
-                                    for (Object obj : fcirow) {
+                                    for (Object obj : fcivec) {
                                         pout.append(obj).append(',');
                                     }
                                     System.out.println(pout);
@@ -898,7 +1048,7 @@ public class CoverageTable {
                             // buoys.
                             // if (ph.facc.equals(facc)) {
                             // logger.info("something is getting blown off");
-                            // ph.matches(facc, fci, fcirow);
+                            // ph.matches(facc, fci, fcivec);
                             // }
                         }
 
@@ -1061,6 +1211,8 @@ class TableHolder {
 
     /** Used as a preallocated list to read feature tables. */
     List<Object> primitiveVector = new ArrayList<Object>();
+    /** Used to read the edge table, made for each edge table. */
+    DcwRow edgeRow = null;
     CoverageTable coverageTable;
 
     /**
@@ -1083,6 +1235,7 @@ class TableHolder {
 
         if (featureType == CoverageTable.EDGE_FEATURETYPE) {
             edg = new EdgeTable(coverageTable, tile);
+            edgeRow = null;
         }
         if (featureType == CoverageTable.TEXT_FEATURETYPE) {
             tft = new TextTable(coverageTable, tile);
@@ -1160,8 +1313,13 @@ class TableHolder {
             if ((cnt != null) && cnt.getRow(primitiveVector, primitiveID)) {
                 return cnt.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature, featurePrimID);
             }
-            if ((edg != null) && edg.getRow(primitiveVector, primitiveID)) {
-                return edg.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, primitiveVector, currentFeature, featurePrimID);
+            if (edg != null) {
+                if (edgeRow == null) {
+                    edgeRow = edg.createRow();
+                }
+                if (edg.getRow(edgeRow, primitiveID)) {
+                    return edg.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, edgeRow, currentFeature, featurePrimID);
+                }
             }
         }
 
@@ -1300,12 +1458,74 @@ class TableHolder {
         aft = null;
         tft = null;
         edg = null;
+        edgeRow = null;
         ent = null;
         cnt = null;
     }
 
 }
 
+/**
+ * The features of a tile found in a thematic index, read by
+ * CoverageTable.loadTiles() with a TableHolder of its own. The graphics go
+ * into the TileBuffer until all of the tiles have been read.
+ */
+class TileFeatures {
+
+    final CoverageTable coverageTable;
+    final TileDirectory tile;
+    final char featureType;
+    final String currentFeature;
+    final FeatureClassInfo fci;
+    /** The primitive ID for each feature, -1 if the feature row couldn't be read. */
+    final int[] primitiveID;
+    final int[] featureID;
+    final VPFFeatureGraphicWarehouse.TileBuffer buffer;
+
+    TileFeatures(CoverageTable coverageTable, TileDirectory tile, char featureType,
+            String currentFeature, FeatureClassInfo fci, int[] primitiveID, int[] featureID,
+            VPFFeatureGraphicWarehouse.TileBuffer buffer) {
+        this.coverageTable = coverageTable;
+        this.tile = tile;
+        this.featureType = featureType;
+        this.currentFeature = currentFeature;
+        this.fci = fci;
+        this.primitiveID = primitiveID;
+        this.featureID = featureID;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Read the tile, creating graphics for the features into the buffer.
+     */
+    void load(VPFFeatureGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2,
+              double dpplat, double dpplon) throws FormatException {
+
+        if (Debug.debugging("vpf.tile")) {
+            Debug.output("Drawing " + featureID.length + " " + featureType + " features for "
+                    + tile);
+        }
+
+        TableHolder tables = new TableHolder(coverageTable);
+        warehouse.setTileBuffer(buffer);
+        try {
+            tables.setTables(featureType, tile);
+            synchronized (fci) {
+                tables.findYourself(fci);
+            }
+
+            for (int j = 0; j < featureID.length; j++) {
+                if (primitiveID[j] >= 0) {
+                    tables.drawFeature(primitiveID[j], warehouse, ll1, ll2, dpplat, dpplon, currentFeature, featureID[j]);
+                }
+            }
+        } finally {
+            warehouse.setTileBuffer(null);
+            tables.close();
+        }
+    }
+}
+
 /**
  * A utility class used to map information from a VPF feature table to its
  * associated value in an int.vdt file.
@@ -568,6 +568,50 @@ public class DcwColumnInfo {
         //unreached
     }
 
+    /**
+     * Parse the field for this column into a DcwRow. Numeric and cross-tile
+     * identifier fields are stored as primitives, float coordinate strings in
+     * the row's coordinate arrays, and other fields are parsed with
+     * parseField(BinaryFile).
+     *
+     * @param inputFile the file to read the field from
+     * @param row the row to store the value in
+     * @param column the index of this column in the row
+     * @exception EOFException hit end of file before reading the field
+     * @exception FormatException some other problem reading the field
+     * @see #parseField(BinaryFile)
+     */
+    public void parseField(BinaryFile inputFile, DcwRow row, int column)
+            throws EOFException, FormatException {
+        switch (fieldType) {
+        case VPF_COLUMN_FLOAT_2COORD:
+        case VPF_COLUMN_FLOAT_3COORD:
+            int numels = numberOfElements;
+            if (numels == -1) {
+                numels = inputFile.readInteger();
+            }
+            row.readCoordinates(column, numels, inputFile);
+            break;
+        case VPF_COLUMN_FLOAT:
+            row.doubles[column] = inputFile.readFloat();
+            break;
+        case VPF_COLUMN_DOUBLE:
+            row.doubles[column] = inputFile.readDouble();
+            break;
+        case VPF_COLUMN_SHORT:
+            row.ints[column] = inputFile.readShort();
+            break;
+        case VPF_COLUMN_INT:
+            row.ints[column] = inputFile.readInteger();
+            break;
+        case VPF_COLUMN_TRIPLET:
+            DcwCrossTileID.read(inputFile, row, column);
+            break;
+        default:
+            row.objects[column] = parseField(inputFile);
+        }
+    }
+
     /**
      * produce a nice printed version of all our contained information
      *
@@ -71,15 +71,7 @@ public class DcwCrossTileID {
      *            data
      */
     public DcwCrossTileID(BinaryFile in) throws FormatException, EOFException {
-        int format;
-        try {
-            format = in.read();
-        } catch (IOException ioe) {
-            throw new FormatException(ioe.getMessage());
-        }
-        if (format == -1) {
-            throw new EOFException();
-        }
+        int format = readFormat(in);
 
         try {
             currentTileKey = readIntegerByKey(in, format >> 6);
@@ -92,6 +84,53 @@ public class DcwCrossTileID {
         }
     }
 
+    /**
+     * Read a cross-tile identifier from the input stream into a DcwRow,
+     * without creating a DcwCrossTileID.
+     * 
+     * @param in the filestream to read from
+     * @param row the row to store the currentTileKey, nextTileID and
+     *        nextTileKey values in
+     * @param column the column of the row to store the values in
+     * @exception FormatException some error was detected while
+     *            reading the identifier
+     * @exception EOFException EOF was encountered before reading any
+     *            data
+     */
+    static void read(BinaryFile in, DcwRow row, int column)
+            throws FormatException, EOFException {
+        int format = readFormat(in);
+
+        try {
+            row.ints[column] = readIntegerByKey(in, format >> 6);
+            row.nextTileIDs[column] = readIntegerByKey(in, format >> 4);
+            row.nextTileKeys[column] = readIntegerByKey(in, format >> 2);
+            readIntegerByKey(in, format);
+        } catch (EOFException e) {
+            throw new FormatException("DcwCrossTileID: unexpected EOD "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the 1-byte format specifier for the rest of the values.
+     * 
+     * @exception EOFException at the end of the file
+     */
+    private static int readFormat(BinaryFile in) throws FormatException,
+            EOFException {
+        int format;
+        try {
+            format = in.read();
+        } catch (IOException ioe) {
+            throw new FormatException(ioe.getMessage());
+        }
+        if (format == -1) {
+            throw new EOFException();
+        }
+        return format;
+    }
+
     /**
      * Reads an integer from the input stream
      * 
@@ -102,7 +141,7 @@ public class DcwCrossTileID {
      * @exception FormatException internal consistency failure
      * @exception EOFException hit end-of-file while reading data
      */
-    private int readIntegerByKey(BinaryFile in, int key)
+    private static int readIntegerByKey(BinaryFile in, int key)
             throws FormatException, EOFException {
         switch (key & 0x3) {
         case 0:
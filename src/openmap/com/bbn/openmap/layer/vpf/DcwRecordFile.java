@@ -209,7 +209,7 @@ public class DcwRecordFile {
      * @param primColumnName the name of the primitive column
      * @return an appropriate TilingAdapter instance or null
      */
-    public TilingAdapter getTilingAdapter(String primColumnName) {
+    public TilingAdapter.RowAdapter getTilingAdapter(String primColumnName) {
         return getTilingAdapter(-1, whatColumn(primColumnName));
     }
 
@@ -220,7 +220,7 @@ public class DcwRecordFile {
      * @param tileColumnName the name of the tile_id column
      * @return an appropriate TilingAdapter instance or null
      */
-    public TilingAdapter getTilingAdapter(String tileColumnName,
+    public TilingAdapter.RowAdapter getTilingAdapter(String tileColumnName,
                                           String primColumnName) {
         return getTilingAdapter(whatColumn(tileColumnName),
                 whatColumn(primColumnName));
@@ -233,13 +233,13 @@ public class DcwRecordFile {
      * @param tileColumn the position of the tile_id column
      * @return an appropriate TilingAdapter instance or null
      */
-    public TilingAdapter getTilingAdapter(int tileColumn, int primColumn) {
+    public TilingAdapter.RowAdapter getTilingAdapter(int tileColumn, int primColumn) {
         DcwColumnInfo tile = (tileColumn != -1) ? columnInfo[tileColumn] : null;
         if (primColumn == -1) {
             return null;
         }
         DcwColumnInfo prim = columnInfo[primColumn];
-        TilingAdapter retval = null;
+        TilingAdapter.RowAdapter retval = null;
         char primFieldType = prim.getFieldType();
         if (tile == null) {
             if (primFieldType == 'K') {
@@ -419,6 +419,56 @@ public class DcwRecordFile {
         }
     }
 
+    /**
+     * Create a DcwRow that can be used over and over to read the rows of this
+     * table with parseRow(DcwRow) and getRow(DcwRow, int).
+     * 
+     * @return a new DcwRow for this table
+     */
+    public DcwRow createRow() {
+        return new DcwRow(columnInfo);
+    }
+
+    /**
+     * Read the next row from the table into a DcwRow, the way parseRow(List)
+     * does, but without creating objects for the numeric and cross-tile
+     * identifier fields.
+     * 
+     * @param row the row to fill, from createRow()
+     * @return true if we read a row, false if no more rows are
+     *         available
+     * @exception FormatException an error was encountered reading the
+     *            row
+     * @see #parseRow(List)
+     */
+    public synchronized boolean parseRow(DcwRow row) throws FormatException {
+        int i = 0;
+        try {
+            for (; i < columnInfo.length; i++) {
+                columnInfo[i].parseField(inputFile, row, i);
+            }
+            cursorRow++;
+            return true;
+        } catch (FormatException f) {
+            throw new FormatException("DcwRecordFile: parserow on table "
+                    + filename + ": " + f.getMessage());
+        } catch (EOFException e) {
+            if (i > 0) {
+                throw new FormatException("DcwRecordFile: hit EOF at column "
+                        + i + " of " + columnInfo.length + " in " + filename);
+            }
+            try {
+                if (inputFile.available() > 0) {
+                    throw new FormatException("DcwRecordFile: hit EOF with available = "
+                            + inputFile.available() + " in " + filename);
+                }
+            } catch (IOException ioe) {
+                throw new FormatException("IOException calling available()");
+            }
+            return false;
+        }
+    }
+
     /**
      * Returns the documentation file associated with this table.
      * 
@@ -529,6 +579,26 @@ public class DcwRecordFile {
         return parseRow(retval);
     }
 
+    /**
+     * Parses the row specified by rownumber into a DcwRow.
+     * 
+     * @param row the row to fill, from createRow()
+     * @param rownumber the number of the row to return
+     *        [1..recordCount]
+     * @return true if the row was read
+     * @exception FormatException data format errors
+     * @see #parseRow(DcwRow)
+     */
+    public synchronized boolean getRow(DcwRow row, int rownumber)
+            throws FormatException {
+        if (inputFile == null) {
+            reopen(rownumber);
+        } else {
+            seekToRow(rownumber);
+        }
+        return parseRow(row);
+    }
+
     /**
      * moves the input cursor to the specified row [affects subsequent
      * calls parseRow.]
@@ -0,0 +1,321 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.io.EOFException;
+import java.util.AbstractList;
+import java.util.List;
+
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A reusable row of a VPF table, filled by
+ * DcwRecordFile.parseRow(DcwRow) and DcwRecordFile.getRow(DcwRow, int).
+ * Numeric and cross-tile identifier columns are kept as primitives, so
+ * reading a row doesn't create an Integer, Short, Float or DcwCrossTileID for
+ * every field the way the List versions of those methods do. Float coordinate
+ * strings are read into arrays that are reused from row to row. Text, double
+ * coordinate string and date columns are still kept as objects.
+ * <p>
+ * A DcwRow is made for a particular table with DcwRecordFile.createRow(), and
+ * is meant to be used over and over for the rows of that table. The values
+ * are replaced each time a row is read into it, including the array returned
+ * by getCoordinateValues(). The objects returned by getString() and
+ * getCoordinates() are not reused.
+ */
+public class DcwRow {
+
+    /** the columns of the table this row is for */
+    protected final DcwColumnInfo[] columns;
+    /** int and short values, and the current tile key of triplets */
+    protected final int[] ints;
+    /** the next tile id of triplets */
+    protected final int[] nextTileIDs;
+    /** the next tile key of triplets */
+    protected final int[] nextTileKeys;
+    /** float and double values */
+    protected final double[] doubles;
+    /** float coordinate string values, x1,y1,[z1,]x2,y2,[z2,]... */
+    protected final double[][] coordinates;
+    /** the number of tuples in the float coordinate strings */
+    protected final int[] tupleCounts;
+    /** everything else */
+    protected final Object[] objects;
+    /** the List view of the row */
+    protected List<Object> list;
+
+    /**
+     * Create a row for a table with the given columns.
+     * 
+     * @param columns the columns of the table, from
+     *        DcwRecordFile.getColumnInfo()
+     */
+    public DcwRow(DcwColumnInfo[] columns) {
+        this.columns = columns;
+        int count = columns.length;
+        ints = new int[count];
+        nextTileIDs = new int[count];
+        nextTileKeys = new int[count];
+        doubles = new double[count];
+        coordinates = new double[count][];
+        tupleCounts = new int[count];
+        objects = new Object[count];
+    }
+
+    /**
+     * @return the number of columns in the row.
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * @return the VPF field type of a column.
+     */
+    public char getFieldType(int column) {
+        return columns[column].getFieldType();
+    }
+
+    /**
+     * Get the value of an int or short column, or the current tile key of a
+     * cross-tile identifier column. Float and double columns are truncated,
+     * like Number.intValue().
+     * 
+     * @param column the column index
+     * @return the value
+     * @exception ClassCastException if the column isn't numeric
+     */
+    public int getInt(int column) {
+        switch (getFieldType(column)) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            return ints[column];
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return (int) doubles[column];
+        default:
+            throw notNumeric(column);
+        }
+    }
+
+    /**
+     * Get the value of a numeric column as a short.
+     * 
+     * @see #getInt(int)
+     */
+    public short getShort(int column) {
+        return (short) getInt(column);
+    }
+
+    /**
+     * Get the value of a float or double column, or an int or short column
+     * converted to a float.
+     * 
+     * @exception ClassCastException if the column isn't numeric
+     */
+    public float getFloat(int column) {
+        return (float) getDouble(column);
+    }
+
+    /**
+     * Get the value of a float or double column, or an int or short column
+     * converted to a double.
+     * 
+     * @exception ClassCastException if the column isn't numeric
+     */
+    public double getDouble(int column) {
+        switch (getFieldType(column)) {
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return doubles[column];
+        case DcwColumnInfo.VPF_COLUMN_INT:
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            return ints[column];
+        default:
+            throw notNumeric(column);
+        }
+    }
+
+    /**
+     * @return the tile id of the adjoining tile from a cross-tile identifier
+     *         column, -1 if there isn't one.
+     * @see DcwCrossTileID#nextTileID
+     */
+    public int getNextTileID(int column) {
+        return nextTileIDs[column];
+    }
+
+    /**
+     * @return the key in the adjoining tile from a cross-tile identifier
+     *         column, -1 if there isn't one.
+     * @see DcwCrossTileID#nextTileKey
+     */
+    public int getNextTileKey(int column) {
+        return nextTileKeys[column];
+    }
+
+    /**
+     * @return the value of a text column.
+     */
+    public String getString(int column) {
+        return (String) objects[column];
+    }
+
+    /**
+     * @return the number of values in a tuple of a 2 or 3 coordinate column.
+     */
+    public int getTupleSize(int column) {
+        switch (getFieldType(column)) {
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_3COORD:
+            return 3;
+        default:
+            return 2;
+        }
+    }
+
+    /**
+     * @return the number of tuples in a 2 or 3 coordinate float column.
+     */
+    public int getTupleCount(int column) {
+        return tupleCounts[column];
+    }
+
+    /**
+     * Get the coordinates of a 2 or 3 coordinate float column. The array
+     * belongs to the row and is filled again when the next row is read, and
+     * it may be longer than getTupleCount() * getTupleSize().
+     * 
+     * @return the coordinates, as x1,y1,[z1,]x2,y2,[z2,]...
+     */
+    public double[] getCoordinateValues(int column) {
+        return coordinates[column];
+    }
+
+    /**
+     * @return a copy of the value of a 2 or 3 coordinate float column, which
+     *         can be kept.
+     */
+    public CoordFloatString getCoordinates(int column) {
+        int tsize = getTupleSize(column);
+        double[] vals = new double[tupleCounts[column] * tsize];
+        System.arraycopy(coordinates[column], 0, vals, 0, vals.length);
+        return new CoordFloatString(tupleCounts[column], tsize, vals);
+    }
+
+    /**
+     * Read the value of a 2 or 3 coordinate float column into the coordinate
+     * array for the column, which is only replaced when it's too small.
+     * 
+     * @param column the column index
+     * @param tupleCount the number of tuples to read
+     * @param input the file to read from
+     */
+    protected void readCoordinates(int column, int tupleCount, BinaryFile input)
+            throws FormatException {
+        int len = tupleCount * getTupleSize(column);
+        double[] vals = coordinates[column];
+        if (vals == null || vals.length < len) {
+            vals = new double[len];
+            coordinates[column] = vals;
+        }
+        try {
+            input.readFloatArray(vals, 0, len);
+        } catch (EOFException e) {
+            throw new FormatException("CoordFloatString EOFException");
+        }
+        tupleCounts[column] = tupleCount;
+    }
+
+    /**
+     * Get the value of a column the way the List versions of parseRow() and
+     * getRow() return it, creating a Number or DcwCrossTileID for numeric and
+     * cross-tile identifier columns.
+     * 
+     * @param column the column index
+     * @return the value of the column
+     */
+    public Object get(int column) {
+        switch (getFieldType(column)) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+            return new Integer(ints[column]);
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            return new Short((short) ints[column]);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+            return new Float((float) doubles[column]);
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return new Double(doubles[column]);
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            return new DcwCrossTileID(ints[column], nextTileIDs[column], nextTileKeys[column]);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+            return getCoordinates(column);
+        default:
+            return objects[column];
+        }
+    }
+
+    /**
+     * Get a List view of the row, for code that takes rows as Lists, like
+     * the VPFGraphicWarehouse callbacks. The view changes with the row, and
+     * get() creates the column value with get(int) when it's asked for, so
+     * only the columns that are looked at are turned into objects.
+     * 
+     * @return the List view, the same one every time.
+     */
+    public List<Object> asList() {
+        if (list == null) {
+            list = new AbstractList<Object>() {
+                public Object get(int index) {
+                    return DcwRow.this.get(index);
+                }
+
+                public int size() {
+                    return columns.length;
+                }
+            };
+        }
+        return list;
+    }
+
+    /**
+     * Add the values of the row to a List, like the List versions of
+     * parseRow() and getRow() do.
+     * 
+     * @param retval the list to fill. clear() is called first.
+     */
+    public void toList(List<Object> retval) {
+        retval.clear();
+        for (int i = 0; i < columns.length; i++) {
+            retval.add(get(i));
+        }
+    }
+
+    public String toString() {
+        StringBuffer row = new StringBuffer();
+        for (int i = 0; i < columns.length; i++) {
+            row.append(get(i)).append(" ");
+        }
+        return row.toString();
+    }
+
+    private ClassCastException notNumeric(int column) {
+        return new ClassCastException("DcwRow: column " + columns[column].getColumnName()
+                + " of type " + getFieldType(column) + " isn't numeric");
+    }
+}
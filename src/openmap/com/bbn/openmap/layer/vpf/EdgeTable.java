@@ -17,7 +17,6 @@
 
 package com.bbn.openmap.layer.vpf;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.bbn.openmap.io.FormatException;
@@ -48,8 +47,11 @@ public class EdgeTable extends PrimitiveTable {
         if (Debug.debugging("vpf")) {
             Debug.output("EdgeTable(): " + filename);
         }
-        if (cov.cachedLineSchema == null) {
-            cov.cachedLineSchema = lookupSchema(edgcolumns, false);
+        // Tiles can be read at the same time, see CoverageTable.loadTiles().
+        synchronized (cov) {
+            if (cov.cachedLineSchema == null) {
+                cov.cachedLineSchema = lookupSchema(edgcolumns, false);
+            }
         }
     }
 
@@ -80,31 +82,58 @@ public class EdgeTable extends PrimitiveTable {
         return ((Number) l.get(covtable.cachedLineSchema[2])).intValue();
     }
 
+    /**
+     * Get the value of the ID column
+     * 
+     * @param row the row to retrieve the value from
+     */
+    public final int getID(DcwRow row) {
+        return row.getInt(covtable.cachedLineSchema[0]);
+    }
+
+    /**
+     * Get the value of the start_node column
+     * 
+     * @param row the row to retrieve the value from
+     */
+    public final int getStartNode(DcwRow row) {
+        return row.getInt(covtable.cachedLineSchema[1]);
+    }
+
+    /**
+     * Get the value of the end_node column
+     * 
+     * @param row the row to retrieve the value from
+     */
+    public final int getEndNode(DcwRow row) {
+        return row.getInt(covtable.cachedLineSchema[2]);
+    }
+
     /**
      * Get the TilingAdapter for the right_face column
      */
-    public final TilingAdapter getRightFaceTilingAdapter() {
+    public final TilingAdapter.RowAdapter getRightFaceTilingAdapter() {
         return getTilingAdapter(Constants.EDG_RIGHT_FACE);
     }
 
     /**
      * Get the TilingAdapter for the left_face column
      */
-    public final TilingAdapter getLeftFaceTilingAdapter() {
+    public final TilingAdapter.RowAdapter getLeftFaceTilingAdapter() {
         return getTilingAdapter(Constants.EDG_LEFT_FACE);
     }
 
     /**
      * Get the TilingAdapter for the right_edge column
      */
-    public final TilingAdapter getRightEdgeTilingAdapter() {
+    public final TilingAdapter.RowAdapter getRightEdgeTilingAdapter() {
         return getTilingAdapter(Constants.EDG_RIGHT_EDGE);
     }
 
     /**
      * Get the TilingAdapter for the left_edge column
      */
-    public final TilingAdapter getLeftEdgeTilingAdapter() {
+    public final TilingAdapter.RowAdapter getLeftEdgeTilingAdapter() {
         return getTilingAdapter(Constants.EDG_LEFT_EDGE);
     }
 
@@ -117,6 +146,15 @@ public class EdgeTable extends PrimitiveTable {
         return (CoordFloatString) l.get(covtable.cachedLineSchema[7]);
     }
 
+    /**
+     * Get the value of the coordinates column
+     * 
+     * @param row the row to retrieve the value from
+     */
+    public final CoordFloatString getCoordinates(DcwRow row) {
+        return row.getCoordinates(covtable.cachedLineSchema[7]);
+    }
+
     /**
      * get the topology level of the edge table
      * 
@@ -162,8 +200,12 @@ public class EdgeTable extends PrimitiveTable {
 
         try {
             seekToRow(1);
-            for (List<Object> edge = new ArrayList<Object>(); parseRow(edge);) {
-                warehouse.createEdge(covtable, this, edge, ll1, ll2, dpplat, dpplon, getCoordinates(edge));
+            // The warehouse gets the row as a List view, so only the columns
+            // it looks at become objects.
+            DcwRow edge = createRow();
+            List<Object> edgevec = edge.asList();
+            while (parseRow(edge)) {
+                warehouse.createEdge(covtable, this, edgevec, ll1, ll2, dpplat, dpplon, getCoordinates(edge));
             }
         } catch (FormatException f) {
             System.out.println("Exception: " + f.getClass() + " " + f.getMessage());
@@ -196,4 +238,21 @@ public class EdgeTable extends PrimitiveTable {
         return null;
     }
 
+    /**
+     * Use the warehouse to create a graphic from the edge feature, if you
+     * already have the line from the edgetable in a DcwRow. The warehouse
+     * gets the row as a List view.
+     * 
+     * @see #drawFeature(VPFFeatureWarehouse, double, double, LatLonPoint,
+     *      LatLonPoint, List, String, int)
+     */
+    public OMGraphic drawFeature(VPFFeatureWarehouse warehouse, double dpplat, double dpplon,
+                                 LatLonPoint ll1, LatLonPoint ll2, DcwRow edge,
+                                 String featureType, int primID) {
+        if (warehouse != null) {
+            return warehouse.createEdge(covtable, this, edge.asList(), ll1, ll2, dpplat, dpplon, getCoordinates(edge), featureType, primID);
+        }
+        return null;
+    }
+
 }
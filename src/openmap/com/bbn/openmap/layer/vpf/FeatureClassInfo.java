@@ -162,7 +162,7 @@ public class FeatureClassInfo extends DcwRecordFile implements TerminatingRunnab
      * 
      * @return a tilingadapter or null
      */
-    public TilingAdapter getTilingAdapter() {
+    public TilingAdapter.RowAdapter getTilingAdapter() {
         return getTilingAdapter(TILE_ID_COLUMN_NAME, tileFileColName);
     }
 
@@ -22,6 +22,7 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.Properties;
 
@@ -46,6 +47,8 @@ import com.bbn.openmap.util.PropUtils;
  * VMAPData.name=VMAPLEVEL0
  * # Maximum number of tiles to cache.
  * VMAPData.cacheSize=25
+ * # Optional directory for keeping the cached tiles between runs.
+ * VMAPData.featureCacheDir=/tmp/vmapcache
  * 
  * </pre>
  * 
@@ -70,6 +73,13 @@ public class LibraryBean
    /** Maximum size of tile cache (cacheSize). */
    public static final String cacheSizeProperty = "cacheSize";
 
+   /**
+    * Directory to keep decoded tile features in between runs
+    * (featureCacheDir). Not set by default, the features are only cached in
+    * memory.
+    */
+   public static final String featureCacheDirProperty = "featureCacheDir";
+
    /** the lst for the path */
    private transient LibrarySelectionTable lst = null;
 
@@ -124,6 +134,10 @@ public class LibraryBean
 
       int cacheSize = PropUtils.intFromProperties(setList, realPrefix + cacheSizeProperty, featureCache.getCacheSize());
       featureCache.resetCache(cacheSize);
+
+      String featureCacheDir = setList.getProperty(realPrefix + featureCacheDirProperty);
+      featureCache.setDiskCache(featureCacheDir != null && featureCacheDir.length() > 0 ? new VPFFeatureDiskCache(new File(featureCacheDir))
+            : null);
    }
 
    /**
@@ -144,6 +158,8 @@ public class LibraryBean
       String prefix = PropUtils.getScopedPropertyPrefix(this);
       getList.put(prefix + nameProperty, beanName);
       getList.put(prefix + cacheSizeProperty, Integer.toString(featureCache.getCacheSize()));
+      VPFFeatureDiskCache diskCache = featureCache.getDiskCache();
+      getList.put(prefix + featureCacheDirProperty, diskCache != null ? diskCache.getDirectory().getPath() : "");
       return getList;
    }
 
@@ -158,6 +174,8 @@ public class LibraryBean
       list.put(pathProperty, "List of VPF directories.");
       list.put(pathProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.MultiDirectoryPropertyEditor");
       list.put(cacheSizeProperty, "Maximun number of tiles to cache (25 is default).");
+      list.put(featureCacheDirProperty, "Directory for keeping cached tiles between runs (optional).");
+      list.put(featureCacheDirProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
 
       return list;
    }
@@ -59,12 +59,43 @@ public interface TilingAdapter {
      */
     public DcwCrossTileID getPrim(List<Object> l);
 
+    /**
+     * A TilingAdapter that can also get the identifiers from a DcwRow. The
+     * adapters returned by DcwRecordFile.getTilingAdapter() all extend it.
+     */
+    public abstract static class RowAdapter implements TilingAdapter {
+
+        /**
+         * Get the tile identifier for the alternate tile
+         * 
+         * @param row a row of the table this adapter was created for
+         * @return the tile id of the alternate tile
+         */
+        public abstract int getTileId(DcwRow row);
+
+        /**
+         * Get the primitive identifier in the current tile
+         * 
+         * @param row a row of the table this adapter was created for
+         * @return the primitive id in the current tile
+         */
+        public abstract int getPrimId(DcwRow row);
+
+        /**
+         * Get the primitive identifier in the alternate tile
+         * 
+         * @param row a row of the table this adapter was created for
+         * @return the primitive id in the alternate tile
+         */
+        public abstract int getTilePrimId(DcwRow row);
+    }
+
     /**
      * A TilingAdapter for untiled data. (The tile_id column doesn't
      * exist, and the primitive column is not a cross-tile
      * identifier.) Alternate tile will always return -1.
      */
-    public static class UntiledAdapter implements TilingAdapter {
+    public static class UntiledAdapter extends RowAdapter {
         /** the primitive column */
         final private int column;
 
@@ -87,13 +118,25 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return new DcwCrossTileID(getPrimId(l), -1, getTilePrimId(l));
         }
+
+        public int getTileId(DcwRow row) {
+            return -1;
+        }
+
+        public int getPrimId(DcwRow row) {
+            return row.getInt(column);
+        }
+
+        public int getTilePrimId(DcwRow row) {
+            return row.getInt(column);
+        }
     }
 
     /**
      * A TilingAdapter for tiled data where the primitive column is a
      * cross-tile identifier.
      */
-    public static class CrossTileAdapter implements TilingAdapter {
+    public static class CrossTileAdapter extends RowAdapter {
         /** the primitive column */
         final private int column;
 
@@ -116,6 +159,18 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return (DcwCrossTileID) l.get(column);
         }
+
+        public int getTileId(DcwRow row) {
+            return row.getNextTileID(column);
+        }
+
+        public int getPrimId(DcwRow row) {
+            return row.getInt(column);
+        }
+
+        public int getTilePrimId(DcwRow row) {
+            return row.getNextTileKey(column);
+        }
     }
 
     /**
@@ -123,7 +178,7 @@ public interface TilingAdapter {
      * tile_id column, and the primitive identifier comes from a
      * numeric column.
      */
-    public static class TiledAdapter implements TilingAdapter {
+    public static class TiledAdapter extends RowAdapter {
         /** the tile column */
         final private int tilecolumn;
         /** the primitive column */
@@ -149,5 +204,17 @@ public interface TilingAdapter {
         public DcwCrossTileID getPrim(List<Object> l) {
             return new DcwCrossTileID(getPrimId(l), getTileId(l), getTilePrimId(l));
         }
+
+        public int getTileId(DcwRow row) {
+            return row.getInt(tilecolumn);
+        }
+
+        public int getPrimId(DcwRow row) {
+            return getTilePrimId(row);
+        }
+
+        public int getTilePrimId(DcwRow row) {
+            return row.getInt(primcolumn);
+        }
     }
 }
\ No newline at end of file
@@ -71,7 +71,7 @@ public class VPFCachedFeatureGraphicWarehouse
      *  
      */
    public OMGraphic createArea(CoverageTable covtable, AreaTable areatable, List<Object> facevec, LatLonPoint ll1, LatLonPoint ll2,
-                               double dpplat, double dpplon, String featureType) {
+                               double dpplat, double dpplon, String featureType, int primID) {
 
       List<CoordFloatString> ipts = new ArrayList<CoordFloatString>();
 
@@ -104,7 +104,7 @@ public class VPFCachedFeatureGraphicWarehouse
      *  
      */
    public OMGraphic createEdge(CoverageTable c, EdgeTable edgetable, List<Object> edgevec, LatLonPoint ll1, LatLonPoint ll2, double dpplat,
-                               double dpplon, CoordFloatString coords, String featureType) {
+                               double dpplon, CoordFloatString coords, String featureType, int primID) {
 
       OMPoly py = createEdgeOMPoly(coords, ll1, ll2, dpplat, dpplon);
       DrawingAttributes da = getAttributesForFeature(featureType);
@@ -122,7 +122,7 @@ public class VPFCachedFeatureGraphicWarehouse
      *  
      */
    public OMGraphic createText(CoverageTable c, TextTable texttable, List<Object> textvec, double latitude, double longitude, String text,
-                               String featureType) {
+                               String featureType, int primID) {
 
       OMText txt = createOMText(text, latitude, longitude);
       getAttributesForFeature(featureType).setTo(txt);
@@ -134,7 +134,7 @@ public class VPFCachedFeatureGraphicWarehouse
     * Method called by the VPF reader code to construct a node feature.
     */
    public OMGraphic createNode(CoverageTable c, NodeTable t, List<Object> nodeprim, double latitude, double longitude,
-                               boolean isEntityNode, String featureType) {
+                               boolean isEntityNode, String featureType, int primID) {
       OMPoint pt = createOMPoint(latitude, longitude);
       getAttributesForFeature(featureType).setTo(pt);
       addToCachedList(pt, featureType, t, isEntityNode ? VPFUtil.EPoint : VPFUtil.CPoint);
@@ -142,11 +142,33 @@ public class VPFCachedFeatureGraphicWarehouse
    }
 
    protected FeatureCacheGraphicList cacheList;
+   /**
+    * The primitive table the graphics added to the cacheList came from, so
+    * the feature cache can tell when the list is out of date.
+    */
+   protected String cacheListSource;
 
    /**
-    * Calls addToCachedList on the feature cache if it's available.
+    * Calls addToCachedList on the feature cache if it's available. Graphics
+    * created for a tile being read on another thread are held in the tile's
+    * TileBuffer, and added to the cached list by addTileBuffer().
     */
-   protected synchronized void addToCachedList(OMGraphic omg, String featureType, PrimitiveTable pt, String type) {
+   protected void addToCachedList(OMGraphic omg, String featureType, PrimitiveTable pt, String type) {
+      TileBuffer buffer = getTileBuffer();
+      if (buffer instanceof CachedTileBuffer && ((CachedTileBuffer) buffer).cacheList != null) {
+         CachedTileBuffer ctb = (CachedTileBuffer) buffer;
+         if (ctb.source == null && pt != null) {
+            ctb.source = pt.getTableFile();
+         }
+         ctb.cached.add(omg);
+      } else if (buffer != null) {
+         addToSubList(omg, type);
+      } else {
+         addToCachedList(omg, pt, type);
+      }
+   }
+
+   protected synchronized void addToCachedList(OMGraphic omg, PrimitiveTable pt, String type) {
       if (featureCache != null && cacheList != null) {
 
          // this might be causing problems in the cache, if the list has
@@ -154,31 +176,98 @@ public class VPFCachedFeatureGraphicWarehouse
          // keep track of the list returned from the cache from before and
          // add it to the list here if it exists.
          cacheList.add(omg);
+         if (cacheListSource == null && pt != null) {
+            cacheListSource = pt.getTableFile();
+         }
 
          // We don't do this anymore...
          // featureCache.addToCachedList(omg, featureType, pt, type);
       } else {
-         // Main OMGraphicList stored in super class
-
-         if (VPFUtil.Area.equals(type))
-            addArea(omg);
-         else if (VPFUtil.Edge.equals(type))
-            addEdge(omg);
-         else if (VPFUtil.Text.equals(type))
-            addText(omg);
-         else
-            addPoint(omg);
-
-         // Sorting by type, now.
-         // graphics.add(omg);
+         addToSubList(omg, type);
+      }
+   }
+
+   /**
+    * Add the graphic to the area, edge, text or point list, depending on the
+    * type.
+    */
+   protected void addToSubList(OMGraphic omg, String type) {
+      // Main OMGraphicList stored in super class
+
+      if (VPFUtil.Area.equals(type))
+         addArea(omg);
+      else if (VPFUtil.Edge.equals(type))
+         addEdge(omg);
+      else if (VPFUtil.Text.equals(type))
+         addText(omg);
+      else
+         addPoint(omg);
+
+      // Sorting by type, now.
+      // graphics.add(omg);
+   }
+
+   /**
+    * A TileBuffer that remembers the cached list needToFetchTileContents()
+    * set up for its tile, and holds the graphics for that list.
+    */
+   public static class CachedTileBuffer
+         extends TileBuffer {
+      protected final FeatureCacheGraphicList cacheList;
+      protected final List<OMGraphic> cached = new ArrayList<OMGraphic>();
+      protected String source;
+
+      public CachedTileBuffer(FeatureCacheGraphicList cacheList) {
+         this.cacheList = cacheList;
       }
    }
 
+   /**
+    * Hands the current cached list to the TileBuffer, which fills it when
+    * the tile is added to the warehouse.
+    */
+   protected TileBuffer createTileBuffer() {
+      TileBuffer buffer = new CachedTileBuffer(featureCache != null ? cacheList : null);
+      cacheList = null;
+      cacheListSource = null;
+      return buffer;
+   }
+
+   protected void addTileBuffer(TileBuffer buffer) {
+      super.addTileBuffer(buffer);
+      if (buffer instanceof CachedTileBuffer) {
+         CachedTileBuffer ctb = (CachedTileBuffer) buffer;
+         if (ctb.cacheList != null) {
+            for (OMGraphic omg : ctb.cached) {
+               ctb.cacheList.add(omg);
+            }
+            if (featureCache != null) {
+               featureCache.storeCachedGraphicList(ctb.cacheList, ctb.source);
+            }
+         }
+      }
+   }
+
+   /**
+    * Let the feature cache know that the current cached list has been filled,
+    * called when the next tile is started and when the graphics are
+    * retrieved.
+    */
+   protected synchronized void finishCacheList() {
+      if (featureCache != null && cacheList != null && cacheListSource != null) {
+         featureCache.storeCachedGraphicList(cacheList, cacheListSource);
+      }
+      cacheList = null;
+      cacheListSource = null;
+   }
+
    /**
     * Calls VPFFeatureCache.needToFetchTileContents().
     */
    public boolean needToFetchTileContents(String libraryName, String currentFeature, TileDirectory currentTile) {
       if (featureCache != null) {
+         finishCacheList();
+
          // The cached graphics list will be added to the graphics
          // list provided. If it was just created, it will also be passed
          // back from the needToFetchTileContents and should be loaded by the
@@ -202,6 +291,8 @@ public class VPFCachedFeatureGraphicWarehouse
    public synchronized OMGraphicList getGraphics() {
       // Clone from the cache...
       if (featureCache != null) {
+         finishCacheList();
+
          // The main graphics object is made up of
          // FeatureCacheGraphicLists for features for applicable
          // tiles. All of the other warehouses are filling up the
@@ -22,6 +22,8 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -34,9 +36,22 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * representing a specific feature contained in a CoverageTile. It's used by the
  * VPFCachedFeatureGraphicWarehouse, which in turn is used by the LibraryBean as
  * a central warehouse.
+ * <p>
+ * If a VPFFeatureDiskCache is set, lists that aren't in memory are read from
+ * it before asking for the tile to be read from the VPF files, and lists
+ * filled from the VPF files are written to it when the warehouse is done with
+ * the tile.
  */
 public class VPFFeatureCache extends CacheHandler {
 
+    protected VPFFeatureDiskCache diskCache;
+
+    /**
+     * The lists handed out to be filled from the VPF files, with the keys
+     * they should be stored under in the disk cache.
+     */
+    protected Map<FeatureCacheGraphicList, String[]> loadingLists = new WeakHashMap<FeatureCacheGraphicList, String[]>();
+
     /**
      * Create a VPFFeatureCache of the default maximum size.
      */
@@ -51,6 +66,19 @@ public class VPFFeatureCache extends CacheHandler {
         super(maxSize);
     }
 
+    /**
+     * Set the VPFFeatureDiskCache used to keep the lists between runs, null
+     * to only keep them in memory.
+     */
+    public synchronized void setDiskCache(VPFFeatureDiskCache diskCache) {
+        this.diskCache = diskCache;
+        loadingLists.clear();
+    }
+
+    public synchronized VPFFeatureDiskCache getDiskCache() {
+        return diskCache;
+    }
+
     /**
      * Adds an OMGraphic to a list, signified by the feature type and the table.
      * The PrimitiveTable provides an identifying tile path.
@@ -120,12 +148,40 @@ public class VPFFeatureCache extends CacheHandler {
 
         FeatureCacheGraphicList ret = null;
         if (!exists) {
-            logger.fine("tile list didn't exist in cache, returning it to be loaded.");
-            ret = fcgl;
+            if (diskCache != null && diskCache.load(libraryName, featureType, tilePath, fcgl)) {
+                logger.fine("tile list read from disk cache.");
+            } else {
+                logger.fine("tile list didn't exist in cache, returning it to be loaded.");
+                ret = fcgl;
+                if (diskCache != null) {
+                    loadingLists.put(fcgl, new String[] { libraryName, featureType, tilePath });
+                }
+            }
         }
         return ret;
     }
 
+    /**
+     * Called by the warehouse when it has finished filling a list returned
+     * from needToFetchTileContents(), so the list can be written to the disk
+     * cache.
+     * 
+     * @param fcgl the filled list.
+     * @param sourcePath the path to the VPF primitive table the features were
+     *        read from, used to tell if the cached features are out of date.
+     */
+    public void storeCachedGraphicList(FeatureCacheGraphicList fcgl, String sourcePath) {
+        VPFFeatureDiskCache dc;
+        String[] key;
+        synchronized (this) {
+            dc = diskCache;
+            key = loadingLists.remove(fcgl);
+        }
+        if (dc != null && key != null && sourcePath != null) {
+            dc.store(key[0], key[1], key[2], fcgl, sourcePath);
+        }
+    }
+
     /**
      * Query that the CoverageTable makes to decide whether to read the file
      * contents or to used the cached version.
@@ -178,8 +234,7 @@ public class VPFFeatureCache extends CacheHandler {
         if (ret == null)
             return null;
 
-        replaceLeastUsed(ret);
-        return ret.obj;
+        return replaceLeastUsed(ret).obj;
     }
 
     /**
@@ -0,0 +1,294 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.BinaryMappedFile;
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.omGraphics.OMColor;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMPoint;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.omGraphics.OMText;
+import com.bbn.openmap.proj.ProjMath;
+
+/**
+ * A persistent cache of the FeatureCacheGraphicLists that a VPFFeatureCache
+ * holds in memory, so the features of a tile don't have to be read from the
+ * VPF files again after a restart. There is one file for each library,
+ * feature type and tile, under the cache directory:
+ * 
+ * <pre>
+ * directory/library/featureType/tilePath.fcl
+ * </pre>
+ * 
+ * The feature type names are unique to a coverage, so they identify the
+ * coverage, too. Each file starts with the path, modification time and length
+ * of the VPF primitive table the features were read from, and the file is
+ * ignored and deleted if that table has changed. Coordinates are stored as
+ * float decimal degrees, which is what most VPF data holds anyway. The files
+ * are memory mapped when they are read.
+ */
+public class VPFFeatureDiskCache {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.vpf.VPFFeatureDiskCache");
+
+    /** "OMVF" */
+    public final static int MAGIC = 0x4f4d5646;
+    public final static int VERSION = 1;
+    public final static String FILE_EXTENSION = ".fcl";
+
+    protected final static byte AREA = 'A';
+    protected final static byte EDGE = 'E';
+    protected final static byte TEXT = 'T';
+    protected final static byte POINT = 'P';
+
+    protected File directory;
+
+    /**
+     * Create a VPFFeatureDiskCache keeping its files under directory. The
+     * directory is created when the first file is written.
+     */
+    public VPFFeatureDiskCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Get the cache file for a tile's features.
+     */
+    public File getFile(String libraryName, String featureType, String tilePath) {
+        File featureDir = new File(new File(directory, toFileName(libraryName)), toFileName(featureType));
+        return new File(featureDir, toFileName(tilePath) + FILE_EXTENSION);
+    }
+
+    /**
+     * Replace anything that can't safely be in a file name, like the
+     * separators in tile paths, with underscores.
+     */
+    protected static String toFileName(String name) {
+        if (name == null || name.length() == 0) {
+            return "_";
+        }
+        StringBuffer sb = new StringBuffer(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Read the cached features of a tile into list.
+     * 
+     * @param list an empty FeatureCacheGraphicList, the kind that matches the
+     *        feature type.
+     * @return true if the features were read, false if there isn't a cache
+     *         file for the tile or the VPF data has changed since it was
+     *         written.
+     */
+    public boolean load(String libraryName, String featureType, String tilePath,
+                        FeatureCacheGraphicList list) {
+        File file = getFile(libraryName, featureType, tilePath);
+        if (!file.isFile()) {
+            return false;
+        }
+
+        BinaryMappedFile bf = null;
+        boolean valid = false;
+        try {
+            bf = new BinaryMappedFile(file);
+            bf.byteOrder(true);
+
+            if (bf.readInteger() != MAGIC || bf.readInteger() != VERSION) {
+                logger.fine("not a feature cache file: " + file);
+                return false;
+            }
+
+            File source = new File(readString(bf));
+            long lastModified = bf.readLong();
+            long length = bf.readLong();
+            if (source.lastModified() != lastModified || source.length() != length) {
+                logger.fine("source changed for " + file);
+                return false;
+            }
+
+            int count = bf.readInteger();
+            for (int i = 0; i < count; i++) {
+                list.add(readGraphic(bf));
+            }
+            valid = true;
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("read " + count + " features from " + file);
+            }
+        } catch (IOException ioe) {
+            logger.fine("problem reading " + file + ": " + ioe.getMessage());
+        } catch (FormatException fe) {
+            logger.fine("problem reading " + file + ": " + fe.getMessage());
+        } finally {
+            if (bf != null) {
+                try {
+                    bf.close();
+                } catch (IOException ioe) {
+                }
+            }
+            if (!valid) {
+                list.clear();
+                file.delete();
+            }
+        }
+        return valid;
+    }
+
+    protected OMGraphic readGraphic(BinaryMappedFile bf) throws IOException, FormatException {
+        byte type = (byte) bf.read();
+        switch (type) {
+        case AREA:
+        case EDGE:
+            double[] llpts = new double[bf.readInteger()];
+            bf.readFloatArray(llpts, 0, llpts.length);
+            ProjMath.arrayDegToRad(llpts);
+            OMPoly py = new OMPoly(llpts, OMGraphic.RADIANS, OMGraphic.LINETYPE_STRAIGHT);
+            if (type == EDGE) {
+                py.setFillPaint(OMColor.clear);
+                py.setIsPolygon(false);
+            }
+            return py;
+        case TEXT:
+            double lat = bf.readDouble();
+            double lon = bf.readDouble();
+            return LayerGraphicWarehouseSupport.createOMText(readString(bf), lat, lon);
+        case POINT:
+            lat = bf.readDouble();
+            lon = bf.readDouble();
+            return LayerGraphicWarehouseSupport.createOMPoint(lat, lon);
+        default:
+            throw new FormatException("unknown feature type " + type);
+        }
+    }
+
+    protected static String readString(BinaryMappedFile bf) throws IOException, FormatException {
+        return new String(bf.readBytes(bf.readInteger(), false), "UTF-8");
+    }
+
+    /**
+     * Write the features of a tile to the cache. Nothing is written if the
+     * list holds an OMGraphic that a VPF warehouse wouldn't have created.
+     * 
+     * @param list the list of features read for the tile.
+     * @param sourcePath the VPF primitive table the features were read from.
+     * @return true if the file was written.
+     */
+    public boolean store(String libraryName, String featureType, String tilePath,
+                         FeatureCacheGraphicList list, String sourcePath) {
+        File source = new File(sourcePath);
+        if (!source.isFile()) {
+            return false;
+        }
+
+        File file = getFile(libraryName, featureType, tilePath);
+        File tmp = new File(file.getPath() + ".tmp");
+        file.getParentFile().mkdirs();
+
+        boolean written = false;
+        DataOutputStream dos = null;
+        try {
+            dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            writeString(dos, source.getAbsolutePath());
+            dos.writeLong(source.lastModified());
+            dos.writeLong(source.length());
+
+            synchronized (list) {
+                dos.writeInt(list.size());
+                boolean areas = list instanceof FeatureCacheGraphicList.AREA;
+                for (OMGraphic omg : list) {
+                    if (!writeGraphic(dos, omg, areas)) {
+                        logger.fine("can't cache " + omg.getClass().getName() + " for " + file);
+                        return false;
+                    }
+                }
+            }
+            dos.close();
+            dos = null;
+
+            // Replace the old file in one step, so a file is never half
+            // written.
+            file.delete();
+            written = tmp.renameTo(file);
+        } catch (IOException ioe) {
+            logger.warning("problem writing " + file + ": " + ioe.getMessage());
+        } finally {
+            if (dos != null) {
+                try {
+                    dos.close();
+                } catch (IOException ioe) {
+                }
+            }
+            if (!written) {
+                tmp.delete();
+            }
+        }
+
+        if (written && logger.isLoggable(Level.FINE)) {
+            logger.fine("wrote " + list.size() + " features to " + file);
+        }
+        return written;
+    }
+
+    protected boolean writeGraphic(DataOutputStream dos, OMGraphic omg, boolean area)
+            throws IOException {
+        if (omg instanceof OMPoly) {
+            double[] llpts = ((OMPoly) omg).getLatLonArray();
+            dos.writeByte(area ? AREA : EDGE);
+            dos.writeInt(llpts.length);
+            for (int i = 0; i < llpts.length; i++) {
+                dos.writeFloat((float) ProjMath.radToDeg(llpts[i]));
+            }
+        } else if (omg instanceof OMText) {
+            OMText text = (OMText) omg;
+            dos.writeByte(TEXT);
+            dos.writeDouble(text.getLat());
+            dos.writeDouble(text.getLon());
+            writeString(dos, text.getData());
+        } else if (omg instanceof OMPoint) {
+            OMPoint point = (OMPoint) omg;
+            dos.writeByte(POINT);
+            dos.writeDouble(point.getLat());
+            dos.writeDouble(point.getLon());
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    protected static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+}
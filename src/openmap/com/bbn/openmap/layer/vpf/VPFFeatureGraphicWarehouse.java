@@ -56,6 +56,18 @@ public class VPFFeatureGraphicWarehouse extends VPFLayerGraphicWarehouse impleme
     public final static String DEFAULT = "DEFAULT";
     protected Hashtable<String, DrawingAttributes> featureDrawingAttributes;
 
+    /**
+     * The number of tiles the CoverageTable may read at the same time for
+     * this warehouse.
+     */
+    protected int tileLoaders = 1;
+
+    /**
+     * The TileBuffer collecting graphics for the tile being read on the
+     * current thread, null if graphics should go straight into the warehouse.
+     */
+    protected final ThreadLocal<TileBuffer> tileBuffer = new ThreadLocal<TileBuffer>();
+
     /**
      *  
      */
@@ -80,6 +92,33 @@ public class VPFFeatureGraphicWarehouse extends VPFLayerGraphicWarehouse impleme
     public void setProperties(String prefix, Properties props) {
         super.setProperties(prefix, props);
         createFeatureDrawingAttributes(prefix, props, getFeatures());
+
+        String realPrefix = PropUtils.getScopedPropertyPrefix(prefix);
+        setTileLoaders(PropUtils.intFromProperties(props, realPrefix
+                + VPFLayer.tileLoadersProperty, tileLoaders));
+    }
+
+    public Properties getProperties(Properties props) {
+        props = super.getProperties(props);
+
+        String realPrefix = PropUtils.getScopedPropertyPrefix(drawingAttributes);
+        props.put(realPrefix + VPFLayer.tileLoadersProperty, Integer.toString(tileLoaders));
+        return props;
+    }
+
+    /**
+     * Set the number of tiles that can be read at the same time when the
+     * CoverageTable draws features for this warehouse. Each tile is read with
+     * its own primitive tables, and the graphics are added to the warehouse
+     * in tile order after all the tiles are read. 1 (the default) reads the
+     * tiles one after another.
+     */
+    public void setTileLoaders(int tileLoaders) {
+        this.tileLoaders = Math.max(1, tileLoaders);
+    }
+
+    public int getTileLoaders() {
+        return tileLoaders;
     }
 
     /**
@@ -254,13 +293,27 @@ public class VPFFeatureGraphicWarehouse extends VPFLayerGraphicWarehouse impleme
      */
     protected void setAttributesForFeature(OMGraphic omg, CoverageTable c, String featureType,
                                            int id) {
+        initAttributesForFeature(c, featureType).setTo(omg, id);
+    }
+
+    /**
+     * Get the FeatureDrawingAttributes for a feature type, making sure it
+     * knows about the FeatureClassInfo for the feature. The CoverageTable
+     * calls this before handing tiles to other threads, so the attributes are
+     * set up before graphics are created off of the calling thread.
+     * 
+     * @param c the CoverageTable for the feature.
+     * @param featureType the type of Feature.
+     * @return FeatureDrawingAttributes for the feature type.
+     */
+    protected FeatureDrawingAttributes initAttributesForFeature(CoverageTable c,
+                                                                String featureType) {
         FeatureDrawingAttributes fda = getAttributesForFeature(featureType);
 
         if (fda.getFci() == null) {
             fda.setFci(c.getFeatureClassInfo(featureType));
         }
-
-        fda.setTo(omg, id);
+        return fda;
     }
 
     /**
@@ -297,6 +350,107 @@ public class VPFFeatureGraphicWarehouse extends VPFLayerGraphicWarehouse impleme
         return true;
     }
 
+    /**
+     * Holds the graphics created for a tile read off of the calling thread,
+     * in the order they were created, until they can be added to the
+     * warehouse.
+     */
+    public static class TileBuffer {
+        protected final List<OMGraphic> graphics = new ArrayList<OMGraphic>();
+        /** The VPFUtil primitive type for each graphic. */
+        protected final List<String> types = new ArrayList<String>();
+
+        public void add(OMGraphic omg, String type) {
+            graphics.add(omg);
+            types.add(type);
+        }
+
+        public int size() {
+            return graphics.size();
+        }
+    }
+
+    /**
+     * Create a TileBuffer for the tile about to be read, called on the
+     * calling thread right after needToFetchTileContents() returns true for
+     * it.
+     */
+    protected TileBuffer createTileBuffer() {
+        return new TileBuffer();
+    }
+
+    /**
+     * Set the TileBuffer that graphics created on the current thread should
+     * go into, or null to add them to the warehouse directly.
+     */
+    protected void setTileBuffer(TileBuffer buffer) {
+        if (buffer != null) {
+            tileBuffer.set(buffer);
+        } else {
+            tileBuffer.remove();
+        }
+    }
+
+    protected TileBuffer getTileBuffer() {
+        return tileBuffer.get();
+    }
+
+    /**
+     * Add the graphics held by a TileBuffer to the warehouse. Called on the
+     * calling thread, once for each tile in tile order.
+     */
+    protected void addTileBuffer(TileBuffer buffer) {
+        for (int i = 0; i < buffer.size(); i++) {
+            OMGraphic omg = buffer.graphics.get(i);
+            String type = buffer.types.get(i);
+            if (VPFUtil.Area.equals(type)) {
+                super.addArea(omg);
+            } else if (VPFUtil.Edge.equals(type)) {
+                super.addEdge(omg);
+            } else if (VPFUtil.Text.equals(type)) {
+                super.addText(omg);
+            } else {
+                super.addPoint(omg);
+            }
+        }
+    }
+
+    protected void addArea(OMGraphic area) {
+        TileBuffer buffer = tileBuffer.get();
+        if (buffer != null) {
+            buffer.add(area, VPFUtil.Area);
+        } else {
+            super.addArea(area);
+        }
+    }
+
+    protected void addEdge(OMGraphic edge) {
+        TileBuffer buffer = tileBuffer.get();
+        if (buffer != null) {
+            buffer.add(edge, VPFUtil.Edge);
+        } else {
+            super.addEdge(edge);
+        }
+    }
+
+    protected void addText(OMGraphic text) {
+        TileBuffer buffer = tileBuffer.get();
+        if (buffer != null) {
+            buffer.add(text, VPFUtil.Text);
+        } else {
+            super.addText(text);
+        }
+    }
+
+    protected void addPoint(OMGraphic point) {
+        TileBuffer buffer = tileBuffer.get();
+        if (buffer != null) {
+            buffer.add(point, VPFUtil.EPoint);
+        } else {
+            super.addPoint(point);
+        }
+    }
+
     public static void main(String argv[]) {
         new VPFFeatureGraphicWarehouse();
     }
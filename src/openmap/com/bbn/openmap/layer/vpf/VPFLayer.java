@@ -89,6 +89,9 @@ import com.bbn.openmap.util.PropUtils;
  *     #use this option for multiple coverage types, or when null pointer errors
  *     #are encountered.
  *     vmapPol.searchByFeature=true
+ *     #Optional (default is 1), when searching by feature, the number of tiles
+ *     #that can be read at the same time.
+ *     vmapPol.tileLoaders=4
  *    
  *     #Limit which VPF library is used (optional).  If not specified,
  *     #all available libraries will be checked and used.
@@ -189,6 +192,12 @@ public class VPFLayer
     * and then look for graphics.
     */
    public static final String searchByFeatureProperty = "searchByFeature";
+   /**
+    * Property for the number of tiles that are read at the same time when
+    * searching by feature with a VPFFeatureGraphicWarehouse. The default, 1,
+    * reads the tiles one after another.
+    */
+   public static final String tileLoadersProperty = "tileLoaders";
    /** Property method for setting VPF data path */
    public static final String libraryProperty = "libraryBean";
    /** Property for setting VPF cutoff scale */
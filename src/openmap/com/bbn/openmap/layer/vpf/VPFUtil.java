@@ -88,6 +88,32 @@ public class VPFUtil {
         return v;
     }
 
+    /**
+     * get the value of a column of a DcwRow, the way objectToInt() does for
+     * the column value in a List row.
+     * 
+     * @param row the row
+     * @param column the column index
+     * @return the value of an int or short column. VPF null values get
+     *         returned as Integer.MIN_VALUE, as do all other types
+     */
+    public static final int rowToInt(DcwRow row, int column) {
+        int v = Integer.MIN_VALUE;
+        char fieldType = row.getFieldType(column);
+        if (fieldType == DcwColumnInfo.VPF_COLUMN_INT) {
+            v = row.getInt(column);
+            if (v == Integer.MIN_VALUE + 1) {
+                v = Integer.MIN_VALUE;
+            }
+        } else if (fieldType == DcwColumnInfo.VPF_COLUMN_SHORT) {
+            v = row.getShort(column);
+            if (v == Short.MIN_VALUE + 1) {
+                v = Integer.MIN_VALUE;
+            }
+        }
+        return v;
+    }
+
     /** some strings */
     public final static String Edge = "Edge";
     public final static String Edges = "Edges";
@@ -34,9 +34,11 @@ import java.io.OptionalDataException;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.ListIterator;
 
 import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.util.Cancellable;
 import com.bbn.openmap.util.Debug;
 
 /**
@@ -176,14 +178,15 @@ public class OMGeometryList extends OMList<OMGeometry> implements Serializable {
 
         } else {
 
-            synchronized (graphics) {
+            List<OMGeometry> targets = getTraversalList();
+            synchronized (targets) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
-                    ListIterator<OMGeometry> iterator = graphics.listIterator(graphics.size());
+                    ListIterator<OMGeometry> iterator = targets.listIterator(targets.size());
                     while (iterator.hasPrevious()) {
                         renderGeometry(iterator.previous(), gr);
                     }
                 } else {
-                    ListIterator<OMGeometry> iterator = graphics.listIterator();
+                    ListIterator<OMGeometry> iterator = targets.listIterator();
                     while (iterator.hasNext()) {
                         renderGeometry(iterator.next(), gr);
                     }
@@ -258,15 +261,16 @@ public class OMGeometryList extends OMList<OMGeometry> implements Serializable {
 
         GeneralPath projectedShape = null;
 
-        synchronized (graphics) {
+        List<OMGeometry> targets = getTraversalList();
+        synchronized (targets) {
 
             if (traverseMode == FIRST_ADDED_ON_TOP) {
-                ListIterator<OMGeometry> iterator = graphics.listIterator(size());
+                ListIterator<OMGeometry> iterator = targets.listIterator(targets.size());
                 while (iterator.hasPrevious()) {
                     projectedShape = updateShape(projectedShape, (OMGeometry) iterator.previous(), p, forceProjectAll);
                 }
             } else {
-                ListIterator<OMGeometry> iterator = graphics.listIterator();
+                ListIterator<OMGeometry> iterator = targets.listIterator();
                 while (iterator.hasNext()) {
                     projectedShape = updateShape(projectedShape, (OMGeometry) iterator.next(), p, forceProjectAll);
                 }
@@ -280,6 +284,15 @@ public class OMGeometryList extends OMList<OMGeometry> implements Serializable {
         return projectedShape != null;
     }
 
+    /**
+     * The geometries are added to one shape in order, so they are always
+     * generated in the calling thread.
+     */
+    public boolean generate(Projection p, boolean forceProjectAll, int numTasks,
+                            Cancellable cancellable) {
+        return generate(p, forceProjectAll);
+    }
+
     /**
      * Given a OMGeometry, it calls generate/regenerate on it, and then adds the
      * GeneralPath shape within it to the OMGeometryList shape object. Calls
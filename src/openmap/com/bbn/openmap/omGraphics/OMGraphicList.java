@@ -161,8 +161,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setStroke(java.awt.Stroke stroke) {
         super.setStroke(stroke);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setStroke(stroke);
             }
         }
@@ -175,8 +176,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setFillPaint(Paint paint) {
         super.setFillPaint(paint);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setFillPaint(paint);
             }
         }
@@ -192,8 +194,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setTextureMask(TexturePaint texture) {
         super.setTextureMask(texture);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setTextureMask(texture);
             }
         }
@@ -206,8 +209,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setLinePaint(Paint paint) {
         super.setLinePaint(paint);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setLinePaint(paint);
             }
         }
@@ -220,8 +224,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setSelectPaint(Paint paint) {
         super.setSelectPaint(paint);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setSelectPaint(paint);
             }
         }
@@ -234,8 +239,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setMattingPaint(Paint paint) {
         super.setMattingPaint(paint);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setMattingPaint(paint);
             }
         }
@@ -246,8 +252,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setMatted(boolean value) {
         super.setMatted(value);
-        synchronized (graphics) {
-            for (OMGraphic omg : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic omg : targets) {
                 omg.setMatted(value);
             }
         }
@@ -266,8 +273,9 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      */
     public void setGridGenerator(OMGridGenerator generator,
                                               Projection proj) {
-        synchronized (graphics) {
-            for (OMGraphic graphic : graphics) {
+        List<OMGraphic> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGraphic graphic : targets) {
                 if (graphic instanceof OMGrid) {
                     ((OMGrid) graphic).setGenerator(generator);
                     if (proj != null) {
@@ -308,7 +316,7 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      * OMGraphicList will behave badly if there are non-OMGraphics on the list.
      */
     public void setTargets(List<OMGraphic> list) {
-        graphics = Collections.synchronizedList(new ArrayList<OMGraphic>(list));
+        graphics = createGraphics(list, isSnapshotMode());
     }
 
     /**
@@ -423,18 +431,23 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
      *         contained on the list.
      */
     public Object clone() {
-        OMGraphicList omgl = (OMGraphicList) super.clone();        
-        synchronized(graphics){
-        for (OMGraphic omg : graphics) {
-            // If the OMGraphic doesn't provide a copy (providing a
-            // SinkGraphic instead), oh well.
-            if (omg instanceof OMGraphicList) {
-                omgl.add((OMGraphic) ((OMGraphicList) omg).clone());
-            } else {
-                omgl.graphics.add(omg);
+        OMGraphicList omgl = (OMGraphicList) super.clone();
+        List<OMGraphic> targets = getTraversalList();
+        // The clone needs its own list, not a reference to this one.
+        List<OMGraphic> copies;
+        synchronized (targets) {
+            copies = new ArrayList<OMGraphic>(targets.size());
+            for (OMGraphic omg : targets) {
+                // If the OMGraphic doesn't provide a copy (providing a
+                // SinkGraphic instead), oh well.
+                if (omg instanceof OMGraphicList) {
+                    copies.add((OMGraphic) ((OMGraphicList) omg).clone());
+                } else {
+                    copies.add(omg);
+                }
             }
         }
-        }
+        omgl.graphics = createGraphics(copies, isSnapshotMode());
         return omgl;
     }
 
@@ -29,10 +29,17 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.util.Cancellable;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.TaskService;
 
 /**
  * This class encapsulates a List of OMGraphics.
@@ -107,9 +114,10 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
     protected boolean allowDuplicates = true;
 
     /**
-     * The List that actually contains the the OMGeometry/OMGraphic objects.
+     * The List that actually contains the the OMGeometry/OMGraphic objects. A
+     * synchronized List, or a SnapshotList in snapshot mode.
      */
-    protected List<T> graphics;
+    protected volatile List<T> graphics;
 
     /**
      * Construct an OMGraphicList.
@@ -122,6 +130,64 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         graphics = Collections.synchronizedList(new ArrayList<T>(initialCapacity));
     }
 
+    /**
+     * Set whether the graphics are held in a copy-on-write SnapshotList. In
+     * snapshot mode, render(), generate(), findClosest() and the other methods
+     * that go through the list work on a snapshot of it and don't lock it, so
+     * the paint thread and a layer worker thread don't wait on each other.
+     * Every change to the list copies it, so snapshot mode suits lists that
+     * are rendered much more often than they are changed, and lists that are
+     * filled once and then handed off. Graphics added or removed while the
+     * list is being traversed take effect the next time it's traversed.
+     * <p>
+     * Snapshot mode applies to this list, not to OMLists contained in it.
+     * 
+     * @param value true for snapshot mode, false for the default synchronized
+     *        list.
+     */
+    public void setSnapshotMode(boolean value) {
+        synchronized (graphics) {
+            if (value != isSnapshotMode()) {
+                graphics = createGraphics(graphics, value);
+            }
+        }
+    }
+
+    /**
+     * @return true if the graphics are held in a SnapshotList.
+     */
+    public boolean isSnapshotMode() {
+        return graphics instanceof SnapshotList<?>;
+    }
+
+    /**
+     * Create a List to hold the graphics, for snapshot mode or not, filled
+     * with the contents of a Collection.
+     */
+    protected static <E> List<E> createGraphics(Collection<? extends E> contents,
+                                                boolean snapshotMode) {
+        if (snapshotMode) {
+            return new SnapshotList<E>(contents);
+        }
+        return Collections.synchronizedList(new ArrayList<E>(contents));
+    }
+
+    /**
+     * Returns the List to go through for rendering, generating, and searching
+     * the graphics. Code traversing the List should synchronize on it. The
+     * List is the graphics List, or in snapshot mode, a snapshot of the
+     * graphics that won't change and that isn't shared with other threads.
+     * 
+     * @return List of graphics to traverse.
+     */
+    protected List<T> getTraversalList() {
+        List<T> list = graphics;
+        if (list instanceof SnapshotList<?>) {
+            return ((SnapshotList<T>) list).snapshot();
+        }
+        return list;
+    }
+
     /**
      * OMGraphicList method for returning a simple description of the list. This
      * is really a debugging method.
@@ -147,7 +213,8 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         sb.append("OMList with ").append(size()).append(" object").append((size() == 1 ? "\n"
                 : "s\n"));
 
-        synchronized (graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
             StringBuffer sb1 = new StringBuffer();
 
             for (int i = 0; i < level; i++) {
@@ -157,7 +224,7 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
 
             String levelHeader = level == 0 ? "" : "|--> ";
 
-            for (OMGeometry omg : graphics) {
+            for (OMGeometry omg : targets) {
                 String description = "";
                 if (omg instanceof OMList<?>) {
                     description = ((OMList<? extends OMGeometry>) omg).getDescription(level + 1);
@@ -247,8 +314,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
     public boolean contains(Object o) {
         boolean ret = false;
         if (o != null) {
-            synchronized (graphics) {
-                for (T omg : graphics) {
+            List<T> targets = getTraversalList();
+            synchronized (targets) {
+                for (T omg : targets) {
 
                     if (o == omg
                             || (omg instanceof OMList<?> && ((OMList<? extends OMGeometry>) omg).contains(o))) {
@@ -346,11 +414,16 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
     }
 
     /**
-     * @return an unmodifiable copy of this list.
+     * @return an unmodifiable copy of this list. In snapshot mode the current
+     *         snapshot is returned, and the graphics aren't copied.
      */
     public final List<T> getCopy() {
+        List<T> list = graphics;
+        if (list instanceof SnapshotList<?>) {
+            return ((SnapshotList<T>) list).snapshot();
+        }
         final List<T> listCopy;
-        listCopy = new ArrayList<T>(graphics);
+        listCopy = new ArrayList<T>(list);
         return Collections.unmodifiableList(listCopy);
     }
 
@@ -552,7 +625,8 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public boolean generate(Projection p, boolean forceProjectAll) {
         boolean ret = true;
-        synchronized (graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
             Iterator<T> iterator = iterator();
             // Check forceProjectAll outside the loop for slight
             // performance improvement.
@@ -569,6 +643,99 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         return ret;
     }
 
+    /**
+     * The smallest number of graphics handed to a generate task at a time by
+     * generate(Projection, boolean, int, Cancellable).
+     */
+    public final static int MIN_GENERATE_BLOCK_SIZE = 256;
+
+    /**
+     * Prepare the graphics for rendering, splitting the work over several
+     * threads. The graphics are handed out in blocks to numTasks tasks, one of
+     * them run in the calling thread and the others by the TaskService. The
+     * list stays locked for the whole call, like it does for
+     * generate(Projection, boolean), so the graphics on the list must not
+     * share state that isn't safe to generate concurrently. The order the
+     * graphics are generated in is not defined, only the top level of the
+     * list is split up.
+     * 
+     * @param p a <code>Projection</code>
+     * @param forceProjectAll if true, all the graphics on the list are
+     *        generated with the new projection. If false they are only
+     *        generated if getNeedToRegenerate() returns true
+     * @param numTasks the number of tasks to split the list over. If 1 or
+     *        less, or if the list is too small to split, the graphics are
+     *        generated in the calling thread.
+     * @param cancellable checked between blocks, the remaining graphics
+     *        aren't generated if it has been cancelled. May be null.
+     * @return true if generation was successful for all objects on list. False
+     *         if generation was cancelled before all of the graphics were
+     *         generated.
+     */
+    public boolean generate(final Projection p, final boolean forceProjectAll, int numTasks,
+                            final Cancellable cancellable) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
+            final Object[] snapshot = targets.toArray();
+            final int blockSize = Math.max(MIN_GENERATE_BLOCK_SIZE, snapshot.length
+                    / (Math.max(numTasks, 1) * 4));
+            numTasks = Math.min(numTasks, (snapshot.length + blockSize - 1) / blockSize);
+            if (numTasks <= 1) {
+                return generate(p, forceProjectAll);
+            }
+
+            final AtomicInteger nextBlock = new AtomicInteger();
+            class GenerateTask implements Callable<Boolean> {
+                public Boolean call() {
+                    boolean ret = true;
+                    int start;
+                    while ((start = nextBlock.getAndIncrement() * blockSize) < snapshot.length) {
+                        if (cancellable != null && cancellable.isCancelled()) {
+                            return Boolean.FALSE;
+                        }
+                        int end = Math.min(start + blockSize, snapshot.length);
+                        for (int i = start; i < end; i++) {
+                            OMGeometry omg = (OMGeometry) snapshot[i];
+                            ret &= forceProjectAll ? omg.generate(p) : omg.regenerate(p);
+                        }
+                    }
+                    return Boolean.valueOf(ret);
+                }
+            }
+            GenerateTask task = new GenerateTask();
+
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(numTasks - 1);
+            try {
+                for (int i = 1; i < numTasks; i++) {
+                    futures.add(TaskService.singleton().spawn(task));
+                }
+            } catch (RejectedExecutionException ree) {
+                // No more threads available, the tasks already running and
+                // this thread will take care of the rest of the blocks.
+            }
+
+            boolean ret = task.call().booleanValue();
+            for (Future<Boolean> future : futures) {
+                try {
+                    ret &= future.get().booleanValue();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    ret = false;
+                } catch (ExecutionException ee) {
+                    Throwable cause = ee.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+            return ret;
+        }
+    }
+
     /**
      * Renders all the objects in the list a graphics context. This is the same
      * as <code>paint()</code> for AWT components. The graphics are rendered in
@@ -582,9 +749,10 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         if (isVague() && !isVisible())
             return;
 
-        synchronized (graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
             if (traverseMode == FIRST_ADDED_ON_TOP) {
-                ListIterator<? extends OMGeometry> iterator = graphics.listIterator(size());
+                ListIterator<? extends OMGeometry> iterator = targets.listIterator(targets.size());
                 while (iterator.hasPrevious()) {
                     OMGeometry graphic = iterator.previous();
                     if (shouldProcess(graphic)) {
@@ -593,7 +761,7 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
                 }
 
             } else {
-                ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
+                ListIterator<? extends OMGeometry> iterator = targets.listIterator();
                 while (iterator.hasNext()) {
                     OMGeometry graphic = iterator.next();
                     if (shouldProcess(graphic)) {
@@ -617,9 +785,10 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public void renderAllAsSelected(Graphics gr) {
 
-        synchronized (graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
             if (traverseMode == FIRST_ADDED_ON_TOP) {
-                ListIterator<? extends OMGeometry> iterator = graphics.listIterator(size());
+                ListIterator<? extends OMGeometry> iterator = targets.listIterator(targets.size());
                 while (iterator.hasPrevious()) {
                     OMGeometry graphic = iterator.previous();
                     if (shouldProcess(graphic)) {
@@ -630,7 +799,7 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
                 }
 
             } else {
-                ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
+                ListIterator<? extends OMGeometry> iterator = targets.listIterator();
                 while (iterator.hasNext()) {
                     OMGeometry graphic = iterator.next();
                     if (shouldProcess(graphic)) {
@@ -722,11 +891,12 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
         OMDist<T> tomd;
         int i;
 
-        synchronized (graphics) {
-            if (!isEmpty()) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
+            if (!targets.isEmpty()) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
                     i = 0;
-                    ListIterator<T> iterator = graphics.listIterator();
+                    ListIterator<T> iterator = targets.listIterator();
                     while (iterator.hasNext()) {
                         tomd = findClosestTest(omd, i++, iterator.next(), x, y, limit, resetSelect);
                         if (tomd == null)
@@ -736,8 +906,8 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
                             break;
                     }
                 } else {
-                    i = size();
-                    ListIterator<T> iterator = graphics.listIterator(i);
+                    i = targets.size();
+                    ListIterator<T> iterator = targets.listIterator(i);
                     while (iterator.hasPrevious()) {
                         tomd = findClosestTest(omd, i--, iterator.previous(), x, y, limit, resetSelect);
                         if (tomd == null)
@@ -881,17 +1051,18 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
 
         OMDist<T> omd = createDist();
         if (!isEmpty()) {
-            synchronized (graphics) {
+            List<T> targets = getTraversalList();
+            synchronized (targets) {
 
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator();
                     while (iterator.hasNext()) {
                         if (!findAllTest(x, y, limit, resetSelect, addTo, iterator.next(), omd)) {
                             break;
                         }
                     }
                 } else {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator(size());
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator(targets.size());
                     while (iterator.hasPrevious()) {
                         if (!findAllTest(x, y, limit, resetSelect, addTo, iterator.previous(), omd)) {
                             break;
@@ -1075,10 +1246,11 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
             }
         }
 
-        synchronized (graphics) {
-            if (!isEmpty()) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
+            if (!targets.isEmpty()) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator();
                     while (iterator.hasNext()) {
                         tomd = selectClosestTest(omd, 0, iterator.next(), x, y, limit);
                         if (tomd == null)
@@ -1088,7 +1260,7 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
                             break;
                     }
                 } else {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator(size());
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator(targets.size());
                     while (iterator.hasPrevious()) {
                         tomd = selectClosestTest(omd, 0, iterator.previous(), x, y, limit);
                         if (tomd == null)
@@ -1162,11 +1334,12 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
 
         T ret = null;
 
-        synchronized (graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
 
-            if (!isEmpty()) {
+            if (!targets.isEmpty()) {
                 if (traverseMode == FIRST_ADDED_ON_TOP) {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator();
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator();
                     while (iterator.hasNext()) {
                         OMGeometry graphic = iterator.next();
 
@@ -1189,7 +1362,7 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
                         }
                     }
                 } else {
-                    ListIterator<? extends OMGeometry> iterator = graphics.listIterator(size());
+                    ListIterator<? extends OMGeometry> iterator = targets.listIterator(targets.size());
                     while (iterator.hasPrevious()) {
                         OMGeometry graphic = iterator.previous();
 
@@ -1227,8 +1400,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public void deselect() {
         super.deselect();
-        synchronized (graphics) {
-            for (OMGeometry omg : graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGeometry omg : targets) {
                 omg.deselect();
             }
         }
@@ -1240,8 +1414,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public void select() {
         super.select();
-        synchronized (graphics) {
-            for (OMGeometry omg : graphics) {
+        List<T> targets = getTraversalList();
+        synchronized (targets) {
+            for (OMGeometry omg : targets) {
                 omg.select();
             }
         }
@@ -1333,8 +1508,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
     public void setVisible(boolean visible) {
         super.setVisible(visible);
         if (!isVague()) {
-            synchronized (graphics) {
-                for (Iterator<? extends OMGeometry> it = iterator(); it.hasNext();) {
+            List<T> targets = getTraversalList();
+            synchronized (targets) {
+                for (Iterator<? extends OMGeometry> it = targets.iterator(); it.hasNext();) {
                     it.next().setVisible(visible);
                 }
             }
@@ -1349,8 +1525,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public boolean isVisible() {
         if (!isVague()) {
-            synchronized (graphics) {
-                for (T omg : graphics) {
+            List<T> targets = getTraversalList();
+            synchronized (targets) {
+                for (T omg : targets) {
                     if (omg.isVisible()) {
                         return true;
                     }
@@ -1399,8 +1576,9 @@ public abstract class OMList<T extends OMGeometry> extends OMGraphicAdapter impl
      */
     public boolean contains(OMGraphic g) {
         if (g != null) {
-            synchronized (graphics) {
-                for (OMGeometry omg : graphics) {
+            List<T> targets = getTraversalList();
+            synchronized (targets) {
+                for (OMGeometry omg : targets) {
                     if (g == omg
                             || (omg instanceof OMList<?> && ((OMList<? extends OMGeometry>) omg).contains(g))) {
 
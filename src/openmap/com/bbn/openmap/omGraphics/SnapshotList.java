@@ -0,0 +1,251 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.omGraphics;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * A copy-on-write List used by an OMList in snapshot mode. The contents are
+ * kept in an array that is never modified once it's been published. Every
+ * change makes a new array and publishes it, so a thread reading the list can
+ * take a snapshot() and iterate over it without locking, while another thread
+ * is adding, removing or replacing graphics. Changes are synchronized on the
+ * SnapshotList, so they are applied one at a time.
+ * <p>
+ * Each change costs a copy of the whole list, so this list is suited to lists
+ * that are read much more often than they are changed, like the list a layer
+ * hands to the paint thread. The iterators of a SnapshotList iterate over the
+ * snapshot taken when they were created, and don't support remove().
+ */
+public class SnapshotList<E> extends AbstractList<E> implements RandomAccess, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final static Object[] EMPTY = new Object[0];
+
+    private volatile Object[] elements;
+
+    public SnapshotList() {
+        elements = EMPTY;
+    }
+
+    public SnapshotList(Collection<? extends E> c) {
+        elements = toArray(c);
+    }
+
+    /**
+     * @return an unmodifiable List of the contents of this list right now,
+     *         which won't change when this list changes. The contents aren't
+     *         copied.
+     */
+    public List<E> snapshot() {
+        return new Snapshot<E>(elements);
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) elements[index];
+    }
+
+    public int size() {
+        return elements.length;
+    }
+
+    public Object[] toArray() {
+        Object[] es = elements;
+        return Arrays.copyOf(es, es.length, Object[].class);
+    }
+
+    public <T> T[] toArray(T[] a) {
+        return snapshot().toArray(a);
+    }
+
+    public Iterator<E> iterator() {
+        return snapshot().iterator();
+    }
+
+    public ListIterator<E> listIterator() {
+        return snapshot().listIterator();
+    }
+
+    public ListIterator<E> listIterator(int index) {
+        return snapshot().listIterator(index);
+    }
+
+    public synchronized boolean add(E e) {
+        Object[] es = elements;
+        Object[] nes = Arrays.copyOf(es, es.length + 1);
+        nes[es.length] = e;
+        publish(nes);
+        return true;
+    }
+
+    public synchronized void add(int index, E e) {
+        Object[] es = elements;
+        if (index < 0 || index > es.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + es.length);
+        }
+        Object[] nes = new Object[es.length + 1];
+        System.arraycopy(es, 0, nes, 0, index);
+        nes[index] = e;
+        System.arraycopy(es, index, nes, index + 1, es.length - index);
+        publish(nes);
+    }
+
+    public synchronized E set(int index, E e) {
+        Object[] nes = elements.clone();
+        E old = get(index);
+        nes[index] = e;
+        // set isn't a structural change, modCount stays the same.
+        elements = nes;
+        return old;
+    }
+
+    public synchronized E remove(int index) {
+        Object[] es = elements;
+        E old = get(index);
+        Object[] nes = new Object[es.length - 1];
+        System.arraycopy(es, 0, nes, 0, index);
+        System.arraycopy(es, index + 1, nes, index, es.length - index - 1);
+        publish(nes);
+        return old;
+    }
+
+    public synchronized boolean remove(Object o) {
+        int index = indexOf(o);
+        if (index < 0) {
+            return false;
+        }
+        remove(index);
+        return true;
+    }
+
+    protected synchronized void removeRange(int fromIndex, int toIndex) {
+        Object[] es = elements;
+        if (fromIndex < 0 || toIndex > es.length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("From: " + fromIndex + ", To: " + toIndex
+                    + ", Size: " + es.length);
+        }
+        Object[] nes = new Object[es.length - (toIndex - fromIndex)];
+        System.arraycopy(es, 0, nes, 0, fromIndex);
+        System.arraycopy(es, toIndex, nes, fromIndex, es.length - toIndex);
+        publish(nes);
+    }
+
+    public synchronized void clear() {
+        publish(EMPTY);
+    }
+
+    public synchronized boolean addAll(Collection<? extends E> c) {
+        return addAll(size(), c);
+    }
+
+    public synchronized boolean addAll(int index, Collection<? extends E> c) {
+        Object[] es = elements;
+        if (index < 0 || index > es.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + es.length);
+        }
+        Object[] add = toArray(c);
+        if (add.length == 0) {
+            return false;
+        }
+        Object[] nes = new Object[es.length + add.length];
+        System.arraycopy(es, 0, nes, 0, index);
+        System.arraycopy(add, 0, nes, index, add.length);
+        System.arraycopy(es, index, nes, index + add.length, es.length - index);
+        publish(nes);
+        return true;
+    }
+
+    public synchronized boolean removeAll(Collection<?> c) {
+        return filter(c, false);
+    }
+
+    public synchronized boolean retainAll(Collection<?> c) {
+        return filter(c, true);
+    }
+
+    /**
+     * Replace all of the contents of the list at once, so readers see either
+     * the old contents or the new ones.
+     */
+    public synchronized void setAll(Collection<? extends E> c) {
+        publish(toArray(c));
+    }
+
+    /**
+     * Keep the elements that are (retain true) or aren't (retain false) in c.
+     */
+    private boolean filter(Collection<?> c, boolean retain) {
+        Object[] es = elements;
+        List<Object> kept = new ArrayList<Object>(es.length);
+        for (Object o : es) {
+            if (c.contains(o) == retain) {
+                kept.add(o);
+            }
+        }
+        if (kept.size() == es.length) {
+            return false;
+        }
+        publish(kept.toArray());
+        return true;
+    }
+
+    /**
+     * @return the contents of c in an Object[], never an array of a narrower
+     *         type.
+     */
+    private static Object[] toArray(Collection<?> c) {
+        Object[] a = c.toArray();
+        return a.getClass() == Object[].class ? a : Arrays.copyOf(a, a.length, Object[].class);
+    }
+
+    private void publish(Object[] nes) {
+        modCount++;
+        elements = nes;
+    }
+
+    /**
+     * A read-only view of one version of the contents.
+     */
+    private static class Snapshot<E> extends AbstractList<E> implements RandomAccess {
+        private final Object[] es;
+
+        Snapshot(Object[] es) {
+            this.es = es;
+        }
+
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) es[index];
+        }
+
+        public int size() {
+            return es.length;
+        }
+
+        public Object[] toArray() {
+            return es.clone();
+        }
+    }
+}
@@ -1241,18 +1241,33 @@ public abstract class Azimuth extends GeoProj {
      */
     public boolean forwardRaw(double[] rawllpts, int rawoff, float[] xcoords, float[] ycoords,
                               boolean[] visible, int copyoff, int copylen) {
-        Point temp = new Point();
+        return _forwardRaw(rawllpts, rawoff, rawllpts, rawoff + 1, 2, xcoords, ycoords, visible, copyoff, copylen);
+    }
+
+    /**
+     * Batch projection kernel, calls _forward() for each point and marks the
+     * points that fall outside of the visible hemisphere (which are moved to
+     * the edge) as not visible.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        Point2D temp = new Point2D.Double();
         AzimuthVar azVar = new AzimuthVar();
-        boolean ok = true;
+        boolean allVisible = true;
         int end = copylen + copyoff;
-        for (int i = copyoff, j = rawoff; i < end; i++, j += 2) {
-            _forward(rawllpts[j], rawllpts[j + 1], temp, azVar);
-            xcoords[i] = temp.x;
-            ycoords[i] = temp.y;
-            ok = !azVar.invalid_forward;
-            visible[i] = ok;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            azVar.invalid_forward = false;
+            _forward(lats[j], lons[k], temp, azVar);
+            xcoords[i] = (float) temp.getX();
+            ycoords[i] = (float) temp.getY();
+            boolean ok = !azVar.invalid_forward;
+            if (visible != null) {
+                visible[i] = ok;
+            }
+            allVisible &= ok;
         }
-        return ok;
+        return allVisible;
     }
 
     // print out polygon
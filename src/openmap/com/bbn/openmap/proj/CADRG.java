@@ -361,6 +361,31 @@ public class CADRG extends Cylindrical implements EqualArc {
         return ret_val;
     }
 
+    /**
+     * Batch projection kernel, the radian forward() math with the projection
+     * parameters held in locals for the whole array.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        final double sx = spps_x;
+        final double sy = -spps_y;
+        final double ctrLon = centerX;
+        final int ulx = ul.x;
+        final int uly = ul.y + oy;
+        int end = copylen + copyoff;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            double lon_ = wrapLongitude(lons[k] - ctrLon);
+            double lat_ = normalizeLatitude(lats[j]);
+            xcoords[i] = (int) ProjMath.roundAdjust(sx * lon_) - ulx;
+            ycoords[i] = (int) ProjMath.roundAdjust(sy * lat_) + uly;
+            if (visible != null) {
+                visible[i] = true;
+            }
+        }
+        return true;
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * <p>
@@ -210,17 +210,8 @@ public abstract class Cylindrical
      */
     public boolean forwardRaw(double[] rawllpts, int rawoff, float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
                               int copylen) {
-        Point2D temp = new Point2D.Float();
-        int end = copylen + copyoff;
-        for (int i = copyoff, j = rawoff; i < end; i++, j += 2) {
-            forward(rawllpts[j], rawllpts[j + 1], temp, true);
-            xcoords[i] = (float) temp.getX();
-            ycoords[i] = (float) temp.getY();
-            visible[i] = true;// should always be visible in
-            // cylindrical family
-        }
-        // everything is visible
-        return true;
+        // should always be visible in cylindrical family
+        return _forwardRaw(rawllpts, rawoff, rawllpts, rawoff + 1, 2, xcoords, ycoords, visible, copyoff, copylen);
     }
 
     /**
@@ -371,7 +362,7 @@ public abstract class Cylindrical
      * @return ArrayList of x[], y[], x[], y[], ... the projected poly
      */
     protected ArrayList<float[]> _forwardPoly(double[] rawllpts, int ltype, int nsegs, boolean isFilled) {
-        int n, k, flag = 0, min = 0, max = 0;
+        int n, flag = 0, min = 0, max = 0;
         float xp, xadj = 0;
 
         // determine length of pairs list
@@ -384,31 +375,25 @@ public abstract class Cylindrical
             return doPolyDispatch(rawllpts, ltype, nsegs, isFilled);
         }
 
-        // determine when to stop
-        Point2D temp = new Point2D.Float(0, 0);
         float[] xs = new float[len];
         float[] ys = new float[len];
 
-        // forward project the first point
-        forward(rawllpts[0], rawllpts[1], temp, true);
-        xp = (float) temp.getX();
-        xs[0] = (float) temp.getX();
-        ys[0] = (float) temp.getY();
-        // forward project the other points
-        for (n = 1, k = 2; n < len; n++, k += 2) {
-            forward(rawllpts[k], rawllpts[k + 1], temp, true);
-            xs[n] = (float) temp.getX();
-            ys[n] = (float) temp.getY();
+        // forward project all the points in one pass, then look for
+        // the wraps
+        _forwardRaw(rawllpts, 0, rawllpts, 1, 2, xs, ys, null, 0, len);
+        xp = xs[0];
+        for (n = 1; n < len; n++) {
+            float x = xs[n];
             // segment crosses longitude along screen edge
-            if (Math.abs(xp - xs[n]) >= half_world) {
-                flag += (xp < xs[n]) ? -1 : 1;// inc/dec the wrap
+            if (Math.abs(xp - x) >= half_world) {
+                flag += (xp < x) ? -1 : 1;// inc/dec the wrap
                 // count
                 min = (flag < min) ? flag : min;// left wrap count
                 max = (flag > max) ? flag : max;// right wrap count
                 xadj = flag * world.x;// adjustment to x coordinates
                 // Debug.output("flag=" + flag + " xadj=" + xadj);
             }
-            xp = (float) temp.getX();// save previous unshifted x coordinate
+            xp = x;// save previous unshifted x coordinate
             if (flag != 0) {
                 xs[n] += xadj;// adjust x coordinates
             }
@@ -0,0 +1,147 @@
+// **********************************************************************
+//
+// <copyright>
+//
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+//
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+//
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.proj;
+
+import java.awt.geom.Point2D;
+import java.util.Random;
+
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Compares the batch forwardRaw() kernels of the GeoProj subclasses to the
+ * per-point forward() path. For each projection, the same random radian
+ * coordinates are projected both ways, the largest pixel difference is
+ * reported, and then both paths are timed.
+ * <p>
+ * Usage: java com.bbn.openmap.proj.ForwardRawTester [numPoints] [iterations]
+ */
+public class ForwardRawTester {
+
+    protected int numPoints;
+    protected int iterations;
+    protected double[] lats;
+    protected double[] lons;
+    protected double[] rawllpts;
+    protected float[] xs;
+    protected float[] ys;
+    protected boolean[] visible;
+
+    public ForwardRawTester(int numPoints, int iterations) {
+        this.numPoints = numPoints;
+        this.iterations = iterations;
+
+        // Same seed every run, so results are comparable.
+        Random random = new Random(1234L);
+        lats = new double[numPoints];
+        lons = new double[numPoints];
+        rawllpts = new double[numPoints * 2];
+        for (int i = 0; i < numPoints; i++) {
+            lats[i] = Math.toRadians(random.nextDouble() * 160.0 - 80.0);
+            lons[i] = Math.toRadians(random.nextDouble() * 360.0 - 180.0);
+            rawllpts[i * 2] = lats[i];
+            rawllpts[i * 2 + 1] = lons[i];
+        }
+        xs = new float[numPoints];
+        ys = new float[numPoints];
+        visible = new boolean[numPoints];
+    }
+
+    /**
+     * Project the points one at a time into the same arrays, the way
+     * forwardRaw() did it before the batch kernels.
+     */
+    protected double perPoint(GeoProj proj) {
+        Point2D pt = new Point2D.Double();
+        for (int i = 0; i < numPoints; i++) {
+            proj.forward(lats[i], lons[i], pt, true);
+            xs[i] = (float) pt.getX();
+            ys[i] = (float) pt.getY();
+            visible[i] = true;
+        }
+        return xs[0] + ys[numPoints - 1];
+    }
+
+    /**
+     * Project the points with the structure-of-arrays batch kernel.
+     */
+    protected double batch(GeoProj proj) {
+        proj.forwardRaw(lats, lons, 0, xs, ys, visible, 0, numPoints);
+        return xs[0] + ys[numPoints - 1];
+    }
+
+    /**
+     * @return the largest difference, in pixels, between the per-point and the
+     *         batch results for points that are visible.
+     */
+    public double compare(GeoProj proj) {
+        proj.forwardRaw(rawllpts, 0, xs, ys, visible, 0, numPoints);
+        Point2D pt = new Point2D.Double();
+        double maxDiff = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if (!visible[i]) {
+                continue;
+            }
+            proj.forward(lats[i], lons[i], pt, true);
+            maxDiff = Math.max(maxDiff, Math.abs(pt.getX() - xs[i]));
+            maxDiff = Math.max(maxDiff, Math.abs(pt.getY() - ys[i]));
+        }
+        return maxDiff;
+    }
+
+    public void test(GeoProj proj) {
+        double maxDiff = compare(proj);
+
+        // warm up both paths before timing them
+        double sink = 0;
+        for (int i = 0; i < 3; i++) {
+            sink += perPoint(proj) + batch(proj);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += perPoint(proj);
+        }
+        long perPointTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += batch(proj);
+        }
+        long batchTime = System.nanoTime() - start;
+
+        double count = (double) numPoints * iterations;
+        System.out.println(proj.getName() + ": max diff " + maxDiff + " px, forward() "
+                + format(perPointTime / count) + " ns/pt, forwardRaw() "
+                + format(batchTime / count) + " ns/pt" + (sink == 0 ? "" : " "));
+    }
+
+    protected static String format(double d) {
+        return Double.toString(Math.round(d * 10) / 10.0);
+    }
+
+    public static void main(String[] args) {
+        int numPoints = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+
+        ForwardRawTester tester = new ForwardRawTester(numPoints, iterations);
+        LatLonPoint center = new LatLonPoint.Double(40.0, -70.0);
+        tester.test(new Mercator(center, 50000000f, 1024, 768));
+        tester.test(new LLXY(center, 50000000f, 1024, 768));
+        tester.test(new CADRG(center, 50000000f, 1024, 768));
+        tester.test(new Orthographic(center, 50000000f, 1024, 768));
+        tester.test(new Gnomonic(center, 50000000f, 1024, 768));
+        tester.test(new LambertConformal(center, 50000000f, 1024, 768, -70.0, 30.0, 50.0, 40.0, 0, 0, Ellipsoid.WGS_84));
+    }
+}
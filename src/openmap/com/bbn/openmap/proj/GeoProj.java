@@ -1037,6 +1037,69 @@ public abstract class GeoProj extends Proj {
      */
     abstract public Point2D forward(double lat, double lon, Point2D pt, boolean isRadian);
 
+    /**
+     * Forward project separate arrays of radian latitudes and longitudes. This
+     * is the same as forwardRaw(double[], ...) for coordinates that are kept
+     * in two arrays instead of one interleaved lat,lon array, and nothing is
+     * allocated for each point.
+     *
+     * @param lats array of latitudes in radians
+     * @param lons array of longitudes in radians
+     * @param rawoff offset into lats and lons
+     * @param xcoords x coordinates
+     * @param ycoords y coordinates
+     * @param visible coordinates visible? May be null if the caller doesn't
+     *        care.
+     * @param copyoff offset into x,y,visible arrays
+     * @param copylen number of coordinates.
+     * @return boolean true if all points visible, false if some points not
+     *         visible.
+     */
+    public boolean forwardRaw(double[] lats, double[] lons, int rawoff, float[] xcoords,
+                              float[] ycoords, boolean[] visible, int copyoff, int copylen) {
+        return _forwardRaw(lats, rawoff, lons, rawoff, 1, xcoords, ycoords, visible, copyoff, copylen);
+    }
+
+    /**
+     * The batch projection kernel behind the forwardRaw methods that take
+     * double arrays. The coordinates are read from lats[latoff + i * stride]
+     * and lons[lonoff + i * stride], so an interleaved lat,lon array is passed
+     * in as both arrays with a stride of 2, and separate arrays with a stride
+     * of 1.
+     * <p>
+     * This implementation calls forward() for each point with one reused
+     * Point2D, and marks every point as visible. Projections override it with
+     * the projection math inlined in the loop.
+     *
+     * @param lats array of latitudes in radians
+     * @param latoff offset of the first latitude
+     * @param lons array of longitudes in radians
+     * @param lonoff offset of the first longitude
+     * @param stride distance between consecutive coordinates in lats and lons
+     * @param xcoords x coordinates
+     * @param ycoords y coordinates
+     * @param visible coordinates visible? May be null.
+     * @param copyoff offset into x,y,visible arrays
+     * @param copylen number of coordinates.
+     * @return boolean true if all points visible, false if some points not
+     *         visible.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        Point2D temp = new Point2D.Double();
+        int end = copylen + copyoff;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            forward(lats[j], lons[k], temp, true);
+            xcoords[i] = (float) temp.getX();
+            ycoords[i] = (float) temp.getY();
+            if (visible != null) {
+                visible[i] = true;
+            }
+        }
+        return true;
+    }
+
     /**
      * Inverse project a Point from x,y space to LatLon space.
      * 
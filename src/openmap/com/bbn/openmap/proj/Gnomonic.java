@@ -294,6 +294,51 @@ public class Gnomonic extends Azimuth {
         return p;
     }
 
+    /**
+     * Batch projection kernel. The cosine of the distance from the center is
+     * computed from the projection terms, it's both the hemisphere edge test
+     * and the inverse of kPrime. Points past the edge go through _forward() to
+     * be moved to the edge.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        final double r = scaled_radius;
+        final double ctrLon = centerX;
+        final double cosCtr = cosCtrLat;
+        final double sinCtr = sinCtrLat;
+        final double cosEdge = Math.cos(HEMISPHERE_EDGE);
+        Point2D edge = null;
+        boolean allVisible = true;
+        int end = copylen + copyoff;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            double phi = lats[j];
+            double dLambda = lons[k] - ctrLon;
+            double cosPhi = Math.cos(phi);
+            double sinPhi = Math.sin(phi);
+            double cosDLambda = Math.cos(dLambda);
+            double cosC = sinCtr * sinPhi + cosCtr * cosPhi * cosDLambda;
+            boolean ok = cosC >= cosEdge;
+            if (ok) {
+                double rk = r / cosC;
+                xcoords[i] = (float) (rk * cosPhi * Math.sin(dLambda) + wx);
+                ycoords[i] = (float) (hy - rk * (cosCtr * sinPhi - sinCtr * cosPhi * cosDLambda));
+            } else {
+                if (edge == null) {
+                    edge = new Point2D.Double();
+                }
+                _forward(phi, lons[k], edge, null);
+                xcoords[i] = (float) edge.getX();
+                ycoords[i] = (float) edge.getY();
+                allVisible = false;
+            }
+            if (visible != null) {
+                visible[i] = ok;
+            }
+        }
+        return allVisible;
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * 
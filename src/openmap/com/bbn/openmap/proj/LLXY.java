@@ -184,6 +184,29 @@ public class LLXY
       return p;
    }
 
+   /**
+    * Batch projection kernel, the radian forward() math with the projection
+    * parameters held in locals for the whole array.
+    */
+   protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                 float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                 int copylen) {
+      final double ctrLonRad = cLonRad;
+      final double ctrLat = cLat;
+      final double pixPerDeg = ppd;
+      int end = copylen + copyoff;
+      for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+         double lat = Math.toDegrees(normalizeLatitude(lats[j]));
+         double lon = Math.toDegrees(ProjMath.wrapLongitude(lons[k] - ctrLonRad));
+         xcoords[i] = (float) (wx + (lon * pixPerDeg));
+         ycoords[i] = (float) (hy - ((lat - ctrLat) * pixPerDeg));
+         if (visible != null) {
+            visible[i] = true;
+         }
+      }
+      return true;
+   }
+
    /**
     * Inverse project x,y coordinates into a LatLonPoint.
     * 
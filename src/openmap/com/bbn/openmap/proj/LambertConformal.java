@@ -613,21 +613,33 @@ public class LambertConformal
 
     public boolean forwardRaw(double[] rawllpts, int rawoff, float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
                               int copylen) {
-        boolean visibleTotal = false;
-        // HACK grabbed from Cylindrical. Might need fixing.
-        Point temp = new Point();
-        int end = copylen + copyoff;
-        for (int i = copyoff, j = rawoff; i < end; i++, j += 2) {
-            forward(rawllpts[j], rawllpts[j + 1], temp, true);
-            xcoords[i] = temp.x;
-            ycoords[i] = temp.y;
-
-            visible[i] = (0 <= temp.x && temp.x <= width) && (0 <= temp.y && temp.y <= height);
+        return _forwardRaw(rawllpts, rawoff, rawllpts, rawoff + 1, 2, xcoords, ycoords, visible, copyoff, copylen);
+    }
 
-            if (visible[i] == true && visibleTotal == false) {
-                visibleTotal = true;
+    /**
+     * Projects each point with forward(), and marks a point visible if it
+     * lands on the screen.
+     *
+     * @return true if all of the points are visible.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        boolean visibleTotal = true;
+        Point2D temp = new Point2D.Double();
+        int end = copylen + copyoff;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            forward(lats[j], lons[k], temp, true);
+            double x = temp.getX();
+            double y = temp.getY();
+            xcoords[i] = (float) x;
+            ycoords[i] = (float) y;
+
+            boolean ok = (0 <= x && x <= width) && (0 <= y && y <= height);
+            if (visible != null) {
+                visible[i] = ok;
             }
-
+            visibleTotal &= ok;
         }
         // if everything is visible
         return visibleTotal;
@@ -213,6 +213,50 @@ public class Orthographic extends Azimuth {
         return p;
     }
 
+    /**
+     * Batch projection kernel. The hemisphere test uses the cosine of the
+     * distance from the center, which falls out of the projection terms, so
+     * visible points don't need the great circle distance calculation. Points
+     * on the far side of the earth go through _forward() to be moved to the
+     * edge.
+     */
+    protected boolean _forwardRaw(double[] lats, int latoff, double[] lons, int lonoff, int stride,
+                                  float[] xcoords, float[] ycoords, boolean[] visible, int copyoff,
+                                  int copylen) {
+        final double r = scaled_radius;
+        final double ctrLon = centerX;
+        final double cosCtr = cosCtrLat;
+        final double sinCtr = sinCtrLat;
+        Point2D edge = null;
+        boolean allVisible = true;
+        int end = copylen + copyoff;
+        for (int i = copyoff, j = latoff, k = lonoff; i < end; i++, j += stride, k += stride) {
+            double phi = lats[j];
+            double dLambda = lons[k] - ctrLon;
+            double cosPhi = Math.cos(phi);
+            double sinPhi = Math.sin(phi);
+            double cosDLambda = Math.cos(dLambda);
+            double cosC = sinCtr * sinPhi + cosCtr * cosPhi * cosDLambda;
+            boolean ok = cosC >= 0;
+            if (ok) {
+                xcoords[i] = (float) (r * cosPhi * Math.sin(dLambda) + wx);
+                ycoords[i] = (float) (hy - r * (cosCtr * sinPhi - sinCtr * cosPhi * cosDLambda));
+            } else {
+                if (edge == null) {
+                    edge = new Point2D.Double();
+                }
+                _forward(phi, lons[k], edge, null);
+                xcoords[i] = (float) edge.getX();
+                ycoords[i] = (float) edge.getY();
+                allVisible = false;
+            }
+            if (visible != null) {
+                visible[i] = ok;
+            }
+        }
+        return allVisible;
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * 
@@ -0,0 +1,31 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util;
+
+/**
+ * An object doing work in one thread that can be asked, from that thread or a
+ * helper, whether the work has been superseded and should be abandoned.
+ * OMGraphicHandlerLayers are Cancellable, so a long
+ * {@link com.bbn.openmap.omGraphics.OMList#generate(com.bbn.openmap.proj.Projection, boolean, int, Cancellable)}
+ * can stop early when a new projection has already been queued.
+ */
+public interface Cancellable {
+
+    /**
+     * @return true if the current work will be replaced and doesn't need to
+     *         be finished.
+     */
+    boolean isCancelled();
+}
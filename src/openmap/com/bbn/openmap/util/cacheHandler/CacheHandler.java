@@ -24,6 +24,9 @@
 
 package com.bbn.openmap.util.cacheHandler;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -31,12 +34,36 @@ import java.util.logging.Logger;
  * A base cache support object. Based on the
  * com.bbn.openmap.layer.util.cacheHandler package components, this CacheHandler
  * uses Objects instead of Strings and will be replacing the earlier version.
+ * <p>
+ * The cache objects are held in a hash table kept in access order, so lookups
+ * don't depend on the number of objects in the cache, and the least recently
+ * used objects are the ones tossed when the cache is full. The cache can be
+ * bounded by the number of objects it holds, and optionally by the total
+ * weight of those objects (see CacheObject.getWeight()), which lets caches
+ * holding images be sized by memory use. All access to the cache contents is
+ * synchronized, so a cache can be shared between threads.
  * 
  * @author dietrick
  */
 public abstract class CacheHandler {
-    protected CacheObject[] objs;
+    /**
+     * The cache objects, in least recently used to most recently used order.
+     * Lock on the CacheHandler to access it.
+     */
+    protected LinkedHashMap<Object, CacheObject> objs;
     protected int logicalClock;
+    /**
+     * The maximum number of objects held by the cache.
+     */
+    protected int maxSize;
+    /**
+     * The maximum total weight of objects held by the cache, 0 for no limit.
+     */
+    protected long maxWeight = 0;
+    /**
+     * The current total weight of objects held by the cache.
+     */
+    protected long currentWeight = 0;
 
     public static Logger logger = Logger.getLogger("com.bbn.openmap.util.cacheHandler.CacheHandler");
 
@@ -59,31 +86,31 @@ public abstract class CacheHandler {
     /**
      * Set the size, reset the logical clock
      */
-    private void initCache(int max_size) {
-        if (objs != null && objs.length == max_size) {
+    private synchronized void initCache(int max_size) {
+        if (objs != null) {
             clear();
         } else {
-            objs = new CacheObject[max_size];
+            objs = new LinkedHashMap<Object, CacheObject>(16, 0.75f, true);
         }
+        maxSize = max_size;
         logicalClock = 0;
     }
 
     /**
      * Remove all the objects from the cache.
      */
-    public void clear() {
+    public synchronized void clear() {
         if (objs != null) {
-            for (int i = 0; i < objs.length; i++) {
-                objs[i] = null;
-            }
+            objs.clear();
         }
+        currentWeight = 0;
     }
 
     /**
      * Need to clear memory, get gc moving, and ready for new objects
      */
     public void resetCache() {
-        initCache(objs.length);
+        initCache(maxSize);
     }
 
     /**
@@ -96,15 +123,68 @@ public abstract class CacheHandler {
         initCache(max_size);
     }
 
+    /**
+     * Change the capacity of the cache without clearing it. If the cache is
+     * shrinking, the least recently used objects are removed until the cache
+     * fits the new size.
+     * 
+     * @param max_size the new capacity of the cache, ignored if less than 1.
+     */
+    public synchronized void resizeCache(int max_size) {
+        if (max_size > 0) {
+            maxSize = max_size;
+            trimCache(null);
+        }
+    }
+
     /**
      * Get the current size of the cache.
      */
     public int getCacheSize() {
-        return objs.length;
+        return maxSize;
+    }
+
+    /**
+     * Get the number of objects currently held in the cache.
+     */
+    public synchronized int getNumCached() {
+        return objs.size();
     }
 
     /**
-     * The main call to retrieve something from the cache
+     * Get the maximum total weight of the objects held by the cache.
+     * 
+     * @return max weight, 0 if the cache is only limited by the number of
+     *         objects it holds.
+     */
+    public long getCacheWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Set the maximum total weight of the objects held by the cache. The
+     * weight of each object is provided by CacheObject.getWeight(). The cache
+     * is trimmed to fit the new weight.
+     * 
+     * @param max_weight the maximum weight, 0 or less for no limit.
+     */
+    public synchronized void setCacheWeight(long max_weight) {
+        maxWeight = Math.max(0, max_weight);
+        trimCache(null);
+    }
+
+    /**
+     * Get the total weight of the objects currently held in the cache.
+     */
+    public synchronized long getCurrentWeight() {
+        return currentWeight;
+    }
+
+    /**
+     * The main call to retrieve something from the cache. The load happens
+     * outside of the cache lock, so other threads can use the cache while an
+     * object is being loaded. If two threads load the same object at the same
+     * time, the first one added to the cache is returned to both.
      */
     public Object get(Object key) {
         CacheObject ret = searchCache(key);
@@ -115,8 +195,7 @@ public abstract class CacheHandler {
         if (ret == null)
             return null;
 
-        replaceLeastUsed(ret);
-        return ret.obj;
+        return replaceLeastUsed(ret).obj;
     }
 
     /**
@@ -127,88 +206,75 @@ public abstract class CacheHandler {
     public abstract CacheObject load(Object key);
 
     /**
-     * Search the cache for a match -return null if not found. The key search is
-     * case insensitive.
+     * Search the cache for a match -return null if not found. A successful
+     * search marks the object as the most recently used.
      */
-    public CacheObject searchCache(Object key) {
-        for (int i = 0; i < objs.length; i++) {
-            CacheObject co = objs[i];
-            if (co == null) {
-                // Since we load 0 -> length - 1, if we get a null
-                // one, the rest are null, too.
-                break;
-            } else if (co.id.equals(key)) {
-                return co;
-            }
+    public synchronized CacheObject searchCache(Object key) {
+        if (key == null) {
+            return null;
         }
-        return null;
-    }
-
-    /**
-     * If there is space in the cache, put the object in. If there isn't space,
-     * find the least used object, and replace it.
-     */
-    protected void replaceLeastUsed(CacheObject newObj) {
-
-        // If the cache has room...
-        int i;
-        for (i = objs.length - 1; i >= 0; i--) {
-            if (objs[i] == null) {
-                // Somewhere in a partially filled cache, keep looking
-                // for the last taken place...
-                if (i == 0) {
-                    // there is nothing in the cache.
-                    objs[0] = newObj;
-                    if (logger.isLoggable(Level.FINE)) {
-                        logger.fine("was empty - added " + newObj.id);
-                    }
-
-                    return;
-                } else {
-                    continue;
-                }
-            } else if (i == objs.length - 1) {
-                // We're at the end, and there is no empty space -
-                // we'll need to look at the LRU clock.
-                break;
-            } else {
-                // We are at the index of the last taken spot, and the
-                // next place is available.
-                objs[i + 1] = newObj;
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("had room - added " + newObj.id + " to the "
-                            + i + " spot.");
-                }
-                return;
-            }
+        CacheObject co = objs.get(key);
+        if (co != null) {
+            co.cachedTime = logicalClock++;
         }
+        return co;
+    }
 
-        // If we get here, we need to replace something in the cache.
+    /**
+     * Add the object to the cache. If there isn't space for it, the least
+     * recently used objects are removed until it fits. If an object with the
+     * same id has already been added to the cache, that object is kept, marked
+     * as most recently used and returned.
+     * 
+     * @param newObj the CacheObject to add.
+     * @return the CacheObject held by the cache for the newObj id.
+     */
+    protected synchronized CacheObject replaceLeastUsed(CacheObject newObj) {
+        CacheObject current = objs.get(newObj.id);
+        if (current != null) {
+            current.cachedTime = logicalClock++;
+            return current;
+        }
 
-        int minClock = logicalClock + 1;
-        int LUIndex = -1;
+        objs.put(newObj.id, newObj);
+        newObj.cachedTime = logicalClock++;
+        currentWeight += newObj.getWeight();
 
-        for (i = objs.length - 1; i >= 0; i--) {
-            if (objs[i].older(minClock)) {
-                LUIndex = i;
-                minClock = objs[i].cachedTime;
-            }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("added " + newObj.id + ", " + objs.size() + " objects cached");
         }
 
-        if (LUIndex != -1) {
+        trimCache(newObj);
+        return newObj;
+    }
+
+    /**
+     * Remove the least recently used objects from the cache until it meets
+     * the size and weight limits. Called with the cache lock held.
+     * 
+     * @param keep a CacheObject that should not be removed, may be null.
+     */
+    protected void trimCache(CacheObject keep) {
+        Iterator<CacheObject> it = objs.values().iterator();
+        while (it.hasNext() && (objs.size() > maxSize || (maxWeight > 0 && currentWeight > maxWeight))) {
+            CacheObject co = it.next();
+            if (co == keep) {
+                continue;
+            }
             if (logger.isLoggable(Level.FINE)) {
-                logger.fine("Tossing " + objs[LUIndex].id
-                        + " from cache[" + LUIndex + "] to add " + newObj.id);
+                logger.fine("Tossing " + co.id + " from cache");
             }
-            objs[LUIndex] = newObj;
-            newObj.cachedTime = logicalClock++;
+            it.remove();
+            currentWeight -= co.getWeight();
         }
     }
 
     /**
-     * Return a ListIterator of the cache objects.
+     * Return a ListIterator of the cache objects, from the least recently used
+     * to the most recently used. The iterator works on a copy of the cache
+     * contents.
      */
-    public java.util.ListIterator<CacheObject> listIterator() {
-        return java.util.Arrays.asList(objs).listIterator();
+    public synchronized java.util.ListIterator<CacheObject> listIterator() {
+        return new ArrayList<CacheObject>(objs.values()).listIterator();
     }
-}
\ No newline at end of file
+}
@@ -29,6 +29,12 @@ public class CacheObject {
     public Object obj = null;
     public int cachedTime = 0;
     public Object id = null;
+    /**
+     * The weight of the object, used by the CacheHandler when it is limiting
+     * the total weight of the cache. For images, the number of bytes of image
+     * data is a good weight.
+     */
+    protected long weight = 1;
 
     /**
      * New object, set the local clock to zero
@@ -38,6 +44,14 @@ public class CacheObject {
         obj = cachedObject;
     }
 
+    /**
+     * New object with a weight, set the local clock to zero
+     */
+    public CacheObject(Object identifier, Object cachedObject, long weight) {
+        this(identifier, cachedObject);
+        this.weight = weight;
+    }
+
     public boolean match(Object queryID) {
         return (queryID.equals(id));
     }
@@ -45,5 +59,17 @@ public class CacheObject {
     public boolean older(int time) {
         return (cachedTime < time);
     }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Set the weight of the object. Should be called before the object is
+     * added to a cache.
+     */
+    public void setWeight(long weight) {
+        this.weight = weight;
+    }
 }
 
@@ -261,8 +261,35 @@ public class HttpConnection extends Thread {
         int locationEnd = location.indexOf(" "); // end at first space
         location = location.substring(0, locationEnd);
 
-        // Figure out what type of file to figure Content-type
-        // string contents
+        String contentType = getContentType(location);
+
+        HttpRequestEvent event = server.fireHttpRequestEvent(location, out);
+
+        // Check to see if the Writer in the Event was used. If it
+        // was, then the listeners contributed concatenated text, and
+        // the result needs to be retrieved and sent back.
+        if (event.isWriterUsed()) {
+            Writer writer = event.getWriter();
+            String result = writer.toString();
+            writeHttpResponse(out, contentType, result);
+        }
+
+        // else - assume that the binary response listeners took care
+        // of writing things back on their own,
+
+        out.flush();
+        close();
+    }
+
+    /**
+     * Figure out the content type of the response for text written to the
+     * HttpRequestEvent Writer, from the file extension of the request
+     * location.
+     * 
+     * @param location the location from the "GET" command.
+     * @return the content type, or null for queries.
+     */
+    public static String getContentType(String location) {
         String contentType;
         if (location.endsWith(".gif") || location.endsWith(".GIF")) {
 
@@ -289,23 +316,7 @@ public class HttpConnection extends Thread {
         } else {
             contentType = CONTENT_PLAIN;
         }
-
-        HttpRequestEvent event = server.fireHttpRequestEvent(location, out);
-
-        // Check to see if the Writer in the Event was used. If it
-        // was, then the listeners contributed concatenated text, and
-        // the result needs to be retrieved and sent back.
-        if (event.isWriterUsed()) {
-            Writer writer = event.getWriter();
-            String result = writer.toString();
-            writeHttpResponse(out, contentType, result);
-        }
-
-        // else - assume that the binary response listeners took care
-        // of writing things back on their own,
-
-        out.flush();
-        close();
+        return contentType;
     }
 
     /**
@@ -327,6 +338,22 @@ public class HttpConnection extends Thread {
         out.write("\n");
     }
 
+    /**
+     * Write the header for a response whose length isn't known when the
+     * header is written, like an image encoded as it is sent. Without a
+     * Content-Length, the response ends when the connection is closed.
+     * 
+     * @param out Writer to place text on the OutputStream.
+     * @param contentType the mime type for your response.
+     */
+    public static void writeHttpResponseHeader(Writer out, String contentType)
+            throws IOException {
+
+        out.write("HTTP/1.0 200 \n"); // return status
+        out.write("Content-type: " + contentType + "\n"); // important!
+        out.write("\n");
+    }
+
     /**
      * Write a String response to the OutputStream.
      * 
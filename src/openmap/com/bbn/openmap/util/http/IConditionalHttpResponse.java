@@ -0,0 +1,34 @@
+package com.bbn.openmap.util.http;
+
+import java.io.IOException;
+
+/**
+ * An IHttpResponse that knows about the conditional request headers of the
+ * request it responds to, so responses can carry an ETag and a client that
+ * already has a response can be told so.
+ */
+public interface IConditionalHttpResponse extends IHttpResponse {
+
+    /**
+     * @return the If-None-Match header of the request, or null if the request
+     *         didn't have one.
+     */
+    public String getIfNoneMatch();
+
+    /**
+     * Write a byte[] response with an ETag header to the OutputStream.
+     * 
+     * @param contentType the content type of the response.
+     * @param response the byte array containing the response.
+     * @param eTag the quoted entity tag for the response.
+     */
+    public void writeHttpResponse(String contentType, byte[] response, String eTag)
+            throws IOException;
+
+    /**
+     * Write a 304 (Not Modified) response.
+     * 
+     * @param eTag the quoted entity tag the client already has.
+     */
+    public void writeNotModified(String eTag) throws IOException;
+}
@@ -0,0 +1,22 @@
+package com.bbn.openmap.util.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An IHttpResponse that can hand out the OutputStream of the response, so
+ * large responses like images can be written as they are created instead of
+ * being collected in a byte[] first.
+ */
+public interface IStreamingHttpResponse extends IHttpResponse {
+
+    /**
+     * Start a response of unknown length and get the OutputStream to write it
+     * to. The caller writes the response and flushes the stream, but doesn't
+     * close it.
+     * 
+     * @param contentType the content type of the response.
+     * @return the OutputStream of the response.
+     */
+    public OutputStream getOutputStream(String contentType) throws IOException;
+}
@@ -0,0 +1,748 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An HttpServer that handles connections with a fixed pool of threads instead
+ * of starting a thread for every connection, and keeps connections open for
+ * more requests. The HttpRequestListeners are the same ones used with the
+ * HttpServer.
+ * <P>
+ * 
+ * Requests on a connection are handled in order, so clients can send several
+ * requests before reading the responses (pipelining). A response is written to
+ * a buffer first, and the connection is kept open after it if the client asked
+ * for that and the response has a Content-Length header, like the ones
+ * written by the HttpConnection.writeHttpResponse() methods, or fits in the
+ * buffer so one can be added. A response that outgrows the buffer is sent on
+ * to the client as it is written, and without a Content-Length header the
+ * connection is closed after it, as the HttpServer does.
+ * <P>
+ * 
+ * The number of open connections is limited. Connections over the limit get a
+ * 503 (Service Unavailable) response and are closed right away, instead of
+ * tying up threads and memory. Connections wait for a thread from the pool if
+ * all of the threads are busy. An idle kept-alive connection holds a thread
+ * while it waits for the next request, so only a few connections, fewer than
+ * the threads, are kept alive at one time, and kept-alive connections are
+ * closed after a response when other connections are waiting for a thread.
+ * <P>
+ * 
+ * The time taken for each request is logged at the FINE level, and the
+ * request count and times are kept for getRequestCount(),
+ * getMeanRequestMillis() and getMaxRequestMillis().
+ * 
+ * @see HttpServer
+ */
+public class PooledHttpServer extends HttpServer {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.util.http.PooledHttpServer");
+
+    public final static int DEFAULT_MAX_THREADS = 32;
+    public final static int DEFAULT_MAX_CONNECTIONS = 256;
+    public final static int DEFAULT_KEEP_ALIVE_TIMEOUT = 5000;
+    public final static int DEFAULT_MAX_KEEP_ALIVE_REQUESTS = 100;
+    public final static int DEFAULT_MAX_IDLE_CONNECTIONS = 8;
+
+    /** Longest request or header line accepted. */
+    public final static int MAX_LINE_LENGTH = 8192;
+    /** Largest response held in memory before it is sent to the client. */
+    public final static int MAX_BUFFERED_RESPONSE = 65536;
+
+    protected int maxThreads = DEFAULT_MAX_THREADS;
+    protected int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    /** Milliseconds an open connection waits for the next request. */
+    protected int keepAliveTimeout = DEFAULT_KEEP_ALIVE_TIMEOUT;
+    /** Requests handled on a connection before it is closed. */
+    protected int maxKeepAliveRequests = DEFAULT_MAX_KEEP_ALIVE_REQUESTS;
+    /** Kept-alive connections that can wait for a request at one time. */
+    protected int maxIdleConnections = DEFAULT_MAX_IDLE_CONNECTIONS;
+
+    protected ThreadPoolExecutor executor;
+
+    protected final AtomicInteger openConnections = new AtomicInteger();
+    protected final AtomicInteger idleConnections = new AtomicInteger();
+    protected final AtomicLong rejectedConnections = new AtomicLong();
+    protected final AtomicLong requestCount = new AtomicLong();
+    protected final AtomicLong requestNanos = new AtomicLong();
+    protected final AtomicLong maxRequestNanos = new AtomicLong();
+
+    /**
+     * Creates a PooledHttpServer on the indicated port. The server thread
+     * will not be a daemon thread.
+     * 
+     * @param port the port to open
+     */
+    public PooledHttpServer(int port) throws IOException {
+        this(port, false);
+    }
+
+    /**
+     * Creates a PooledHttpServer on the indicated port. The server thread and
+     * the pool threads will be daemon threads if asDaemon is true.
+     * 
+     * @param port the port to open
+     * @param asDaemon whether to make the threads daemons
+     */
+    public PooledHttpServer(int port, boolean asDaemon) throws IOException {
+        super(port, asDaemon);
+        setName("PooledHttpServer-" + getPort());
+    }
+
+    /**
+     * Creates a PooledHttpServer on the indicated port.
+     * 
+     * @param port the port to open
+     * @param asDaemon whether to make the threads daemons
+     * @param maxThreads the number of threads handling connections.
+     * @param maxConnections the number of connections that can be open.
+     */
+    public PooledHttpServer(int port, boolean asDaemon, int maxThreads,
+            int maxConnections) throws IOException {
+        this(port, asDaemon);
+        setMaxThreads(maxThreads);
+        setMaxConnections(maxConnections);
+    }
+
+    /**
+     * Accept connections and hand them to the thread pool until the server
+     * socket is closed.
+     */
+    public void run() {
+        executor = createExecutor();
+        try {
+            while (true) {
+                Socket clientSocket = listen_socket.accept();
+                if (openConnections.incrementAndGet() > maxConnections) {
+                    openConnections.decrementAndGet();
+                    rejectedConnections.incrementAndGet();
+                    reject(clientSocket);
+                    continue;
+                }
+
+                try {
+                    executor.execute(new Connection(clientSocket));
+                } catch (RuntimeException re) {
+                    openConnections.decrementAndGet();
+                    closeQuietly(clientSocket);
+                }
+            }
+        } catch (IOException e) {
+            if (!listen_socket.isClosed()) {
+                logger.log(Level.WARNING, "Exception while listening for connections", e);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Create the thread pool for the connections.
+     */
+    protected ThreadPoolExecutor createExecutor() {
+        final boolean daemon = isDaemon();
+        ThreadPoolExecutor tpe = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, getName() + "-" + count.incrementAndGet());
+                t.setDaemon(daemon);
+                return t;
+            }
+        });
+        tpe.allowCoreThreadTimeOut(true);
+        return tpe;
+    }
+
+    /**
+     * Stop accepting connections. Connections being handled finish their
+     * current request.
+     */
+    public void shutdown() {
+        try {
+            listen_socket.close();
+        } catch (IOException ioe) {
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Tell a client over the connection limit that the server is busy.
+     */
+    protected void reject(Socket clientSocket) {
+        try {
+            clientSocket.setSoTimeout(1000);
+            OutputStream out = clientSocket.getOutputStream();
+            out.write(("HTTP/1.0 503 Service Unavailable\r\nContent-Type: " + HttpConnection.CONTENT_PLAIN
+                    + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+            out.flush();
+        } catch (IOException ioe) {
+        } finally {
+            closeQuietly(clientSocket);
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("rejected connection, " + maxConnections + " connections open");
+        }
+    }
+
+    protected static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ioe) {
+        }
+    }
+
+    /**
+     * Read a line of the request head, without the line terminator.
+     * 
+     * @return the line, or null at the end of the stream before any
+     *         characters.
+     */
+    protected static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int len = line.length();
+                if (len > 0 && line.charAt(len - 1) == '\r') {
+                    line.setLength(len - 1);
+                }
+                return line.toString();
+            }
+            if (line.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Request line too long");
+            }
+            line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Add the time for one request to the statistics.
+     */
+    protected void recordRequest(String method, String target, long nanos) {
+        requestCount.incrementAndGet();
+        requestNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxRequestNanos.get())) {
+            if (maxRequestNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine(method + " " + target + " " + (nanos / 1000000.0) + " ms");
+        }
+    }
+
+    /**
+     * Take one of the places for an idle kept-alive connection. At least one
+     * thread is always left for connections that aren't kept alive.
+     * 
+     * @return false if the connection should be closed after the response
+     *         instead.
+     */
+    protected boolean reserveIdleConnection() {
+        int limit = Math.min(maxIdleConnections, maxThreads - 1);
+        int idle;
+        while ((idle = idleConnections.get()) < limit) {
+            if (idleConnections.compareAndSet(idle, idle + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Give back a place taken with reserveIdleConnection().
+     */
+    protected void releaseIdleConnection() {
+        idleConnections.decrementAndGet();
+    }
+
+    /**
+     * The stream for a response. The response is held in the buffer, and
+     * gets a Connection: keep-alive header added if the connection can stay
+     * open after it. A response larger than MAX_BUFFERED_RESPONSE is sent on
+     * to the client once the buffer fills up, so large images aren't held in
+     * memory, and the connection is only kept open after it if the header has
+     * a Content-Length that the content matches.
+     */
+    protected class ResponseBuffer extends OutputStream {
+
+        protected byte[] buf = new byte[8192];
+        protected int count;
+        protected OutputStream out;
+        /** Whether the client wants the connection kept open. */
+        protected boolean keepAliveWanted;
+        /** Whether this response took a place for an idle connection. */
+        protected boolean reserved;
+        /** Set once the buffer has been sent and writes go to the client. */
+        protected boolean streaming;
+        /** Content bytes still expected when streaming, -1 if unknown. */
+        protected long remaining = -1;
+
+        /*
+         * Set by parseHeader(): the index of the blank line ending the
+         * header, or -1 if the header isn't a complete HTTP response header;
+         * the index of the content after it; the Content-Length, -1 if there
+         * isn't one; and whether there is a Connection header.
+         */
+        protected int headerEnd;
+        protected int contentStart;
+        protected long contentLength;
+        protected boolean hasConnection;
+
+        public ResponseBuffer(OutputStream out, boolean keepAliveWanted) {
+            this.out = out;
+            this.keepAliveWanted = keepAliveWanted;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!streaming && count + len > MAX_BUFFERED_RESPONSE) {
+                // Send what's buffered before a large write, as long as the
+                // header is complete, instead of copying the large write.
+                parseHeader();
+                if (headerEnd >= 0) {
+                    startStreaming();
+                }
+            }
+
+            if (streaming) {
+                out.write(b, off, len);
+                if (remaining >= 0) {
+                    remaining -= len;
+                }
+                return;
+            }
+
+            if (count + len > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, count + len)];
+                System.arraycopy(buf, 0, bigger, 0, count);
+                buf = bigger;
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+            if (count > MAX_BUFFERED_RESPONSE) {
+                startStreaming();
+            }
+        }
+
+        public void flush() throws IOException {
+            if (streaming) {
+                out.flush();
+            }
+        }
+
+        /**
+         * Find the end of the response header, its Content-Length and
+         * whether it has a Connection header.
+         */
+        protected void parseHeader() {
+            headerEnd = -1;
+            contentLength = -1;
+            hasConnection = false;
+            if (count < 5 || buf[0] != 'H' || buf[1] != 'T' || buf[2] != 'T' || buf[3] != 'P' || buf[4] != '/') {
+                return;
+            }
+
+            int lineStart = 0;
+            for (int i = 0; i < count; i++) {
+                if (buf[i] != '\n') {
+                    continue;
+                }
+
+                int lineEnd = (i > lineStart && buf[i - 1] == '\r') ? i - 1 : i;
+                if (lineEnd == lineStart) {
+                    // Blank line, end of header.
+                    headerEnd = lineStart;
+                    contentStart = i + 1;
+                    return;
+                }
+
+                String line = new String(buf, lineStart, lineEnd - lineStart).toLowerCase();
+                if (line.startsWith("content-length:")) {
+                    try {
+                        contentLength = Long.parseLong(line.substring(15).trim());
+                    } catch (NumberFormatException nfe) {
+                        return;
+                    }
+                } else if (line.startsWith("connection:")) {
+                    hasConnection = true;
+                }
+                lineStart = i + 1;
+            }
+        }
+
+        /**
+         * Decide if the connection can stay open after this response, which
+         * takes a place for an idle connection if it can.
+         */
+        protected boolean keepAlive() {
+            // Don't hold on to a thread for an idle connection when other
+            // connections are waiting for one.
+            if (keepAliveWanted && executor.getQueue().isEmpty() && reserveIdleConnection()) {
+                reserved = true;
+            }
+            return reserved;
+        }
+
+        /**
+         * Write the buffered header to the client, with the Connection header
+         * and the Content-Length if they should be added.
+         */
+        protected void writeHeader(String connection, long addContentLength) throws IOException {
+            boolean crlf = headerEnd > 1 && buf[headerEnd - 2] == '\r';
+            String eol = crlf ? "\r\n" : "\n";
+            out.write(buf, 0, headerEnd);
+            if (addContentLength >= 0) {
+                out.write(("Content-Length: " + addContentLength + eol).getBytes("ISO-8859-1"));
+            }
+            out.write(("Connection: " + connection + eol).getBytes("ISO-8859-1"));
+            out.write(buf, headerEnd, count - headerEnd);
+        }
+
+        /**
+         * Send the buffer to the client once the response has outgrown it.
+         * The connection can only stay open if the header has a
+         * Content-Length, because the content can't be counted anymore.
+         */
+        protected void startStreaming() throws IOException {
+            streaming = true;
+            parseHeader();
+            if (headerEnd < 0 || hasConnection) {
+                out.write(buf, 0, count);
+            } else if (contentLength >= count - contentStart && keepAlive()) {
+                writeHeader("keep-alive", -1);
+                remaining = contentLength - (count - contentStart);
+            } else {
+                writeHeader("close", -1);
+            }
+            // Let the buffer go, everything else goes right to the client.
+            buf = new byte[0];
+            count = 0;
+        }
+
+        /**
+         * Finish the response, writing it to the client if it's still in the
+         * buffer, with a keep-alive header if it's wanted and possible.
+         * 
+         * @return true if the connection can stay open.
+         */
+        public boolean finish() throws IOException {
+            if (streaming) {
+                return reserved && remaining == 0;
+            }
+
+            parseHeader();
+            if (headerEnd < 0 || hasConnection || (contentLength >= 0 && contentLength != count - contentStart)
+                    || !keepAlive()) {
+                out.write(buf, 0, count);
+                return false;
+            }
+
+            writeHeader("keep-alive", contentLength < 0 ? count - contentStart : -1);
+            return true;
+        }
+
+        /**
+         * Give back the idle connection place if the connection isn't staying
+         * open after all.
+         */
+        public void release() {
+            if (reserved) {
+                reserved = false;
+                releaseIdleConnection();
+            }
+        }
+    }
+
+    /**
+     * Handles the requests on one client connection.
+     */
+    protected class Connection implements Runnable {
+
+        protected Socket client;
+
+        public Connection(Socket client) {
+            this.client = client;
+        }
+
+        public void run() {
+            // Set while the connection is kept alive after a response, and
+            // holds one of the idle connection places.
+            boolean idle = false;
+            try {
+                client.setSoTimeout(keepAliveTimeout);
+                client.setTcpNoDelay(true);
+                InputStream in = new BufferedInputStream(client.getInputStream());
+                OutputStream out = new BufferedOutputStream(client.getOutputStream(), 8192);
+
+                int handled = 0;
+                boolean open = true;
+                while (open) {
+                    String requestLine = readLine(in);
+                    if (idle) {
+                        idle = false;
+                        releaseIdleConnection();
+                    }
+                    if (requestLine == null) {
+                        break;
+                    }
+                    if (requestLine.length() == 0) {
+                        // Extra line ending between requests.
+                        continue;
+                    }
+                    handled++;
+                    open = handleRequest(requestLine, in, out, handled < maxKeepAliveRequests);
+                    idle = open;
+                    out.flush();
+                }
+            } catch (SocketTimeoutException ste) {
+                // Idle connection, close it.
+            } catch (EOFException eofe) {
+            } catch (SocketException se) {
+                // Client went away.
+            } catch (IOException ioe) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("connection problem: " + ioe.getMessage());
+                }
+            } finally {
+                if (idle) {
+                    releaseIdleConnection();
+                }
+                closeQuietly(client);
+                openConnections.decrementAndGet();
+            }
+        }
+
+        /**
+         * Read the rest of a request, fire it to the listeners and write the
+         * response.
+         * 
+         * @param requestLine the first line of the request.
+         * @param in the client input stream, at the first header line.
+         * @param out the client output stream.
+         * @param mayKeepAlive false if the connection should be closed after
+         *        this request no matter what the client wants.
+         * @return true if the connection should stay open for another
+         *         request, holding one of the idle connection places.
+         */
+        protected boolean handleRequest(String requestLine, InputStream in, OutputStream out,
+                                        boolean mayKeepAlive)
+                throws IOException {
+
+            long start = System.nanoTime();
+
+            // Request line looks like: "GET /thisURL HTTP/1.1"
+            String[] parts = requestLine.split(" ");
+            String method = parts[0];
+            String target = parts.length > 1 ? parts[1] : "/";
+            String version = parts.length > 2 ? parts[2] : "HTTP/0.9";
+
+            boolean keepAlive = version.equals("HTTP/1.1");
+            int contentLength = 0;
+            String line;
+            while ((line = readLine(in)) != null && line.length() > 0) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    try {
+                        contentLength = Integer.parseInt(value);
+                    } catch (NumberFormatException nfe) {
+                        throw new IOException("Bad Content-Length: " + value);
+                    }
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    if (value.equalsIgnoreCase("close")) {
+                        keepAlive = false;
+                    } else if (value.equalsIgnoreCase("keep-alive")) {
+                        keepAlive = true;
+                    }
+                }
+            }
+
+            String request;
+            String contentType;
+            if (method.equals("GET")) {
+                request = target;
+                contentType = HttpConnection.getContentType(target);
+            } else if (method.equals("POST")) {
+                byte[] content = new byte[contentLength];
+                int nread = 0;
+                while (nread < contentLength) {
+                    int n = in.read(content, nread, contentLength - nread);
+                    if (n < 0) {
+                        throw new EOFException("POST content cut short");
+                    }
+                    nread += n;
+                }
+                request = new String(content, "ISO-8859-1").trim();
+                contentType = null;
+            } else {
+                out.write(("HTTP/1.0 501 Not Implemented\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("ISO-8859-1"));
+                return false;
+            }
+
+            ResponseBuffer response = new ResponseBuffer(out, keepAlive && mayKeepAlive);
+            keepAlive = false;
+            try {
+                HttpRequestEvent event = fireHttpRequestEvent(request, response);
+
+                // Check to see if the Writer in the Event was used. If it
+                // was, then the listeners contributed concatenated text, and
+                // the result needs to be retrieved and sent back.
+                if (event.isWriterUsed()) {
+                    Writer writer = event.getWriter();
+                    HttpConnection.writeHttpResponse(response, contentType, writer.toString());
+                }
+
+                keepAlive = response.finish();
+            } finally {
+                if (!keepAlive) {
+                    response.release();
+                }
+            }
+
+            recordRequest(method, target, System.nanoTime() - start);
+            return keepAlive;
+        }
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    /**
+     * Set the number of threads handling connections, before the server is
+     * started.
+     */
+    public void setMaxThreads(int maxThreads) {
+        this.maxThreads = Math.max(1, maxThreads);
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Set the number of connections that can be open at one time.
+     * Connections over the limit get a 503 response.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = Math.max(1, maxConnections);
+    }
+
+    public int getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * Set the milliseconds an open connection waits for the next request
+     * before it is closed.
+     */
+    public void setKeepAliveTimeout(int keepAliveTimeout) {
+        this.keepAliveTimeout = Math.max(0, keepAliveTimeout);
+    }
+
+    public int getMaxIdleConnections() {
+        return maxIdleConnections;
+    }
+
+    /**
+     * Set the number of kept-alive connections that can wait for another
+     * request at one time. Each one holds a thread while it waits, so this is
+     * kept below the number of threads, and 0 turns off keep-alive.
+     */
+    public void setMaxIdleConnections(int maxIdleConnections) {
+        this.maxIdleConnections = Math.max(0, maxIdleConnections);
+    }
+
+    public int getMaxKeepAliveRequests() {
+        return maxKeepAliveRequests;
+    }
+
+    /**
+     * Set the number of requests handled on a connection before it is
+     * closed, 1 turns off keep-alive.
+     */
+    public void setMaxKeepAliveRequests(int maxKeepAliveRequests) {
+        this.maxKeepAliveRequests = Math.max(1, maxKeepAliveRequests);
+    }
+
+    /**
+     * @return the number of connections open right now.
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    /**
+     * @return the number of connections turned away because of the
+     *         connection limit.
+     */
+    public long getRejectedConnections() {
+        return rejectedConnections.get();
+    }
+
+    /**
+     * @return the number of requests handled.
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the mean time to handle and respond to a request.
+     */
+    public double getMeanRequestMillis() {
+        long count = requestCount.get();
+        return count == 0 ? 0 : requestNanos.get() / (count * 1000000.0);
+    }
+
+    /**
+     * @return the longest time taken to handle and respond to a request.
+     */
+    public double getMaxRequestMillis() {
+        return maxRequestNanos.get() / 1000000.0;
+    }
+}
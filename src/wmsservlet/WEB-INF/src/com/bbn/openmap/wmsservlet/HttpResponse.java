@@ -25,15 +25,18 @@ package com.bbn.openmap.wmsservlet;
 import java.io.IOException;
 import java.io.OutputStream;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import com.bbn.openmap.util.http.IHttpResponse;
+import com.bbn.openmap.util.http.IConditionalHttpResponse;
+import com.bbn.openmap.util.http.IStreamingHttpResponse;
 
 /**
  */
-public class HttpResponse implements IHttpResponse {
+public class HttpResponse implements IConditionalHttpResponse, IStreamingHttpResponse {
 
     protected HttpServletResponse httpResponse;
+    protected HttpServletRequest httpRequest;
 
     /**
      * Initialize the input <code>Reader</code> and output <code>Writer</code>
@@ -48,6 +51,22 @@ public class HttpResponse implements IHttpResponse {
         this.httpResponse = response;
     }
 
+    /**
+     * Create a response that can check the conditional headers of the
+     * request.
+     * 
+     * @param request the servlet request being responded to.
+     * @param response the servlet response.
+     */
+    public HttpResponse(HttpServletRequest request, HttpServletResponse response) {
+        this(response);
+        this.httpRequest = request;
+    }
+
+    public String getIfNoneMatch() {
+        return httpRequest == null ? null : httpRequest.getHeader("If-None-Match");
+    }
+
     /**
      * Write a String response encoded as UTF-8 to the OutputStream.
      * 
@@ -80,4 +99,43 @@ public class HttpResponse implements IHttpResponse {
         out.flush();
     }
 
+    /**
+     * Write a byte[] response with an ETag header to the OutputStream.
+     * 
+     * @param contentType
+     *            the content type of the response.
+     * @param response
+     *            the byte array containing the response.
+     * @param eTag
+     *            the quoted entity tag for the response.
+     */
+    public void writeHttpResponse(String contentType, byte[] response, String eTag) throws IOException {
+        httpResponse.setHeader("ETag", eTag);
+        writeHttpResponse(contentType, response);
+    }
+
+    /**
+     * Start a response of unknown length, the servlet container takes care of
+     * ending it.
+     * 
+     * @param contentType
+     *            the content type of the response.
+     * @return the OutputStream of the servlet response.
+     */
+    public OutputStream getOutputStream(String contentType) throws IOException {
+        httpResponse.setContentType(contentType);
+        return httpResponse.getOutputStream();
+    }
+
+    /**
+     * Write a 304 (Not Modified) response.
+     * 
+     * @param eTag
+     *            the quoted entity tag the client already has.
+     */
+    public void writeNotModified(String eTag) throws IOException {
+        httpResponse.setHeader("ETag", eTag);
+        httpResponse.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    }
+
 }
@@ -23,6 +23,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import com.bbn.openmap.PropertyHandler;
+import com.bbn.openmap.image.CanvasPool;
+import com.bbn.openmap.image.wms.GetMapResponseCache;
 import com.bbn.openmap.image.wms.WMSException;
 import com.bbn.openmap.image.wms.WmsRequestHandler;
 import com.bbn.openmap.util.Debug;
@@ -32,6 +34,20 @@ import com.bbn.openmap.util.Debug;
  */
 public class OgcWmsServlet extends HttpServlet {
 
+    /**
+     * The GetMap response cache shared by the request handlers, created from
+     * the openmap.wms.cache properties.
+     */
+    private GetMapResponseCache responseCache;
+    private boolean responseCacheCreated = false;
+
+    /**
+     * The image canvas pool shared by the request handlers, so the canvases
+     * outlive the handler created for each request.
+     */
+    private CanvasPool canvasPool;
+    private boolean canvasPoolCreated = false;
+
     /**
      * A do-nothing constructor - init does all the work.
      */
@@ -118,8 +134,11 @@ public class OgcWmsServlet extends HttpServlet {
         }
 
         try {
+            Properties props = getProperties();
             WmsRequestHandler wmsRequestHandler = new WmsRequestHandler(schema, hostName,
-                    serverPort, contextPath + servletPath + servletPathInfo, getProperties());
+                    serverPort, contextPath + servletPath + servletPathInfo, props);
+            wmsRequestHandler.setResponseCache(getResponseCache(props));
+            wmsRequestHandler.setCanvasPool(getCanvasPool(wmsRequestHandler));
             return wmsRequestHandler;
         } catch (java.net.MalformedURLException me) {
             Debug.message("wms", "MS: caught MalformedURLException - \n" + me.getMessage());
@@ -134,6 +153,36 @@ public class OgcWmsServlet extends HttpServlet {
 
     }
 
+    /**
+     * Get the GetMap response cache, creating it from the properties the
+     * first time.
+     * 
+     * @return the GetMapResponseCache, or null if the properties don't ask for
+     *         one.
+     */
+    protected synchronized GetMapResponseCache getResponseCache(Properties props) throws IOException {
+        if (!responseCacheCreated) {
+            responseCache = GetMapResponseCache.createFromProperties(props);
+            responseCacheCreated = true;
+        }
+        return responseCache;
+    }
+
+    /**
+     * Get the image canvas pool, taking the one the first request handler
+     * creates from its properties the first time.
+     * 
+     * @param wmsRequestHandler the request handler being created.
+     * @return the CanvasPool, or null if the properties turn it off.
+     */
+    protected synchronized CanvasPool getCanvasPool(WmsRequestHandler wmsRequestHandler) {
+        if (!canvasPoolCreated) {
+            canvasPool = wmsRequestHandler.getCanvasPool();
+            canvasPoolCreated = true;
+        }
+        return canvasPool;
+    }
+
     /**
      * 
      */
@@ -143,7 +192,7 @@ public class OgcWmsServlet extends HttpServlet {
         WmsRequestHandler wmsRequestHandler = createRequestHandler(request);
 
         Properties properties = parsePropertiesFromRequest(request);
-        HttpResponse httpResponse = new HttpResponse(response);
+        HttpResponse httpResponse = new HttpResponse(request, response);
         wmsRequestHandler.handleRequest(properties, httpResponse);
     }
 